@@ -38,12 +38,14 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.immutables.value.Value;
@@ -106,6 +108,19 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
 
   protected abstract FetchResult fetchImpl(RuleKey ruleKey, LazyPath output) throws IOException;
 
+  /**
+   * Fetch an artifact, handing its payload to the given extractor as it is read if possible. The
+   * extractor must be discarded if the payload fails verification. By default, the artifact is
+   * written to output as usual.
+   */
+  protected FetchResult fetchImpl(
+      RuleKey ruleKey,
+      LazyPath output,
+      @SuppressWarnings("unused") ArtifactPayloadExtractor extractor)
+      throws IOException {
+    return fetchImpl(ruleKey, output);
+  }
+
   protected abstract MultiContainsResult multiContainsImpl(ImmutableSet<RuleKey> ruleKeys)
       throws IOException;
 
@@ -220,7 +235,10 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
     CacheEventListener.FetchRequestEvents requestEvents =
         eventListener.fetchStarted(request.getBuildTarget(), request.getRuleKey());
     try {
-      FetchResult fetchResult = fetchImpl(request.getRuleKey(), request.getOutput());
+      FetchResult fetchResult =
+          request.getExtractor().isPresent()
+              ? fetchWithExtractor(request, request.getExtractor().get())
+              : fetchImpl(request.getRuleKey(), request.getOutput());
       result = fetchResult.getCacheResult();
       requestEvents.finished(fetchResult);
     } catch (IOException e) {
@@ -233,6 +251,53 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
     request.future.set(result);
   }
 
+  /**
+   * Fetch an artifact with an extractor, falling back to fetching it to the request's output if the
+   * extracted payload turned out to be corrupt or couldn't be extracted.
+   */
+  private FetchResult fetchWithExtractor(FetchRequest request, ArtifactPayloadExtractor extractor)
+      throws IOException {
+    AtomicBoolean discarded = new AtomicBoolean(false);
+    FetchResult fetchResult;
+    try {
+      fetchResult =
+          fetchImpl(
+              request.getRuleKey(),
+              request.getOutput(),
+              new ArtifactPayloadExtractor() {
+                @Override
+                public boolean shouldExtract(ImmutableMap<String, String> metadata) {
+                  return extractor.shouldExtract(metadata);
+                }
+
+                @Override
+                public void extract(InputStream payload) throws IOException {
+                  extractor.extract(payload);
+                }
+
+                @Override
+                public void discard() throws IOException {
+                  discarded.set(true);
+                  extractor.discard();
+                }
+              });
+    } catch (IOException e) {
+      if (!discarded.get()) {
+        throw e;
+      }
+      LOG.info(
+          e, "Extracting the artifact for %s failed, fetching it again.", request.getRuleKey());
+      return fetchImpl(request.getRuleKey(), request.getOutput());
+    }
+    if (discarded.get() && !fetchResult.getCacheResult().getType().isSuccess()) {
+      LOG.info(
+          "Extracted artifact for %s failed verification, fetching it again.",
+          request.getRuleKey());
+      fetchResult = fetchImpl(request.getRuleKey(), request.getOutput());
+    }
+    return fetchResult;
+  }
+
   private void processFetch() {
     try {
       if (markAllFetchRequestsAsSkipped) {
@@ -352,6 +417,17 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
     return future;
   }
 
+  @Override
+  public final ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadExtractor extractor) {
+    SettableFuture<CacheResult> future = SettableFuture.create();
+    addFetchRequest(new FetchRequest(target, ruleKey, output, Optional.of(extractor), future));
+    return future;
+  }
+
   @Override
   public final ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
       ImmutableSet<RuleKey> ruleKeys) {
@@ -566,6 +642,7 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
     @Nullable private final BuildTarget target;
     private final RuleKey ruleKey;
     private final LazyPath output;
+    private final Optional<ArtifactPayloadExtractor> extractor;
     private final SettableFuture<CacheResult> future;
 
     @VisibleForTesting
@@ -574,9 +651,19 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
         RuleKey ruleKey,
         LazyPath output,
         SettableFuture<CacheResult> future) {
+      this(target, ruleKey, output, Optional.empty(), future);
+    }
+
+    private FetchRequest(
+        @Nullable BuildTarget target,
+        RuleKey ruleKey,
+        LazyPath output,
+        Optional<ArtifactPayloadExtractor> extractor,
+        SettableFuture<CacheResult> future) {
       this.target = target;
       this.ruleKey = ruleKey;
       this.output = output;
+      this.extractor = extractor;
       this.future = future;
     }
 
@@ -592,6 +679,11 @@ public abstract class AbstractAsynchronousCache implements ArtifactCache {
     public LazyPath getOutput() {
       return output;
     }
+
+    /** @return the extractor to hand the artifact's payload to, if the fetch supports it. */
+    public Optional<ArtifactPayloadExtractor> getExtractor() {
+      return extractor;
+    }
   }
 
   /** Return type used by the implementations of this abstract class. */
@@ -30,6 +30,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.util.Map;
+import java.util.Optional;
 import java.util.regex.Matcher;
 import javax.annotation.Nullable;
 
@@ -42,6 +43,7 @@ public abstract class AbstractNetworkCache extends AbstractAsynchronousCache {
   protected final HttpService fetchClient;
   protected final HttpService storeClient;
   private final ErrorReporter errorReporter;
+  private final boolean streamingExtractionEnabled;
 
   public AbstractNetworkCache(NetworkCacheArgs args) {
     super(
@@ -59,6 +61,7 @@ public abstract class AbstractNetworkCache extends AbstractAsynchronousCache {
     this.fetchClient = args.getFetchClient();
     this.storeClient = args.getStoreClient();
     this.errorReporter = new ErrorReporter(args);
+    this.streamingExtractionEnabled = args.isStreamingExtractionEnabled();
   }
 
   private static boolean isNoHealthyServersException(Throwable exception) {
@@ -75,6 +78,12 @@ public abstract class AbstractNetworkCache extends AbstractAsynchronousCache {
     return repository;
   }
 
+  /** @return the extractor to fetch with, if streaming extraction is enabled for this cache. */
+  protected Optional<ArtifactPayloadExtractor> getExtractorIfEnabled(
+      ArtifactPayloadExtractor extractor) {
+    return streamingExtractionEnabled ? Optional.of(extractor) : Optional.empty();
+  }
+
   private static class NetworkEventListener implements CacheEventListener {
     private final EventDispatcher dispatcher;
     private final String name;
@@ -56,4 +56,10 @@ interface AbstractNetworkCacheArgs {
   int getErrorTextLimit();
 
   Optional<Long> getMaxStoreSizeBytes();
+
+  /** Whether fetched artifacts may be handed to an {@link ArtifactPayloadExtractor}. */
+  @Value.Default
+  default boolean isStreamingExtractionEnabled() {
+    return false;
+  }
 }
@@ -46,6 +46,19 @@ public interface ArtifactCache extends AutoCloseable {
   ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output);
 
+  /**
+   * Fetch a cached artifact like {@link #fetchAsync(BuildTarget, RuleKey, LazyPath)}, but allow
+   * the cache to hand the artifact's payload to the given extractor as it is received, instead of
+   * saving it to output. Caches which can't do so save the artifact to output as usual.
+   */
+  default ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      @SuppressWarnings("unused") ArtifactPayloadExtractor extractor) {
+    return fetchAsync(target, ruleKey, output);
+  }
+
   /** All pending (and future) async fetches will be immediately marked as skipped. */
   void skipPendingAndFutureAsyncFetches();
 
@@ -100,6 +113,18 @@ public interface ArtifactCache extends AutoCloseable {
   ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
       ImmutableSet<RuleKey> ruleKeys);
 
+  /**
+   * This method must return the same value over the lifetime of this object.
+   *
+   * @return whether this {@link ArtifactCache} implements {@link #multiContainsAsync}, rather than
+   *     failing with an {@link UnsupportedOperationException}. Caches which can only check some of
+   *     their layers this way report {@link CacheResultType#SKIPPED} for keys they couldn't rule
+   *     out.
+   */
+  default boolean supportsMultiContains() {
+    return true;
+  }
+
   ListenableFuture<CacheDeleteResult> deleteAsync(List<RuleKey> ruleKeys);
 
   /**
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Unpacks a fetched artifact while its payload is being read from the cache, rather than having
+ * the cache write the payload to a file which is unpacked afterwards.
+ *
+ * <p>The payload is handed over before the cache has verified its checksum, so an extractor must
+ * be able to undo everything it wrote via {@link #discard()}.
+ */
+public interface ArtifactPayloadExtractor {
+
+  /**
+   * @return whether the payload of an artifact with the given metadata should be extracted. If
+   *     not, the cache writes the payload to the fetch's output path as usual.
+   */
+  boolean shouldExtract(ImmutableMap<String, String> metadata);
+
+  /** Unpack the payload, which should be read to its end. */
+  void extract(InputStream payload) throws IOException;
+
+  /** Remove everything written by {@link #extract}, after the payload failed verification. */
+  void discard() throws IOException;
+}
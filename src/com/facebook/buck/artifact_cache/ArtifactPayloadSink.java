@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.function.ThrowingSupplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Receives the payload of an artifact fetched from a network cache. The payload is either handed
+ * to an {@link ArtifactPayloadExtractor} as it is read, or written to a temp file which is moved to
+ * the fetch's output once the payload has been verified.
+ */
+class ArtifactPayloadSink {
+
+  private final ProjectFilesystem filesystem;
+  private final Optional<ArtifactPayloadExtractor> extractor;
+  private final ThrowingSupplier<Path, IOException> tempFileSupplier;
+
+  @Nullable private Path tempFile;
+  private boolean extracted = false;
+
+  ArtifactPayloadSink(
+      ProjectFilesystem filesystem,
+      Optional<ArtifactPayloadExtractor> extractor,
+      ThrowingSupplier<Path, IOException> tempFileSupplier) {
+    this.filesystem = filesystem;
+    this.extractor = extractor;
+    this.tempFileSupplier = tempFileSupplier;
+  }
+
+  /**
+   * Read the payload of an artifact with the given metadata.
+   *
+   * @param extractable whether the artifact may be extracted, which callers should only allow
+   *     once everything but the payload's checksum has been verified.
+   */
+  void write(boolean extractable, ImmutableMap<String, String> metadata, InputStream payload)
+      throws IOException {
+    try {
+      if (extractable && extractor.isPresent() && extractor.get().shouldExtract(metadata)) {
+        extracted = true;
+        extractor.get().extract(payload);
+      } else {
+        tempFile = tempFileSupplier.get();
+        try (OutputStream output = filesystem.newFileOutputStream(tempFile)) {
+          ByteStreams.copy(payload, output);
+        }
+      }
+    } catch (IOException e) {
+      discard();
+      throw e;
+    }
+  }
+
+  /** @return whether the payload was extracted, rather than written to a temp file. */
+  boolean wasExtracted() {
+    return extracted;
+  }
+
+  /** Called once the payload has been verified, to move a temp file into its final place. */
+  void commit(LazyPath output) throws IOException {
+    if (tempFile != null) {
+      filesystem.move(tempFile, output.get(), StandardCopyOption.REPLACE_EXISTING);
+      tempFile = null;
+    }
+  }
+
+  /** Called when the payload failed verification, to undo whatever was written. */
+  void discard() throws IOException {
+    if (extracted) {
+      extracted = false;
+      extractor.get().discard();
+    }
+    if (tempFile != null) {
+      filesystem.deleteFileAtPath(tempFile);
+      tempFile = null;
+    }
+  }
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.artifact_cache;
 
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionCodec;
 import com.facebook.buck.core.exceptions.handler.HumanReadableExceptionAugmentor;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
@@ -34,6 +35,7 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -56,15 +58,26 @@ public class ArtifactUploader {
       ImmutableMap<String, String> buildMetadata,
       SortedSet<Path> pathsToIncludeInZip,
       BuildTarget buildTarget,
-      ProjectFilesystem projectFilesystem) {
+      ProjectFilesystem projectFilesystem,
+      ArtifactCompressionCodec codec) {
     NamedTemporaryFile zip =
         getTemporaryArtifactZip(
-            buildTarget, projectFilesystem, ruleKeys, eventBus, pathsToIncludeInZip);
+            buildTarget, projectFilesystem, ruleKeys, eventBus, pathsToIncludeInZip, codec);
+
+    // Declare the codec the artifact was written with, replacing the one it was fetched with if
+    // the build metadata came from the cache.
+    ImmutableMap<String, String> artifactMetadata =
+        ImmutableMap.<String, String>builder()
+            .putAll(
+                Maps.filterKeys(
+                    buildMetadata, key -> !key.equals(ArtifactCompressionCodec.METADATA_KEY)))
+            .put(ArtifactCompressionCodec.METADATA_KEY, codec.getName())
+            .build();
 
     // Store the artifact, including any additional metadata.
     ListenableFuture<Void> storeFuture =
         artifactCache.store(
-            ArtifactInfo.builder().setRuleKeys(ruleKeys).setMetadata(buildMetadata).build(),
+            ArtifactInfo.builder().setRuleKeys(ruleKeys).setMetadata(artifactMetadata).build(),
             BorrowablePath.borrowablePath(zip.get()));
     Futures.addCallback(
         storeFuture,
@@ -137,7 +150,8 @@ public class ArtifactUploader {
       ProjectFilesystem projectFilesystem,
       ImmutableSet<RuleKey> ruleKeys,
       BuckEventBus eventBus,
-      SortedSet<Path> pathsToIncludeInZip) {
+      SortedSet<Path> pathsToIncludeInZip,
+      ArtifactCompressionCodec codec) {
     ArtifactCompressionEvent.Started started =
         ArtifactCompressionEvent.started(ArtifactCompressionEvent.Operation.COMPRESS, ruleKeys);
     eventBus.post(started);
@@ -145,7 +159,8 @@ public class ArtifactUploader {
         new CloseableHolder<>(
             new NamedTemporaryFile(
                 "buck_artifact_" + MostFiles.sanitize(buildTarget.getShortName()), ".zip"))) {
-      Zip.create(projectFilesystem, pathsToIncludeInZip, zip.get().get());
+      Zip.create(
+          projectFilesystem, pathsToIncludeInZip, zip.get().get(), codec::getCompressionLevel);
       return zip.release();
     } catch (IOException e) {
       throw new BuckUncheckedExecutionException(
@@ -25,11 +25,10 @@ import com.google.common.io.ByteSource;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Optional;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
@@ -53,6 +52,18 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
 
   @Override
   protected FetchResult fetchImpl(RuleKey ruleKey, LazyPath output) throws IOException {
+    return fetchArtifact(ruleKey, output, Optional.empty());
+  }
+
+  @Override
+  protected FetchResult fetchImpl(
+      RuleKey ruleKey, LazyPath output, ArtifactPayloadExtractor extractor) throws IOException {
+    return fetchArtifact(ruleKey, output, getExtractorIfEnabled(extractor));
+  }
+
+  private FetchResult fetchArtifact(
+      RuleKey ruleKey, LazyPath output, Optional<ArtifactPayloadExtractor> extractor)
+      throws IOException {
     FetchResult.Builder resultBuilder = FetchResult.builder();
     Request.Builder requestBuilder = new Request.Builder().get();
     try (HttpResponse response =
@@ -76,19 +87,25 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
 
-        // Setup a temporary file, which sits next to the destination, to write to and
-        // make sure all parent dirs exist.
-        Path file = output.get();
-        getProjectFilesystem().createParentDirs(file);
-        Path temp =
-            getProjectFilesystem()
-                .createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
-
-        FetchResponseReadResult fetchedData;
-        try (OutputStream tempFileOutputStream = getProjectFilesystem().newFileOutputStream(temp)) {
-          fetchedData =
-              HttpArtifactCacheBinaryProtocol.readFetchResponse(input, tempFileOutputStream);
-        }
+        // Unless the payload is extracted as it's read, write it to a temporary file, which sits
+        // next to the destination, and make sure all parent dirs exist.
+        ArtifactPayloadSink payloadSink =
+            new ArtifactPayloadSink(
+                getProjectFilesystem(),
+                extractor,
+                () -> {
+                  Path file = output.get();
+                  getProjectFilesystem().createParentDirs(file);
+                  return getProjectFilesystem()
+                      .createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+                });
+
+        // Only extract artifacts which were stored under the requested rule key.
+        FetchResponseReadResult fetchedData =
+            HttpArtifactCacheBinaryProtocol.readFetchResponse(
+                input,
+                (ruleKeys, metadata, payload) ->
+                    payloadSink.write(ruleKeys.contains(ruleKey), metadata, payload));
 
         resultBuilder
             .setBuildTarget(ArtifactCacheEvent.getTarget(fetchedData.getMetadata()))
@@ -99,6 +116,7 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
         if (!fetchedData.getRuleKeys().contains(ruleKey)) {
           String msg = "incorrect key name";
           reportFailureWithFormatKey("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
+          payloadSink.discard();
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
 
@@ -107,12 +125,12 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
         if (!fetchedData.getExpectedHashCode().equals(fetchedData.getActualHashCode())) {
           String msg = "artifact had invalid checksum";
           reportFailureWithFormatKey("fetch(%s, %s): %s", response.requestUrl(), ruleKey, msg);
-          getProjectFilesystem().deleteFileAtPath(temp);
+          payloadSink.discard();
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
 
         // Finally, move the temp file into it's final place.
-        getProjectFilesystem().move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        payloadSink.commit(output);
 
         LOG.info("fetch(%s, %s): cache hit", response.requestUrl(), ruleKey);
         return resultBuilder
@@ -132,6 +150,11 @@ public final class HttpArtifactCache extends AbstractNetworkCache {
     throw new UnsupportedOperationException("multiContains is not supported");
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return false;
+  }
+
   @Override
   protected StoreResult storeImpl(ArtifactInfo info, Path file) throws IOException {
     StoreResult.Builder resultBuilder = StoreResult.builder();
@@ -30,6 +30,7 @@ import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
@@ -53,9 +54,18 @@ public class HttpArtifactCacheBinaryProtocol {
 
   public static FetchResponseReadResult readFetchResponse(
       DataInputStream input, OutputStream payloadSink) throws IOException {
+    return readFetchResponse(input, copyTo(payloadSink));
+  }
+
+  /**
+   * Read a fetch response, handing its payload to the given {@link PayloadReader} once the rule
+   * keys and metadata preceding it have been read.
+   */
+  public static FetchResponseReadResult readFetchResponse(
+      DataInputStream input, PayloadReader payloadReader) throws IOException {
 
     MetadataAndPayloadReadResultInternal resultInternal =
-        readMetadataAndPayload(input, payloadSink);
+        readMetadataAndPayload(input, payloadReader);
 
     FetchResponseReadResult.Builder result = FetchResponseReadResult.builder().from(resultInternal);
     return result.build();
@@ -79,6 +89,11 @@ public class HttpArtifactCacheBinaryProtocol {
 
   public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
       DataInputStream input, OutputStream payloadSink) throws IOException {
+    return readMetadataAndPayload(input, copyTo(payloadSink));
+  }
+
+  private static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
+      DataInputStream input, PayloadReader payloadReader) throws IOException {
     // Read the size of a the metadata, and use that to build a input stream to read and
     // process the rest of it.
     int metadataSize = input.readInt();
@@ -90,6 +105,8 @@ public class HttpArtifactCacheBinaryProtocol {
     // Create a hasher to be used to generate a hash of the metadata and input.  We'll use
     // this to compare against the embedded checksum.
     Hasher hasher = HASH_FUNCTION.newHasher();
+    ImmutableSet<RuleKey> ruleKeys;
+    ImmutableMap<String, String> metadata;
     byte[] rawMetadata = new byte[metadataSize];
     ByteStreams.readFully(input, rawMetadata);
     try (InputStream rawMetadataIn = new ByteArrayInputStream(rawMetadata)) {
@@ -100,21 +117,27 @@ public class HttpArtifactCacheBinaryProtocol {
 
         // Read in the rule keys that stored this artifact, and add them to the hash we're
         // building up.
+        ImmutableSet.Builder<RuleKey> ruleKeysBuilder = ImmutableSet.builder();
         int size = metadataIn.readInt();
         for (int i = 0; i < size; i++) {
-          result.addRuleKeys(new RuleKey(metadataIn.readUTF()));
+          ruleKeysBuilder.add(new RuleKey(metadataIn.readUTF()));
         }
+        ruleKeys = ruleKeysBuilder.build();
 
         // Read in the actual metadata map, and add it the hash.
+        ImmutableMap.Builder<String, String> metadataBuilder = ImmutableMap.builder();
         size = metadataIn.readInt();
         for (int i = 0; i < size; i++) {
           String key = metadataIn.readUTF();
           int valSize = metadataIn.readInt();
           byte[] val = new byte[valSize];
           ByteStreams.readFully(metadataIn, val);
-          result.putMetadata(key, new String(val, Charsets.UTF_8));
+          metadataBuilder.put(key, new String(val, Charsets.UTF_8));
         }
+        metadata = metadataBuilder.build();
       }
+      result.addAllRuleKeys(ruleKeys);
+      result.putAllMetadata(metadata);
 
       // Next, read in the embedded expected checksum, which should be the last byte in
       // the metadata header.
@@ -123,12 +146,16 @@ public class HttpArtifactCacheBinaryProtocol {
       result.setExpectedHashCode(HashCode.fromBytes(hashCodeBytes));
     }
 
-    // The remaining data is the payload, which we write to the created file, and also include
-    // in our verification checksum.
+    // The remaining data is the payload, which we hand to the reader, and also include in our
+    // verification checksum.
     Hasher artifactOnlyHasher = HASH_FUNCTION.newHasher();
-    try (InputStream payload =
-        new HasherInputStream(artifactOnlyHasher, new HasherInputStream(hasher, input))) {
-      result.setResponseSizeBytes(ByteStreams.copy(payload, payloadSink));
+    try (CountingInputStream payload =
+        new CountingInputStream(
+            new HasherInputStream(artifactOnlyHasher, new HasherInputStream(hasher, input)))) {
+      payloadReader.read(ruleKeys, metadata, payload);
+      // Make sure the whole payload contributes to the checksum, even if the reader stopped early.
+      ByteStreams.exhaust(payload);
+      result.setResponseSizeBytes(payload.getCount());
       result.setArtifactOnlyHashCode(artifactOnlyHasher.hash());
     }
 
@@ -137,6 +164,18 @@ public class HttpArtifactCacheBinaryProtocol {
     return result.build();
   }
 
+  private static PayloadReader copyTo(OutputStream payloadSink) {
+    return (ruleKeys, metadata, payload) -> ByteStreams.copy(payload, payloadSink);
+  }
+
+  /** Consumes the payload of a response, given the rule keys and metadata which precede it. */
+  @FunctionalInterface
+  public interface PayloadReader {
+    void read(
+        ImmutableSet<RuleKey> ruleKeys, ImmutableMap<String, String> metadata, InputStream payload)
+        throws IOException;
+  }
+
   @VisibleForTesting
   static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
     try (ByteArrayOutputStream out = new ByteArrayOutputStream();
@@ -27,6 +27,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.util.List;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 /**
@@ -48,10 +49,25 @@ public class LoggingArtifactCacheDecorator implements ArtifactCache, CacheDecora
   @Override
   public ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    return fetchWithEvents(ruleKey, () -> delegate.fetchAsync(target, ruleKey, output));
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadExtractor extractor) {
+    return fetchWithEvents(
+        ruleKey, () -> delegate.fetchAsync(target, ruleKey, output, extractor));
+  }
+
+  private ListenableFuture<CacheResult> fetchWithEvents(
+      RuleKey ruleKey, Supplier<ListenableFuture<CacheResult>> fetch) {
     ArtifactCacheEvent.Started started =
         eventFactory.newFetchStartedEvent(ImmutableSet.of(ruleKey));
     eventBus.post(started);
-    CacheResult fetchResult = Futures.getUnchecked(delegate.fetchAsync(target, ruleKey, output));
+    CacheResult fetchResult = Futures.getUnchecked(fetch.get());
     eventBus.post(eventFactory.newFetchFinishedEvent(started, fetchResult));
     return Futures.immediateFuture(fetchResult);
   }
@@ -96,6 +112,11 @@ public class LoggingArtifactCacheDecorator implements ArtifactCache, CacheDecora
     return delegate.getCacheReadMode();
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return delegate.supportsMultiContains();
+  }
+
   @Override
   public void close() {
     delegate.close();
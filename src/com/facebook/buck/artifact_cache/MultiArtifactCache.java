@@ -29,6 +29,7 @@ import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -37,6 +38,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 
 /**
@@ -68,9 +70,33 @@ public class MultiArtifactCache implements ArtifactCache {
   @Override
   public ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    return fetch(target, ruleKey, output, Optional.empty());
+  }
+
+  /**
+   * Fetch the artifact like {@link #fetchAsync(BuildTarget, RuleKey, LazyPath)}. The extractor is
+   * only offered to a cache if no higher-priority cache needs to be filled with the artifact, as
+   * that requires the artifact to be fetched to output.
+   */
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadExtractor extractor) {
+    return fetch(target, ruleKey, output, Optional.of(extractor));
+  }
+
+  private ListenableFuture<CacheResult> fetch(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      Optional<ArtifactPayloadExtractor> extractor) {
     ListenableFuture<CacheResult> cacheResult = Futures.immediateFuture(CacheResult.miss());
     // This is the list of higher-priority caches that we should write the artifact to.
-    ImmutableList.Builder<ArtifactCache> cachesToFill = ImmutableList.builder();
+    List<ArtifactCache> cachesToFill = new ArrayList<>();
+    // Whether the extractor was offered to the most recently queried cache.
+    AtomicBoolean extractorOffered = new AtomicBoolean(false);
     for (ArtifactCache artifactCache : artifactCaches) {
       cacheResult =
           Futures.transformAsync(
@@ -79,10 +105,13 @@ public class MultiArtifactCache implements ArtifactCache {
                 if (result.getType().isSuccess()) {
                   return Futures.immediateFuture(result);
                 }
+                extractorOffered.set(extractor.isPresent() && cachesToFill.isEmpty());
                 if (artifactCache.getCacheReadMode().isWritable()) {
                   cachesToFill.add(artifactCache);
                 }
-                return artifactCache.fetchAsync(target, ruleKey, output);
+                return extractorOffered.get()
+                    ? artifactCache.fetchAsync(target, ruleKey, output, extractor.get())
+                    : artifactCache.fetchAsync(target, ruleKey, output);
               },
               MoreExecutors.directExecutor());
     }
@@ -91,11 +120,13 @@ public class MultiArtifactCache implements ArtifactCache {
     return Futures.transform(
         cacheResult,
         (CacheResult result) -> {
-          if (!result.getType().isSuccess()) {
+          // If the extractor was offered there are no previous caches to fill, and the artifact
+          // may not have been fetched to output at all.
+          if (!result.getType().isSuccess() || extractorOffered.get()) {
             return result;
           }
           storeToCaches(
-              cachesToFill.build(),
+              ImmutableList.copyOf(cachesToFill),
               ArtifactInfo.builder().addRuleKeys(ruleKey).setMetadata(result.getMetadata()).build(),
               BorrowablePath.notBorrowablePath(output.getUnchecked()));
           return result;
@@ -166,7 +197,14 @@ public class MultiArtifactCache implements ArtifactCache {
     ListenableFuture<Map<RuleKey, CacheResult>> cacheResultFuture =
         Futures.immediateFuture(initialResults);
 
+    // Only the caches which support it are asked. A key they all miss may still be in one of the
+    // others, so it's reported as skipped rather than missing.
+    boolean allSupportMultiContains = true;
     for (ArtifactCache nextCache : artifactCaches) {
+      if (!nextCache.supportsMultiContains()) {
+        allSupportMultiContains = false;
+        continue;
+      }
       cacheResultFuture =
           Futures.transformAsync(
               cacheResultFuture,
@@ -196,8 +234,18 @@ public class MultiArtifactCache implements ArtifactCache {
               MoreExecutors.directExecutor());
     }
 
+    if (allSupportMultiContains) {
+      return Futures.transform(
+          cacheResultFuture, ImmutableMap::copyOf, MoreExecutors.directExecutor());
+    }
     return Futures.transform(
-        cacheResultFuture, ImmutableMap::copyOf, MoreExecutors.directExecutor());
+        cacheResultFuture,
+        mergedResults ->
+            ImmutableMap.copyOf(
+                Maps.transformValues(
+                    mergedResults,
+                    result -> result.getType().isSuccess() ? result : CacheResult.skipped())),
+        MoreExecutors.directExecutor());
   }
 
   @Override
@@ -225,6 +273,11 @@ public class MultiArtifactCache implements ArtifactCache {
     return isStoreSupported ? CacheReadMode.READWRITE : CacheReadMode.READONLY;
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return artifactCaches.stream().anyMatch(ArtifactCache::supportsMultiContains);
+  }
+
   @Override
   public void close() {
     Optional<RuntimeException> throwable = Optional.empty();
@@ -35,6 +35,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
 public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
@@ -62,8 +63,23 @@ public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
   @Override
   public ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    return fetchWithRetries(ruleKey, () -> delegate.fetchAsync(target, ruleKey, output));
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadExtractor extractor) {
+    return fetchWithRetries(
+        ruleKey, () -> delegate.fetchAsync(target, ruleKey, output, extractor));
+  }
+
+  private ListenableFuture<CacheResult> fetchWithRetries(
+      RuleKey ruleKey, Supplier<ListenableFuture<CacheResult>> fetch) {
     List<String> allCacheErrors = new ArrayList<>();
-    ListenableFuture<CacheResult> resultFuture = delegate.fetchAsync(target, ruleKey, output);
+    ListenableFuture<CacheResult> resultFuture = fetch.get();
     for (int retryCount = 1; retryCount < maxFetchRetries; retryCount++) {
       int retryCountForLambda = retryCount;
       resultFuture =
@@ -77,7 +93,7 @@ public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
                 LOG.info(
                     "Failed to fetch %s after %d/%d attempts, exception: %s",
                     ruleKey, retryCountForLambda + 1, maxFetchRetries, result.cacheError());
-                return delegate.fetchAsync(target, ruleKey, output);
+                return fetch.get();
               });
     }
     return Futures.transform(
@@ -134,6 +150,11 @@ public class RetryingCacheDecorator implements ArtifactCache, CacheDecorator {
     return delegate.getCacheReadMode();
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return delegate.supportsMultiContains();
+  }
+
   @Override
   public void close() {
     delegate.close();
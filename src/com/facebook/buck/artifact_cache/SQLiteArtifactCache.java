@@ -260,6 +260,11 @@ public class SQLiteArtifactCache implements ArtifactCache {
     throw new UnsupportedOperationException("multiContains is not supported");
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return false;
+  }
+
   @Override
   public ListenableFuture<CacheDeleteResult> deleteAsync(List<RuleKey> ruleKeys) {
     throw new RuntimeException("Delete operation is not yet supported");
@@ -98,6 +98,18 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
 
   @Override
   protected FetchResult fetchImpl(RuleKey ruleKey, LazyPath output) throws IOException {
+    return fetchArtifact(ruleKey, output, Optional.empty());
+  }
+
+  @Override
+  protected FetchResult fetchImpl(
+      RuleKey ruleKey, LazyPath output, ArtifactPayloadExtractor extractor) throws IOException {
+    return fetchArtifact(ruleKey, output, getExtractorIfEnabled(extractor));
+  }
+
+  private FetchResult fetchArtifact(
+      RuleKey ruleKey, LazyPath output, Optional<ArtifactPayloadExtractor> extractor)
+      throws IOException {
     FetchResult.Builder resultBuilder = FetchResult.builder();
 
     BuckCacheFetchRequest fetchRequest = new BuckCacheFetchRequest();
@@ -162,23 +174,36 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
         }
 
         LOG.verbose("Got artifact.  Attempting to read payload.");
-        Path tmp = createTempFileForDownload();
+        ArtifactPayloadSink payloadSink =
+            new ArtifactPayloadSink(
+                getProjectFilesystem(), extractor, this::createTempFileForDownload);
+        // The metadata precedes the payload, so only artifacts with complete metadata are
+        // extracted as they're read.
+        boolean extractable =
+            fetchResponse.isSetMetadata()
+                && fetchResponse.getMetadata().isSetRuleKeys()
+                && fetchResponse.getMetadata().isSetMetadata();
+        ImmutableMap<String, String> payloadMetadata =
+            extractable
+                ? ImmutableMap.copyOf(fetchResponse.getMetadata().getMetadata())
+                : ImmutableMap.of();
         ThriftArtifactCacheProtocol.Response.ReadPayloadInfo readResult;
-        try (OutputStream tmpFile = getProjectFilesystem().newFileOutputStream(tmp)) {
-          try {
-            readResult = response.readPayload(tmpFile);
-          } catch (IOException e) {
-            LOG.debug(e, "encountered an exception while receiving the payload for %s", ruleKey);
-            throw e;
-          }
-          LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
+        try {
+          readResult =
+              response.readPayload(
+                  payload -> payloadSink.write(extractable, payloadMetadata, payload));
+        } catch (IOException e) {
+          LOG.debug(e, "encountered an exception while receiving the payload for %s", ruleKey);
+          throw e;
         }
+        LOG.verbose("Successfully read payload: %d bytes.", readResult.getBytesRead());
 
         if (!fetchResponse.isSetMetadata()) {
           String msg =
               String.format(
                   "ArtifactMetadata section is missing in the response. response=[%s]",
                   ThriftUtil.thriftToDebugJson(fetchResponse));
+          payloadSink.discard();
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
         ArtifactMetadata metadata = fetchResponse.getMetadata();
@@ -190,6 +215,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
         }
 
         if (!metadata.isSetRuleKeys()) {
+          payloadSink.discard();
           return resultBuilder
               .setCacheResult(
                   CacheResult.error(
@@ -204,6 +230,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
               String.format(
                   "Exception parsing the rule keys in the metadata section [%s] with exception [%s].",
                   ThriftUtil.thriftToDebugJson(metadata), e.toString());
+          payloadSink.discard();
           return resultBuilder.setCacheResult(CacheResult.error(getName(), getMode(), msg)).build();
         }
 
@@ -224,6 +251,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
                     "The artifact fetched from cache is corrupted. ExpectedMD5=[%s] ActualMD5=[%s]",
                     fetchResponse.getMetadata().getArtifactPayloadMd5(), readResult.getMd5Hash());
             LOG.warn(msg);
+            payloadSink.discard();
             return resultBuilder
                 .setCacheResult(CacheResult.error(getName(), getMode(), msg))
                 .build();
@@ -231,7 +259,7 @@ public class ThriftArtifactCache extends AbstractNetworkCache {
         }
 
         // This makes sure we don't have 'half downloaded files' in the dir cache.
-        getProjectFilesystem().move(tmp, output.get(), StandardCopyOption.REPLACE_EXISTING);
+        payloadSink.commit(output);
         return resultBuilder
             .setCacheResult(
                 CacheResult.hit(
@@ -21,13 +21,16 @@ import com.facebook.buck.artifact_cache.thrift.PayloadInfo;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.slb.ThriftProtocol;
 import com.facebook.buck.slb.ThriftUtil;
+import com.facebook.buck.util.function.ThrowingConsumer;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
 import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -181,16 +184,7 @@ public class ThriftArtifactCacheProtocol {
     }
 
     public ReadPayloadInfo readPayload(OutputStream outStream) throws IOException {
-      assertTrue(
-          nextPayloadToBeRead < thriftData.getPayloadsSize(),
-          "Trying to download payload index=[%s] but the thriftData only contains [%s] payloads.",
-          nextPayloadToBeRead,
-          thriftData.getPayloadsSize());
-
-      long payloadSizeBytes =
-          assertNotNull(thriftData.getPayloads(), "Payloads[] cannot be null.")
-              .get(nextPayloadToBeRead)
-              .getSizeBytes();
+      long payloadSizeBytes = getNextPayloadSizeBytes();
       try (HashingOutputStream wrappedOutputStream =
           new HashingOutputStream(MD5_HASH_FUNCTION, outStream)) {
         copyExactly(responseStream, wrappedOutputStream, payloadSizeBytes);
@@ -199,6 +193,42 @@ public class ThriftArtifactCacheProtocol {
       }
     }
 
+    /**
+     * Read the next payload by handing it to the given consumer as a stream, rather than copying
+     * it to an {@link OutputStream}. Any of the payload left unread by the consumer is skipped.
+     */
+    public ReadPayloadInfo readPayload(ThrowingConsumer<InputStream, IOException> payloadConsumer)
+        throws IOException {
+      long payloadSizeBytes = getNextPayloadSizeBytes();
+      CountingInputStream countingStream =
+          new CountingInputStream(ByteStreams.limit(responseStream, payloadSizeBytes));
+      HashingInputStream payload = new HashingInputStream(MD5_HASH_FUNCTION, countingStream);
+      payloadConsumer.accept(payload);
+      ByteStreams.exhaust(payload);
+      if (countingStream.getCount() < payloadSizeBytes) {
+        String msg =
+            String.format(
+                "InputStream was missing [%d] bytes. Expected to read a total of [%d] bytes.",
+                payloadSizeBytes - countingStream.getCount(), payloadSizeBytes);
+        LOG.error(msg);
+        throw new IOException(msg);
+      }
+      ++nextPayloadToBeRead;
+      return new ReadPayloadInfo(payloadSizeBytes, payload.hash().toString());
+    }
+
+    private long getNextPayloadSizeBytes() throws ProtocolException {
+      assertTrue(
+          nextPayloadToBeRead < thriftData.getPayloadsSize(),
+          "Trying to download payload index=[%s] but the thriftData only contains [%s] payloads.",
+          nextPayloadToBeRead,
+          thriftData.getPayloadsSize());
+
+      return assertNotNull(thriftData.getPayloads(), "Payloads[] cannot be null.")
+          .get(nextPayloadToBeRead)
+          .getSizeBytes();
+    }
+
     @Override
     public void close() throws IOException {
       responseStream.close();
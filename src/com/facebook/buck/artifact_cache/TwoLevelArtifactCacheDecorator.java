@@ -40,6 +40,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Objects;
@@ -122,8 +123,53 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
   @Override
   public ListenableFuture<CacheResult> fetchAsync(
       @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+    return fetch(target, ruleKey, output, Optional.empty());
+  }
+
+  @Override
+  public ListenableFuture<CacheResult> fetchAsync(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      ArtifactPayloadExtractor extractor) {
+    return fetch(target, ruleKey, output, Optional.of(extractor));
+  }
+
+  private ListenableFuture<CacheResult> fetch(
+      @Nullable BuildTarget target,
+      RuleKey ruleKey,
+      LazyPath output,
+      Optional<ArtifactPayloadExtractor> extractor) {
+    ListenableFuture<CacheResult> firstLevelFetchResultFuture;
+    if (extractor.isPresent()) {
+      // The payload of a first-level artifact is the second-level key, not the artifact itself.
+      firstLevelFetchResultFuture =
+          delegate.fetchAsync(
+              target,
+              ruleKey,
+              output,
+              new ArtifactPayloadExtractor() {
+                @Override
+                public boolean shouldExtract(ImmutableMap<String, String> metadata) {
+                  return !metadata.containsKey(METADATA_KEY)
+                      && extractor.get().shouldExtract(metadata);
+                }
+
+                @Override
+                public void extract(InputStream payload) throws IOException {
+                  extractor.get().extract(payload);
+                }
+
+                @Override
+                public void discard() throws IOException {
+                  extractor.get().discard();
+                }
+              });
+    } else {
+      firstLevelFetchResultFuture = delegate.fetchAsync(target, ruleKey, output);
+    }
     return Futures.transformAsync(
-        delegate.fetchAsync(target, ruleKey, output),
+        firstLevelFetchResultFuture,
         (CacheResult fetchResult) -> {
           if (!fetchResult.getType().isSuccess()) {
             LOG.verbose("Missed first-level lookup.");
@@ -135,8 +181,11 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
           LOG.verbose("Found a first-level artifact with metadata: %s", fetchResult.getMetadata());
 
           String contentHashKey = fetchResult.getMetadata().get(METADATA_KEY);
+          RuleKey contentHashRuleKey = new RuleKey(contentHashKey);
           ListenableFuture<CacheResult> outputFileFetchResultFuture =
-              delegate.fetchAsync(target, new RuleKey(contentHashKey), output);
+              extractor.isPresent()
+                  ? delegate.fetchAsync(target, contentHashRuleKey, output, extractor.get())
+                  : delegate.fetchAsync(target, contentHashRuleKey, output);
 
           return Futures.transformAsync(
               outputFileFetchResultFuture,
@@ -289,6 +338,11 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache, CacheDecor
     return delegate.getCacheReadMode();
   }
 
+  @Override
+  public boolean supportsMultiContains() {
+    return delegate.supportsMultiContains();
+  }
+
   @Override
   public void close() {
     delegate.close();
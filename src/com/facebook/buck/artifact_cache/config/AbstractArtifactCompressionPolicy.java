@@ -0,0 +1,40 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache.config;
+
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
+import com.google.common.collect.ImmutableMap;
+import org.immutables.value.Value;
+
+/** Chooses the {@link ArtifactCompressionCodec} to upload the artifacts of build rules with. */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractArtifactCompressionPolicy {
+
+  public static final ArtifactCompressionPolicy DEFAULT =
+      ArtifactCompressionPolicy.of(ArtifactCompressionCodec.DEFLATE, ImmutableMap.of());
+
+  public abstract ArtifactCompressionCodec getDefaultCodec();
+
+  /** Codecs to use instead of the default one, by build rule type. */
+  public abstract ImmutableMap<String, ArtifactCompressionCodec> getCodecsByRuleType();
+
+  /** @return the codec to compress artifacts of rules of the given type with. */
+  public ArtifactCompressionCodec getCodec(String ruleType) {
+    return getCodecsByRuleType().getOrDefault(ruleType, getDefaultCodec());
+  }
+}
@@ -32,6 +32,7 @@ import java.net.URI;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
@@ -139,6 +140,10 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
       "download_heavy_build_http_cache_fetch_threads";
   private static final int DEFAULT_DOWNLOAD_HEAVY_BUILD_CACHE_FETCH_THREADS = 20;
 
+  private static final String ARTIFACT_COMPRESSION = "artifact_compression";
+  private static final String ARTIFACT_COMPRESSION_BY_RULE_TYPE =
+      "artifact_compression_by_rule_type";
+
   private final BuckConfig buckConfig;
   private final SlbBuckConfig slbConfig;
 
@@ -210,6 +215,14 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
             .orElse(DEFAULT_HTTP_MAX_CONCURRENT_WRITES));
   }
 
+  /**
+   * @return whether artifacts fetched from http caches may be unpacked as they are downloaded,
+   *     rather than being written to a temp file first.
+   */
+  public boolean getHttpStreamingExtractionEnabled() {
+    return buckConfig.getBooleanValue(CACHE_SECTION_NAME, "http_streaming_extraction", false);
+  }
+
   public int getHttpWriterShutdownTimeout() {
     return Integer.parseInt(
         buckConfig
@@ -217,6 +230,32 @@ public class ArtifactCacheBuckConfig implements ConfigView<BuckConfig> {
             .orElse(DEFAULT_HTTP_WRITE_SHUTDOWN_TIMEOUT_SECONDS));
   }
 
+  /** @return how the artifacts of each type of build rule are compressed for upload. */
+  public ArtifactCompressionPolicy getArtifactCompressionPolicy() {
+    ArtifactCompressionCodec defaultCodec =
+        buckConfig
+            .getEnum(CACHE_SECTION_NAME, ARTIFACT_COMPRESSION, ArtifactCompressionCodec.class)
+            .orElse(ArtifactCompressionCodec.DEFLATE);
+    ImmutableMap.Builder<String, ArtifactCompressionCodec> codecsByRuleType =
+        ImmutableMap.builder();
+    for (Map.Entry<String, String> entry :
+        buckConfig.getMap(CACHE_SECTION_NAME, ARTIFACT_COMPRESSION_BY_RULE_TYPE).entrySet()) {
+      codecsByRuleType.put(
+          entry.getKey(),
+          ArtifactCompressionCodec.fromName(entry.getValue())
+              .orElseThrow(
+                  () ->
+                      new HumanReadableException(
+                          ".buckconfig: %s:%s: unknown codec \"%s\" for %s, must be one of %s",
+                          CACHE_SECTION_NAME,
+                          ARTIFACT_COMPRESSION_BY_RULE_TYPE,
+                          entry.getValue(),
+                          entry.getKey(),
+                          Joiner.on(", ").join(ArtifactCompressionCodec.values()))));
+    }
+    return ArtifactCompressionPolicy.of(defaultCodec, codecsByRuleType.build());
+  }
+
   public int getMaxFetchRetries() {
     return buckConfig
         .getInteger(CACHE_SECTION_NAME, HTTP_MAX_FETCH_RETRIES)
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.Deflater;
+
+/**
+ * How the files of an artifact are compressed when it's uploaded to the cache.
+ *
+ * <p>All codecs produce zip archives, which pick a compression method per entry, so any codec can
+ * be read by the same unzipper. The codec used is declared in the artifact's metadata, so that
+ * readers can refuse artifacts written with a codec they don't know about.
+ */
+public enum ArtifactCompressionCodec {
+  /** Deflate at the default level, which is how artifacts have always been compressed. */
+  DEFLATE(Deflater.DEFAULT_COMPRESSION),
+  /** Deflate at the fastest level, trading artifact size for less CPU spent uploading. */
+  DEFLATE_FAST(Deflater.BEST_SPEED),
+  /** Don't compress at all. */
+  STORED(Deflater.NO_COMPRESSION),
+  ;
+
+  /** The artifact metadata key declaring the codec. Artifacts without it were deflated. */
+  public static final String METADATA_KEY = "artifact_compression";
+
+  /** Extensions of files which are already compressed, and so are always stored as they are. */
+  private static final ImmutableSet<String> PRECOMPRESSED_EXTENSIONS =
+      ImmutableSet.of(
+          "7z", "aar", "apk", "ap_", "bz2", "gif", "gz", "jar", "jpeg", "jpg", "png", "webp", "xz",
+          "zip");
+
+  private final int compressionLevel;
+
+  ArtifactCompressionCodec(int compressionLevel) {
+    this.compressionLevel = compressionLevel;
+  }
+
+  /** @return the name of the codec, as used in the config and in artifact metadata. */
+  public String getName() {
+    return name().toLowerCase(Locale.ROOT);
+  }
+
+  /** @return the zip compression level the given file should be written to the artifact with. */
+  public int getCompressionLevel(Path path) {
+    if (PRECOMPRESSED_EXTENSIONS.contains(
+        Files.getFileExtension(path.toString()).toLowerCase(Locale.ROOT))) {
+      return Deflater.NO_COMPRESSION;
+    }
+    return compressionLevel;
+  }
+
+  /**
+   * @return the codec declared in the given artifact metadata, or nothing if the artifact was
+   *     written with a codec this version of buck doesn't support.
+   */
+  public static Optional<ArtifactCompressionCodec> fromMetadata(
+      ImmutableMap<String, String> metadata) {
+    String name = metadata.get(METADATA_KEY);
+    if (name == null) {
+      return Optional.of(DEFLATE);
+    }
+    return fromName(name);
+  }
+
+  /** @return the codec with the given name, if there is one. */
+  public static Optional<ArtifactCompressionCodec> fromName(String name) {
+    for (ArtifactCompressionCodec codec : values()) {
+      if (codec.getName().equals(name.toLowerCase(Locale.ROOT))) {
+        return Optional.of(codec);
+      }
+    }
+    return Optional.empty();
+  }
+}
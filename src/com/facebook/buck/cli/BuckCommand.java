@@ -36,6 +36,7 @@ public class BuckCommand extends AbstractContainerCommand {
     // TODO(nga): rename to `cache delete`
     @SubCommand(name = "cachedelete", impl = CacheDeleteCommand.class),
     @SubCommand(name = "clean", impl = CleanCommand.class),
+    @SubCommand(name = "convert-trace", impl = ConvertTraceCommand.class),
     @SubCommand(name = "distbuild", impl = DistBuildCommand.class),
     @SubCommand(name = "doctor", impl = DoctorCommand.class),
     @SubCommand(name = "fetch", impl = FetchCommand.class),
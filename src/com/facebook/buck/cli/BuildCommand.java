@@ -37,11 +37,14 @@ import com.facebook.buck.core.build.distributed.synchronization.impl.NoOpRemoteB
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.event.BuildEvent;
+import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
 import com.facebook.buck.core.model.graph.ActionAndTargetGraphs;
+import com.facebook.buck.core.model.targetgraph.TargetGraph;
 import com.facebook.buck.core.model.targetgraph.TargetGraphAndBuildTargets;
+import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.TargetNodeFactory;
 import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.core.rulekey.calculator.ParallelRuleKeyCalculator;
@@ -79,12 +82,15 @@ import com.facebook.buck.distributed.thrift.RuleKeyLogEntry;
 import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.event.listener.DistBuildClientEventListener;
 import com.facebook.buck.io.file.MostFiles;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.log.thrift.ThriftRuleKeyLogger;
+import com.facebook.buck.model.ImmutableBuildTarget;
 import com.facebook.buck.parser.BuildTargetParser;
 import com.facebook.buck.parser.BuildTargetPatternParser;
 import com.facebook.buck.parser.DefaultParserTargetNodeFactory;
@@ -97,6 +103,9 @@ import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.PathTypeCoercer;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyFactory;
+import com.facebook.buck.rules.keys.PersistentRuleKeyCache;
+import com.facebook.buck.rules.keys.PersistentRuleKeyCacheScope;
+import com.facebook.buck.rules.keys.PersistentRuleKeyStore;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
 import com.facebook.buck.rules.keys.RuleKeyCacheScope;
 import com.facebook.buck.rules.keys.RuleKeyFieldLoader;
@@ -120,6 +129,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -133,6 +145,8 @@ import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -547,6 +561,9 @@ public class BuildCommand extends AbstractCommand {
           createGraphsAndTargets(
               params, commandThreadManager.getListeningExecutorService(), Optional.empty());
       distBuildClientStatsTracker.stopTimer(LOCAL_GRAPH_CONSTRUCTION);
+      prefetchInputFileHashes(
+          params,
+          graphsAndBuildTargets.getGraphs().getTargetGraphForDistributedBuild().getTargetGraph());
 
       try (RuleKeyCacheScope<RuleKey> ruleKeyCacheScope =
           getDefaultRuleKeyCacheScope(
@@ -585,9 +602,11 @@ public class BuildCommand extends AbstractCommand {
         graphsAndBuildTargets =
             createGraphsAndTargets(
                 params, commandThreadManager.getListeningExecutorService(), optionalRuleKeyLogger);
+        prefetchInputFileHashes(
+            params,
+            graphsAndBuildTargets.getGraphs().getTargetGraphForLocalBuild().getTargetGraph());
         try (RuleKeyCacheScope<RuleKey> ruleKeyCacheScope =
-            getDefaultRuleKeyCacheScope(
-                params, graphsAndBuildTargets.getGraphs().getActionGraphAndBuilder())) {
+            getLocalBuildRuleKeyCacheScope(params, graphsAndBuildTargets.getGraphs())) {
           exitCode =
               executeLocalBuild(
                   params,
@@ -609,6 +628,28 @@ public class BuildCommand extends AbstractCommand {
     return ImmutableBuildRunResult.of(exitCode, graphsAndBuildTargets.getBuildTargets());
   }
 
+  /**
+   * Load the hashes of the source inputs of all the nodes in the target graph in bulk, ahead of
+   * rule key computation (and of recording the file hashes of a distributed build), so they are
+   * fetched from Watchman or hashed in parallel rather than one at a time.
+   */
+  private static void prefetchInputFileHashes(CommandRunnerParams params, TargetGraph targetGraph)
+      throws InterruptedException {
+    Map<ProjectFilesystem, Set<Path>> inputsByFilesystem = new HashMap<>();
+    for (TargetNode<?, ?> node : targetGraph.getNodes()) {
+      inputsByFilesystem
+          .computeIfAbsent(node.getFilesystem(), filesystem -> new HashSet<>())
+          .addAll(node.getInputs());
+    }
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(params.getBuckEventBus(), PerfEventId.of("prefetch_file_hashes"))) {
+      scope.update("inputs", inputsByFilesystem.values().stream().mapToInt(Set::size).sum());
+      for (Map.Entry<ProjectFilesystem, Set<Path>> entry : inputsByFilesystem.entrySet()) {
+        params.getFileHashCache().prefetch(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
   /**
    * Create a {@link ThriftRuleKeyLogger} depending on whether {@link BuildCommand#ruleKeyLogPath}
    * is set or not
@@ -1421,6 +1462,84 @@ public class BuildCommand extends AbstractCommand {
             params.getBuckConfig().getKeySeed(), actionGraphAndBuilder.getActionGraph()));
   }
 
+  /**
+   * @return the rule key cache scope for a local build, which is backed by a {@link
+   *     PersistentRuleKeyStore} if `build.persistent_rule_key_cache` is enabled.
+   */
+  private RuleKeyCacheScope<RuleKey> getLocalBuildRuleKeyCacheScope(
+      CommandRunnerParams params, ActionAndTargetGraphs graphs) {
+    RuleKeyCacheScope<RuleKey> scope =
+        getDefaultRuleKeyCacheScope(params, graphs.getActionGraphAndBuilder());
+    if (!params.getBuckConfig().getPersistentRuleKeyCaching()) {
+      return scope;
+    }
+
+    ProjectFilesystem filesystem = params.getCell().getFilesystem();
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(
+            filesystem.resolve(filesystem.getBuckPaths().getScratchDir().resolve("rule_keys")),
+            hashRuleKeySettings(params));
+    TargetGraph targetGraph = graphs.getTargetGraphForLocalBuild().getTargetGraph();
+    return new PersistentRuleKeyCacheScope(
+        params.getBuckEventBus(),
+        scope,
+        store,
+        cache ->
+            new PersistentRuleKeyCache(
+                cache,
+                store,
+                params.getFileHashCache(),
+                params
+                    .getCell()
+                    .getAllCells()
+                    .stream()
+                    .map(Cell::getFilesystem)
+                    .collect(ImmutableList.toImmutableList()),
+                rule -> fingerprintRule(targetGraph, rule)));
+  }
+
+  /** @return a hash of all settings which may affect any rule key. */
+  private static HashCode hashRuleKeySettings(CommandRunnerParams params) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putInt(params.getBuckConfig().getKeySeed());
+    hasher.putUnencodedChars(params.getRuleKeyConfiguration().getCoreKey());
+    // Any config value may influence how rules are constructed, so include them all.
+    for (Cell cell : params.getCell().getAllCells()) {
+      hasher.putUnencodedChars(cell.getRoot().toString());
+      new TreeMap<>(cell.getBuckConfig().getConfig().getSectionToEntries())
+          .forEach(
+              (section, entries) ->
+                  new TreeMap<>(entries)
+                      .forEach(
+                          (key, value) ->
+                              hasher
+                                  .putUnencodedChars(section)
+                                  .putUnencodedChars(key)
+                                  .putUnencodedChars(value)));
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * @return a hash of the target node the given rule was created from, or nothing if it can't be
+   *     identified, in which case the rule key of this rule is not persisted.
+   */
+  private static Optional<HashCode> fingerprintRule(TargetGraph targetGraph, BuildRule rule) {
+    BuildTarget target = rule.getBuildTarget();
+    Optional<TargetNode<?, ?>> node = targetGraph.getOptional(target);
+    if (!node.isPresent()) {
+      // Flavored rules are typically created from their unflavored node.
+      node = targetGraph.getOptional(ImmutableBuildTarget.of(target.getUnflavoredBuildTarget()));
+    }
+    return node.map(
+        n ->
+            Hashing.sha1()
+                .newHasher()
+                .putUnencodedChars(rule.getType())
+                .putBytes(n.getRawInputsHashCode().asBytes())
+                .hash());
+  }
+
   @Override
   protected ExecutionContext.Builder getExecutionContextBuilder(CommandRunnerParams params) {
     return super.getExecutionContextBuilder(params)
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.ExitCode;
+import com.facebook.buck.util.trace.BinaryChromeTraceFormat;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.annotation.Nullable;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+/** Converts binary Chrome traces to the JSON format which chrome://tracing can load. */
+public class ConvertTraceCommand extends AbstractCommand {
+
+  @Argument(usage = "Trace to convert. Defaults to the trace of the last command.")
+  @Nullable
+  private String trace = null;
+
+  @Option(name = "--output", usage = "File to write the JSON trace to. Defaults to stdout.")
+  @Nullable
+  private String output = null;
+
+  @Override
+  public ExitCode runWithoutHelp(CommandRunnerParams params) throws IOException {
+    ProjectFilesystem filesystem = params.getCell().getFilesystem();
+    Path tracePath =
+        trace == null
+            ? filesystem.resolve(filesystem.getBuckPaths().getLogDir().resolve("build.trace"))
+            : Paths.get(trace).toAbsolutePath();
+    if (!Files.isRegularFile(tracePath)) {
+      params.getConsole().printErrorText("No trace found at " + tracePath);
+      return ExitCode.COMMANDLINE_ERROR;
+    }
+
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(tracePath))) {
+      if (output == null) {
+        convert(input, params.getConsole().getStdOut());
+        params.getConsole().getStdOut().flush();
+      } else {
+        try (OutputStream outputStream = Files.newOutputStream(Paths.get(output))) {
+          convert(input, outputStream);
+        }
+      }
+    }
+    return ExitCode.SUCCESS;
+  }
+
+  private static void convert(InputStream input, OutputStream output) throws IOException {
+    if (BinaryChromeTraceFormat.isBinaryTrace(input)) {
+      BinaryChromeTraceReader.convertToJson(input, output);
+    } else {
+      // Already a JSON trace.
+      ByteStreams.copy(input, output);
+    }
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public String getShortDescription() {
+    return "converts a binary build trace to the JSON format of chrome://tracing";
+  }
+}
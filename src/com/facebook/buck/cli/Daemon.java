@@ -35,20 +35,26 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.parser.DefaultParser;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
+import com.facebook.buck.parser.ParserStateSnapshot;
 import com.facebook.buck.parser.TargetSpecResolver;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.RuleKeyCacheRecycler;
+import com.facebook.buck.rules.keys.config.impl.BuckVersion;
 import com.facebook.buck.util.RichStream;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
 import com.facebook.buck.util.cache.impl.DefaultFileHashCache;
+import com.facebook.buck.util.cache.impl.FileHashSnapshot;
 import com.facebook.buck.util.cache.impl.WatchedFileHashCache;
+import com.facebook.buck.util.cache.impl.WatchmanFileHashes;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.versions.VersionedTargetGraphCache;
 import com.facebook.buck.worker.WorkerProcessPool;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import java.io.Closeable;
 import java.io.IOException;
@@ -57,6 +63,9 @@ import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Daemon used to monitor the file system and cache build rules between Main() method invocations is
@@ -66,6 +75,12 @@ import java.util.concurrent.ConcurrentMap;
 final class Daemon implements Closeable {
   private static final Logger LOG = Logger.get(Daemon.class);
 
+  /** The parser state is snapshotted at most this often, other than when the daemon is closed. */
+  private static final long PARSER_STATE_SNAPSHOT_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  /** How long closing the daemon waits for the final parser state snapshot to be written. */
+  private static final long PARSER_STATE_SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS = 30;
+
   private final Cell rootCell;
   private final TypeCoercerFactory typeCoercerFactory;
   private final Parser parser;
@@ -78,6 +93,14 @@ final class Daemon implements Closeable {
   private final RuleKeyCacheRecycler<RuleKey> defaultRuleKeyFactoryCacheRecycler;
   private final ImmutableMap<Path, WatchmanCursor> cursor;
   private final KnownBuildRuleTypesProvider knownBuildRuleTypesProvider;
+  private final Optional<ParserStateSnapshot> parserStateSnapshot;
+  private final ExecutorService parserStateSnapshotExecutor =
+      MostExecutors.newSingleThreadExecutor("Parser state snapshot");
+  private final AtomicLong lastParserStateSnapshotMillis = new AtomicLong();
+
+  // Whether the parser state was restored from a snapshot, and Watchman hasn't yet been asked for
+  // the changes made since the snapshot was taken.
+  private volatile boolean parserStateRestored = false;
 
   Daemon(
       Cell rootCell,
@@ -95,7 +118,10 @@ final class Daemon implements Closeable {
         subCell -> {
           WatchedFileHashCache watchedCache =
               new WatchedFileHashCache(
-                  subCell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode());
+                  subCell.getFilesystem(),
+                  rootCell.getBuckConfig().getFileHashCacheMode(),
+                  getFileHashSnapshot(rootCell.getBuckConfig(), subCell.getFilesystem()),
+                  getWatchmanFileHashes(rootCell, subCell.getFilesystem()));
           fileEventBus.register(watchedCache);
           hashCachesBuilder.add(watchedCache);
         });
@@ -145,6 +171,90 @@ final class Daemon implements Closeable {
     }
     LOG.debug("Using Watchman Cursor: %s", cursor);
     persistentWorkerPools = new ConcurrentHashMap<>();
+
+    this.parserStateSnapshot = getParserStateSnapshot(rootCell, cursor);
+    parserStateSnapshot.ifPresent(this::restoreParserState);
+  }
+
+  /**
+   * @return the snapshot to restore the parser state from and save it to, if enabled. Snapshots
+   *     need the Watchman clocks the state is up to date with, so aren't used with named cursors.
+   */
+  private static Optional<ParserStateSnapshot> getParserStateSnapshot(
+      Cell rootCell, ImmutableMap<Path, WatchmanCursor> cursor) {
+    ParserConfig parserConfig = rootCell.getBuckConfig().getView(ParserConfig.class);
+    if (!parserConfig.isDaemonParserStateSnapshotEnabled()) {
+      return Optional.empty();
+    }
+    if (cursor.isEmpty()
+        || !cursor.values().stream().allMatch(clock -> clock.get().startsWith("c:"))) {
+      LOG.debug("Not snapshotting the parser state without Watchman clocks: %s", cursor);
+      return Optional.empty();
+    }
+    return Optional.of(ParserStateSnapshot.of(rootCell, BuckVersion.getVersion()));
+  }
+
+  private void restoreParserState(ParserStateSnapshot snapshot) {
+    Optional<ImmutableMap<Path, String>> clocks =
+        snapshot.restore(parser.getPermState(), rootCell);
+    if (!clocks.isPresent()) {
+      return;
+    }
+    if (!clocks.get().keySet().equals(cursor.keySet())) {
+      LOG.debug("Discarding parser state restored for different cells: %s", clocks.get());
+      parser.getPermState().invalidateAllCaches();
+      return;
+    }
+    // Resume watching from where the state is up to date, so changes since then invalidate it.
+    cursor.forEach((cellPath, watchmanCursor) -> watchmanCursor.set(clocks.get().get(cellPath)));
+    parserStateRestored = true;
+    lastParserStateSnapshotMillis.set(System.currentTimeMillis());
+  }
+
+  /** Save the parser state in the background, if enabled and it wasn't saved recently. */
+  void snapshotParserStateIfDue() {
+    if (!parserStateSnapshot.isPresent()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long last = lastParserStateSnapshotMillis.get();
+    if (now - last >= PARSER_STATE_SNAPSHOT_INTERVAL_MILLIS
+        && lastParserStateSnapshotMillis.compareAndSet(last, now)) {
+      parserStateSnapshotExecutor.execute(this::saveParserState);
+    }
+  }
+
+  private void saveParserState() {
+    ImmutableMap<Path, String> clocks;
+    // Cursors are advanced before the events they cover are posted, so read them while no events
+    // are being processed (see watchFileSystem()).
+    synchronized (parser) {
+      clocks = ImmutableMap.copyOf(Maps.transformValues(cursor, WatchmanCursor::get));
+    }
+    try {
+      parserStateSnapshot.get().save(parser.getPermState(), rootCell, clocks);
+    } catch (IOException | RuntimeException e) {
+      // A failed snapshot only costs the next daemon a cold parse, so never let it escape.
+      LOG.warn(e, "Failed to save parser state snapshot.");
+    }
+  }
+
+  /** @return the file hash snapshot to back a cell's file hash cache with, if enabled. */
+  static Optional<FileHashSnapshot> getFileHashSnapshot(
+      BuckConfig config, ProjectFilesystem filesystem) {
+    if (!config.getPersistentFileHashCaching()) {
+      return Optional.empty();
+    }
+    return Optional.of(FileHashSnapshot.of(filesystem));
+  }
+
+  /** @return the Watchman file hashes to back a cell's file hash cache with, if enabled. */
+  static Optional<WatchmanFileHashes> getWatchmanFileHashes(
+      Cell rootCell, ProjectFilesystem filesystem) {
+    if (!rootCell.getBuckConfig().getWatchmanFileHashes()) {
+      return Optional.empty();
+    }
+    return WatchmanFileHashes.of(rootCell.getWatchman(), filesystem);
   }
 
   Cell getRootCell() {
@@ -247,11 +357,19 @@ final class Daemon implements Closeable {
     // invalidations triggered by requests to parse build files or interrupted by client
     // disconnections.
     synchronized (parser) {
+      WatchmanWatcher.FreshInstanceAction freshInstanceAction = watchmanFreshInstanceAction;
+      if (parserStateRestored) {
+        // A restored parser state is stale if Watchman can't tell us everything that has changed
+        // since it was saved.
+        freshInstanceAction = WatchmanWatcher.FreshInstanceAction.POST_OVERFLOW_EVENT;
+        parserStateRestored = false;
+      }
+
       // Track the file hash cache invalidation run time.
       FileHashCacheEvent.InvalidationStarted started = FileHashCacheEvent.invalidationStarted();
       eventBus.post(started);
       try {
-        watchmanWatcher.postEvents(eventBus, watchmanFreshInstanceAction);
+        watchmanWatcher.postEvents(eventBus, freshInstanceAction);
       } finally {
         eventBus.post(FileHashCacheEvent.invalidationFinished(started));
         hashCaches.forEach(
@@ -291,10 +409,28 @@ final class Daemon implements Closeable {
 
   @Override
   public void close() {
+    shutdownParserStateSnapshots();
     shutdownPersistentWorkerPools();
     shutdownWebServer();
   }
 
+  private void shutdownParserStateSnapshots() {
+    if (parserStateSnapshot.isPresent()) {
+      // Take a final snapshot, and wait for it so the process doesn't exit part way through.
+      parserStateSnapshotExecutor.execute(this::saveParserState);
+    }
+    try {
+      if (!MostExecutors.shutdown(
+          parserStateSnapshotExecutor,
+          PARSER_STATE_SNAPSHOT_SHUTDOWN_TIMEOUT_SECONDS,
+          TimeUnit.SECONDS)) {
+        LOG.warn("Timed out waiting for the parser state snapshot to be saved.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
   private void shutdownPersistentWorkerPools() {
     for (WorkerProcessPool pool : persistentWorkerPools.values()) {
       try {
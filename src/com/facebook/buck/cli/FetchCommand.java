@@ -16,8 +16,10 @@
 
 package com.facebook.buck.cli;
 
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.command.Build;
 import com.facebook.buck.core.build.distributed.synchronization.impl.NoOpRemoteBuildRuleCompletionWaiter;
+import com.facebook.buck.core.build.engine.config.ArtifactCachePrefetchInfo;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
@@ -132,6 +134,7 @@ public class FetchCommand extends BuildCommand {
                   cachingBuildEngineBuckConfig.getBuildDepFiles(),
                   cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
                   cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+                  ArtifactCompressionPolicy.DEFAULT,
                   actionGraphAndBuilder.getActionGraphBuilder(),
                   sourcePathRuleFinder,
                   DefaultSourcePathResolver.from(sourcePathRuleFinder),
@@ -144,7 +147,9 @@ public class FetchCommand extends BuildCommand {
                       actionGraphAndBuilder.getActionGraphBuilder(),
                       params.getBuckConfig().getBuildInputRuleKeyFileSizeLimit(),
                       ruleKeyCacheScope.getCache()),
-                  new NoOpRemoteBuildRuleCompletionWaiter());
+                  new NoOpRemoteBuildRuleCompletionWaiter(),
+                  Optional.empty(),
+                  ArtifactCachePrefetchInfo.DISABLED);
           Build build =
               new Build(
                   actionGraphAndBuilder.getActionGraphBuilder(),
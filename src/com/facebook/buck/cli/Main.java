@@ -22,9 +22,11 @@ import static com.facebook.buck.util.AnsiEnvironmentChecking.NAILGUN_STDOUT_ISTT
 import static com.google.common.util.concurrent.MoreExecutors.listeningDecorator;
 import static com.google.common.util.concurrent.MoreExecutors.newDirectExecutorService;
 
+import com.facebook.buck.artifact_cache.ArtifactCacheFactory;
 import com.facebook.buck.artifact_cache.ArtifactCaches;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.cli.exceptions.handlers.ExceptionHandlerRegistryFactory;
+import com.facebook.buck.command.LocalBuildExecutor;
 import com.facebook.buck.config.BuckConfig;
 import com.facebook.buck.config.resources.ResourcesConfig;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
@@ -44,6 +46,7 @@ import com.facebook.buck.core.rules.knowntypes.KnownBuildRuleTypesProvider;
 import com.facebook.buck.core.util.immutables.BuckStyleTuple;
 import com.facebook.buck.counters.CounterRegistry;
 import com.facebook.buck.counters.CounterRegistryImpl;
+import com.facebook.buck.counters.HotPathMetrics;
 import com.facebook.buck.distributed.DistBuildConfig;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventListener;
@@ -59,6 +62,7 @@ import com.facebook.buck.event.listener.BuildTargetDurationListener;
 import com.facebook.buck.event.listener.CacheRateStatsListener;
 import com.facebook.buck.event.listener.ChromeTraceBuildListener;
 import com.facebook.buck.event.listener.FileSerializationEventBusListener;
+import com.facebook.buck.event.listener.HotPathMetricsListener;
 import com.facebook.buck.event.listener.JavaUtilsLoggingBuildListener;
 import com.facebook.buck.event.listener.LoadBalancerEventsListener;
 import com.facebook.buck.event.listener.LogUploaderListener;
@@ -69,6 +73,8 @@ import com.facebook.buck.event.listener.ProgressEstimator;
 import com.facebook.buck.event.listener.PublicAnnouncementManager;
 import com.facebook.buck.event.listener.RuleKeyDiagnosticsListener;
 import com.facebook.buck.event.listener.RuleKeyLoggerListener;
+import com.facebook.buck.event.listener.SamplingProfilerConfig;
+import com.facebook.buck.event.listener.SamplingProfilerListener;
 import com.facebook.buck.event.listener.SimpleConsoleEventBusListener;
 import com.facebook.buck.event.listener.SuperConsoleConfig;
 import com.facebook.buck.event.listener.SuperConsoleEventBusListener;
@@ -767,7 +773,10 @@ public final class Main {
             .map(
                 cell ->
                     DefaultFileHashCache.createDefaultFileHashCache(
-                        cell.getFilesystem(), rootCell.getBuckConfig().getFileHashCacheMode()))
+                        cell.getFilesystem(),
+                        rootCell.getBuckConfig().getFileHashCacheMode(),
+                        Daemon.getFileHashSnapshot(rootCell.getBuckConfig(), cell.getFilesystem()),
+                        Daemon.getWatchmanFileHashes(rootCell, cell.getFilesystem())))
             .forEach(allCaches::add);
         // The Daemon caches a buck-out filehashcache for the root cell, so the non-daemon case
         // needs to create that itself.
@@ -797,7 +806,8 @@ public final class Main {
           DefaultFileHashCache.createOsRootDirectoriesCaches(
               projectFilesystemFactory, rootCell.getBuckConfig().getFileHashCacheMode()));
 
-      StackedFileHashCache fileHashCache = new StackedFileHashCache(allCaches.build());
+      ImmutableList<ProjectFileHashCache> fileHashCaches = allCaches.build();
+      StackedFileHashCache fileHashCache = new StackedFileHashCache(fileHashCaches);
 
       Optional<WebServer> webServer = daemon.flatMap(Daemon::getWebServer);
       Optional<ConcurrentMap<String, WorkerProcessPool>> persistentWorkerPools =
@@ -808,6 +818,11 @@ public final class Main {
 
       SuperConsoleConfig superConsoleConfig = new SuperConsoleConfig(buckConfig);
 
+      HotPathMetrics.setEnabled(buckConfig.isHotPathMetricsEnabled());
+      if (HotPathMetrics.isEnabled()) {
+        HotPathMetrics.registerJvmGauges();
+      }
+
       // Eventually, we'll want to get allow websocket and/or nailgun clients to specify locale
       // when connecting. For now, we'll use the default from the server environment.
       Locale locale = Locale.getDefault();
@@ -992,6 +1007,8 @@ public final class Main {
                         .resolve(filesystem.getBuckPaths().getBuckOut())
                         .resolve(ProgressEstimator.PROGRESS_ESTIMATIONS_JSON),
                     buildEventBus);
+            LocalBuildExecutor.loadBuildRuleDurationHistory(buckConfig, filesystem)
+                .ifPresent(progressEstimator::setBuildRuleDurationHistory);
             consoleListener.setProgressEstimator(progressEstimator);
           }
 
@@ -1151,7 +1168,7 @@ public final class Main {
                         parserAndCaches.getVersionedTargetGraphCache(),
                         artifactCacheFactory,
                         parserAndCaches.getTypeCoercerFactory(),
-                        parserAndCaches.getParser(),
+                        getParser(rootCell, parserAndCaches.getParser(), artifactCacheFactory),
                         buildEventBus,
                         platform,
                         clientEnvironment,
@@ -1189,6 +1206,8 @@ public final class Main {
               new CacheStatsEvent(
                   "versioned_target_graph_cache",
                   parserAndCaches.getVersionedTargetGraphCache().getCacheStats()));
+          saveFileHashSnapshots(fileHashCaches);
+          daemon.ifPresent(Daemon::snapshotParserStateIfDue);
           buildEventBus.post(CommandEvent.finished(startedEvent, exitCode));
         } finally {
           // signal nailgun that we are not interested in client disconnect events anymore
@@ -1322,6 +1341,18 @@ public final class Main {
     return parserAndCaches;
   }
 
+  /** @return the parser for the command, sharing parsed build files through the artifact cache. */
+  private static Parser getParser(
+      Cell rootCell, Parser parser, ArtifactCacheFactory artifactCacheFactory) {
+    if (rootCell.getBuckConfig().getView(ParserConfig.class).getBuildFileManifestCacheMode()
+        != ParserConfig.BuildFileManifestCacheMode.SHARED) {
+      return parser;
+    }
+    // Build file manifests are kept in a local directory of their own.
+    return parser.withBuildFileManifestArtifactCache(
+        artifactCacheFactory.remoteOnlyInstance(false, false));
+  }
+
   private static void registerClientDisconnectedListener(NGContext context, Daemon daemon) {
     Thread mainThread = Thread.currentThread();
     context.addClientListener(
@@ -1543,6 +1574,19 @@ public final class Main {
     }
   }
 
+  private static void saveFileHashSnapshots(ImmutableList<ProjectFileHashCache> caches) {
+    for (ProjectFileHashCache cache : caches) {
+      if (cache instanceof DefaultFileHashCache) {
+        try {
+          ((DefaultFileHashCache) cache).saveSnapshot();
+        } catch (IOException e) {
+          LOG.warn(
+              e, "Failed to save file hash snapshot for %s.", cache.getFilesystem().getRootPath());
+        }
+      }
+    }
+  }
+
   private ImmutableList<ProjectFileHashCache> getFileHashCachesFromDaemon(Daemon daemon) {
     return daemon.getFileHashCaches();
   }
@@ -1708,6 +1752,24 @@ public final class Main {
 
     eventListenersBuilder.add(new ParserProfilerLoggerListener(invocationInfo, projectFilesystem));
 
+    SamplingProfilerConfig samplingProfilerConfig =
+        buckConfig.getView(SamplingProfilerConfig.class);
+    if (samplingProfilerConfig.isSamplingProfilerEnabled()) {
+      eventListenersBuilder.add(
+          new SamplingProfilerListener(
+              invocationInfo,
+              projectFilesystem,
+              ManagementFactory.getThreadMXBean(),
+              GlobalStateManager.singleton().getThreadToCommandRegister(),
+              Executors.newSingleThreadScheduledExecutor(
+                  new CommandThreadFactory(SamplingProfilerListener.class.getName())),
+              samplingProfilerConfig));
+    }
+
+    if (HotPathMetrics.isEnabled()) {
+      eventListenersBuilder.add(new HotPathMetricsListener());
+    }
+
 
     eventListenersBuilder.add(new LoadBalancerEventsListener(counterRegistry));
     eventListenersBuilder.add(new CacheRateStatsListener(buckEventBus));
@@ -17,6 +17,7 @@
 package com.facebook.buck.cli;
 
 import com.facebook.buck.android.exopackage.AndroidDevicesHelperFactory;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.command.Build;
 import com.facebook.buck.config.BuckConfig;
 import com.facebook.buck.config.resources.ResourcesConfig;
@@ -601,6 +602,8 @@ public class TestCommand extends BuildCommand {
                     cachingBuildEngineBuckConfig.getBuildDepFiles(),
                     cachingBuildEngineBuckConfig.getBuildMaxDepFileCacheEntries(),
                     cachingBuildEngineBuckConfig.getBuildArtifactCacheSizeLimit(),
+                    ArtifactCacheBuckConfig.of(params.getBuckConfig())
+                        .getArtifactCompressionPolicy(),
                     actionGraphAndBuilder.getActionGraphBuilder(),
                     sourcePathRuleFinder,
                     DefaultSourcePathResolver.from(sourcePathRuleFinder),
@@ -613,7 +616,9 @@ public class TestCommand extends BuildCommand {
                         actionGraphAndBuilder.getActionGraphBuilder(),
                         params.getBuckConfig().getBuildInputRuleKeyFileSizeLimit(),
                         ruleKeyCacheScope.getCache()),
-                    new NoOpRemoteBuildRuleCompletionWaiter());
+                    new NoOpRemoteBuildRuleCompletionWaiter(),
+                    Optional.empty(),
+                    cachingBuildEngineBuckConfig.getArtifactCachePrefetchInfo());
             Build build =
                 new Build(
                     actionGraphAndBuilder.getActionGraphBuilder(),
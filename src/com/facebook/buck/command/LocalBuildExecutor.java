@@ -16,6 +16,7 @@
 package com.facebook.buck.command;
 
 import com.facebook.buck.artifact_cache.ArtifactCacheFactory;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.config.BuckConfig;
 import com.facebook.buck.config.resources.ResourcesConfig;
 import com.facebook.buck.core.build.distributed.synchronization.RemoteBuildRuleCompletionWaiter;
@@ -23,9 +24,11 @@ import com.facebook.buck.core.build.engine.BuildEngineResult;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
 import com.facebook.buck.core.build.engine.config.CachingBuildEngineBuckConfig;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
+import com.facebook.buck.core.build.engine.impl.BuildRuleDurationHistoryRecorder;
 import com.facebook.buck.core.build.engine.impl.CachingBuildEngine;
 import com.facebook.buck.core.build.engine.impl.MetadataChecker;
 import com.facebook.buck.core.build.engine.type.BuildType;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.actiongraph.ActionGraphAndBuilder;
@@ -35,8 +38,10 @@ import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.sourcepath.resolver.impl.DefaultSourcePathResolver;
 import com.facebook.buck.core.util.immutables.BuckStyleImmutable;
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.ProjectFilesystemFactory;
 import com.facebook.buck.jvm.java.JavaBuckConfig;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.log.thrift.ThriftRuleKeyLogger;
 import com.facebook.buck.parser.BuildTargetParseException;
 import com.facebook.buck.parser.BuildTargetParser;
@@ -64,10 +69,15 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import org.immutables.value.Value;
 
 /** Used to build a given set of targets on the local machine. */
 public class LocalBuildExecutor implements BuildExecutor {
+  private static final Logger LOG = Logger.get(LocalBuildExecutor.class);
+
+  private static final long EVENT_BUS_FLUSH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(15);
+
   private final ActionGraphAndBuilder actionGraphAndBuilder;
   private final WeightedListeningExecutorService executorService;
   private final CachingBuildEngineDelegate cachingBuildEngineDelegate;
@@ -76,6 +86,8 @@ public class LocalBuildExecutor implements BuildExecutor {
   private final RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter;
   private final Optional<BuildType> buildEngineMode;
   private final Optional<ThriftRuleKeyLogger> ruleKeyLogger;
+  private final Optional<BuildRuleDurationHistory> buildRuleDurationHistory;
+  private final Optional<BuildRuleDurationHistoryRecorder> buildRuleDurationHistoryRecorder;
 
   private final CachingBuildEngine cachingBuildEngine;
   private final Build build;
@@ -105,6 +117,11 @@ public class LocalBuildExecutor implements BuildExecutor {
     this.remoteBuildRuleCompletionWaiter = remoteBuildRuleCompletionWaiter;
 
     // Init resources.
+    this.buildRuleDurationHistory =
+        loadBuildRuleDurationHistory(args.getBuckConfig(), args.getRootCell().getFilesystem());
+    this.buildRuleDurationHistoryRecorder =
+        buildRuleDurationHistory.map(BuildRuleDurationHistoryRecorder::new);
+    buildRuleDurationHistoryRecorder.ifPresent(args.getBuckEventBus()::register);
     this.cachingBuildEngine = createCachingBuildEngine();
     this.build =
         new Build(
@@ -179,6 +196,41 @@ public class LocalBuildExecutor implements BuildExecutor {
     // Destroy resources.
     build.close();
     cachingBuildEngine.close();
+    if (buildRuleDurationHistoryRecorder.isPresent()) {
+      // The events of the last rules to finish may not have been delivered yet.
+      if (!args.getBuckEventBus().waitEvents(EVENT_BUS_FLUSH_TIMEOUT_MILLIS)) {
+        LOG.warn("Event bus did not deliver all events in time, some build durations were lost.");
+      }
+      args.getBuckEventBus().unregister(buildRuleDurationHistoryRecorder.get());
+    }
+    if (buildRuleDurationHistory.isPresent()) {
+      try {
+        buildRuleDurationHistory.get().save();
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to save build rule durations.");
+      }
+    }
+  }
+
+  /**
+   * Load the history of how long rules took in previous builds, if it is being recorded.
+   *
+   * @param filesystem the filesystem of the root cell, whose buck-out the history is kept in.
+   */
+  public static Optional<BuildRuleDurationHistory> loadBuildRuleDurationHistory(
+      BuckConfig buckConfig, ProjectFilesystem filesystem) {
+    if (!buckConfig
+        .getView(CachingBuildEngineBuckConfig.class)
+        .isBuildRuleDurationHistoryEnabled()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        BuildRuleDurationHistory.load(
+            filesystem.resolve(
+                filesystem
+                    .getBuckPaths()
+                    .getScratchDir()
+                    .resolve(BuildRuleDurationHistory.FILE_NAME))));
   }
 
   private ImmutableList<BuildRule> getRulesToBuild(Iterable<String> targetsToBuild) {
@@ -219,6 +271,7 @@ public class LocalBuildExecutor implements BuildExecutor {
         engineConfig.getBuildDepFiles(),
         engineConfig.getBuildMaxDepFileCacheEntries(),
         engineConfig.getBuildArtifactCacheSizeLimit(),
+        ArtifactCacheBuckConfig.of(args.getBuckConfig()).getArtifactCompressionPolicy(),
         actionGraphAndBuilder.getActionGraphBuilder(),
         sourcePathRuleFinder,
         DefaultSourcePathResolver.from(sourcePathRuleFinder),
@@ -232,7 +285,9 @@ public class LocalBuildExecutor implements BuildExecutor {
             args.getBuckConfig().getBuildInputRuleKeyFileSizeLimit(),
             ruleKeyCacheScope.getCache(),
             ruleKeyLogger),
-        remoteBuildRuleCompletionWaiter);
+        remoteBuildRuleCompletionWaiter,
+        buildRuleDurationHistory.filter(history -> engineConfig.isCriticalPathSchedulingEnabled()),
+        engineConfig.getArtifactCachePrefetchInfo());
   }
 
   public Build getBuild() {
@@ -885,6 +885,14 @@ public class BuckConfig implements ConfigPathGetter {
     return config.getLong("counters", "flush_interval_millis").orElse(30000L);
   }
 
+  /**
+   * @return whether histograms, timers and gauges of hot paths are recorded, reported with the
+   *     other counters and exposed by the daemon at /metrics.
+   */
+  public boolean isHotPathMetricsEnabled() {
+    return getBooleanValue("counters", "hot_path_metrics_enabled", false);
+  }
+
   public Optional<Path> getPath(String sectionName, String name, boolean isCellRootRelative) {
     Optional<String> pathString = getValue(sectionName, name);
     return pathString.isPresent()
@@ -1010,6 +1018,11 @@ public class BuckConfig implements ConfigPathGetter {
     return getBooleanValue("build", "rule_key_caching", false);
   }
 
+  /** @return whether to persist default rule keys to disk, to reuse them across daemon restarts. */
+  public boolean getPersistentRuleKeyCaching() {
+    return getBooleanValue("build", "persistent_rule_key_cache", false);
+  }
+
   public ImmutableList<String> getCleanAdditionalPaths() {
     return getListWithoutComments("clean", "additional_paths");
   }
@@ -1024,6 +1037,22 @@ public class BuckConfig implements ConfigPathGetter {
         .orElse(FileHashCacheMode.DEFAULT);
   }
 
+  /**
+   * @return whether cell file hash caches should be backed by an on-disk snapshot of file hashes,
+   *     so that unchanged files needn't be rehashed after a daemon restart.
+   */
+  public boolean getPersistentFileHashCaching() {
+    return getBooleanValue("build", "persistent_file_hash_cache", false);
+  }
+
+  /**
+   * @return whether to fetch the content hashes of build inputs from Watchman in bulk, rather than
+   *     reading and hashing each file.
+   */
+  public boolean getWatchmanFileHashes() {
+    return getBooleanValue("build", "watchman_file_hashes", false);
+  }
+
   /** Whether to parallelize action graph creation. */
   public ActionGraphParallelizationMode getActionGraphParallelizationMode() {
     return getEnum("build", "action_graph_parallelization", ActionGraphParallelizationMode.class)
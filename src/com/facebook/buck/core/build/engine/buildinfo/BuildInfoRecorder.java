@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.buildinfo;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactUploader;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionCodec;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
@@ -156,7 +157,9 @@ public class BuildInfoRecorder {
    */
   public void writeMetadataToDisk(boolean clearExistingMetadata) throws IOException {
     if (clearExistingMetadata) {
-      buildInfoStore.deleteMetadata(buildTarget);
+      // The outputs were already changed, after their metadata was deleted, so this only needs to
+      // happen before the update below.
+      buildInfoStore.queueDeleteMetadata(buildTarget);
       projectFilesystem.deleteRecursivelyIfExists(pathToMetadataDirectory);
     }
     projectFilesystem.mkdirs(pathToMetadataDirectory);
@@ -288,7 +291,8 @@ public class BuildInfoRecorder {
         buildMetadata,
         pathsToIncludeInZip,
         buildTarget,
-        projectFilesystem);
+        projectFilesystem,
+        ArtifactCompressionCodec.DEFLATE);
   }
 
   /** @param pathToArtifact Relative path to the project root. */
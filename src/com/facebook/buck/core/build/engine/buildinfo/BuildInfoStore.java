@@ -40,5 +40,22 @@ public interface BuildInfoStore extends Closeable {
 
   void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata) throws IOException;
 
+  /**
+   * Deletes all metadata of the given target. Unlike updates, deletes are stored by the time this
+   * returns, since metadata is deleted before the outputs it describes are changed.
+   */
   void deleteMetadata(BuildTarget buildTarget) throws IOException;
+
+  /**
+   * Deletes all metadata of the given target like {@link #deleteMetadata(BuildTarget)}, but stores
+   * that like an update, for callers whose outputs have already changed.
+   */
+  default void queueDeleteMetadata(BuildTarget buildTarget) throws IOException {
+    deleteMetadata(buildTarget);
+  }
+
+  /**
+   * Waits for all metadata written so far to be stored, for stores which write it asynchronously.
+   */
+  void flush() throws IOException, InterruptedException;
 }
@@ -45,6 +45,7 @@ import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Optional;
+import java.util.Set;
 import java.util.zip.ZipFile;
 
 /**
@@ -247,6 +248,19 @@ public class DefaultOnDiskBuildInfo implements OnDiskBuildInfo {
     validateArtifactHasKey(artifact, BuildInfo.MetadataKey.OUTPUT_SIZE);
   }
 
+  @Override
+  public void validateArtifact(Set<Path> extractedFiles) {
+    validateArtifactHasKey(extractedFiles, BuildInfo.MetadataKey.RECORDED_PATHS);
+    validateArtifactHasKey(extractedFiles, BuildInfo.MetadataKey.OUTPUT_SIZE);
+  }
+
+  private void validateArtifactHasKey(Set<Path> extractedFiles, String key) {
+    Preconditions.checkState(
+        extractedFiles.contains(metadataDirectory.resolve(key)),
+        "Artifact missing artifactMetadata for key %s",
+        key);
+  }
+
   private void validateArtifactHasKey(ZipFile artifact, String key) {
     Preconditions.checkState(
         artifact.getEntry(MorePaths.pathWithUnixSeparators(metadataDirectory.resolve(key))) != null,
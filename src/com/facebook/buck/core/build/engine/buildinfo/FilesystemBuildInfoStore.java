@@ -62,6 +62,9 @@ public class FilesystemBuildInfoStore implements BuildInfoStore {
     filesystem.deleteRecursivelyIfExists(pathToMetadata(buildTarget));
   }
 
+  @Override
+  public void flush() {}
+
   @Override
   public void close() {}
 
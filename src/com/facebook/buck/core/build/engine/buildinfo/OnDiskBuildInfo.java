@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
+import java.util.Set;
 import java.util.zip.ZipFile;
 
 /** Provides access to the on-disk rule metadata (both "artifact" and "build"). */
@@ -80,5 +81,8 @@ public interface OnDiskBuildInfo {
 
   void validateArtifact(ZipFile artifact);
 
+  /** Validate an artifact which was extracted as it was fetched, given the files it contained. */
+  void validateArtifact(Set<Path> extractedFiles);
+
   ImmutableSortedSet<Path> getOutputPaths();
 }
@@ -18,26 +18,75 @@ package com.facebook.buck.core.build.engine.buildinfo;
 
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.sqlite.RetryBusyHandler;
 import com.facebook.buck.util.sqlite.SQLiteUtils;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.sqlite.BusyHandler;
 
+/**
+ * Stores metadata in a SQLite database in the scratch directory.
+ *
+ * <p>Updates don't wait on the database. They are queued in memory, where reads see them right
+ * away, and a dedicated thread commits everything queued so far in a single transaction. This way
+ * build threads don't contend on the database, and rules finishing at about the same time share a
+ * commit. Metadata read from the database is cached per target.
+ *
+ * <p>Updates are only guaranteed to be in the database once {@link #flush()} or {@link #close()}
+ * has returned, which the build engine does at the end of every build. Deletes are in the database
+ * by the time {@link #deleteMetadata(BuildTarget)} returns, as metadata is deleted before outputs
+ * are changed, so that a build which gets killed never leaves metadata describing outputs which
+ * were only partially written. That only waits for the writer when the target has metadata in the
+ * database, though, and {@link #queueDeleteMetadata(BuildTarget)} never does. The database uses
+ * write-ahead logging and only syncs to disk when checkpointing, so a crash of the machine may
+ * lose the latest commits, but never corrupts the database.
+ */
 public class SQLiteBuildInfoStore implements BuildInfoStore {
-  private final Connection connection;
-  private final PreparedStatement selectStmt;
-  private final PreparedStatement selectAllStmt;
+  private static final Logger LOG = Logger.get(SQLiteBuildInfoStore.class);
+
+  private static final int MAX_CACHED_TARGETS = 1 << 15;
+  private static final long WRITER_SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+  // Only used by the writer.
+  private final Connection writeConnection;
   private final PreparedStatement updateStmt;
   private final PreparedStatement deleteStmt;
 
+  // Guarded by itself.
+  private final Connection readConnection;
+  private final PreparedStatement selectAllStmt;
+
+  private final ExecutorService writer;
+
+  /** Metadata of targets as committed to the database, unless written since. */
+  private final Cache<String, ImmutableMap<String, String>> committedMetadata =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_TARGETS).build();
+
+  // Guarded by this.
+  private Map<String, PendingWrites> pendingWrites = new HashMap<>();
+  private Map<String, PendingWrites> committingWrites = new HashMap<>();
+  private boolean commitScheduled;
+  /** Incremented whenever writes are committed, to tell whether a read may have raced one. */
+  private long commits;
+
   public SQLiteBuildInfoStore(ProjectFilesystem filesystem) throws IOException {
     SQLiteUtils.initialize();
     String dbPath =
@@ -48,100 +97,294 @@ public class SQLiteBuildInfoStore implements BuildInfoStore {
     filesystem.createParentDirs(dbPath);
     try {
       Class.forName("org.sqlite.JDBC");
-      connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
-      connection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = OFF");
-      connection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
-      connection
+      writeConnection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+      writeConnection.createStatement().executeUpdate("PRAGMA JOURNAL_MODE = WAL");
+      writeConnection.createStatement().executeUpdate("PRAGMA SYNCHRONOUS = NORMAL");
+      writeConnection
           .createStatement()
           .executeUpdate(
               "CREATE TABLE IF NOT EXISTS metadata "
                   + "(target TEXT, key TEXT, value TEXT, "
                   + "PRIMARY KEY (target, key)) "
                   + "WITHOUT ROWID");
-      selectStmt =
-          connection.prepareStatement("SELECT value FROM metadata WHERE target = ? AND key = ?");
-      selectAllStmt =
-          connection.prepareStatement("SELECT key, value FROM metadata WHERE target = ?");
-
+      writeConnection.setAutoCommit(false);
       updateStmt =
-          connection.prepareStatement(
+          writeConnection.prepareStatement(
               "INSERT OR REPLACE INTO metadata (target, key, value) VALUES (?, ?, ?)");
-      deleteStmt = connection.prepareStatement("DELETE FROM metadata WHERE target = ?");
-      BusyHandler.setHandler(connection, new RetryBusyHandler());
+      deleteStmt = writeConnection.prepareStatement("DELETE FROM metadata WHERE target = ?");
+      BusyHandler.setHandler(writeConnection, new RetryBusyHandler());
+
+      readConnection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+      selectAllStmt =
+          readConnection.prepareStatement("SELECT key, value FROM metadata WHERE target = ?");
+      BusyHandler.setHandler(readConnection, new RetryBusyHandler());
     } catch (ClassNotFoundException | SQLException e) {
       throw new IOException(e);
     }
+    writer = MostExecutors.newSingleThreadExecutor(SQLiteBuildInfoStore.class.getSimpleName());
   }
 
   @Override
   public void close() {
     try {
-      connection.close();
-    } catch (SQLException e) {
+      flush();
+    } catch (IOException e) {
       throw new RuntimeException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.warn("Interrupted while writing metadata, the latest writes may be lost.");
+    } finally {
+      writer.shutdown();
+      try {
+        if (!writer.awaitTermination(WRITER_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+          LOG.warn("Metadata writer didn't finish in time, the latest writes may be lost.");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      try {
+        readConnection.close();
+        writeConnection.close();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
     }
   }
 
+  /** Commits all writes made so far, retrying any which previously failed to be committed. */
   @Override
-  public synchronized Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+  public void flush() throws IOException, InterruptedException {
     try {
-      selectStmt.setString(1, cellRelativeName(buildTarget));
-      selectStmt.setString(2, key);
-      try (ResultSet rs = selectStmt.executeQuery()) {
-        if (!rs.next()) {
-          return Optional.empty();
-        }
-        String value = rs.getString(1);
-        return Optional.of(value);
-      }
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
+      writer.submit(this::commitPendingWrites).get();
+    } catch (ExecutionException e) {
+      throw propagateCommitFailure(e);
+    }
+  }
+
+  @Override
+  public Optional<String> readMetadata(BuildTarget buildTarget, String key) {
+    return Optional.ofNullable(getMetadata(cellRelativeName(buildTarget)).get(key));
+  }
+
+  @Override
+  public ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) {
+    return getMetadata(cellRelativeName(buildTarget));
+  }
+
+  @Override
+  public void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata) {
+    String target = cellRelativeName(buildTarget);
+    synchronized (this) {
+      pendingWrites.computeIfAbsent(target, t -> new PendingWrites()).values.putAll(metadata);
+      scheduleCommit();
     }
   }
 
+  /**
+   * Deletes the metadata of the given target, which is committed before this returns if there's
+   * any in the database.
+   */
   @Override
-  public synchronized ImmutableMap<String, String> getAllMetadata(BuildTarget buildTarget) {
+  public void deleteMetadata(BuildTarget buildTarget) throws IOException {
+    String target = cellRelativeName(buildTarget);
+    boolean committing;
+    ImmutableMap<String, String> committed;
+    synchronized (this) {
+      queueDelete(target);
+      committing = committingWrites.containsKey(target);
+      committed = committedMetadata.getIfPresent(target);
+    }
+    // Writes queued after the delete can't be committed before it, so if the target has no
+    // metadata in the database, as for new rules or ones whose metadata was already deleted, it
+    // will have none until then and there's nothing to wait for.
+    if (!committing && (committed != null ? committed : readCommittedMetadata(target)).isEmpty()) {
+      return;
+    }
+    // Waits uninterruptibly, as callers go on to change outputs once this returns, which they must
+    // not do while the deleted metadata may still be in the database.
     try {
-      selectAllStmt.setString(1, cellRelativeName(buildTarget));
-      try (ResultSet rs = selectAllStmt.executeQuery()) {
-        ImmutableMap.Builder<String, String> result = ImmutableMap.builder();
-        while (rs.next()) {
-          result.put(rs.getString(1), rs.getString(2));
+      Uninterruptibles.getUninterruptibly(writer.submit(this::commitPendingWrites));
+    } catch (ExecutionException e) {
+      throw propagateCommitFailure(e);
+    }
+  }
+
+  @Override
+  public void queueDeleteMetadata(BuildTarget buildTarget) {
+    String target = cellRelativeName(buildTarget);
+    synchronized (this) {
+      queueDelete(target);
+    }
+  }
+
+  // Must be called while holding the monitor of this store.
+  private void queueDelete(String target) {
+    PendingWrites writes = pendingWrites.computeIfAbsent(target, t -> new PendingWrites());
+    writes.deleted = true;
+    writes.values.clear();
+    scheduleCommit();
+  }
+
+  private static IOException propagateCommitFailure(ExecutionException e) {
+    Throwables.throwIfUnchecked(e.getCause());
+    return e.getCause() instanceof IOException
+        ? (IOException) e.getCause()
+        : new IOException(e.getCause());
+  }
+
+  private ImmutableMap<String, String> getMetadata(String target) {
+    PendingWrites writes;
+    long commitsBeforeRead;
+    synchronized (this) {
+      writes = PendingWrites.merge(committingWrites.get(target), pendingWrites.get(target));
+      commitsBeforeRead = commits;
+    }
+    if (writes != null && writes.deleted) {
+      return ImmutableMap.copyOf(writes.values);
+    }
+
+    ImmutableMap<String, String> committed = committedMetadata.getIfPresent(target);
+    if (committed == null) {
+      committed = readCommittedMetadata(target);
+      synchronized (this) {
+        // Metadata read while writes to it were committed may be stale.
+        if (commits == commitsBeforeRead) {
+          committedMetadata.put(target, committed);
         }
-        return result.build();
       }
-    } catch (SQLException e) {
-      throw new RuntimeException(e);
     }
+    if (writes == null) {
+      return committed;
+    }
+    Map<String, String> metadata = new HashMap<>(committed);
+    metadata.putAll(writes.values);
+    return ImmutableMap.copyOf(metadata);
   }
 
-  @Override
-  public synchronized void updateMetadata(BuildTarget buildTarget, Map<String, String> metadata)
-      throws IOException {
+  private ImmutableMap<String, String> readCommittedMetadata(String target) {
+    synchronized (readConnection) {
+      try {
+        selectAllStmt.setString(1, target);
+        try (ResultSet rs = selectAllStmt.executeQuery()) {
+          ImmutableMap.Builder<String, String> result = ImmutableMap.builder();
+          while (rs.next()) {
+            result.put(rs.getString(1), rs.getString(2));
+          }
+          return result.build();
+        }
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  // Must be called while holding the monitor of this store.
+  private void scheduleCommit() {
+    if (commitScheduled) {
+      return;
+    }
+    commitScheduled = true;
+    writer.execute(
+        () -> {
+          try {
+            commitPendingWrites();
+          } catch (IOException e) {
+            LOG.warn(e, "Failed to commit metadata, will retry with the next commit.");
+          }
+        });
+  }
+
+  /** Commits all pending writes in a single transaction. Only run by the writer. */
+  private Void commitPendingWrites() throws IOException {
+    Map<String, PendingWrites> writes;
+    synchronized (this) {
+      commitScheduled = false;
+      if (pendingWrites.isEmpty()) {
+        return null;
+      }
+      writes = pendingWrites;
+      committingWrites = writes;
+      pendingWrites = new HashMap<>();
+    }
+
     try {
-      for (Map.Entry<String, String> e : metadata.entrySet()) {
-        updateStmt.setString(1, cellRelativeName(buildTarget));
-        updateStmt.setString(2, e.getKey());
-        updateStmt.setString(3, e.getValue());
-        updateStmt.addBatch();
+      for (Map.Entry<String, PendingWrites> entry : writes.entrySet()) {
+        if (entry.getValue().deleted) {
+          deleteStmt.setString(1, entry.getKey());
+          deleteStmt.addBatch();
+        }
+        for (Map.Entry<String, String> value : entry.getValue().values.entrySet()) {
+          updateStmt.setString(1, entry.getKey());
+          updateStmt.setString(2, value.getKey());
+          updateStmt.setString(3, value.getValue());
+          updateStmt.addBatch();
+        }
       }
+      // Deletes are executed first, as they happened before any write still pending.
+      deleteStmt.executeBatch();
       updateStmt.executeBatch();
+      writeConnection.commit();
     } catch (SQLException e) {
+      rollback();
+      synchronized (this) {
+        // Keep the writes visible to reads, and have the next commit retry them.
+        for (Map.Entry<String, PendingWrites> entry : writes.entrySet()) {
+          pendingWrites.put(
+              entry.getKey(),
+              PendingWrites.merge(entry.getValue(), pendingWrites.get(entry.getKey())));
+        }
+        committingWrites = new HashMap<>();
+      }
       throw new IOException(e);
     }
+
+    synchronized (this) {
+      commits++;
+      committedMetadata.invalidateAll(writes.keySet());
+      committingWrites = new HashMap<>();
+    }
+    return null;
   }
 
-  @Override
-  public synchronized void deleteMetadata(BuildTarget buildTarget) throws IOException {
+  private void rollback() {
     try {
-      deleteStmt.setString(1, cellRelativeName(buildTarget));
-      deleteStmt.executeUpdate();
+      deleteStmt.clearBatch();
+      updateStmt.clearBatch();
+      writeConnection.rollback();
     } catch (SQLException e) {
-      throw new IOException(e);
+      LOG.warn(e, "Failed to roll back metadata commit.");
     }
   }
 
   private String cellRelativeName(BuildTarget buildTarget) {
     return buildTarget.withoutCell().getFullyQualifiedName();
   }
+
+  /** Writes to the metadata of a target which have yet to be committed. */
+  private static class PendingWrites {
+    /** Whether all committed metadata of the target is to be deleted before writing values. */
+    boolean deleted;
+
+    final Map<String, String> values = new HashMap<>();
+
+    /** @return the effect of the given writes applied one after the other, as a copy. */
+    @Nullable
+    static PendingWrites merge(@Nullable PendingWrites earlier, @Nullable PendingWrites later) {
+      if (earlier == null && later == null) {
+        return null;
+      }
+      PendingWrites merged = new PendingWrites();
+      for (PendingWrites writes : new PendingWrites[] {earlier, later}) {
+        if (writes == null) {
+          continue;
+        }
+        if (writes.deleted) {
+          merged.deleted = true;
+          merged.values.clear();
+        }
+        merged.values.putAll(writes.values);
+      }
+      return merged;
+    }
+  }
 }
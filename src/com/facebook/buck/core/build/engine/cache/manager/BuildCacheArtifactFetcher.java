@@ -17,8 +17,10 @@
 package com.facebook.buck.core.build.engine.cache.manager;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactPayloadExtractor;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionCodec;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.OnDiskBuildInfo;
@@ -36,16 +38,22 @@ import com.facebook.buck.util.Scope;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.util.unarchive.ArchiveFormat;
 import com.facebook.buck.util.unarchive.ExistingFileMode;
+import com.facebook.buck.util.unarchive.StreamingUnzip;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Optional;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 public class BuildCacheArtifactFetcher {
 
@@ -102,39 +110,92 @@ public class BuildCacheArtifactFetcher {
           }
         };
 
-    // TODO(mbolin): Change ArtifactCache.fetch() so that it returns a File instead of takes one.
-    // Then we could download directly from the remote cache into the on-disk cache and unzip it
-    // from there.
+    // Caches which support it unpack the artifact as it's downloaded, in which case the zip file
+    // is never written.
+    StreamingArtifactExtractor extractor = new StreamingArtifactExtractor(ruleKey, filesystem);
+
     return Futures.transformAsync(
-        fetch(artifactCache, ruleKey, lazyZipPath),
-        cacheResult -> {
-          try (Scope ignored = buildRuleScope()) {
-            // Verify that the rule key we used to fetch the artifact is one of the rule keys
-            // reported in it's metadata.
-            if (cacheResult.getType().isSuccess()) {
-              ImmutableSet<RuleKey> ruleKeys =
-                  RichStream.from(cacheResult.getMetadata().entrySet())
-                      .filter(e -> BuildInfo.RULE_KEY_NAMES.contains(e.getKey()))
-                      .map(Map.Entry::getValue)
-                      .map(RuleKey::new)
-                      .toImmutableSet();
-              if (!ruleKeys.contains(ruleKey)) {
-                LOG.warn(
-                    "%s: rule keys in artifact don't match rule key used to fetch it: %s not in %s",
-                    rule.getBuildTarget(), ruleKey, ruleKeys);
-              }
-            }
+        fetch(
+            artifactCache,
+            ruleKey,
+            artifactCache.fetchAsync(rule.getBuildTarget(), ruleKey, lazyZipPath, extractor)),
+        cacheResult ->
+            overlay(ruleKey, lazyZipPath, Optional.of(extractor), filesystem, cacheResult));
+  }
 
-            return Futures.immediateFuture(
-                unzipArtifactFromCacheResult(ruleKey, lazyZipPath, filesystem, cacheResult));
-          }
-        });
+  /**
+   * Overlays an artifact which has already been fetched from the given cache to the given zip file,
+   * e.g. ahead of the build, on top of the project filesystem, as if it had just been fetched.
+   */
+  public ListenableFuture<CacheResult> overlayFetchedArtifact(
+      RuleKey ruleKey,
+      ArtifactCache artifactCache,
+      CacheResult cacheResult,
+      Path zipPath,
+      ProjectFilesystem filesystem) {
+    if (!rule.isCacheable()) {
+      return Futures.immediateFuture(CacheResult.ignored());
+    }
+    LazyPath lazyZipPath = LazyPath.ofInstance(zipPath);
+    return Futures.transformAsync(
+        fetch(artifactCache, ruleKey, Futures.immediateFuture(cacheResult)),
+        fetchedResult ->
+            overlay(ruleKey, lazyZipPath, Optional.empty(), filesystem, fetchedResult));
+  }
+
+  private ListenableFuture<CacheResult> overlay(
+      RuleKey ruleKey,
+      LazyPath lazyZipPath,
+      Optional<StreamingArtifactExtractor> extractor,
+      ProjectFilesystem filesystem,
+      CacheResult cacheResult)
+      throws IOException {
+    try (Scope ignored = buildRuleScope()) {
+      // Verify that the rule key we used to fetch the artifact is one of the rule keys
+      // reported in it's metadata.
+      if (cacheResult.getType().isSuccess()) {
+        ImmutableSet<RuleKey> ruleKeys =
+            RichStream.from(cacheResult.getMetadata().entrySet())
+                .filter(e -> BuildInfo.RULE_KEY_NAMES.contains(e.getKey()))
+                .map(Map.Entry::getValue)
+                .map(RuleKey::new)
+                .toImmutableSet();
+        if (!ruleKeys.contains(ruleKey)) {
+          LOG.warn(
+              "%s: rule keys in artifact don't match rule key used to fetch it: %s not in %s",
+              rule.getBuildTarget(), ruleKey, ruleKeys);
+        }
+      }
+
+      // All the codecs we know about are read the same way, but artifacts written with
+      // codecs added after this version of buck can't be unpacked.
+      if (cacheResult.getType() == CacheResultType.HIT
+          && !ArtifactCompressionCodec.fromMetadata(cacheResult.getMetadata()).isPresent()) {
+        return Futures.immediateFuture(
+            rejectUnsupportedArtifact(ruleKey, lazyZipPath, cacheResult));
+      }
+
+      if (extractor.isPresent() && extractor.get().wasExtracted()) {
+        return Futures.immediateFuture(
+            finishExtractedArtifact(ruleKey, extractor.get(), cacheResult));
+      }
+      return Futures.immediateFuture(
+          unzipArtifactFromCacheResult(ruleKey, lazyZipPath, filesystem, cacheResult));
+    }
   }
 
   public ListenableFuture<CacheResult> fetch(
       ArtifactCache artifactCache, RuleKey ruleKey, LazyPath outputPath) {
+    return fetch(
+        artifactCache,
+        ruleKey,
+        artifactCache.fetchAsync(rule.getBuildTarget(), ruleKey, outputPath));
+  }
+
+  private ListenableFuture<CacheResult> fetch(
+      ArtifactCache artifactCache, RuleKey ruleKey, ListenableFuture<CacheResult> fetchResult) {
     return Futures.transform(
-        artifactCache.fetchAsync(rule.getBuildTarget(), ruleKey, outputPath),
+        fetchResult,
         (CacheResult cacheResult) -> {
           try (Scope ignored = buildRuleScope()) {
             if (cacheResult.getType() != CacheResultType.HIT) {
@@ -246,6 +307,137 @@ public class BuildCacheArtifactFetcher {
     return cacheResult;
   }
 
+  private CacheResult rejectUnsupportedArtifact(
+      RuleKey ruleKey, LazyPath lazyZipPath, CacheResult cacheResult) throws IOException {
+    String message =
+        String.format(
+            "Artifact for '%s' with rulekey '%s' was compressed with unsupported codec '%s'.",
+            rule.getBuildTarget(),
+            ruleKey,
+            cacheResult.getMetadata().get(ArtifactCompressionCodec.METADATA_KEY));
+    LOG.warn(message);
+    Files.deleteIfExists(lazyZipPath.get());
+    return cacheResult
+        .withCacheError(message)
+        .withType(CacheResultType.ERROR)
+        .withMetadata(Optional.empty())
+        .withArtifactSizeBytes(Optional.empty());
+  }
+
+  /**
+   * Moves an artifact which was unpacked while it was being fetched into place, once the fetch has
+   * succeeded and the artifact has been checked, and records its metadata.
+   */
+  private CacheResult finishExtractedArtifact(
+      RuleKey ruleKey, StreamingArtifactExtractor extractor, CacheResult cacheResult)
+      throws IOException {
+    if (!cacheResult.getType().isSuccess()) {
+      LOG.debug("Cache miss for '%s' with rulekey '%s'", rule, ruleKey);
+      extractor.discard();
+      return cacheResult;
+    }
+    Preconditions.checkArgument(cacheResult.getType() == CacheResultType.HIT);
+    LOG.debug("Fetched and extracted '%s' from cache with rulekey '%s'", rule, ruleKey);
+
+    try {
+      onDiskBuildInfo.validateArtifact(ImmutableSet.copyOf(extractor.getFilesWritten()));
+      Preconditions.checkState(
+          cacheResult.getMetadata().containsKey(BuildInfo.MetadataKey.ORIGIN_BUILD_ID),
+          "Cache artifact for rulekey %s is missing metadata %s.",
+          ruleKey,
+          BuildInfo.MetadataKey.ORIGIN_BUILD_ID);
+      onOutputsWillChange.call();
+      extractor.moveIntoPlace();
+      buildInfoStoreManager
+          .get(rule.getProjectFilesystem(), metadataStorage)
+          .updateMetadata(rule.getBuildTarget(), cacheResult.getMetadata());
+    } catch (IOException e) {
+      throw new IOException(
+          String.format("%s. Suggested fix: try `buck clean`", e.getMessage()), e.getCause());
+    } finally {
+      // Nothing is left to discard once the artifact has been moved into place.
+      extractor.discard();
+    }
+    return cacheResult;
+  }
+
+  /**
+   * Unpacks an artifact into a staging directory under {@code buck-out} while it's being fetched,
+   * instead of having the cache write it to a zip file first. The rule's outputs are only replaced
+   * once the whole artifact has been fetched and checked.
+   */
+  private class StreamingArtifactExtractor implements ArtifactPayloadExtractor {
+
+    private final RuleKey ruleKey;
+    private final ProjectFilesystem filesystem;
+    @Nullable private volatile Path stagingDirectory;
+    @Nullable private volatile StreamingUnzip unzip;
+
+    private StreamingArtifactExtractor(RuleKey ruleKey, ProjectFilesystem filesystem) {
+      this.ruleKey = ruleKey;
+      this.filesystem = filesystem;
+    }
+
+    @Override
+    public boolean shouldExtract(ImmutableMap<String, String> metadata) {
+      return ArtifactCompressionCodec.fromMetadata(metadata).isPresent();
+    }
+
+    @Override
+    public void extract(InputStream payload) throws IOException {
+      try (Scope ignored = buildRuleScope()) {
+        ArtifactCompressionEvent.Started started =
+            ArtifactCompressionEvent.started(
+                ArtifactCompressionEvent.Operation.DECOMPRESS, ImmutableSet.of(ruleKey));
+        eventBus.post(started);
+        try {
+          Path tmpDir = filesystem.getBuckPaths().getTmpDir();
+          filesystem.mkdirs(tmpDir);
+          Path staging =
+              tmpDir.resolve(
+                  Files.createTempDirectory(
+                          filesystem.resolve(tmpDir),
+                          "buck_artifact_"
+                              + MostFiles.sanitize(rule.getBuildTarget().getShortName()))
+                      .getFileName());
+          stagingDirectory = staging;
+          StreamingUnzip streamingUnzip =
+              new StreamingUnzip(
+                  filesystem, staging, ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+          unzip = streamingUnzip;
+          streamingUnzip.extractArchive(payload);
+        } finally {
+          eventBus.post(ArtifactCompressionEvent.finished(started));
+        }
+      }
+    }
+
+    @Override
+    public void discard() throws IOException {
+      Path staging = stagingDirectory;
+      stagingDirectory = null;
+      unzip = null;
+      if (staging == null) {
+        return;
+      }
+      LOG.debug("Discarding the artifact extracted for '%s' with rulekey '%s'", rule, ruleKey);
+      filesystem.deleteRecursivelyIfExists(staging);
+    }
+
+    private boolean wasExtracted() {
+      return unzip != null;
+    }
+
+    private ImmutableList<Path> getFilesWritten() {
+      return Preconditions.checkNotNull(unzip).getFilesWritten();
+    }
+
+    private void moveIntoPlace() throws IOException {
+      Preconditions.checkNotNull(unzip).moveIntoPlace();
+      stagingDirectory = null;
+    }
+  }
+
   @FunctionalInterface
   public interface OnOutputsWillChange {
     void call() throws IOException;
@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.cache.manager;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactUploader;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.core.build.engine.BuildRuleSuccessType;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfo;
 import com.facebook.buck.core.build.engine.buildinfo.OnDiskBuildInfo;
@@ -43,6 +44,7 @@ public class BuildCacheArtifactUploader {
   private final BuckEventBus eventBus;
   private final ArtifactCache artifactCache;
   private final Optional<Long> artifactCacheSizeLimit;
+  private final ArtifactCompressionPolicy artifactCompressionPolicy;
 
   public BuildCacheArtifactUploader(
       RuleKey defaultKey,
@@ -52,7 +54,8 @@ public class BuildCacheArtifactUploader {
       ManifestRuleKeyManager manifestRuleKeyManager,
       BuckEventBus eventBus,
       ArtifactCache artifactCache,
-      Optional<Long> artifactCacheSizeLimit) {
+      Optional<Long> artifactCacheSizeLimit,
+      ArtifactCompressionPolicy artifactCompressionPolicy) {
     this.defaultKey = defaultKey;
     this.inputBasedKey = inputBasedKey;
     this.onDiskBuildInfo = onDiskBuildInfo;
@@ -61,6 +64,7 @@ public class BuildCacheArtifactUploader {
     this.eventBus = eventBus;
     this.artifactCache = artifactCache;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
+    this.artifactCompressionPolicy = artifactCompressionPolicy;
   }
 
   public ListenableFuture<Void> uploadToCache(BuildRuleSuccessType success) throws IOException {
@@ -110,7 +114,8 @@ public class BuildCacheArtifactUploader {
         onDiskBuildInfo.getMetadataForArtifact(),
         onDiskBuildInfo.getPathsForArtifact(),
         rule.getBuildTarget(),
-        rule.getProjectFilesystem());
+        rule.getProjectFilesystem(),
+        artifactCompressionPolicy.getCodec(rule.getType()));
   }
 
   /** @return whether we should upload the given rules artifacts to cache. */
@@ -37,6 +37,13 @@ public class BuildInfoStoreManager implements AutoCloseable {
     }
   }
 
+  /** Waits for all metadata written so far to be stored. */
+  public void flush() throws IOException, InterruptedException {
+    for (BuildInfoStore store : buildInfoStores.values()) {
+      store.flush();
+    }
+  }
+
   public BuildInfoStore get(ProjectFilesystem filesystem, MetadataStorage metadataStorage) {
     return buildInfoStores.computeIfAbsent(
         filesystem.getRootPath(),
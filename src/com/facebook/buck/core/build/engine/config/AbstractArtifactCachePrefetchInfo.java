@@ -0,0 +1,45 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.config;
+
+import com.facebook.buck.core.util.immutables.BuckStyleTuple;
+import com.google.common.base.Preconditions;
+import org.immutables.value.Value;
+
+/** How the build engine should check the artifact cache ahead of reaching each rule. */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractArtifactCachePrefetchInfo {
+
+  public static final ArtifactCachePrefetchInfo DISABLED =
+      ArtifactCachePrefetchInfo.of(false, 1, 1);
+
+  public abstract boolean isEnabled();
+
+  /** The number of rule keys to check for in each request to the cache. */
+  public abstract int getBatchSize();
+
+  /** The maximum number of requests, batches or single fetches, to have outstanding at once. */
+  public abstract int getMaxInFlightBatches();
+
+  @Value.Check
+  public void check() {
+    Preconditions.checkState(getBatchSize() > 0, "Batch size must be positive.");
+    Preconditions.checkState(
+        getMaxInFlightBatches() > 0, "Maximum in-flight batches must be positive.");
+  }
+}
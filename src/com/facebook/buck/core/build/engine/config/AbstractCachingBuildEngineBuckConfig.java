@@ -66,6 +66,37 @@ abstract class AbstractCachingBuildEngineBuckConfig implements ConfigView<BuckCo
     return getDelegate().getLong("build", "artifact_cache_size_limit");
   }
 
+  /**
+   * @return whether to schedule the rules on the critical path of the build first, based on how
+   *     long they took in previous builds.
+   */
+  public boolean isCriticalPathSchedulingEnabled() {
+    return getDelegate().getBooleanValue("build", "critical_path_scheduling", false);
+  }
+
+  /**
+   * @return whether to record how long each rule took to build or fetch from the cache, for use in
+   *     scheduling and progress estimation in later builds.
+   */
+  public boolean isBuildRuleDurationHistoryEnabled() {
+    return isCriticalPathSchedulingEnabled()
+        || getDelegate().getBooleanValue("build", "rule_duration_history", false);
+  }
+
+  /**
+   * @return how to check the artifact cache for the rule keys of the whole build ahead of the build
+   *     walk reaching each rule.
+   */
+  public ArtifactCachePrefetchInfo getArtifactCachePrefetchInfo() {
+    if (!getDelegate().getBooleanValue("build", "artifact_cache_prefetch", false)) {
+      return ArtifactCachePrefetchInfo.DISABLED;
+    }
+    return ArtifactCachePrefetchInfo.of(
+        true,
+        getDelegate().getInteger("build", "artifact_cache_prefetch_batch_size").orElse(500),
+        getDelegate().getInteger("build", "artifact_cache_prefetch_max_in_flight").orElse(4));
+  }
+
   public ResourceAwareSchedulingInfo getResourceAwareSchedulingInfo() {
     ResourcesConfig resourcesConfig = getDelegate().getView(ResourcesConfig.class);
     return ResourceAwareSchedulingInfo.of(
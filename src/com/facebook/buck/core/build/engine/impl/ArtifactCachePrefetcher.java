@@ -0,0 +1,382 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rulekey.calculator.ParallelRuleKeyCalculator;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Checks the artifact cache for the default rule keys of every rule in the build ahead of the build
+ * walk, so that rules which miss the cache don't each pay for a round trip when they're reached.
+ *
+ * <p>Rule keys are queued as the {@link ParallelRuleKeyCalculator} produces them, bottom-up, and
+ * sent to {@link ArtifactCache#multiContainsAsync} in batches. Partial batches are only sent once
+ * no walk is producing more keys. If the cache fails a batch, prefetching stops.
+ *
+ * <p>Caches which don't {@link ArtifactCache#supportsMultiContains() support multi-contains}, such
+ * as the HTTP cache, are instead fetched from one rule key at a time, as are the keys a combined
+ * cache couldn't answer for because only some of its layers support it. Fetched artifacts are kept
+ * in a temporary directory until the build reaches their rule and {@link #takeFetchedArtifact takes
+ * them}, and the rest are deleted when the prefetcher is closed.
+ *
+ * <p>Batches and single fetches share one window of requests in flight.
+ */
+class ArtifactCachePrefetcher implements AutoCloseable {
+
+  private static final Logger LOG = Logger.get(ArtifactCachePrefetcher.class);
+
+  private final ArtifactCache artifactCache;
+  private final ParallelRuleKeyCalculator<RuleKey> ruleKeyCalculator;
+  private final RuleDepsCache ruleDepsCache;
+  private final ListeningExecutorService service;
+  private final int batchSize;
+  private final int maxInFlightRequests;
+  private final boolean supportsMultiContains;
+
+  private final Set<BuildRule> seen = Sets.newConcurrentHashSet();
+  private final ConcurrentMap<RuleKey, BuildTarget> buildTargets = Maps.newConcurrentMap();
+  private final ConcurrentMap<RuleKey, SettableFuture<CacheResult>> results =
+      Maps.newConcurrentMap();
+  private final ConcurrentMap<RuleKey, Path> fetchedArtifacts = Maps.newConcurrentMap();
+
+  @GuardedBy("this")
+  private final Deque<RuleKey> pendingRuleKeys = new ArrayDeque<>();
+
+  // Rule keys whose result is waiting on a single fetch.
+  @GuardedBy("this")
+  private final Set<RuleKey> pendingFetches = new LinkedHashSet<>();
+
+  @GuardedBy("this")
+  @Nullable
+  private Path artifactDirectory;
+
+  @GuardedBy("this")
+  private int activeWalks = 0;
+
+  @GuardedBy("this")
+  private int inFlightRequests = 0;
+
+  @GuardedBy("this")
+  private boolean disabled = false;
+
+  public ArtifactCachePrefetcher(
+      ArtifactCache artifactCache,
+      ParallelRuleKeyCalculator<RuleKey> ruleKeyCalculator,
+      ListeningExecutorService service,
+      int batchSize,
+      int maxInFlightRequests) {
+    this.artifactCache = artifactCache;
+    this.ruleKeyCalculator = ruleKeyCalculator;
+    this.ruleDepsCache = ruleKeyCalculator.getRuleDepsCache();
+    this.service = service;
+    this.batchSize = batchSize;
+    this.maxInFlightRequests = maxInFlightRequests;
+    this.supportsMultiContains = artifactCache.supportsMultiContains();
+  }
+
+  public ArtifactCache getArtifactCache() {
+    return artifactCache;
+  }
+
+  /** Start checking the cache for the given rule and all of its transitive deps. */
+  public void prefetch(BuckEventBus eventBus, BuildRule rule) {
+    if (!seen.add(rule)) {
+      return;
+    }
+    synchronized (this) {
+      if (disabled) {
+        return;
+      }
+      activeWalks++;
+    }
+    ListenableFuture<?> walk = Futures.submitAsync(() -> walk(eventBus, rule), service);
+    walk.addListener(
+        () -> {
+          synchronized (this) {
+            activeWalks--;
+          }
+          dispatch();
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * @return the result of checking the cache for the given rule key, if a request for it has been
+   *     sent or a fetch of it is queued. A {@link CacheResult#skipped()} result means the check
+   *     didn't happen.
+   */
+  public Optional<ListenableFuture<CacheResult>> getResult(RuleKey ruleKey) {
+    SettableFuture<CacheResult> result = results.get(ruleKey);
+    synchronized (this) {
+      // The build has caught up with a fetch which hasn't started yet, so it may as well fetch the
+      // artifact itself rather than wait for its turn.
+      if (result != null && pendingFetches.remove(ruleKey)) {
+        result.set(CacheResult.skipped());
+      }
+    }
+    return Optional.ofNullable(result);
+  }
+
+  /**
+   * @return the artifact fetched for the given rule key, if its result was a hit which was fetched
+   *     rather than checked. The caller is responsible for it from then on.
+   */
+  public Optional<Path> takeFetchedArtifact(RuleKey ruleKey) {
+    return Optional.ofNullable(fetchedArtifacts.remove(ruleKey));
+  }
+
+  /** @return a future which completes once the rule keys of the walked rules are all queued. */
+  private ListenableFuture<List<RuleKey>> walk(BuckEventBus eventBus, BuildRule rule) {
+    List<ListenableFuture<RuleKey>> ruleKeys = new ArrayList<>();
+    Deque<BuildRule> work = new ArrayDeque<>();
+    work.add(rule);
+    while (!work.isEmpty()) {
+      BuildRule current = work.pop();
+      if (current.isCacheable()) {
+        ListenableFuture<RuleKey> ruleKey = ruleKeyCalculator.calculate(eventBus, current);
+        Futures.addCallback(
+            ruleKey,
+            new FutureCallback<RuleKey>() {
+              @Override
+              public void onSuccess(RuleKey result) {
+                enqueue(result, current.getBuildTarget());
+              }
+
+              @Override
+              public void onFailure(Throwable t) {
+                // The build itself will report this when it reaches the rule.
+              }
+            },
+            MoreExecutors.directExecutor());
+        ruleKeys.add(ruleKey);
+      }
+      for (BuildRule dep : ruleDepsCache.get(current)) {
+        if (seen.add(dep)) {
+          work.push(dep);
+        }
+      }
+    }
+    return Futures.successfulAsList(ruleKeys);
+  }
+
+  private void enqueue(RuleKey ruleKey, BuildTarget buildTarget) {
+    synchronized (this) {
+      if (disabled || results.containsKey(ruleKey)) {
+        return;
+      }
+      buildTargets.put(ruleKey, buildTarget);
+      if (supportsMultiContains) {
+        pendingRuleKeys.add(ruleKey);
+      } else if (results.putIfAbsent(ruleKey, SettableFuture.create()) == null) {
+        pendingFetches.add(ruleKey);
+      }
+    }
+    dispatch();
+  }
+
+  /** Send as many batches and fetches as the in-flight window allows. */
+  private void dispatch() {
+    List<ImmutableMap<RuleKey, SettableFuture<CacheResult>>> batches = new ArrayList<>();
+    List<RuleKey> fetches = new ArrayList<>();
+    synchronized (this) {
+      while (!disabled && inFlightRequests < maxInFlightRequests) {
+        if (pendingRuleKeys.size() >= batchSize
+            || (activeWalks == 0 && !pendingRuleKeys.isEmpty())) {
+          ImmutableMap.Builder<RuleKey, SettableFuture<CacheResult>> batch =
+              ImmutableMap.builder();
+          for (int i = 0; i < batchSize && !pendingRuleKeys.isEmpty(); i++) {
+            RuleKey ruleKey = pendingRuleKeys.remove();
+            SettableFuture<CacheResult> result = SettableFuture.create();
+            if (results.putIfAbsent(ruleKey, result) == null) {
+              batch.put(ruleKey, result);
+            }
+          }
+          ImmutableMap<RuleKey, SettableFuture<CacheResult>> builtBatch = batch.build();
+          if (!builtBatch.isEmpty()) {
+            inFlightRequests++;
+            batches.add(builtBatch);
+          }
+        } else if (!pendingFetches.isEmpty()) {
+          Iterator<RuleKey> next = pendingFetches.iterator();
+          fetches.add(next.next());
+          next.remove();
+          inFlightRequests++;
+        } else {
+          break;
+        }
+      }
+    }
+    batches.forEach(this::send);
+    fetches.forEach(this::fetch);
+  }
+
+  private void send(ImmutableMap<RuleKey, SettableFuture<CacheResult>> batch) {
+    ListenableFuture<ImmutableMap<RuleKey, CacheResult>> response;
+    try {
+      response = artifactCache.multiContainsAsync(batch.keySet());
+    } catch (RuntimeException e) {
+      response = Futures.immediateFailedFuture(e);
+    }
+    Futures.addCallback(
+        response,
+        new FutureCallback<ImmutableMap<RuleKey, CacheResult>>() {
+          @Override
+          public void onSuccess(ImmutableMap<RuleKey, CacheResult> cacheResults) {
+            for (Map.Entry<RuleKey, SettableFuture<CacheResult>> entry : batch.entrySet()) {
+              CacheResult cacheResult = cacheResults.get(entry.getKey());
+              // Skipped keys are ones the cache couldn't check, e.g. because some of its layers
+              // don't support multi-contains, so fall back to fetching them.
+              if (cacheResult == null || cacheResult.getType() == CacheResultType.SKIPPED) {
+                synchronized (ArtifactCachePrefetcher.this) {
+                  if (!disabled) {
+                    pendingFetches.add(entry.getKey());
+                    continue;
+                  }
+                }
+                cacheResult = CacheResult.skipped();
+              }
+              entry.getValue().set(cacheResult);
+            }
+            finished();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOG.info(t, "Checking the artifact cache ahead of the build failed, giving up.");
+            List<SettableFuture<CacheResult>> abandoned = new ArrayList<>(batch.values());
+            synchronized (ArtifactCachePrefetcher.this) {
+              disabled = true;
+              pendingRuleKeys.clear();
+              pendingFetches.forEach(ruleKey -> abandoned.add(results.get(ruleKey)));
+              pendingFetches.clear();
+            }
+            abandoned.forEach(result -> result.set(CacheResult.skipped()));
+            finished();
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private void fetch(RuleKey ruleKey) {
+    SettableFuture<CacheResult> result = Preconditions.checkNotNull(results.get(ruleKey));
+    LazyPath output =
+        new LazyPath() {
+          @Override
+          protected Path create() throws IOException {
+            return Files.createTempFile(getArtifactDirectory(), "artifact", ".zip");
+          }
+        };
+    ListenableFuture<CacheResult> response;
+    try {
+      response = artifactCache.fetchAsync(buildTargets.get(ruleKey), ruleKey, output);
+    } catch (RuntimeException e) {
+      response = Futures.immediateFailedFuture(e);
+    }
+    Futures.addCallback(
+        response,
+        new FutureCallback<CacheResult>() {
+          @Override
+          public void onSuccess(CacheResult cacheResult) {
+            if (cacheResult.getType() == CacheResultType.HIT) {
+              fetchedArtifacts.put(ruleKey, output.getUnchecked());
+            }
+            result.set(cacheResult);
+            finished();
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            LOG.debug(t, "Fetching %s ahead of the build failed.", ruleKey);
+            result.set(CacheResult.skipped());
+            finished();
+          }
+        },
+        MoreExecutors.directExecutor());
+  }
+
+  private synchronized Path getArtifactDirectory() throws IOException {
+    if (artifactDirectory == null) {
+      artifactDirectory = Files.createTempDirectory("buck_prefetched_artifacts");
+    }
+    return artifactDirectory;
+  }
+
+  private void finished() {
+    synchronized (this) {
+      inFlightRequests--;
+    }
+    dispatch();
+  }
+
+  /** Stop prefetching and delete any fetched artifacts which weren't taken. */
+  @Override
+  public void close() {
+    Path directory;
+    List<SettableFuture<CacheResult>> abandoned = new ArrayList<>();
+    synchronized (this) {
+      disabled = true;
+      pendingRuleKeys.clear();
+      pendingFetches.forEach(ruleKey -> abandoned.add(results.get(ruleKey)));
+      pendingFetches.clear();
+      directory = artifactDirectory;
+    }
+    abandoned.forEach(result -> result.set(CacheResult.skipped()));
+    fetchedArtifacts.clear();
+    if (directory != null) {
+      try {
+        MostFiles.deleteRecursivelyIfExists(directory);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to delete artifacts fetched ahead of the build in %s.", directory);
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.BuildRuleStatus;
+import com.facebook.buck.core.build.engine.BuildRuleSuccessType;
+import com.facebook.buck.core.build.event.BuildRuleEvent;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rules.BuildRule;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Feeds the {@link BuildRuleEvent.Finished} events of a build into a {@link
+ * BuildRuleDurationHistory}. Time spent on rules that were built locally is recorded as their build
+ * time, and time spent on rules fetched from the cache as their cache fetch time. Rules which were
+ * already up to date tell us nothing about either, so only their output size is recorded.
+ */
+public class BuildRuleDurationHistoryRecorder {
+
+  private final BuildRuleDurationHistory history;
+
+  public BuildRuleDurationHistoryRecorder(BuildRuleDurationHistory history) {
+    this.history = history;
+  }
+
+  @Subscribe
+  public void buildRuleFinished(BuildRuleEvent.Finished finished) {
+    if (finished.getStatus() != BuildRuleStatus.SUCCESS || !finished.getSuccessType().isPresent()) {
+      return;
+    }
+
+    BuildRule rule = finished.getBuildRule();
+    BuildTarget target = rule.getBuildTarget();
+    long wallMillis = finished.getDuration().getWallMillisDuration();
+    BuildRuleSuccessType successType = finished.getSuccessType().get();
+    switch (successType) {
+      case BUILT_LOCALLY:
+        history.recordBuild(target, rule.getType(), wallMillis);
+        break;
+      case FETCHED_FROM_CACHE:
+      case FETCHED_FROM_CACHE_INPUT_BASED:
+      case FETCHED_FROM_CACHE_MANIFEST_BASED:
+        history.recordCacheFetch(target, rule.getType(), wallMillis);
+        break;
+      case MATCHING_RULE_KEY:
+      case MATCHING_INPUT_BASED_RULE_KEY:
+      case MATCHING_DEP_FILE_RULE_KEY:
+        break;
+    }
+
+    finished
+        .getOutputSize()
+        .ifPresent(outputSize -> history.recordOutputSize(target, rule.getType(), outputSize));
+  }
+}
@@ -18,6 +18,7 @@ package com.facebook.buck.core.build.engine.impl;
 
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.core.build.buildable.context.BuildableContext;
 import com.facebook.buck.core.build.distributed.synchronization.RemoteBuildRuleCompletionWaiter;
 import com.facebook.buck.core.build.engine.BuildEngine;
@@ -31,12 +32,14 @@ import com.facebook.buck.core.build.engine.buildinfo.BuildInfoRecorder;
 import com.facebook.buck.core.build.engine.buildinfo.BuildInfoStore;
 import com.facebook.buck.core.build.engine.buildinfo.OnDiskBuildInfo;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.config.ArtifactCachePrefetchInfo;
 import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
 import com.facebook.buck.core.build.engine.type.MetadataStorage;
 import com.facebook.buck.core.build.event.BuildRuleEvent;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.build.stats.BuildRuleDurationTracker;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
@@ -69,8 +72,10 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -125,6 +130,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
   private final SourcePathRuleFinder ruleFinder;
   private final SourcePathResolver pathResolver;
   private final Optional<Long> artifactCacheSizeLimit;
+  private final ArtifactCompressionPolicy artifactCompressionPolicy;
   private final FileHashCache fileHashCache;
   @VisibleForTesting final RuleKeyFactories ruleKeyFactories;
   private final ResourceAwareSchedulingInfo resourceAwareSchedulingInfo;
@@ -144,6 +150,12 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   private final Optional<BuildRuleStrategy> customBuildRuleStrategy;
 
+  private final Optional<CriticalPathPrioritizer> criticalPathPrioritizer;
+
+  private final ArtifactCachePrefetchInfo artifactCachePrefetchInfo;
+
+  @Nullable private volatile ArtifactCachePrefetcher artifactCachePrefetcher;
+
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
       Optional<BuildRuleStrategy> customBuildRuleStrategy,
@@ -154,6 +166,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       DepFiles depFiles,
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
+      ArtifactCompressionPolicy artifactCompressionPolicy,
       BuildRuleResolver resolver,
       SourcePathRuleFinder ruleFinder,
       SourcePathResolver pathResolver,
@@ -161,7 +174,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
       boolean consoleLogBuildFailuresInline,
       RuleKeyFactories ruleKeyFactories,
-      RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter) {
+      RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory,
+      ArtifactCachePrefetchInfo artifactCachePrefetchInfo) {
     this(
         cachingBuildEngineDelegate,
         customBuildRuleStrategy,
@@ -172,6 +187,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         depFiles,
         maxDepFileCacheEntries,
         artifactCacheSizeLimit,
+        artifactCompressionPolicy,
         resolver,
         buildInfoStoreManager,
         ruleFinder,
@@ -188,7 +204,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
                 ruleKeyFactories
                     .getDefaultRuleKeyFactory()
                     .buildForDiagnostics(appendable, new StringRuleKeyHasher())),
-        consoleLogBuildFailuresInline);
+        consoleLogBuildFailuresInline,
+        buildRuleDurationHistory,
+        artifactCachePrefetchInfo);
   }
 
   /** This constructor MUST ONLY BE USED FOR TESTS. */
@@ -203,6 +221,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       DepFiles depFiles,
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
+      ArtifactCompressionPolicy artifactCompressionPolicy,
       BuildRuleResolver resolver,
       BuildInfoStoreManager buildInfoStoreManager,
       SourcePathRuleFinder ruleFinder,
@@ -211,7 +230,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter,
       ResourceAwareSchedulingInfo resourceAwareSchedulingInfo,
       RuleKeyDiagnostics<RuleKey, String> defaultRuleKeyDiagnostics,
-      boolean consoleLogBuildFailuresInline) {
+      boolean consoleLogBuildFailuresInline,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory,
+      ArtifactCachePrefetchInfo artifactCachePrefetchInfo) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
     this.customBuildRuleStrategy = customBuildRuleStrategy;
 
@@ -222,6 +243,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.depFiles = depFiles;
     this.maxDepFileCacheEntries = maxDepFileCacheEntries;
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
+    this.artifactCompressionPolicy = artifactCompressionPolicy;
     this.resolver = resolver;
     this.ruleFinder = ruleFinder;
     this.pathResolver = pathResolver;
@@ -236,6 +258,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     this.unskippedRulesTracker = createUnskippedRulesTracker(buildMode, ruleDeps, resolver);
     this.defaultRuleKeyDiagnostics = defaultRuleKeyDiagnostics;
     this.consoleLogBuildFailuresInline = consoleLogBuildFailuresInline;
+    this.criticalPathPrioritizer =
+        buildRuleDurationHistory.map(history -> new CriticalPathPrioritizer(ruleDeps, history));
+    this.artifactCachePrefetchInfo = artifactCachePrefetchInfo;
     this.asyncCallbacks = new ConcurrentLinkedQueue<>();
     this.ruleKeyCalculator =
         new ParallelRuleKeyCalculator<>(
@@ -257,6 +282,12 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
         customBuildRuleStrategy.get().close();
       }
       Futures.allAsList(asyncCallbacks).get();
+      ArtifactCachePrefetcher prefetcher = artifactCachePrefetcher;
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
+      // Metadata of the rules built must be stored by the time the build is over.
+      buildInfoStoreManager.flush();
     } catch (InterruptedException e) {
       e.printStackTrace();
     } catch (IOException | ExecutionException e) {
@@ -312,15 +343,20 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       BuildRule rule, BuildEngineBuildContext buildContext, ExecutionContext executionContext) {
     List<ListenableFuture<BuildResult>> depResults =
         new ArrayList<>(SortedSets.sizeEstimate(rule.getBuildDeps()));
-    for (BuildRule dep : shuffled(rule.getBuildDeps())) {
+    for (BuildRule dep : ordered(rule.getBuildDeps())) {
       depResults.add(getBuildRuleResultWithRuntimeDeps(dep, buildContext, executionContext));
     }
     return Futures.allAsList(depResults);
   }
 
-  private static List<BuildRule> shuffled(Iterable<BuildRule> rules) {
+  private List<BuildRule> ordered(Iterable<BuildRule> rules) {
     ArrayList<BuildRule> rulesList = Lists.newArrayList(rules);
     Collections.shuffle(rulesList);
+    // Kick off the deps on the critical path first, so they're first in line for resources.
+    criticalPathPrioritizer.ifPresent(
+        prioritizer ->
+            rulesList.sort(
+                Comparator.<BuildRule>comparingLong(prioritizer::getPriority).reversed()));
     return rulesList;
   }
 
@@ -414,6 +450,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
 
   @Override
   public int getNumRulesToBuild(Iterable<BuildRule> rules) {
+    // This is where we first get to see all the top-level rules of the build, before any of them
+    // are scheduled.
+    criticalPathPrioritizer.ifPresent(prioritizer -> prioritizer.prioritize(rules));
     Set<BuildRule> seen = Sets.newConcurrentHashSet();
     ImmutableList.Builder<ListenableFuture<?>> results = ImmutableList.builder();
     for (BuildRule rule : rules) {
@@ -436,11 +475,51 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     // Keep track of all jobs that run asynchronously with respect to the build dep chain.  We want
     // to make sure we wait for these before calling yielding the final build result.
     registerTopLevelRule(rule, buildContext.getEventBus());
+    if (artifactCachePrefetchInfo.isEnabled()) {
+      getArtifactCachePrefetcher(buildContext.getArtifactCache())
+          .prefetch(buildContext.getEventBus(), rule);
+    }
     ListenableFuture<BuildResult> resultFuture =
         getBuildRuleResultWithRuntimeDeps(rule, buildContext, executionContext);
     return BuildEngineResult.builder().setResult(resultFuture).build();
   }
 
+  private synchronized ArtifactCachePrefetcher getArtifactCachePrefetcher(
+      ArtifactCache artifactCache) {
+    ArtifactCachePrefetcher prefetcher = artifactCachePrefetcher;
+    if (prefetcher == null || prefetcher.getArtifactCache() != artifactCache) {
+      if (prefetcher != null) {
+        prefetcher.close();
+      }
+      prefetcher =
+          new ArtifactCachePrefetcher(
+              artifactCache,
+              ruleKeyCalculator,
+              serviceByAdjustingDefaultWeightsTo(SCHEDULING_MORE_WORK_RESOURCE_AMOUNTS),
+              artifactCachePrefetchInfo.getBatchSize(),
+              artifactCachePrefetchInfo.getMaxInFlightBatches());
+      artifactCachePrefetcher = prefetcher;
+    }
+    return prefetcher;
+  }
+
+  private Optional<ListenableFuture<CacheResult>> getPrefetchedCacheResult(
+      ArtifactCache artifactCache, RuleKey ruleKey) {
+    ArtifactCachePrefetcher prefetcher = artifactCachePrefetcher;
+    if (prefetcher == null || prefetcher.getArtifactCache() != artifactCache) {
+      return Optional.empty();
+    }
+    return prefetcher.getResult(ruleKey);
+  }
+
+  private Optional<Path> takePrefetchedArtifact(ArtifactCache artifactCache, RuleKey ruleKey) {
+    ArtifactCachePrefetcher prefetcher = artifactCachePrefetcher;
+    if (prefetcher == null || prefetcher.getArtifactCache() != artifactCache) {
+      return Optional.empty();
+    }
+    return prefetcher.takeFetchedArtifact(ruleKey);
+  }
+
   @Nullable
   @Override
   public BuildResult getBuildRuleResult(BuildTarget buildTarget)
@@ -487,6 +566,7 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
     return new CachingBuildRuleBuilder(
             new DefaultBuildRuleBuilderDelegate(this, buildContext),
             artifactCacheSizeLimit,
+            artifactCompressionPolicy,
             buildInfoStoreManager,
             buildMode,
             buildRuleDurationTracker,
@@ -499,7 +579,9 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
             pathResolver,
             resourceAwareSchedulingInfo,
             ruleKeyFactories,
-            service,
+            criticalPathPrioritizer
+                .map(prioritizer -> service.withPriority(prioritizer.getPriority(rule)))
+                .orElse(service),
             stepRunner,
             this.ruleDeps,
             rule,
@@ -557,6 +639,16 @@ public class CachingBuildEngine implements BuildEngine, Closeable {
       return cachingBuildEngine.firstFailure;
     }
 
+    @Override
+    public Optional<ListenableFuture<CacheResult>> getPrefetchedCacheResult(RuleKey ruleKey) {
+      return cachingBuildEngine.getPrefetchedCacheResult(buildContext.getArtifactCache(), ruleKey);
+    }
+
+    @Override
+    public Optional<Path> takePrefetchedArtifact(RuleKey ruleKey) {
+      return cachingBuildEngine.takePrefetchedArtifact(buildContext.getArtifactCache(), ruleKey);
+    }
+
     @Override
     public void onRuleAboutToBeBuilt(BuildRule rule) {
       cachingBuildEngine.cachingBuildEngineDelegate.onRuleAboutToBeBuilt(rule);
@@ -21,6 +21,7 @@ import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.RuleKeyCacheResult;
 import com.facebook.buck.artifact_cache.RuleKeyCacheResultEvent;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.core.build.buildable.context.BuildableContext;
 import com.facebook.buck.core.build.context.BuildContext;
 import com.facebook.buck.core.build.distributed.synchronization.RemoteBuildRuleCompletionWaiter;
@@ -181,6 +182,7 @@ class CachingBuildRuleBuilder {
   public CachingBuildRuleBuilder(
       BuildRuleBuilderDelegate buildRuleBuilderDelegate,
       Optional<Long> artifactCacheSizeLimit,
+      ArtifactCompressionPolicy artifactCompressionPolicy,
       BuildInfoStoreManager buildInfoStoreManager,
       BuildType buildMode,
       BuildRuleDurationTracker buildRuleDurationTracker,
@@ -293,7 +295,8 @@ class CachingBuildRuleBuilder {
             manifestRuleKeyManager,
             eventBus,
             artifactCache,
-            artifactCacheSizeLimit);
+            artifactCacheSizeLimit,
+            artifactCompressionPolicy);
     this.customBuildRuleStrategy = customBuildRuleStrategy;
   }
 
@@ -1049,13 +1052,36 @@ class CachingBuildRuleBuilder {
 
   private ListenableFuture<CacheResult> performRuleKeyCacheCheck(boolean cacheHitExpected) {
     long cacheRequestTimestampMillis = System.currentTimeMillis();
+    // If the cache was already checked for this key ahead of the build walk and it's a miss, don't
+    // make another round trip to find out again, and if the artifact was fetched then, use it. When
+    // the rule was built remotely we expect it to have been stored since then, so always fetch.
+    Optional<ListenableFuture<CacheResult>> prefetchedResult =
+        cacheHitExpected
+            ? Optional.empty()
+            : buildRuleBuilderDelegate.getPrefetchedCacheResult(defaultKey);
+    ListenableFuture<CacheResult> cacheResultFuture =
+        prefetchedResult.isPresent()
+            ? Futures.transformAsync(
+                prefetchedResult.get(),
+                prefetched -> {
+                  if (prefetched.getType() == CacheResultType.MISS) {
+                    return Futures.immediateFuture(prefetched);
+                  }
+                  Optional<Path> prefetchedArtifact =
+                      buildRuleBuilderDelegate.takePrefetchedArtifact(defaultKey);
+                  return prefetchedArtifact.isPresent()
+                      ? buildCacheArtifactFetcher.overlayFetchedArtifact(
+                          defaultKey,
+                          artifactCache,
+                          prefetched,
+                          prefetchedArtifact.get(),
+                          rule.getProjectFilesystem())
+                      : fetchArtifactForDefaultRuleKey();
+                },
+                serviceByAdjustingDefaultWeightsTo(CachingBuildEngine.CACHE_CHECK_RESOURCE_AMOUNTS))
+            : fetchArtifactForDefaultRuleKey();
     return Futures.transform(
-        buildCacheArtifactFetcher
-            .tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
-                defaultKey,
-                artifactCache,
-                // TODO(simons): This should be a shared between all tests, not one per cell
-                rule.getProjectFilesystem()),
+        cacheResultFuture,
         cacheResult -> {
           RuleKeyCacheResult ruleKeyCacheResult =
               RuleKeyCacheResult.builder()
@@ -1073,6 +1099,15 @@ class CachingBuildRuleBuilder {
         });
   }
 
+  private ListenableFuture<CacheResult> fetchArtifactForDefaultRuleKey() {
+    return buildCacheArtifactFetcher
+        .tryToFetchArtifactFromBuildCacheAndOverlayOnTopOfProjectFilesystem(
+            defaultKey,
+            artifactCache,
+            // TODO(simons): This should be a shared between all tests, not one per cell
+            rule.getProjectFilesystem());
+  }
+
   private Optional<BuildResult> getBuildResultForRuleKeyCacheResult(CacheResult cacheResult) {
     if (!cacheResult.getType().isSuccess()) {
       return Optional.empty();
@@ -1381,5 +1416,17 @@ class CachingBuildRuleBuilder {
     Throwable getFirstFailure();
 
     void onRuleAboutToBeBuilt(BuildRule rule);
+
+    /**
+     * @return the result of checking the artifact cache for the given rule key ahead of the build
+     *     walk, if that check was started.
+     */
+    Optional<ListenableFuture<CacheResult>> getPrefetchedCacheResult(RuleKey ruleKey);
+
+    /**
+     * @return the artifact fetched for the given rule key ahead of the build walk, if any, which
+     *     the caller is then responsible for.
+     */
+    Optional<Path> takePrefetchedArtifact(RuleKey ruleKey);
   }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.build.engine.impl;
+
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal;
+import com.google.common.collect.ImmutableList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ranks build rules by the length of the critical path they lie on, so that the build engine can
+ * start the rules on long chains of dependent work (e.g. a javac followed by dexing and linking)
+ * before those which have plenty of slack.
+ *
+ * <p>A rule's priority is the estimated duration of the longest remaining path through the build
+ * once it starts, i.e. its own duration plus the longest chain of dependents leading up to one of
+ * the top-level rules. Durations come from a {@link BuildRuleDurationHistory}.
+ */
+class CriticalPathPrioritizer {
+
+  private final RuleDepsCache ruleDeps;
+  private final BuildRuleDurationHistory history;
+  private final ConcurrentMap<BuildTarget, Long> priorities = new ConcurrentHashMap<>();
+
+  CriticalPathPrioritizer(RuleDepsCache ruleDeps, BuildRuleDurationHistory history) {
+    this.ruleDeps = ruleDeps;
+    this.history = history;
+  }
+
+  /** Compute the priorities of the given top-level rules and all their transitive deps. */
+  public void prioritize(Iterable<BuildRule> roots) {
+    ImmutableList<BuildRule> rules;
+    try {
+      rules =
+          ImmutableList.copyOf(
+                  new AcyclicDepthFirstPostOrderTraversal<BuildRule>(
+                          rule -> ruleDeps.get(rule).iterator())
+                      .traverse(roots))
+              .reverse();
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new IllegalStateException("Cycle detected in the action graph", e);
+    }
+
+    // Rules we have no estimate for are assumed to take as long as the average rule that we do.
+    long totalDuration = 0;
+    int rulesWithHistory = 0;
+    for (BuildRule rule : rules) {
+      OptionalLong duration = getEstimatedDuration(rule);
+      if (duration.isPresent()) {
+        totalDuration += duration.getAsLong();
+        rulesWithHistory++;
+      }
+    }
+    long defaultDuration =
+        rulesWithHistory == 0 ? 1 : Math.max(1, totalDuration / rulesWithHistory);
+
+    // As every rule comes before its deps in reverse post-order, the longest path through its
+    // dependents is known by the time we get to it.
+    Map<BuildRule, Long> longestPathThroughDependents = new HashMap<>();
+    for (BuildRule rule : rules) {
+      long pathLength =
+          longestPathThroughDependents.getOrDefault(rule, 0L)
+              + getEstimatedDuration(rule).orElse(defaultDuration);
+      priorities.merge(rule.getBuildTarget(), pathLength, Math::max);
+      for (BuildRule dep : ruleDeps.get(rule)) {
+        longestPathThroughDependents.merge(dep, pathLength, Math::max);
+      }
+    }
+  }
+
+  private OptionalLong getEstimatedDuration(BuildRule rule) {
+    return history.getEstimatedBuildMillis(rule.getBuildTarget(), rule.getType());
+  }
+
+  /** @return the priority of the given rule, where higher priority rules should be built first. */
+  public long getPriority(BuildRule rule) {
+    return priorities.getOrDefault(rule.getBuildTarget(), 0L);
+  }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.stats;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+/**
+ * An on-disk record of how build rules behaved in previous builds: how long they took to build
+ * locally, how long they took to fetch from the cache, and how large their outputs were. It is used
+ * to estimate how long each rule will take in the next build, e.g. to schedule the critical path
+ * first or to weight build progress.
+ *
+ * <p>Values are exponentially weighted moving averages, so that a single outlier doesn't throw off
+ * the estimates, while still following rules that become consistently slower or faster. Rules that
+ * have never been seen are estimated from the average of other rules of the same type.
+ */
+public class BuildRuleDurationHistory {
+
+  private static final Logger LOG = Logger.get(BuildRuleDurationHistory.class);
+
+  private static final int VERSION = 1;
+
+  /** The name of the file the history is kept in, under buck-out's scratch directory. */
+  public static final String FILE_NAME = "build_rule_durations";
+
+  /** How much weight a new sample is given in the moving averages. */
+  private static final double SMOOTHING_FACTOR = 0.3;
+
+  private static final long UNKNOWN = -1;
+
+  private final Path path;
+  private final ConcurrentMap<String, Entry> entries;
+  private final ImmutableMap<String, Long> averageBuildMillisByRuleType;
+  private final OptionalLong averageBuildMillis;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private BuildRuleDurationHistory(Path path, ConcurrentMap<String, Entry> entries) {
+    this.path = path;
+    this.entries = entries;
+    this.averageBuildMillisByRuleType = computeAverageBuildMillisByRuleType(entries.values());
+    OptionalDouble averageBuildMillis =
+        entries
+            .values()
+            .stream()
+            .filter(entry -> entry.buildMillis != UNKNOWN)
+            .mapToLong(entry -> entry.buildMillis)
+            .average();
+    this.averageBuildMillis =
+        averageBuildMillis.isPresent()
+            ? OptionalLong.of(Math.round(averageBuildMillis.getAsDouble()))
+            : OptionalLong.empty();
+  }
+
+  /**
+   * Load the history at the given {@link Path}. If it doesn't exist or is unreadable, an empty
+   * history is returned which will overwrite it when saved.
+   */
+  public static BuildRuleDurationHistory load(Path path) {
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    if (Files.exists(path)) {
+      try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+        readEntries(input, entries);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to read build rule durations at %s, starting from scratch.", path);
+        entries.clear();
+      }
+    }
+    return new BuildRuleDurationHistory(path, entries);
+  }
+
+  private static ImmutableMap<String, Long> computeAverageBuildMillisByRuleType(
+      Iterable<Entry> entries) {
+    Map<String, long[]> totalsByRuleType = new HashMap<>();
+    for (Entry entry : entries) {
+      if (entry.buildMillis != UNKNOWN) {
+        long[] totals = totalsByRuleType.computeIfAbsent(entry.ruleType, type -> new long[2]);
+        totals[0] += entry.buildMillis;
+        totals[1]++;
+      }
+    }
+    ImmutableMap.Builder<String, Long> averages =
+        ImmutableMap.builderWithExpectedSize(totalsByRuleType.size());
+    for (Map.Entry<String, long[]> totals : totalsByRuleType.entrySet()) {
+      averages.put(totals.getKey(), totals.getValue()[0] / totals.getValue()[1]);
+    }
+    return averages.build();
+  }
+
+  @VisibleForTesting
+  static void readEntries(InputStream rawInput, Map<String, Entry> entries) throws IOException {
+    DataInputStream input = new DataInputStream(rawInput);
+
+    int version = input.readInt();
+    if (version != VERSION) {
+      LOG.debug("Ignoring build rule durations with version %d (expected %d).", version, VERSION);
+      return;
+    }
+
+    int numberOfEntries = input.readInt();
+    for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+      String target = input.readUTF();
+      entries.put(
+          target, new Entry(input.readUTF(), input.readLong(), input.readLong(), input.readLong()));
+    }
+  }
+
+  @VisibleForTesting
+  void writeEntries(OutputStream rawOutput) throws IOException {
+    DataOutputStream output = new DataOutputStream(rawOutput);
+
+    output.writeInt(VERSION);
+
+    // Take a snapshot, so that the count we write matches the entries that follow it.
+    ImmutableMap<String, Entry> snapshot = ImmutableMap.copyOf(entries);
+    output.writeInt(snapshot.size());
+    for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+      Entry entry = mapEntry.getValue();
+      output.writeUTF(mapEntry.getKey());
+      output.writeUTF(entry.ruleType);
+      output.writeLong(entry.buildMillis);
+      output.writeLong(entry.cacheFetchMillis);
+      output.writeLong(entry.outputSize);
+    }
+    output.flush();
+  }
+
+  /** @return what was recorded about the given target, by fully qualified name, if anything. */
+  public Optional<Entry> get(String fullyQualifiedName) {
+    return Optional.ofNullable(entries.get(fullyQualifiedName));
+  }
+
+  /** @return what was recorded about the given target, if anything. */
+  public Optional<Entry> get(BuildTarget target) {
+    return get(target.getFullyQualifiedName());
+  }
+
+  /**
+   * @return the estimated wall time it takes to build the given target locally, falling back to
+   *     the average of other rules of the same type if the target itself was never built.
+   */
+  public OptionalLong getEstimatedBuildMillis(BuildTarget target, String ruleType) {
+    OptionalLong buildMillis = get(target).map(Entry::getBuildMillis).orElse(OptionalLong.empty());
+    if (buildMillis.isPresent()) {
+      return buildMillis;
+    }
+    Long averageBuildMillis = averageBuildMillisByRuleType.get(ruleType);
+    return averageBuildMillis == null ? OptionalLong.empty() : OptionalLong.of(averageBuildMillis);
+  }
+
+  /**
+   * @return the estimated wall time it takes to build the given target locally, by fully qualified
+   *     name, falling back to the average of other rules of the same type if the target was never
+   *     built locally, and to the average of all rules if nothing was recorded about it.
+   */
+  public OptionalLong getEstimatedBuildMillis(String fullyQualifiedName) {
+    Entry entry = entries.get(fullyQualifiedName);
+    if (entry == null) {
+      return averageBuildMillis;
+    }
+    if (entry.buildMillis != UNKNOWN) {
+      return OptionalLong.of(entry.buildMillis);
+    }
+    Long typeAverageBuildMillis = averageBuildMillisByRuleType.get(entry.ruleType);
+    return typeAverageBuildMillis == null
+        ? averageBuildMillis
+        : OptionalLong.of(typeAverageBuildMillis);
+  }
+
+  /** @return the average wall time it took to build a rule locally in previous builds. */
+  public OptionalLong getAverageBuildMillis() {
+    return averageBuildMillis;
+  }
+
+  /** Record the wall time it took to build the given target locally. */
+  public void recordBuild(BuildTarget target, String ruleType, long wallMillis) {
+    update(target, ruleType, entry -> entry.withBuildMillis(smooth(entry.buildMillis, wallMillis)));
+  }
+
+  /** Record the wall time it took to fetch the given target's outputs from the cache. */
+  public void recordCacheFetch(BuildTarget target, String ruleType, long wallMillis) {
+    update(
+        target,
+        ruleType,
+        entry -> entry.withCacheFetchMillis(smooth(entry.cacheFetchMillis, wallMillis)));
+  }
+
+  /** Record the size of the given target's outputs. */
+  public void recordOutputSize(BuildTarget target, String ruleType, long outputSize) {
+    update(target, ruleType, entry -> entry.withOutputSize(smooth(entry.outputSize, outputSize)));
+  }
+
+  private void update(BuildTarget target, String ruleType, UnaryOperator<Entry> updater) {
+    entries.compute(
+        target.getFullyQualifiedName(),
+        (name, previous) -> {
+          Entry entry =
+              previous == null || !previous.ruleType.equals(ruleType)
+                  ? new Entry(ruleType, UNKNOWN, UNKNOWN, UNKNOWN)
+                  : previous;
+          Entry updated = updater.apply(entry);
+          if (!updated.equals(previous)) {
+            dirty.set(true);
+          }
+          return updated;
+        });
+  }
+
+  private static long smooth(long previous, long sample) {
+    if (previous == UNKNOWN) {
+      return sample;
+    }
+    return Math.round(SMOOTHING_FACTOR * sample + (1 - SMOOTHING_FACTOR) * previous);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /** Write the history back to disk, if it changed since it was loaded. */
+  public void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    Files.createDirectories(path.getParent());
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+      writeEntries(output);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /** What was recorded about a single build target. */
+  public static final class Entry {
+
+    private final String ruleType;
+    private final long buildMillis;
+    private final long cacheFetchMillis;
+    private final long outputSize;
+
+    private Entry(String ruleType, long buildMillis, long cacheFetchMillis, long outputSize) {
+      this.ruleType = ruleType;
+      this.buildMillis = buildMillis;
+      this.cacheFetchMillis = cacheFetchMillis;
+      this.outputSize = outputSize;
+    }
+
+    public String getRuleType() {
+      return ruleType;
+    }
+
+    /** @return the average wall time it took to build the target locally. */
+    public OptionalLong getBuildMillis() {
+      return toOptional(buildMillis);
+    }
+
+    /** @return the average wall time it took to fetch the target from the cache. */
+    public OptionalLong getCacheFetchMillis() {
+      return toOptional(cacheFetchMillis);
+    }
+
+    /** @return the average size of the target's outputs, in bytes. */
+    public OptionalLong getOutputSize() {
+      return toOptional(outputSize);
+    }
+
+    private Entry withBuildMillis(long buildMillis) {
+      return new Entry(ruleType, buildMillis, cacheFetchMillis, outputSize);
+    }
+
+    private Entry withCacheFetchMillis(long cacheFetchMillis) {
+      return new Entry(ruleType, buildMillis, cacheFetchMillis, outputSize);
+    }
+
+    private Entry withOutputSize(long outputSize) {
+      return new Entry(ruleType, buildMillis, cacheFetchMillis, outputSize);
+    }
+
+    private static OptionalLong toOptional(long value) {
+      return value == UNKNOWN ? OptionalLong.empty() : OptionalLong.of(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) o;
+      return ruleType.equals(that.ruleType)
+          && buildMillis == that.buildMillis
+          && cacheFetchMillis == that.cacheFetchMillis
+          && outputSize == that.outputSize;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(ruleType, buildMillis, cacheFetchMillis, outputSize);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.SettableFuture;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -37,7 +38,12 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.function.BiFunction;
 import javax.annotation.Nonnull;
 
-/** Calculates {@link RuleKey}, bottom-up, using tree parallelism. */
+/**
+ * Calculates {@link RuleKey}, bottom-up, using tree parallelism.
+ *
+ * <p>This class is lock-free: each rule key is calculated at most once, by whichever thread first
+ * records a future for it, and concurrent callers for the same rule share that future.
+ */
 public class ParallelRuleKeyCalculator<T> {
 
   private final ListeningExecutorService service;
@@ -62,22 +68,43 @@ public class ParallelRuleKeyCalculator<T> {
    * @return a {@link ListenableFuture} wrapping the result of calculating the {@link RuleKey} of
    *     the given {@link BuildRule}.
    */
-  public synchronized ListenableFuture<T> calculate(BuckEventBus buckEventBus, BuildRule rule) {
-    ListenableFuture<T> fromOurCache = ruleKeys.get(rule.getBuildTarget());
+  public ListenableFuture<T> calculate(BuckEventBus buckEventBus, BuildRule rule) {
+    BuildTarget target = rule.getBuildTarget();
+    ListenableFuture<T> fromOurCache = ruleKeys.get(target);
     if (fromOurCache != null) {
       return fromOurCache;
     }
 
     T fromInternalCache = ruleKeyFactory.getFromCache(rule);
     if (fromInternalCache != null) {
-      ListenableFuture<T> future = Futures.immediateFuture(fromInternalCache);
-      // Record the rule key future.
-      ruleKeys.put(rule.getBuildTarget(), future);
+      // Record the rule key future, unless another thread beat us to it.
       // Because a rule key will be invalidated from the internal cache any time one of its
       // dependents is invalidated, we know that all of our transitive deps are also in cache.
-      return future;
+      return recordIfAbsent(target, Futures.immediateFuture(fromInternalCache));
+    }
+
+    // Install a placeholder future first, so that only the thread which wins the race to record it
+    // schedules the calculation, and all other threads just wait on its result.
+    SettableFuture<T> future = SettableFuture.create();
+    ListenableFuture<T> recorded = recordIfAbsent(target, future);
+    if (recorded != future) {
+      return recorded;
+    }
+    try {
+      future.setFuture(calculateWithDeps(buckEventBus, rule));
+    } catch (Throwable t) {
+      // Fail the placeholder, as other threads may already be waiting on it.
+      future.setException(t);
     }
+    return future;
+  }
 
+  private ListenableFuture<T> recordIfAbsent(BuildTarget target, ListenableFuture<T> future) {
+    ListenableFuture<T> existing = ruleKeys.putIfAbsent(target, future);
+    return existing == null ? future : existing;
+  }
+
+  private ListenableFuture<T> calculateWithDeps(BuckEventBus buckEventBus, BuildRule rule) {
     // Grab all the dependency rule key futures.  Since our rule key calculation depends on this
     // one, we need to wait for them to complete.
     ListenableFuture<List<T>> depKeys =
@@ -94,25 +121,20 @@ public class ParallelRuleKeyCalculator<T> {
             service);
 
     // Setup a future to calculate this rule key once the dependencies have been calculated.
-    ListenableFuture<T> calculated =
-        Futures.transform(
-            depKeys,
-            (List<T> input) -> {
-              try (Scope scope = ruleKeyCalculationScope.apply(buckEventBus, rule)) {
-                return ruleKeyFactory.build(rule);
-              } catch (Exception e) {
-                throw new BuckUncheckedExecutionException(
-                    e, String.format("When computing rulekey for %s.", rule));
-              }
-            },
-            service);
-
-    // Record the rule key future.
-    ruleKeys.put(rule.getBuildTarget(), calculated);
-    return calculated;
+    return Futures.transform(
+        depKeys,
+        (List<T> input) -> {
+          try (Scope scope = ruleKeyCalculationScope.apply(buckEventBus, rule)) {
+            return ruleKeyFactory.build(rule);
+          } catch (Exception e) {
+            throw new BuckUncheckedExecutionException(
+                e, String.format("When computing rulekey for %s.", rule));
+          }
+        },
+        service);
   }
 
-  public synchronized Set<BuildTarget> getAllKnownTargets() {
+  public Set<BuildTarget> getAllKnownTargets() {
     return ruleKeys.keySet();
   }
 
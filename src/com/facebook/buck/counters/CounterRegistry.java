@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.Subscribe;
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.function.LongSupplier;
 
 public interface CounterRegistry extends Closeable {
   IntegerCounter newIntegerCounter(String category, String name, ImmutableMap<String, String> tags);
@@ -34,6 +35,14 @@ public interface CounterRegistry extends Closeable {
 
   TagSetCounter newTagSetCounter(String category, String name, ImmutableMap<String, String> tags);
 
+  HistogramCounter newHistogramCounter(
+      String category, String name, ImmutableMap<String, String> tags);
+
+  TimerCounter newTimerCounter(String category, String name, ImmutableMap<String, String> tags);
+
+  GaugeCounter newGaugeCounter(
+      String category, String name, ImmutableMap<String, String> tags, LongSupplier supplier);
+
   void registerCounters(Collection<Counter> counters);
 
   @Subscribe
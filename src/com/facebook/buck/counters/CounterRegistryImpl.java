@@ -33,6 +33,7 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
 
 public class CounterRegistryImpl implements CounterRegistry {
   private static final Logger LOG = Logger.get(CounterRegistryImpl.class);
@@ -82,6 +83,24 @@ public class CounterRegistryImpl implements CounterRegistry {
     return registerCounter(new TagSetCounter(category, name, tags));
   }
 
+  @Override
+  public HistogramCounter newHistogramCounter(
+      String category, String name, ImmutableMap<String, String> tags) {
+    return registerCounter(new HistogramCounter(category, name, tags));
+  }
+
+  @Override
+  public TimerCounter newTimerCounter(
+      String category, String name, ImmutableMap<String, String> tags) {
+    return registerCounter(new TimerCounter(category, name, tags));
+  }
+
+  @Override
+  public GaugeCounter newGaugeCounter(
+      String category, String name, ImmutableMap<String, String> tags, LongSupplier supplier) {
+    return registerCounter(new GaugeCounter(category, name, tags, supplier));
+  }
+
   @Override
   public void registerCounters(Collection<Counter> countersToRegister) {
     synchronized (this) {
@@ -120,6 +139,11 @@ public class CounterRegistryImpl implements CounterRegistry {
         snapshots.add(counter.flush());
       }
     }
+    if (HotPathMetrics.isEnabled()) {
+      for (Counter counter : HotPathMetrics.getCounters()) {
+        snapshots.add(counter.flush());
+      }
+    }
 
     ImmutableList<CounterSnapshot> presentSnapshots =
         snapshots.stream().flatMap(Optionals::toStream).collect(ImmutableList.toImmutableList());
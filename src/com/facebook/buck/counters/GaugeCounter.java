@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/** A counter reporting the current value of something, which is read whenever it is flushed. */
+public class GaugeCounter extends Counter {
+  private volatile LongSupplier supplier;
+
+  public GaugeCounter(
+      String category, String name, ImmutableMap<String, String> tags, LongSupplier supplier) {
+    super(category, name, tags);
+    this.supplier = supplier;
+  }
+
+  public long get() {
+    return supplier.getAsLong();
+  }
+
+  public void setSupplier(LongSupplier supplier) {
+    this.supplier = supplier;
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    CounterSnapshot.Builder snapshot = CounterSnapshot.builderForCounter(this);
+    snapshot.putValues(getName(), get());
+    return Optional.of(snapshot.build());
+  }
+}
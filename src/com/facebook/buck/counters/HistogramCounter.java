@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the distribution of non-negative values, such as latencies or sizes, so that percentiles
+ * of them can be reported.
+ *
+ * <p>Like an HDR histogram, values are counted in buckets whose width grows with the magnitude of
+ * the values, so every value is counted with a relative error of at most 1/16 in constant memory.
+ * Recording a value takes no locks.
+ *
+ * <p>{@link #flush()} reports the values recorded since the last flush, while {@link
+ * #getSnapshot()} reports all values recorded so far.
+ */
+public class HistogramCounter extends Counter {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+  private final LongAccumulator maxSinceFlush = new LongAccumulator(Math::max, 0);
+
+  // Guarded by this.
+  private final long[] flushedCounts = new long[BUCKETS];
+  private long flushedSum;
+
+  public HistogramCounter(String category, String name, ImmutableMap<String, String> tags) {
+    super(category, name, tags);
+  }
+
+  public void record(long value) {
+    long recorded = Math.max(0, value);
+    counts.incrementAndGet(getBucket(recorded));
+    count.increment();
+    sum.add(recorded);
+    max.accumulate(recorded);
+    maxSinceFlush.accumulate(recorded);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  /** @return all values recorded so far. */
+  public Snapshot getSnapshot() {
+    long[] snapshotCounts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      snapshotCounts[i] = counts.get(i);
+    }
+    return new Snapshot(snapshotCounts, sum.sum(), max.get());
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    synchronized (this) {
+      Snapshot snapshot = getSnapshot();
+      long[] intervalCounts = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        intervalCounts[i] = snapshot.counts[i] - flushedCounts[i];
+        flushedCounts[i] = snapshot.counts[i];
+      }
+      Snapshot interval =
+          new Snapshot(intervalCounts, snapshot.sum - flushedSum, maxSinceFlush.getThenReset());
+      flushedSum = snapshot.sum;
+      if (interval.getCount() == 0) {
+        return Optional.empty();
+      }
+
+      CounterSnapshot.Builder counterSnapshot = CounterSnapshot.builderForCounter(this);
+      counterSnapshot.putValues(getName() + "_count", interval.getCount());
+      counterSnapshot.putValues(getName() + "_avg", interval.getSum() / interval.getCount());
+      counterSnapshot.putValues(getName() + "_p50", interval.getValueAtQuantile(0.5));
+      counterSnapshot.putValues(getName() + "_p90", interval.getValueAtQuantile(0.9));
+      counterSnapshot.putValues(getName() + "_p99", interval.getValueAtQuantile(0.99));
+      counterSnapshot.putValues(getName() + "_max", interval.getMax());
+      return Optional.of(counterSnapshot.build());
+    }
+  }
+
+  private static int getBucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return (shift + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  /** @return the largest value counted in the given bucket. */
+  private static long getHighestValue(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+    long highest = ((subBucket + 1) << shift) - 1;
+    return highest < 0 ? Long.MAX_VALUE : highest;
+  }
+
+  /** The values recorded by a histogram at some point. */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long sum, long max) {
+      this.counts = counts;
+      long count = 0;
+      for (long bucketCount : counts) {
+        count += bucketCount;
+      }
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    /**
+     * @return a value which at least the given fraction of the recorded values are lower than or
+     *     equal to, or 0 if no values were recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(getHighestValue(i), max);
+        }
+      }
+      return max;
+    }
+  }
+}
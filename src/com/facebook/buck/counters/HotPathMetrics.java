@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.util.Scope;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Histograms, timers and gauges of code on hot paths, shared by all commands run by the process.
+ *
+ * <p>Code on hot paths holds on to its metrics in static fields and records through {@link
+ * #time(TimerCounter)} and {@link #record(HistogramCounter, long)}. Metrics are disabled by
+ * default, in which case recording costs a single read of a volatile field.
+ *
+ * <p>Metrics accumulate over the lifetime of the process, so that buckd can expose them to be
+ * scraped, and are also reported with the other counters of each command while enabled.
+ */
+public class HotPathMetrics {
+
+  private static final Scope NO_OP_SCOPE = () -> {};
+
+  private static final ConcurrentMap<CounterInfo, Counter> METRICS = new ConcurrentHashMap<>();
+
+  private static volatile boolean enabled;
+
+  /** Utility class: do not instantiate. */
+  private HotPathMetrics() {}
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    HotPathMetrics.enabled = enabled;
+  }
+
+  /** @return the timer with the given identity, which is created if it doesn't exist yet. */
+  public static TimerCounter timer(
+      String category, String name, ImmutableMap<String, String> tags) {
+    return getOrCreate(
+        TimerCounter.class, category, name, tags, info -> new TimerCounter(category, name, tags));
+  }
+
+  /** @return the histogram with the given identity, which is created if it doesn't exist yet. */
+  public static HistogramCounter histogram(
+      String category, String name, ImmutableMap<String, String> tags) {
+    return getOrCreate(
+        HistogramCounter.class,
+        category,
+        name,
+        tags,
+        info -> new HistogramCounter(category, name, tags));
+  }
+
+  /**
+   * Creates a gauge with the given identity reporting the values of the given supplier, or makes
+   * the existing one report them instead.
+   */
+  public static GaugeCounter gauge(
+      String category, String name, ImmutableMap<String, String> tags, LongSupplier supplier) {
+    GaugeCounter gauge =
+        getOrCreate(
+            GaugeCounter.class,
+            category,
+            name,
+            tags,
+            info -> new GaugeCounter(category, name, tags, supplier));
+    gauge.setSupplier(supplier);
+    return gauge;
+  }
+
+  /** Registers gauges of the heap usage and thread count of the JVM. */
+  public static void registerJvmGauges() {
+    MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    gauge(
+        "jvm",
+        "heap_used_bytes",
+        ImmutableMap.of(),
+        () -> memoryMXBean.getHeapMemoryUsage().getUsed());
+    gauge(
+        "jvm",
+        "heap_committed_bytes",
+        ImmutableMap.of(),
+        () -> memoryMXBean.getHeapMemoryUsage().getCommitted());
+    gauge("jvm", "threads", ImmutableMap.of(), threadMXBean::getThreadCount);
+  }
+
+  /** Starts timing something if metrics are enabled, which is recorded once the scope is closed. */
+  public static Scope time(TimerCounter timer) {
+    return enabled ? timer.time() : NO_OP_SCOPE;
+  }
+
+  /** Records the given value if metrics are enabled. */
+  public static void record(HistogramCounter histogram, long value) {
+    if (enabled) {
+      histogram.record(value);
+    }
+  }
+
+  /** @return all metrics created so far. */
+  public static ImmutableList<Counter> getCounters() {
+    return ImmutableList.copyOf(METRICS.values());
+  }
+
+  private static <T extends Counter> T getOrCreate(
+      Class<T> type,
+      String category,
+      String name,
+      ImmutableMap<String, String> tags,
+      Function<CounterInfo, T> factory) {
+    CounterInfo info =
+        CounterInfo.builder().setCategory(category).setName(name).setTags(tags).build();
+    Counter counter = METRICS.computeIfAbsent(info, factory);
+    Preconditions.checkState(
+        counter.getClass() == type,
+        "Metric %s was already created as a %s.",
+        info,
+        counter.getClass().getSimpleName());
+    return type.cast(counter);
+  }
+}
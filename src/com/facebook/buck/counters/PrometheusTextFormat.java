@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Writes histograms, timers and gauges in the text exposition format of Prometheus, so that they
+ * can be scraped by it and compatible collectors.
+ *
+ * <p>Metrics are named {@code buck_<category>_<name>} and labeled with their tags. Histograms are
+ * exposed as summaries with a few quantiles, and timers in seconds. Other kinds of counters are
+ * reset whenever they are flushed, so they can't be exposed and are skipped.
+ */
+public class PrometheusTextFormat {
+
+  public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private static final ImmutableList<Double> QUANTILES = ImmutableList.of(0.5, 0.9, 0.99, 0.999);
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  /** Utility class: do not instantiate. */
+  private PrometheusTextFormat() {}
+
+  public static void write(Iterable<? extends Counter> counters, Writer writer)
+      throws IOException {
+    String previousName = null;
+    for (Counter counter : sortByName(counters)) {
+      String name = getMetricName(counter);
+      boolean first = !name.equals(previousName);
+      previousName = name;
+      if (counter instanceof HistogramCounter) {
+        writeHistogram(name, first, (HistogramCounter) counter, writer);
+      } else if (counter instanceof GaugeCounter) {
+        if (first) {
+          writeType(name, "gauge", writer);
+        }
+        writeSample(name, counter.getTags(), "", "", ((GaugeCounter) counter).get(), writer);
+      }
+    }
+  }
+
+  private static ImmutableList<Counter> sortByName(Iterable<? extends Counter> counters) {
+    return ImmutableList.sortedCopyOf(
+        Comparator.comparing(PrometheusTextFormat::getMetricName)
+            .thenComparing(counter -> counter.getTags().toString()),
+        counters);
+  }
+
+  private static void writeHistogram(
+      String name, boolean first, HistogramCounter histogram, Writer writer) throws IOException {
+    if (first) {
+      writeType(name, "summary", writer);
+    }
+    double scale = histogram instanceof TimerCounter ? 1 / NANOS_PER_SECOND : 1;
+    HistogramCounter.Snapshot snapshot = histogram.getSnapshot();
+    for (double quantile : QUANTILES) {
+      writeSample(
+          name,
+          histogram.getTags(),
+          "quantile",
+          Double.toString(quantile),
+          snapshot.getValueAtQuantile(quantile) * scale,
+          writer);
+    }
+    writeSample(name + "_sum", histogram.getTags(), "", "", snapshot.getSum() * scale, writer);
+    writeSample(name + "_count", histogram.getTags(), "", "", snapshot.getCount(), writer);
+  }
+
+  private static String getMetricName(Counter counter) {
+    String name = sanitize("buck_" + counter.getCategory() + "_" + counter.getName());
+    return counter instanceof TimerCounter ? name + "_seconds" : name;
+  }
+
+  private static void writeType(String name, String type, Writer writer) throws IOException {
+    writer.write("# TYPE ");
+    writer.write(name);
+    writer.write(' ');
+    writer.write(type);
+    writer.write('\n');
+  }
+
+  private static void writeSample(
+      String name,
+      ImmutableMap<String, String> tags,
+      String extraLabel,
+      String extraLabelValue,
+      double value,
+      Writer writer)
+      throws IOException {
+    writer.write(name);
+    if (!tags.isEmpty() || !extraLabel.isEmpty()) {
+      writer.write('{');
+      String separator = "";
+      for (Map.Entry<String, String> tag : tags.entrySet()) {
+        writer.write(separator);
+        writeLabel(sanitize(tag.getKey()), tag.getValue(), writer);
+        separator = ",";
+      }
+      if (!extraLabel.isEmpty()) {
+        writer.write(separator);
+        writeLabel(extraLabel, extraLabelValue, writer);
+      }
+      writer.write('}');
+    }
+    writer.write(' ');
+    writer.write(formatValue(value));
+    writer.write('\n');
+  }
+
+  private static void writeLabel(String label, String value, Writer writer) throws IOException {
+    writer.write(label);
+    writer.write("=\"");
+    writer.write(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+    writer.write('"');
+  }
+
+  private static String formatValue(double value) {
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      return Long.toString((long) value);
+    }
+    return Double.toString(value);
+  }
+
+  /** @return the given name with all characters Prometheus doesn't allow replaced. */
+  private static String sanitize(String name) {
+    StringBuilder sanitized = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      boolean valid =
+          (c >= 'a' && c <= 'z')
+              || (c >= 'A' && c <= 'Z')
+              || c == '_'
+              || (i > 0 && c >= '0' && c <= '9');
+      sanitized.append(valid ? c : '_');
+    }
+    return sanitized.toString();
+  }
+}
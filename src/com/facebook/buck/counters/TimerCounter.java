@@ -0,0 +1,34 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.util.Scope;
+import com.google.common.collect.ImmutableMap;
+
+/** A {@link HistogramCounter} of durations, in nanoseconds. */
+public class TimerCounter extends HistogramCounter {
+
+  public TimerCounter(String category, String name, ImmutableMap<String, String> tags) {
+    super(category, name, tags);
+  }
+
+  /** Starts timing something, which is recorded once the returned scope is closed. */
+  public Scope time() {
+    long startNanos = System.nanoTime();
+    return () -> record(System.nanoTime() - startNanos);
+  }
+}
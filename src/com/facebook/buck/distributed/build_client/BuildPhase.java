@@ -20,6 +20,7 @@ import static com.facebook.buck.distributed.ClientStatsTracker.DistBuildClientSt
 import static com.facebook.buck.distributed.thrift.BuildMode.DISTRIBUTED_BUILD_WITH_LOCAL_COORDINATOR;
 
 import com.facebook.buck.command.BuildExecutorArgs;
+import com.facebook.buck.command.LocalBuildExecutor;
 import com.facebook.buck.core.build.distributed.synchronization.RemoteBuildRuleCompletionNotifier;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.exceptions.HumanReadableException;
@@ -267,7 +268,10 @@ public class BuildPhase {
             new HealthCheckStatsTracker(),
             // TODO(shivanker): Make timing stats work.
             Optional.empty(),
-            Optional.empty());
+            Optional.empty(),
+            LocalBuildExecutor.loadBuildRuleDurationHistory(
+                buildExecutorArgs.getBuckConfig(),
+                buildExecutorArgs.getRootCell().getFilesystem()));
 
     executorService.submit(
         () -> {
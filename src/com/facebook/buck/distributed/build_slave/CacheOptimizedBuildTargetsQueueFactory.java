@@ -16,6 +16,7 @@
 package com.facebook.buck.distributed.build_slave;
 
 import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.BuildRuleResolver;
@@ -38,6 +39,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
@@ -316,6 +318,25 @@ public class CacheOptimizedBuildTargetsQueueFactory {
       Iterable<BuildTarget> targetsToBuild,
       CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
       int mostBuildRulesFinishedPercentageThreshold) {
+    return createBuildTargetsQueue(
+        targetsToBuild,
+        coordinatorBuildRuleEventsPublisher,
+        mostBuildRulesFinishedPercentageThreshold,
+        Optional.empty());
+  }
+
+  /**
+   * Create {@link BuildTargetsQueue} with the given parameters.
+   *
+   * @param targetsToBuild top-level targets that need to be built.
+   * @param buildRuleDurationHistory if present, used to hand out the most expensive work first.
+   * @return an instance of {@link BuildTargetsQueue} with the top-level targets at the root.
+   */
+  public ReverseDepBuildTargetsQueue createBuildTargetsQueue(
+      Iterable<BuildTarget> targetsToBuild,
+      CoordinatorBuildRuleEventsPublisher coordinatorBuildRuleEventsPublisher,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     LOG.info("Starting to create the %s.", BuildTargetsQueue.class.getName());
     GraphTraversalData results = traverseGraphFromTopLevelUsingAvailableCaches(targetsToBuild);
 
@@ -391,7 +412,8 @@ public class CacheOptimizedBuildTargetsQueueFactory {
 
     return new ReverseDepBuildTargetsQueue(
         new DistributableBuildGraph(allNodes.build(), zeroDependencyNodes.build()),
-        mostBuildRulesFinishedPercentageThreshold);
+        mostBuildRulesFinishedPercentageThreshold,
+        buildRuleDurationHistory);
   }
 
   private static String ruleToTarget(BuildRule rule) {
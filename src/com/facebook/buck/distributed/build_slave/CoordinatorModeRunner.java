@@ -16,6 +16,7 @@
 
 package com.facebook.buck.distributed.build_slave;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.distributed.DistBuildService;
 import com.facebook.buck.distributed.build_slave.HeartbeatService.HeartbeatCallback;
@@ -60,6 +61,7 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
   private final MinionCountProvider minionCountProvider;
   private final Optional<String> coordinatorMinionId;
   private final boolean releasingMinionsEarlyEnabled;
+  private final Optional<BuildRuleDurationHistory> buildRuleDurationHistory;
 
   /** Constructor. */
   public CoordinatorModeRunner(
@@ -75,7 +77,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
       MinionHealthTracker minionHealthTracker,
       MinionCountProvider minionCountProvider,
       Optional<String> coordinatorMinionId,
-      boolean releasingMinionsEarlyEnabled) {
+      boolean releasingMinionsEarlyEnabled,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     this.stampedeId = stampedeId;
     this.clientBuildId = clientBuildId;
     this.traceUploadUri = traceUploadUri;
@@ -90,6 +93,7 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
     this.minionCountProvider = minionCountProvider;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.buildRuleDurationHistory = buildRuleDurationHistory;
   }
 
   public CoordinatorModeRunner(
@@ -104,7 +108,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
       MinionHealthTracker minionHealthTracker,
       MinionCountProvider minionCountProvider,
       Optional<String> coordinatorMinionId,
-      boolean releasingMinionsEarlyEnabled) {
+      boolean releasingMinionsEarlyEnabled,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     this(
         OptionalInt.empty(),
         queue,
@@ -118,7 +123,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
         minionHealthTracker,
         minionCountProvider,
         coordinatorMinionId,
-        releasingMinionsEarlyEnabled);
+        releasingMinionsEarlyEnabled,
+        buildRuleDurationHistory);
   }
 
   @Override
@@ -187,7 +193,8 @@ public class CoordinatorModeRunner extends AbstractDistBuildModeRunner {
                   distBuildService,
                   minionCountProvider,
                   coordinatorMinionId,
-                  releasingMinionsEarlyEnabled));
+                  releasingMinionsEarlyEnabled,
+                  buildRuleDurationHistory));
       this.server.start();
       this.closer.register(
           service.addCallback("ReportCoordinatorAlive", createHeartbeatCallback()));
@@ -21,6 +21,7 @@ import com.facebook.buck.command.BuildExecutorArgs;
 import com.facebook.buck.command.LocalBuildExecutor;
 import com.facebook.buck.core.build.distributed.synchronization.impl.NoOpRemoteBuildRuleCompletionWaiter;
 import com.facebook.buck.core.build.engine.impl.DefaultRuleDepsCache;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
@@ -135,7 +136,8 @@ public class DistBuildSlaveExecutor {
                   MoreExecutors.directExecutor()),
               args.getHealthCheckStatsTracker(),
               Optional.of(args.getTimingStatsTracker()),
-              Optional.of(DistBuildUtil.generateMinionId(args.getBuildSlaveRunId())));
+              Optional.of(DistBuildUtil.generateMinionId(args.getBuildSlaveRunId())),
+              loadBuildRuleDurationHistory());
       return setPreparationCallbackAndRun(runner);
     }
 
@@ -191,7 +193,8 @@ public class DistBuildSlaveExecutor {
                   args.getExecutorService(),
                   args.getArtifactCacheFactory().remoteOnlyInstance(true, false),
                   args.getTimingStatsTracker(),
-                  args.getHealthCheckStatsTracker());
+                  args.getHealthCheckStatsTracker(),
+                  loadBuildRuleDurationHistory());
           break;
 
         case COORDINATOR:
@@ -206,6 +209,11 @@ public class DistBuildSlaveExecutor {
     }
   }
 
+  private Optional<BuildRuleDurationHistory> loadBuildRuleDurationHistory() {
+    return LocalBuildExecutor.loadBuildRuleDurationHistory(
+        args.getRootCell().getBuckConfig(), args.getRootCell().getFilesystem());
+  }
+
   private Optional<BuildId> fetchClientBuildId() {
     BuildJob job;
     try {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.distributed.build_slave;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.distributed.thrift.CoordinatorBuildProgress;
 import com.facebook.buck.distributed.thrift.MinionType;
 import com.facebook.buck.distributed.thrift.WorkUnit;
@@ -23,12 +24,14 @@ import com.facebook.buck.log.Logger;
 import com.google.common.base.Preconditions;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -49,7 +52,7 @@ public class MinionWorkloadAllocator {
   private final Map<String, WorkUnit> workUnitsByTarget = new HashMap<>();
 
   // These should be immediately re-assigned when capacity becomes available on other minions
-  private Queue<WorkUnit> workUnitsFromFailedMinions = new LinkedList<>();
+  private final Queue<WorkUnit> workUnitsFromFailedMinions;
 
   private final Set<String> failedMinions = new HashSet<>();
   private final Set<String> seenMinions = new HashSet<>();
@@ -85,10 +88,46 @@ public class MinionWorkloadAllocator {
       DistBuildTraceTracker chromeTraceTracker,
       Optional<String> coordinatorMinionId,
       boolean releasingMinionsEarlyEnabled) {
+    this(
+        queue,
+        chromeTraceTracker,
+        coordinatorMinionId,
+        releasingMinionsEarlyEnabled,
+        Optional.empty());
+  }
+
+  /**
+   * @param buildRuleDurationHistory if present, work units from failed minions are re-allocated in
+   *     order of how long their targets took to build previously, most expensive first, so that
+   *     the longest work isn't left to last.
+   */
+  public MinionWorkloadAllocator(
+      BuildTargetsQueue queue,
+      DistBuildTraceTracker chromeTraceTracker,
+      Optional<String> coordinatorMinionId,
+      boolean releasingMinionsEarlyEnabled,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     this.queue = queue;
     this.chromeTraceTracker = chromeTraceTracker;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.workUnitsFromFailedMinions =
+        buildRuleDurationHistory
+            .<Queue<WorkUnit>>map(
+                history ->
+                    new PriorityQueue<>(
+                        Comparator.comparingLong(
+                                (WorkUnit workUnit) -> getEstimatedBuildMillis(history, workUnit))
+                            .reversed()))
+            .orElseGet(LinkedList::new);
+  }
+
+  private static long getEstimatedBuildMillis(BuildRuleDurationHistory history, WorkUnit workUnit) {
+    long estimatedBuildMillis = 0;
+    for (String target : workUnit.getBuildTargets()) {
+      estimatedBuildMillis += history.getEstimatedBuildMillis(target).orElse(0);
+    }
+    return estimatedBuildMillis;
   }
 
   public synchronized boolean isBuildFinished() {
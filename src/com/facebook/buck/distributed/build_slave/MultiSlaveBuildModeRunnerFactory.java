@@ -21,6 +21,7 @@ import static com.facebook.buck.distributed.build_slave.BuildSlaveTimingStatsTra
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.command.BuildExecutor;
 import com.facebook.buck.config.resources.ResourcesConfig;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rulekey.RuleKey;
@@ -78,7 +79,8 @@ public class MultiSlaveBuildModeRunnerFactory {
       ListenableFuture<ParallelRuleKeyCalculator<RuleKey>> asyncRuleKeyCalculator,
       HealthCheckStatsTracker healthCheckStatsTracker,
       Optional<BuildSlaveTimingStatsTracker> timingStatsTracker,
-      Optional<String> coordinatorMinionId) {
+      Optional<String> coordinatorMinionId,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
 
     ListenableFuture<BuildTargetsQueue> queueFuture =
         Futures.transformAsync(
@@ -108,7 +110,8 @@ public class MultiSlaveBuildModeRunnerFactory {
                                 .createBuildTargetsQueue(
                                     topLevelTargetsToBuild,
                                     coordinatorBuildRuleEventsPublisher,
-                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold());
+                                    distBuildConfig.getMostBuildRulesFinishedPercentageThreshold(),
+                                    buildRuleDurationHistory);
                       } catch (Exception e) {
                         LOG.error(e, "Failed to create BuildTargetsQueue.");
                         throw new RuntimeException(e);
@@ -161,7 +164,8 @@ public class MultiSlaveBuildModeRunnerFactory {
         minionHealthTracker,
         listenerAndMinionCountProvider,
         coordinatorMinionId,
-        distBuildConfig.isReleasingMinionsEarlyEnabled());
+        distBuildConfig.isReleasingMinionsEarlyEnabled(),
+        buildRuleDurationHistory);
   }
 
   /**
@@ -236,7 +240,8 @@ public class MultiSlaveBuildModeRunnerFactory {
       ListeningExecutorService executorService,
       ArtifactCache remoteCache,
       BuildSlaveTimingStatsTracker timingStatsTracker,
-      HealthCheckStatsTracker healthCheckStatsTracker) {
+      HealthCheckStatsTracker healthCheckStatsTracker,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     return new CoordinatorAndMinionModeRunner(
         createCoordinator(
             delegateAndGraphsFuture,
@@ -257,7 +262,8 @@ public class MultiSlaveBuildModeRunnerFactory {
                 executorService),
             healthCheckStatsTracker,
             Optional.of(timingStatsTracker),
-            Optional.of(DistBuildUtil.generateMinionId(buildSlaveRunId))),
+            Optional.of(DistBuildUtil.generateMinionId(buildSlaveRunId)),
+            buildRuleDurationHistory),
         createMinion(
             localBuildExecutor,
             distBuildService,
@@ -15,6 +15,7 @@
  */
 package com.facebook.buck.distributed.build_slave;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.distributed.build_slave.DistributableBuildGraph.DistributableNode;
 import com.facebook.buck.distributed.thrift.CoordinatorBuildProgress;
 import com.facebook.buck.distributed.thrift.WorkUnit;
@@ -25,9 +26,13 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -39,6 +44,7 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   private final DistributableBuildGraph distributableBuildGraph;
   private final int totalCacheableNodes;
   private final int mostBuildRulesFinishedPercentageThreshold;
+  private final Optional<BuildRuleDurationHistory> buildRuleDurationHistory;
 
   private final Set<String> seenWorkingCacheableNodes = new HashSet<>();
   private final Set<String> seenFinishedNodes = new HashSet<>();
@@ -51,8 +57,20 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   ReverseDepBuildTargetsQueue(
       DistributableBuildGraph distributableBuildGraph,
       int mostBuildRulesFinishedPercentageThreshold) {
+    this(distributableBuildGraph, mostBuildRulesFinishedPercentageThreshold, Optional.empty());
+  }
+
+  /**
+   * @param buildRuleDurationHistory if present, work units are handed out starting from the ready
+   *     targets which took longest to build previously, so the longest work isn't left to last.
+   */
+  ReverseDepBuildTargetsQueue(
+      DistributableBuildGraph distributableBuildGraph,
+      int mostBuildRulesFinishedPercentageThreshold,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     this.distributableBuildGraph = distributableBuildGraph;
     this.mostBuildRulesFinishedPercentageThreshold = mostBuildRulesFinishedPercentageThreshold;
+    this.buildRuleDurationHistory = buildRuleDurationHistory;
 
     this.zeroDependencyTargets =
         distributableBuildGraph
@@ -125,8 +143,7 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
     }
 
     List<WorkUnit> newUnitsOfWork = new ArrayList<>();
-    createWorkUnitsStartingAtNodes(
-        new HashSet<>(zeroDependencyTargets), newUnitsOfWork, maxUnitsOfWork);
+    createWorkUnitsStartingAtNodes(getReadyNodesInOrder(), newUnitsOfWork, maxUnitsOfWork);
 
     if (newUnitsOfWork.size() > 0) {
       LOG.info(String.format("Returning [%s] work units", newUnitsOfWork.size()));
@@ -135,6 +152,19 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
     return Lists.newArrayList(newUnitsOfWork);
   }
 
+  private Collection<String> getReadyNodesInOrder() {
+    if (!buildRuleDurationHistory.isPresent()) {
+      return new HashSet<>(zeroDependencyTargets);
+    }
+    BuildRuleDurationHistory history = buildRuleDurationHistory.get();
+    List<String> nodes = new ArrayList<>(new LinkedHashSet<>(zeroDependencyTargets));
+    nodes.sort(
+        Comparator.comparingLong(
+                (String node) -> history.getEstimatedBuildMillis(node).orElse(0))
+            .reversed());
+    return nodes;
+  }
+
   private void completeUncachableZeroDependencyNodes() {
     while (uncachableZeroDependencyTargets.size() > 0) {
       String targetName = uncachableZeroDependencyTargets.iterator().next();
@@ -220,7 +250,7 @@ public class ReverseDepBuildTargetsQueue implements BuildTargetsQueue {
   }
 
   private void createWorkUnitsStartingAtNodes(
-      Set<String> nodes, List<WorkUnit> newUnitsOfWork, int maxUnitsOfWork) {
+      Collection<String> nodes, List<WorkUnit> newUnitsOfWork, int maxUnitsOfWork) {
     for (String node : nodes) {
       if (newUnitsOfWork.size() >= maxUnitsOfWork) {
         return;
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.distributed.build_slave;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.distributed.BuildStatusUtil;
 import com.facebook.buck.distributed.DistBuildService;
 import com.facebook.buck.distributed.ExitCode;
@@ -130,6 +131,7 @@ public class ThriftCoordinatorServer implements Closeable {
   private final MinionCountProvider minionCountProvider;
   private final Optional<String> coordinatorMinionId;
   private final boolean releasingMinionsEarlyEnabled;
+  private final Optional<BuildRuleDurationHistory> buildRuleDurationHistory;
   private final Set<String> deadMinions;
 
   private volatile OptionalInt port;
@@ -150,7 +152,8 @@ public class ThriftCoordinatorServer implements Closeable {
       DistBuildService distBuildService,
       MinionCountProvider minionCountProvider,
       Optional<String> coordinatorMinionId,
-      boolean releasingMinionsEarlyEnabled) {
+      boolean releasingMinionsEarlyEnabled,
+      Optional<BuildRuleDurationHistory> buildRuleDurationHistory) {
     this.eventListener = eventListener;
     this.stampedeId = stampedeId;
     this.coordinatorBuildRuleEventsPublisher = coordinatorBuildRuleEventsPublisher;
@@ -159,6 +162,7 @@ public class ThriftCoordinatorServer implements Closeable {
     this.minionCountProvider = minionCountProvider;
     this.coordinatorMinionId = coordinatorMinionId;
     this.releasingMinionsEarlyEnabled = releasingMinionsEarlyEnabled;
+    this.buildRuleDurationHistory = buildRuleDurationHistory;
     this.lock = new Object();
     this.exitCodeFuture = new CompletableFuture<>();
     this.chromeTraceTracker = new DistBuildTraceTracker(stampedeId);
@@ -335,7 +339,11 @@ public class ThriftCoordinatorServer implements Closeable {
       chromeTraceTracker.setBuildGraph(queue.getDistributableBuildGraph());
       allocator =
           new MinionWorkloadAllocator(
-              queue, chromeTraceTracker, coordinatorMinionId, releasingMinionsEarlyEnabled);
+              queue,
+              chromeTraceTracker,
+              coordinatorMinionId,
+              releasingMinionsEarlyEnabled,
+              buildRuleDurationHistory);
       this.handler =
           new ActiveCoordinatorService(
               allocator, exitCodeFuture, coordinatorBuildRuleEventsPublisher, minionHealthTracker);
@@ -146,6 +146,8 @@ public abstract class AbstractReport {
                   Optionals.addIfPresent(input.getMachineReadableLogFile(), result);
                   Optionals.addIfPresent(input.getRuleKeyDiagKeysFile(), result);
                   Optionals.addIfPresent(input.getRuleKeyDiagGraphFile(), result);
+                  Optionals.addIfPresent(input.getCpuProfileFile(), result);
+                  Optionals.addIfPresent(input.getAllocationProfileFile(), result);
                   result.add(input.getRelativePath());
                   return result.build();
                 })
@@ -127,6 +127,17 @@ public class BuildLogHelper {
       builder.setRuleKeyDiagGraphFile(ruleKeyDiagGraphFile);
     }
 
+    Path cpuProfileFile = logFile.getParent().resolve(BuckConstant.CPU_PROFILE_FILE_NAME);
+    if (projectFilesystem.isFile(cpuProfileFile)) {
+      builder.setCpuProfileFile(cpuProfileFile);
+    }
+
+    Path allocationProfileFile =
+        logFile.getParent().resolve(BuckConstant.ALLOCATION_PROFILE_FILE_NAME);
+    if (projectFilesystem.isFile(allocationProfileFile)) {
+      builder.setAllocationProfileFile(allocationProfileFile);
+    }
+
     Optional<Path> traceFile =
         projectFilesystem
             .getFilesUnderPath(logFile.getParent())
@@ -46,6 +46,10 @@ abstract class AbstractBuildLogEntry {
 
   public abstract Optional<Path> getTraceFile();
 
+  public abstract Optional<Path> getCpuProfileFile();
+
+  public abstract Optional<Path> getAllocationProfileFile();
+
   public abstract long getSize();
 
   public abstract Date getLastModifiedTime();
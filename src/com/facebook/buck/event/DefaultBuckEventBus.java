@@ -19,45 +19,59 @@ import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.log.CommandThreadFactory;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.Threads;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.timing.Clock;
-import com.facebook.buck.util.types.Pair;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import com.google.common.eventbus.EventBus;
-import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
-import java.util.concurrent.ExecutorService;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 
-/** Thin wrapper around guava event bus. */
+/**
+ * Event bus which delivers events to listeners registered with {@link
+ * com.google.common.eventbus.Subscribe} methods.
+ *
+ * <p>Asynchronous buses hand events over to a single dispatcher thread through a lock-free ring
+ * buffer (see {@link RingBufferEventDispatcher}), so posting an event is cheap even when many
+ * threads post at the same time. Synchronous buses deliver events on the posting thread.
+ */
 public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus {
 
   private static final Logger LOG = Logger.get(BuckEventBus.class);
 
   public static final int DEFAULT_SHUTDOWN_TIMEOUT_MS = 15000;
 
+  /** The number of events which can be queued before posting threads wait for listeners. */
+  private static final int RING_BUFFER_CAPACITY = 1 << 14;
+
   private static final Supplier<Long> DEFAULT_THREAD_ID_SUPPLIER =
       () -> Thread.currentThread().getId();
   private static final long DEADLOCK_MONITOR_TIME_MS = 2000;
 
   private final Clock clock;
-  private final ExecutorService executorService;
-  private final EventBus eventBus;
+  @Nullable private final RingBufferEventDispatcher<BuckEvent> dispatcher;
+  private final EventSubscribers subscribers;
   private final Supplier<Long> threadIdSupplier;
   private final BuildId buildId;
   private final int shutdownTimeoutMillis;
 
   // TODO(bobyf) remove when printing issue diagnosed
   private final ScheduledExecutorService deadLockDetectorThread;
-  private final AtomicReference<Pair<BuckEvent, Long>> currentEvent = new AtomicReference<>();
+  @Nullable private volatile BuckEvent currentEvent;
+  private volatile long currentEventStartMillis;
 
-  // synchronization variables to ensure proper shutdown
+  // Events posted while the posting thread is delivering events of a synchronous bus are queued
+  // and delivered once it's done, like the dispatcher thread of an asynchronous bus would.
+  private final ThreadLocal<Queue<BuckEvent>> directlyQueuedEvents =
+      ThreadLocal.withInitial(ArrayDeque::new);
+  private final ThreadLocal<Boolean> directlyDispatching = ThreadLocal.withInitial(() -> false);
+
+  // synchronization variables to ensure proper shutdown of synchronous buses
   private volatile int activeTasks = 0;
   private final Object lock = new Object();
 
@@ -69,52 +83,74 @@ public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus
   public DefaultBuckEventBus(
       Clock clock, boolean async, BuildId buildId, int shutdownTimeoutMillis) {
     this.clock = clock;
-    this.executorService =
+    this.subscribers = new EventSubscribers(async);
+    this.dispatcher =
         async
-            ? MostExecutors.newSingleThreadExecutor(
-                new CommandThreadFactory(BuckEventBus.class.getSimpleName()))
-            : MoreExecutors.newDirectExecutorService();
+            ? new RingBufferEventDispatcher<>(
+                RING_BUFFER_CAPACITY,
+                new CommandThreadFactory(BuckEventBus.class.getSimpleName()),
+                this::deliver)
+            : null;
     this.deadLockDetectorThread = new ScheduledThreadPoolExecutor(1);
     this.deadLockDetectorThread.schedule(
         () -> {
           // Assumes Single Threaded event bus dispatching
-          Pair<BuckEvent, Long> current = currentEvent.get();
+          BuckEvent current = currentEvent;
           if (current != null
-              && System.currentTimeMillis() - current.getSecond() > DEADLOCK_MONITOR_TIME_MS) {
-            LOG.warn(
-                "Sending event %s took longer than %d ms",
-                current.getFirst(), DEADLOCK_MONITOR_TIME_MS);
+              && System.currentTimeMillis() - currentEventStartMillis > DEADLOCK_MONITOR_TIME_MS) {
+            LOG.warn("Sending event %s took longer than %d ms", current, DEADLOCK_MONITOR_TIME_MS);
           }
         },
         DEFAULT_SHUTDOWN_TIMEOUT_MS,
         TimeUnit.MILLISECONDS);
-    this.eventBus = new EventBus("buck-build-events");
     this.threadIdSupplier = DEFAULT_THREAD_ID_SUPPLIER;
     this.buildId = buildId;
     this.shutdownTimeoutMillis = shutdownTimeoutMillis;
   }
 
   private void dispatch(BuckEvent event) {
+    if (dispatcher != null) {
+      dispatcher.publish(event);
+      return;
+    }
+
     // keep track the number of active tasks so we can do proper shutdown
     synchronized (lock) {
       activeTasks++;
     }
+    try {
+      Queue<BuckEvent> queue = directlyQueuedEvents.get();
+      queue.add(event);
+      if (directlyDispatching.get()) {
+        return;
+      }
+      directlyDispatching.set(true);
+      try {
+        BuckEvent next;
+        while ((next = queue.poll()) != null) {
+          deliver(next);
+        }
+      } finally {
+        directlyDispatching.remove();
+        directlyQueuedEvents.remove();
+      }
+    } finally {
+      synchronized (lock) {
+        activeTasks--;
+        // notify about task completion; shutdown may wait for it
+        lock.notifyAll();
+      }
+    }
+  }
 
-    executorService.submit(
-        () -> {
-          try {
-            currentEvent.set(new Pair<>(event, System.currentTimeMillis()));
-            eventBus.post(event);
-          } finally {
-            currentEvent.set(null);
-            // event bus should not throw but just in case wrap with try-finally
-            synchronized (lock) {
-              activeTasks--;
-              // notify about task completion; shutdown may wait for it
-              lock.notifyAll();
-            }
-          }
-        });
+  private void deliver(BuckEvent event) {
+    currentEvent = event;
+    currentEventStartMillis = System.currentTimeMillis();
+    try {
+      subscribers.post(event);
+    } finally {
+      currentEvent = null;
+    }
   }
 
   @Override
@@ -137,12 +173,12 @@ public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus
 
   @Override
   public void register(Object object) {
-    eventBus.register(object);
+    subscribers.register(object);
   }
 
   @Override
   public void unregister(Object object) {
-    eventBus.unregister(object);
+    subscribers.unregister(object);
   }
 
   @Override
@@ -169,8 +205,7 @@ public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus
   }
 
   /**
-   * {@link ExecutorService#awaitTermination(long, java.util.concurrent.TimeUnit)} is called to wait
-   * for events which have been posted, but which have been queued by the {@link EventBus}, to be
+   * Waits for events which have been posted, but which have not been delivered yet, to be
    * delivered. This allows listeners to record or report as much information as possible. This aids
    * debugging when close is called during exception processing.
    */
@@ -178,25 +213,25 @@ public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus
   public void close() throws IOException {
     long timeoutTime = System.currentTimeMillis() + shutdownTimeoutMillis;
 
-    // it might have happened that executor service is still processing a task which in turn may
-    // post new tasks to the executor, in this case if we shutdown executor they won't be processed
-    // so first wait for all currently running tasks and their descendants to finish
-    // ideally it should be done inside executorService but it only provides shutdown() method
-    // which immediately stops accepting new tasks, that's why we have some wrapper on top of it
+    // it might have happened that the dispatcher is still delivering an event whose listeners in
+    // turn post new events, in this case if we shut the dispatcher down they won't be delivered
+    // so first wait for all currently posted events and their descendants to be delivered
     waitEvents(shutdownTimeoutMillis);
 
-    executorService.shutdown();
     try {
-      long waitTime = timeoutTime - System.currentTimeMillis();
-      if (waitTime <= 0 || !executorService.awaitTermination(waitTime, TimeUnit.MILLISECONDS)) {
-        LOG.warn(
-            Joiner.on(System.lineSeparator())
-                .join(
-                    "The BuckEventBus failed to shut down within the standard timeout.",
-                    "Your build might have succeeded, but some messages were probably lost.",
-                    "Here's some debugging information:",
-                    executorService.toString()));
-        executorService.shutdownNow();
+      if (dispatcher != null) {
+        dispatcher.shutdown();
+        long waitTime = timeoutTime - System.currentTimeMillis();
+        if (waitTime <= 0 || !dispatcher.awaitTermination(waitTime)) {
+          LOG.warn(
+              Joiner.on(System.lineSeparator())
+                  .join(
+                      "The BuckEventBus failed to shut down within the standard timeout.",
+                      "Your build might have succeeded, but some messages were probably lost.",
+                      "Here's some debugging information:",
+                      dispatcher.toString()));
+          dispatcher.shutdownNow();
+        }
       }
       deadLockDetectorThread.shutdownNow();
     } catch (InterruptedException e) {
@@ -206,6 +241,15 @@ public class DefaultBuckEventBus implements com.facebook.buck.event.BuckEventBus
 
   @Override
   public boolean waitEvents(long timeout) {
+    if (dispatcher != null) {
+      try {
+        return dispatcher.waitUntilIdle(timeout);
+      } catch (InterruptedException e) {
+        Threads.interruptCurrentThread();
+        return false;
+      }
+    }
+
     long startWaitTime = System.nanoTime();
     synchronized (lock) {
       while (activeTasks > 0) {
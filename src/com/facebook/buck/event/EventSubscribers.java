@@ -0,0 +1,236 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.reflect.TypeToken;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Listeners registered on a {@link BuckEventBus}, with the same {@link Subscribe} semantics as
+ * Guava's {@link com.google.common.eventbus.EventBus}, but without its per-event overhead.
+ *
+ * <p>Subscriber methods are bound to their listeners through {@link MethodHandle}s when the
+ * listeners are registered, and the handlers of each event class are resolved once and kept in an
+ * array until the set of listeners changes, so delivering an event involves no reflection, no
+ * hierarchy walks and no allocation.
+ */
+class EventSubscribers {
+
+  private static final Logger LOG = Logger.get(EventSubscribers.class);
+
+  private static final MethodType HANDLER_TYPE = MethodType.methodType(void.class, Object.class);
+  private static final Handler[] NO_HANDLERS = new Handler[0];
+
+  private static final LoadingCache<Class<?>, ImmutableList<Method>> SUBSCRIBER_METHODS =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(CacheLoader.from(EventSubscribers::findSubscriberMethods));
+  private static final LoadingCache<Class<?>, ImmutableSet<Class<?>>> EVENT_TYPES =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              CacheLoader.from(
+                  clazz -> ImmutableSet.copyOf(TypeToken.of(clazz).getTypes().rawTypes())));
+
+  private final boolean singleThreaded;
+  private final Object registrationLock = new Object();
+  private final ConcurrentMap<Class<?>, Handler[]> handlersByEventClass = new ConcurrentHashMap<>();
+
+  /** Handlers of all registered listeners, by listener identity. Guarded by registrationLock. */
+  private final Map<Object, List<Handler>> handlersByListener = new IdentityHashMap<>();
+
+  /**
+   * @param singleThreaded whether events are only ever delivered from a single thread, in which
+   *     case handlers which don't {@link AllowConcurrentEvents} needn't be synchronized.
+   */
+  EventSubscribers(boolean singleThreaded) {
+    this.singleThreaded = singleThreaded;
+  }
+
+  /** Registers all {@link Subscribe} methods of the given listener. */
+  void register(Object listener) {
+    List<Handler> handlers = new ArrayList<>();
+    for (Method method : getSubscriberMethods(listener.getClass())) {
+      handlers.add(new Handler(listener, method));
+    }
+    synchronized (registrationLock) {
+      if (handlersByListener.containsKey(listener)) {
+        return;
+      }
+      handlersByListener.put(listener, handlers);
+      handlersByEventClass.clear();
+    }
+  }
+
+  /** Unregisters all {@link Subscribe} methods of the given listener. */
+  void unregister(Object listener) {
+    synchronized (registrationLock) {
+      Preconditions.checkArgument(
+          handlersByListener.remove(listener) != null
+              || getSubscriberMethods(listener.getClass()).isEmpty(),
+          "missing event subscriber for an annotated method. Is %s registered?",
+          listener);
+      handlersByEventClass.clear();
+    }
+  }
+
+  /** Delivers the given event to all handlers of its class and of its supertypes. */
+  void post(Object event) {
+    for (Handler handler : getHandlers(event.getClass())) {
+      handler.handle(event, singleThreaded);
+    }
+  }
+
+  private Handler[] getHandlers(Class<?> eventClass) {
+    Handler[] handlers = handlersByEventClass.get(eventClass);
+    if (handlers != null) {
+      return handlers;
+    }
+    synchronized (registrationLock) {
+      handlers = handlersByEventClass.get(eventClass);
+      if (handlers == null) {
+        handlers = resolveHandlers(eventClass);
+        handlersByEventClass.put(eventClass, handlers);
+      }
+      return handlers;
+    }
+  }
+
+  private Handler[] resolveHandlers(Class<?> eventClass) {
+    List<Handler> handlers = new ArrayList<>();
+    for (Class<?> eventType : getEventTypes(eventClass)) {
+      for (List<Handler> listenerHandlers : handlersByListener.values()) {
+        for (Handler handler : listenerHandlers) {
+          if (handler.eventType == eventType) {
+            handlers.add(handler);
+          }
+        }
+      }
+    }
+    return handlers.isEmpty() ? NO_HANDLERS : handlers.toArray(NO_HANDLERS);
+  }
+
+  private static ImmutableSet<Class<?>> getEventTypes(Class<?> eventClass) {
+    return EVENT_TYPES.getUnchecked(eventClass);
+  }
+
+  private static ImmutableList<Method> getSubscriberMethods(Class<?> listenerClass) {
+    try {
+      return SUBSCRIBER_METHODS.getUnchecked(listenerClass);
+    } catch (UncheckedExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    }
+  }
+
+  /**
+   * @return all methods annotated with {@link Subscribe} declared by the given class or any of its
+   *     supertypes, where methods overridden in subclasses are only returned once.
+   */
+  private static ImmutableList<Method> findSubscriberMethods(Class<?> listenerClass) {
+    ImmutableList.Builder<Method> methods = ImmutableList.builder();
+    Set<List<Object>> seen = new HashSet<>();
+    for (Class<?> type : TypeToken.of(listenerClass).getTypes().rawTypes()) {
+      for (Method method : type.getDeclaredMethods()) {
+        if (!method.isAnnotationPresent(Subscribe.class) || method.isSynthetic()) {
+          continue;
+        }
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        Preconditions.checkArgument(
+            parameterTypes.length == 1,
+            "Method %s has @Subscribe annotation but has %s parameters."
+                + " Subscriber methods must have exactly 1 parameter.",
+            method,
+            parameterTypes.length);
+        if (seen.add(Arrays.asList(method.getName(), parameterTypes[0]))) {
+          methods.add(method);
+        }
+      }
+    }
+    return methods.build();
+  }
+
+  /** A subscriber method bound to its listener. */
+  private static class Handler {
+    private final Object listener;
+    private final Method method;
+    private final Class<?> eventType;
+    private final MethodHandle handle;
+    private final boolean allowsConcurrentEvents;
+
+    private Handler(Object listener, Method method) {
+      this.listener = listener;
+      this.method = method;
+      this.eventType = method.getParameterTypes()[0];
+      this.allowsConcurrentEvents = method.isAnnotationPresent(AllowConcurrentEvents.class);
+      method.setAccessible(true);
+      try {
+        this.handle =
+            MethodHandles.lookup().unreflect(method).bindTo(listener).asType(HANDLER_TYPE);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    private void handle(Object event, boolean singleThreaded) {
+      if (singleThreaded || allowsConcurrentEvents) {
+        invoke(event);
+      } else {
+        synchronized (this) {
+          invoke(event);
+        }
+      }
+    }
+
+    private void invoke(Object event) {
+      try {
+        handle.invokeExact(event);
+      } catch (Throwable t) {
+        Throwables.throwIfInstanceOf(t, Error.class);
+        LOG.error(
+            t,
+            "Exception thrown by subscriber method %s of %s when dispatching event %s",
+            method,
+            listener,
+            event);
+      }
+    }
+  }
+}
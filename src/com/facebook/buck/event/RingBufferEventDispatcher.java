@@ -0,0 +1,296 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Preconditions;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * Delivers events posted from any number of threads to a consumer running on a single dispatcher
+ * thread, through a bounded ring buffer.
+ *
+ * <p>Publishing an event claims the next sequence of the ring with a compare-and-set and stores the
+ * event in its slot; there are no locks and no per-event allocations. The dispatcher thread
+ * consumes all events published so far in a single batch and only parks once the ring is empty.
+ *
+ * <p>If the consumer falls behind so much that the ring is full, publishers wait for it to catch up
+ * rather than dropping events. Such stalls are counted and reported when the dispatcher is shut
+ * down. Events published by the dispatcher thread itself (i.e. by the consumer) while the ring is
+ * full can't wait for it, so they are consumed immediately instead.
+ */
+class RingBufferEventDispatcher<E> {
+
+  private static final Logger LOG = Logger.get(RingBufferEventDispatcher.class);
+
+  /** How long the dispatcher thread parks at most when idle, as a safety net for lost wakeups. */
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  /** How long publishers park between checks when the ring is full. */
+  private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  /** The value of {@link #claimed} once the dispatcher thread has exited after a shutdown. */
+  private static final long CLOSED = Long.MIN_VALUE;
+
+  private final Consumer<E> consumer;
+  private final ThreadFactory threadFactory;
+  private final int mask;
+  private final Object[] slots;
+
+  /** The sequence most recently published in each slot, or -1 if none was. */
+  private final AtomicLongArray published;
+
+  /** The next sequence to be claimed by a publisher. */
+  private final AtomicLong claimed = new AtomicLong();
+
+  /** The number of events consumed so far, which is the next sequence to consume. */
+  private volatile long consumed;
+
+  private final LongAdder stalls = new LongAdder();
+  private final LongAdder consumedInline = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  private final Object idleLock = new Object();
+  private final AtomicInteger idleWaiters = new AtomicInteger();
+
+  private volatile boolean consumerParked;
+  private volatile boolean shutdown;
+  private volatile boolean abandoned;
+  @Nullable private volatile Thread dispatcherThread;
+
+  /**
+   * @param capacity the number of events which can be published before the consumer has to catch
+   *     up, which must be a power of two.
+   */
+  RingBufferEventDispatcher(int capacity, ThreadFactory threadFactory, Consumer<E> consumer) {
+    Preconditions.checkArgument(
+        capacity > 0 && Integer.bitCount(capacity) == 1, "Capacity must be a power of two.");
+    this.consumer = consumer;
+    this.threadFactory = threadFactory;
+    this.mask = capacity - 1;
+    this.slots = new Object[capacity];
+    this.published = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      published.set(i, -1);
+    }
+  }
+
+  /** Publishes the event to be consumed on the dispatcher thread. */
+  void publish(E event) {
+    if (shutdown) {
+      drop(event);
+      return;
+    }
+    Thread thread = dispatcherThread;
+    if (thread == null) {
+      thread = startDispatcherThread();
+    }
+
+    long sequence;
+    boolean stalled = false;
+    while (true) {
+      sequence = claimed.get();
+      if (sequence == CLOSED) {
+        // The dispatcher thread exited after this publisher checked for a shutdown.
+        drop(event);
+        return;
+      }
+      if (sequence - consumed >= slots.length) {
+        if (Thread.currentThread() == thread) {
+          consumedInline.increment();
+          consumer.accept(event);
+          return;
+        }
+        if (!stalled) {
+          stalled = true;
+          stalls.increment();
+        }
+        LockSupport.parkNanos(this, FULL_PARK_NANOS);
+      } else if (claimed.compareAndSet(sequence, sequence + 1)) {
+        break;
+      }
+    }
+
+    int index = (int) sequence & mask;
+    slots[index] = event;
+    published.set(index, sequence);
+    if (consumerParked) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  private void drop(E event) {
+    dropped.increment();
+    LOG.debug("Dropping event %s published after shutdown.", event);
+  }
+
+  private synchronized Thread startDispatcherThread() {
+    Thread thread = dispatcherThread;
+    if (thread == null) {
+      thread = threadFactory.newThread(this::dispatch);
+      dispatcherThread = thread;
+      thread.start();
+    }
+    return thread;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void dispatch() {
+    long next = consumed;
+    while (!abandoned) {
+      long available = next;
+      while (published.get((int) available & mask) == available) {
+        available++;
+      }
+
+      if (available == next) {
+        // Only exit once no publisher is still filling in a slot it claimed, and make sure none
+        // can claim one afterwards.
+        if (shutdown && claimed.compareAndSet(next, CLOSED)) {
+          notifyIdleWaiters();
+          return;
+        }
+        notifyIdleWaiters();
+        consumerParked = true;
+        if (published.get((int) next & mask) != next) {
+          LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        consumerParked = false;
+        continue;
+      }
+
+      for (long sequence = next; sequence < available && !abandoned; sequence++) {
+        int index = (int) sequence & mask;
+        E event = (E) slots[index];
+        slots[index] = null;
+        try {
+          consumer.accept(event);
+        } catch (Throwable t) {
+          LOG.error(t, "Failed to dispatch event %s.", event);
+        }
+        // Free the slot right away, so that publishers waiting for space don't wait for the batch.
+        consumed = sequence + 1;
+      }
+      next = available;
+    }
+  }
+
+  private void notifyIdleWaiters() {
+    if (idleWaiters.get() > 0) {
+      synchronized (idleLock) {
+        idleLock.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Waits until all events published so far have been consumed.
+   *
+   * @param timeoutMillis the maximum time to wait for, or 0 to wait indefinitely.
+   * @return whether all events have been consumed.
+   */
+  boolean waitUntilIdle(long timeoutMillis) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    synchronized (idleLock) {
+      idleWaiters.incrementAndGet();
+      try {
+        while (consumed < claimed.get()) {
+          long waitMillis = 0;
+          if (timeoutMillis > 0) {
+            waitMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (waitMillis <= 0) {
+              return false;
+            }
+          }
+          idleLock.wait(waitMillis);
+        }
+        return true;
+      } finally {
+        idleWaiters.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Stops accepting events and lets the dispatcher thread exit once it has consumed the events
+   * that were already published.
+   */
+  void shutdown() {
+    shutdown = true;
+    Thread thread = dispatcherThread;
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+    if (stalls.sum() > 0 || consumedInline.sum() > 0) {
+      LOG.debug(
+          "Event dispatcher fell behind: %d publishers waited for space, %d events were"
+              + " dispatched out of order.",
+          stalls.sum(),
+          consumedInline.sum());
+    }
+  }
+
+  /** Waits for the dispatcher thread to exit after {@link #shutdown()}. */
+  boolean awaitTermination(long timeoutMillis) throws InterruptedException {
+    Thread thread = dispatcherThread;
+    if (thread == null) {
+      return true;
+    }
+    thread.join(Math.max(timeoutMillis, 1));
+    return !thread.isAlive();
+  }
+
+  /** Interrupts the dispatcher thread, abandoning the events which weren't consumed yet. */
+  void shutdownNow() {
+    shutdown();
+    abandoned = true;
+    Thread thread = dispatcherThread;
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+
+  /** @return the number of times a publisher had to wait for the consumer to catch up. */
+  long getStalls() {
+    return stalls.sum();
+  }
+
+  /** @return the number of events which were discarded because they were published too late. */
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s{published=%d, consumed=%d, capacity=%d, stalls=%d, dropped=%d}",
+        getClass().getSimpleName(),
+        Math.max(claimed.get(), consumed),
+        consumed,
+        slots.length,
+        stalls.sum(),
+        dropped.sum());
+  }
+}
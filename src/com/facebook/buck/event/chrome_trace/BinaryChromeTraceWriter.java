@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.chrome_trace;
+
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.trace.BinaryChromeTraceFormat;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes Chrome trace events in the compact binary encoding described by {@link
+ * BinaryChromeTraceFormat}, which can be converted to JSON with {@link
+ * com.facebook.buck.util.trace.BinaryChromeTraceReader#convertToJson}.
+ *
+ * <p>Short strings, such as categories, event names, argument keys and target names, are interned
+ * so that each of them is only written once. The table of interned strings is bounded, and strings
+ * seen after it is full are written out in full every time.
+ */
+public class BinaryChromeTraceWriter implements ChromeTraceEventWriter {
+
+  private static final int MAX_INTERNED_STRINGS = 1 << 16;
+  private static final int MAX_INTERNED_STRING_LENGTH = 256;
+
+  private final OutputStream output;
+  private final Map<String, Integer> internedStrings = new HashMap<>();
+  private long previousTimestamp;
+
+  public BinaryChromeTraceWriter(OutputStream traceStream) {
+    this.output = new BufferedOutputStream(traceStream, 64 * 1024);
+  }
+
+  @Override
+  public void writeStart() throws IOException {
+    output.write(BinaryChromeTraceFormat.HEADER);
+  }
+
+  @Override
+  public void writeEvent(ChromeTraceEvent chromeTraceEvent) throws IOException {
+    output.write(BinaryChromeTraceFormat.EVENT);
+    writeString(chromeTraceEvent.getCategory());
+    writeString(chromeTraceEvent.getName());
+    output.write(chromeTraceEvent.getPhase().getPhase().charAt(0));
+    writeSignedVarLong(chromeTraceEvent.getProcessId());
+    writeSignedVarLong(chromeTraceEvent.getThreadId());
+    writeSignedVarLong(chromeTraceEvent.getMicroTime() - previousTimestamp);
+    previousTimestamp = chromeTraceEvent.getMicroTime();
+    writeSignedVarLong(chromeTraceEvent.getMicroThreadUserTime());
+    writeVarLong(chromeTraceEvent.getArgs().size());
+    for (Map.Entry<String, ?> arg : chromeTraceEvent.getArgs().entrySet()) {
+      writeString(arg.getKey());
+      writeValue(arg.getValue());
+    }
+  }
+
+  private void writeValue(Object value) throws IOException {
+    if (value instanceof String) {
+      output.write(BinaryChromeTraceFormat.VALUE_STRING);
+      writeString((String) value);
+    } else if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      output.write(BinaryChromeTraceFormat.VALUE_LONG);
+      writeSignedVarLong(((Number) value).longValue());
+    } else if (value instanceof Double || value instanceof Float) {
+      output.write(BinaryChromeTraceFormat.VALUE_DOUBLE);
+      long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+      for (int shift = 56; shift >= 0; shift -= 8) {
+        output.write((int) (bits >>> shift));
+      }
+    } else if (value instanceof Boolean) {
+      output.write(
+          (Boolean) value
+              ? BinaryChromeTraceFormat.VALUE_TRUE
+              : BinaryChromeTraceFormat.VALUE_FALSE);
+    } else {
+      output.write(BinaryChromeTraceFormat.VALUE_JSON);
+      writeInlineString(ObjectMappers.WRITER.writeValueAsString(value));
+    }
+  }
+
+  private void writeString(String string) throws IOException {
+    Integer index = internedStrings.get(string);
+    if (index != null) {
+      writeVarLong(BinaryChromeTraceFormat.STRING_FIRST_REFERENCE + index);
+    } else if (string.length() <= MAX_INTERNED_STRING_LENGTH
+        && internedStrings.size() < MAX_INTERNED_STRINGS) {
+      internedStrings.put(string, internedStrings.size());
+      writeVarLong(BinaryChromeTraceFormat.STRING_NEW);
+      writeStringBytes(string);
+    } else {
+      writeInlineString(string);
+    }
+  }
+
+  private void writeInlineString(String string) throws IOException {
+    writeVarLong(BinaryChromeTraceFormat.STRING_INLINE);
+    writeStringBytes(string);
+  }
+
+  private void writeStringBytes(String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    writeVarLong(bytes.length);
+    output.write(bytes);
+  }
+
+  private void writeVarLong(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      output.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    output.write((int) value);
+  }
+
+  private void writeSignedVarLong(long value) throws IOException {
+    writeVarLong((value << 1) ^ (value >> 63));
+  }
+
+  @Override
+  public void writeEnd() throws IOException {
+    output.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    output.close();
+  }
+}
@@ -27,6 +27,18 @@ import java.net.URI;
 import java.util.Optional;
 
 public class ChromeTraceBuckConfig implements ConfigView<BuckConfig> {
+
+  /** Encodings in which Chrome traces can be written. */
+  public enum TraceFormat {
+    /** The JSON Array Format, which can be loaded by chrome://tracing as is. */
+    JSON,
+    /**
+     * A compact binary format, which is much cheaper to write. It is converted to JSON on demand by
+     * {@code buck convert-trace} and by the web server.
+     */
+    BINARY,
+  }
+
   private static final String DEFAULT_MAX_TRACES = "25";
 
   private static final String LOG_SECTION = "log";
@@ -52,7 +64,15 @@ public class ChromeTraceBuckConfig implements ConfigView<BuckConfig> {
   }
 
   public boolean getCompressTraces() {
-    return delegate.getBooleanValue(LOG_SECTION, "compress_traces", false);
+    return getTraceFormat() == TraceFormat.JSON
+        && delegate.getBooleanValue(LOG_SECTION, "compress_traces", false);
+  }
+
+  /** Returns the encoding of Chrome traces. Binary traces are never compressed. */
+  public TraceFormat getTraceFormat() {
+    return delegate
+        .getEnum(LOG_SECTION, "trace_format", TraceFormat.class)
+        .orElse(TraceFormat.JSON);
   }
 
   /** Get URL to upload trace if the config is enabled. */
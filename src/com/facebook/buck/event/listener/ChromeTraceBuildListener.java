@@ -36,9 +36,12 @@ import com.facebook.buck.event.RuleKeyCalculationEvent;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.event.StartActivityEvent;
 import com.facebook.buck.event.UninstallEvent;
+import com.facebook.buck.event.chrome_trace.BinaryChromeTraceWriter;
 import com.facebook.buck.event.chrome_trace.ChromeTraceBuckConfig;
+import com.facebook.buck.event.chrome_trace.ChromeTraceBuckConfig.TraceFormat;
 import com.facebook.buck.event.chrome_trace.ChromeTraceEvent;
 import com.facebook.buck.event.chrome_trace.ChromeTraceEvent.Phase;
+import com.facebook.buck.event.chrome_trace.ChromeTraceEventWriter;
 import com.facebook.buck.event.chrome_trace.ChromeTraceWriter;
 import com.facebook.buck.io.WatchmanOverflowEvent;
 import com.facebook.buck.io.file.PathListing;
@@ -56,10 +59,10 @@ import com.facebook.buck.test.external.ExternalTestSpecCalculationEvent;
 import com.facebook.buck.util.Optionals;
 import com.facebook.buck.util.ProcessResourceConsumption;
 import com.facebook.buck.util.Threads;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.perf.PerfStatsTracking;
 import com.facebook.buck.util.perf.ProcessTracker;
 import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
 import com.facebook.buck.util.trace.uploader.launcher.UploaderLauncher;
 import com.facebook.buck.util.trace.uploader.types.CompressionType;
 import com.facebook.buck.util.unit.SizeUnit;
@@ -70,15 +73,18 @@ import com.google.common.base.Joiner;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -91,6 +97,10 @@ import java.util.TimeZone;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -113,13 +123,14 @@ public class ChromeTraceBuildListener implements BuckEventListener {
 
   private static final Logger LOG = Logger.get(ChromeTraceBuildListener.class);
   private static final int TIMEOUT_SECONDS = 30;
+  private static final int MAX_PENDING_TRACE_EVENTS = 64 * 1024;
 
   private final ProjectFilesystem projectFilesystem;
   private final Clock clock;
   private final ThreadLocal<SimpleDateFormat> dateFormat;
   private final Path tracePath;
   private final OutputStream traceStream;
-  private final ChromeTraceWriter chromeTraceWriter;
+  private final ChromeTraceEventWriter chromeTraceWriter;
   private final Path logDirectoryPath;
   private final ChromeTraceBuckConfig config;
   private final Set<Long> threadNamesRecorded = new HashSet<>();
@@ -167,17 +178,45 @@ public class ChromeTraceBuildListener implements BuckEventListener {
         };
     this.threadMXBean = threadMXBean;
     this.config = config;
-    this.outputExecutor =
-        MostExecutors.newSingleThreadExecutor(new CommandThreadFactory(getClass().getName()));
+    this.outputExecutor = newOutputExecutor(new CommandThreadFactory(getClass().getName()));
     TracePathAndStream tracePathAndStream = createPathAndStream(invocationInfo.getBuildId());
     this.tracePath = tracePathAndStream.getPath();
     this.traceStream = tracePathAndStream.getStream();
-    this.chromeTraceWriter = new ChromeTraceWriter(this.traceStream);
+    this.chromeTraceWriter =
+        config.getTraceFormat() == TraceFormat.BINARY
+            ? new BinaryChromeTraceWriter(this.traceStream)
+            : new ChromeTraceWriter(this.traceStream);
     this.chromeTraceWriter.writeStart();
     addProcessMetadataEvent(invocationInfo);
     addProjectFilesystemDelegateMetadataEvent(projectFilesystem);
   }
 
+  /**
+   * Trace events are written on a single background thread. Its queue is bounded, so that the
+   * event bus waits for the writer rather than buffering an unbounded number of events when the
+   * writer falls behind.
+   */
+  private static ExecutorService newOutputExecutor(ThreadFactory threadFactory) {
+    return new ThreadPoolExecutor(
+        1,
+        1,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(MAX_PENDING_TRACE_EVENTS),
+        threadFactory,
+        (task, executor) -> {
+          if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Trace has already been written.");
+          }
+          try {
+            executor.getQueue().put(task);
+          } catch (InterruptedException e) {
+            Threads.interruptCurrentThread();
+            throw new RejectedExecutionException(e);
+          }
+        });
+  }
+
   private void addProcessMetadataEvent(InvocationInfo invocationInfo) {
     writeChromeTraceMetadataEvent(
         "process_name",
@@ -216,15 +255,18 @@ public class ChromeTraceBuildListener implements BuckEventListener {
     Path traceDirectory = projectFilesystem.getPathForRelativePath(logDirectoryPath);
 
     try {
-      for (Path path :
-          PathListing.listMatchingPathsWithFilters(
-              traceDirectory,
-              "build.*.trace",
-              PathListing.GET_PATH_MODIFIED_TIME,
-              PathListing.FilterMode.EXCLUDE,
-              OptionalInt.of(config.getMaxTraces()),
-              Optional.empty())) {
-        projectFilesystem.deleteFileAtPath(path);
+      // JSON copies of binary traces are only created to upload them.
+      for (String pattern : ImmutableList.of("build.*.trace", "build.*.trace.json")) {
+        for (Path path :
+            PathListing.listMatchingPathsWithFilters(
+                traceDirectory,
+                pattern,
+                PathListing.GET_PATH_MODIFIED_TIME,
+                PathListing.FilterMode.EXCLUDE,
+                OptionalInt.of(config.getMaxTraces()),
+                Optional.empty())) {
+          projectFilesystem.deleteFileAtPath(path);
+        }
       }
     } catch (IOException e) {
       LOG.error(e, "Couldn't list paths in trace directory %s", traceDirectory);
@@ -941,6 +983,17 @@ public class ChromeTraceBuildListener implements BuckEventListener {
     }
 
     Path fullPath = projectFilesystem.resolve(tracePath);
+    if (config.getTraceFormat() == TraceFormat.BINARY) {
+      // Trace servers only understand JSON traces.
+      fullPath = fullPath.resolveSibling(fullPath.getFileName() + ".json");
+      try (InputStream binaryTrace = projectFilesystem.newFileInputStream(tracePath);
+          OutputStream jsonTrace = Files.newOutputStream(fullPath)) {
+        BinaryChromeTraceReader.convertToJson(binaryTrace, jsonTrace);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to convert trace %s to JSON for uploading.", tracePath);
+        return;
+      }
+    }
     Path logFile = projectFilesystem.resolve(logDirectoryPath.resolve("upload-build-trace.log"));
 
     UploaderLauncher.uploadInBackground(
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import com.facebook.buck.artifact_cache.ArtifactCacheEvent;
+import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.counters.HotPathMetrics;
+import com.facebook.buck.event.BuckEvent;
+import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.event.EventKey;
+import com.facebook.buck.event.RuleKeyCalculationEvent;
+import com.facebook.buck.parser.ParseEvent;
+import com.facebook.buck.parser.events.ParseBuckFileEvent;
+import com.facebook.buck.step.StepEvent;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.Subscribe;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Times rule key calculations, artifact cache operations, parsing and steps into {@link
+ * HotPathMetrics}, from the events which already mark their beginning and end.
+ *
+ * <p>This listener is only registered while hot path metrics are enabled, so that none of this
+ * bookkeeping happens otherwise.
+ */
+public class HotPathMetricsListener implements BuckEventListener {
+
+  private final ConcurrentMap<EventKey, Long> startNanos = new ConcurrentHashMap<>();
+
+  @Subscribe
+  public void ruleKeyCalculationStarted(RuleKeyCalculationEvent.Started started) {
+    start(started);
+  }
+
+  @Subscribe
+  public void ruleKeyCalculationFinished(RuleKeyCalculationEvent.Finished finished) {
+    finish(
+        finished,
+        "rule_keys",
+        "calculation",
+        ImmutableMap.of("type", finished.getType().getCategory()));
+  }
+
+  @Subscribe
+  public void artifactCacheStarted(ArtifactCacheEvent.Started started) {
+    start(started);
+  }
+
+  @Subscribe
+  public void artifactCacheFinished(ArtifactCacheEvent.Finished finished) {
+    finish(
+        finished,
+        "artifact_cache",
+        finished.getOperation().toString().toLowerCase(),
+        ImmutableMap.of(
+            "mode",
+            finished.getCacheMode().toString(),
+            "result",
+            finished
+                .getCacheResult()
+                .map(result -> result.getType().toString().toLowerCase())
+                .orElse("none")));
+  }
+
+  @Subscribe
+  public void parseStarted(ParseEvent.Started started) {
+    start(started);
+  }
+
+  @Subscribe
+  public void parseFinished(ParseEvent.Finished finished) {
+    finish(finished, "parser", "parse", ImmutableMap.of());
+  }
+
+  @Subscribe
+  public void parseBuckFileStarted(ParseBuckFileEvent.Started started) {
+    start(started);
+  }
+
+  @Subscribe
+  public void parseBuckFileFinished(ParseBuckFileEvent.Finished finished) {
+    finish(finished, "parser", "build_file", ImmutableMap.of());
+  }
+
+  @Subscribe
+  public void stepStarted(StepEvent.Started started) {
+    start(started);
+  }
+
+  @Subscribe
+  public void stepFinished(StepEvent.Finished finished) {
+    finish(finished, "steps", "execution", ImmutableMap.of("step", finished.getShortStepName()));
+  }
+
+  private void start(BuckEvent started) {
+    startNanos.put(started.getEventKey(), started.getNanoTime());
+  }
+
+  private void finish(
+      BuckEvent finished, String category, String name, ImmutableMap<String, String> tags) {
+    Long start = startNanos.remove(finished.getEventKey());
+    if (start != null) {
+      HotPathMetrics.timer(category, name, tags).record(finished.getNanoTime() - start);
+    }
+  }
+
+  @Override
+  public void outputTrace(BuildId buildId) {}
+}
@@ -16,6 +16,8 @@
 
 package com.facebook.buck.event.listener;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
+import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ProgressEvent;
 import com.facebook.buck.log.Logger;
@@ -32,6 +34,7 @@ import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -40,6 +43,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import javax.annotation.Nullable;
 
@@ -75,6 +79,11 @@ public class ProgressEstimator implements AutoCloseable {
   private final AtomicInteger numberOfRules = new AtomicInteger(0);
   private final AtomicInteger numberOfStartedRules = new AtomicInteger(0);
   private final AtomicInteger numberOfFinishedRules = new AtomicInteger(0);
+  private final AtomicLong estimatedMillisOfFinishedRules = new AtomicLong(0);
+
+  // When set, build progress is weighted by how long each rule is expected to take, rather than
+  // counting every rule the same.
+  private volatile Optional<BuildRuleDurationHistory> buildRuleDurationHistory = Optional.empty();
 
   private final AtomicDouble parsingFilesProgress = new AtomicDouble(-1.0);
   private final AtomicDouble projectGenerationProgress = new AtomicDouble(-1.0);
@@ -104,9 +113,18 @@ public class ProgressEstimator implements AutoCloseable {
     numberOfRules.set(0);
     numberOfStartedRules.set(0);
     numberOfFinishedRules.set(0);
+    estimatedMillisOfFinishedRules.set(0);
     buildProgress.set(-1.0);
   }
 
+  /**
+   * Weight build progress by how long rules took in previous builds, so that a build which has
+   * finished all of its cheap rules but none of its expensive ones isn't reported as nearly done.
+   */
+  public void setBuildRuleDurationHistory(BuildRuleDurationHistory buildRuleDurationHistory) {
+    this.buildRuleDurationHistory = Optional.of(buildRuleDurationHistory);
+  }
+
   /**
    * Sets the current command that we are estimating
    *
@@ -202,13 +220,32 @@ public class ProgressEstimator implements AutoCloseable {
   }
 
   public void didFinishRule() {
+    didFinishRule(null);
+  }
+
+  /** Like {@link #didFinishRule()}, but lets the rule be weighted by its expected duration. */
+  public void didFinishRule(@Nullable BuildRule rule) {
+    buildRuleDurationHistory.ifPresent(
+        history ->
+            getEstimatedBuildMillis(history, rule)
+                .ifPresent(estimatedMillisOfFinishedRules::addAndGet));
     numberOfFinishedRules.incrementAndGet();
     calculateBuildProgress();
   }
 
+  private static OptionalLong getEstimatedBuildMillis(
+      BuildRuleDurationHistory history, @Nullable BuildRule rule) {
+    OptionalLong estimate =
+        rule == null
+            ? OptionalLong.empty()
+            : history.getEstimatedBuildMillis(rule.getBuildTarget(), rule.getType());
+    return estimate.isPresent() ? estimate : history.getAverageBuildMillis();
+  }
+
   public void didStartBuild() {
     numberOfStartedRules.set(0);
     numberOfFinishedRules.set(0);
+    estimatedMillisOfFinishedRules.set(0);
   }
 
   public void didFinishBuild() {
@@ -400,6 +437,22 @@ public class ProgressEstimator implements AutoCloseable {
       newValue = -1.0;
     } else {
       double buildProgress = numberOfFinishedRules.get() / ruleCount;
+      OptionalLong averageBuildMillis =
+          buildRuleDurationHistory
+              .map(BuildRuleDurationHistory::getAverageBuildMillis)
+              .orElse(OptionalLong.empty());
+      if (averageBuildMillis.isPresent() && averageBuildMillis.getAsLong() > 0) {
+        // Finished rules are weighted by their own history. Only the number of rules still to go
+        // is known, not which ones they are, so each of them is assumed to take as long as the
+        // average rule.
+        double finishedMillis = estimatedMillisOfFinishedRules.get();
+        double remainingMillis =
+            Math.max(0.0, ruleCount - numberOfFinishedRules.get())
+                * averageBuildMillis.getAsLong();
+        if (finishedMillis + remainingMillis > 0.0) {
+          buildProgress = finishedMillis / (finishedMillis + remainingMillis);
+        }
+      }
       newValue = Math.floor(buildProgress * 100.0) / 100.0;
     }
 
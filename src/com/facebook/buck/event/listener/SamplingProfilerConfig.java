@@ -0,0 +1,71 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import com.facebook.buck.config.BuckConfig;
+import com.facebook.buck.config.ConfigView;
+
+/** Configuration of the {@link SamplingProfilerListener}, in the {@code [log]} section. */
+public class SamplingProfilerConfig implements ConfigView<BuckConfig> {
+
+  private static final String LOG_SECTION = "log";
+
+  private static final long DEFAULT_INTERVAL_MILLIS = 20;
+  private static final int DEFAULT_MAX_STACK_DEPTH = 128;
+
+  private final BuckConfig delegate;
+
+  public static SamplingProfilerConfig of(BuckConfig delegate) {
+    return new SamplingProfilerConfig(delegate);
+  }
+
+  private SamplingProfilerConfig(BuckConfig delegate) {
+    this.delegate = delegate;
+  }
+
+  public boolean isSamplingProfilerEnabled() {
+    return delegate.getBooleanValue(LOG_SECTION, "sampling_profiler_enabled", false);
+  }
+
+  /** Returns how often the stacks of the threads working on a command are sampled. */
+  public long getSamplingIntervalMillis() {
+    return Math.max(
+        1,
+        delegate
+            .getLong(LOG_SECTION, "sampling_profiler_interval_ms")
+            .orElse(DEFAULT_INTERVAL_MILLIS));
+  }
+
+  /** Returns the number of innermost frames kept of each sampled stack. */
+  public int getMaxStackDepth() {
+    return Math.max(
+        1,
+        delegate
+            .getInteger(LOG_SECTION, "sampling_profiler_max_stack_depth")
+            .orElse(DEFAULT_MAX_STACK_DEPTH));
+  }
+
+  /** Returns whether the bytes allocated by sampled threads are profiled as well. */
+  public boolean shouldSampleAllocations() {
+    return delegate.getBooleanValue(LOG_SECTION, "sampling_profiler_allocations", false);
+  }
+
+  @Override
+  public BuckConfig getDelegate() {
+    return delegate;
+  }
+}
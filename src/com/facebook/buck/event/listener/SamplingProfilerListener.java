@@ -0,0 +1,260 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import com.facebook.buck.core.build.event.BuildRuleEvent;
+import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.event.BuckEventListener;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.InvocationInfo;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.log.ThreadIdToCommandIdMapper;
+import com.facebook.buck.step.StepEvent;
+import com.facebook.buck.util.BuckConstant;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.eventbus.Subscribe;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Periodically samples the stacks of the threads working on the current command, and writes them
+ * out as flame graphs next to the Chrome trace once the command has finished.
+ *
+ * <p>Samples are attributed to the build rule and step the thread was running, which become the
+ * outermost frames of its stacks. Only threads which were runnable when sampled count towards the
+ * CPU profile. When allocations are sampled as well, the bytes a thread allocated since it was last
+ * sampled are attributed to the stack it is sampled in, which approximates where they were
+ * allocated the same way allocation profilers sampling thread-local allocation buffers do.
+ *
+ * <p>Profiles are written in the folded stacks format, i.e. one stack per line with its frames
+ * separated by semicolons and followed by its weight, which flamegraph.pl and speedscope render.
+ */
+public class SamplingProfilerListener implements BuckEventListener {
+
+  private static final Logger LOG = Logger.get(SamplingProfilerListener.class);
+
+  private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+  /** Once this many distinct stacks have been seen, further stacks are only counted. */
+  private static final int MAX_DISTINCT_STACKS = 1 << 17;
+
+  private static final String TRUNCATED_STACK = "[truncated]";
+
+  private final InvocationInfo info;
+  private final ProjectFilesystem filesystem;
+  private final ThreadMXBean threadMXBean;
+  private final ThreadIdToCommandIdMapper threadIdToCommandIdMapper;
+  private final ScheduledExecutorService executor;
+  private final int maxStackDepth;
+  @Nullable private final com.sun.management.ThreadMXBean allocationMXBean;
+
+  private final ConcurrentMap<Long, BuildTarget> runningRules = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Long, String> runningSteps = new ConcurrentHashMap<>();
+
+  // Only accessed while holding the monitor of this listener.
+  private final Map<String, Long> cpuSamples = new HashMap<>();
+  private final Map<String, Long> allocatedBytes = new HashMap<>();
+  private final Map<Long, Long> allocatedBytesByThread = new HashMap<>();
+  private long samples;
+
+  public SamplingProfilerListener(
+      InvocationInfo info,
+      ProjectFilesystem filesystem,
+      ThreadMXBean threadMXBean,
+      ThreadIdToCommandIdMapper threadIdToCommandIdMapper,
+      ScheduledExecutorService executor,
+      SamplingProfilerConfig config) {
+    this.info = info;
+    this.filesystem = filesystem;
+    this.threadMXBean = threadMXBean;
+    this.threadIdToCommandIdMapper = threadIdToCommandIdMapper;
+    this.executor = executor;
+    this.maxStackDepth = config.getMaxStackDepth();
+    this.allocationMXBean =
+        config.shouldSampleAllocations() ? getAllocationMXBean(threadMXBean) : null;
+
+    long intervalMillis = config.getSamplingIntervalMillis();
+    executor.scheduleAtFixedRate(
+        this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Nullable
+  private static com.sun.management.ThreadMXBean getAllocationMXBean(ThreadMXBean threadMXBean) {
+    if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+      LOG.warn("Allocations can't be sampled by this JVM.");
+      return null;
+    }
+    com.sun.management.ThreadMXBean allocationMXBean =
+        (com.sun.management.ThreadMXBean) threadMXBean;
+    if (!allocationMXBean.isThreadAllocatedMemorySupported()
+        || !allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+      LOG.warn("Allocations can't be sampled, as thread allocation accounting is disabled.");
+      return null;
+    }
+    return allocationMXBean;
+  }
+
+  @Subscribe
+  public void buildRuleBeginning(BuildRuleEvent.BeginningBuildRuleEvent event) {
+    runningRules.put(event.getThreadId(), event.getBuildRule().getBuildTarget());
+  }
+
+  @Subscribe
+  public void buildRuleEnding(BuildRuleEvent.EndingBuildRuleEvent event) {
+    runningRules.remove(event.getThreadId());
+  }
+
+  @Subscribe
+  public void stepStarted(StepEvent.Started event) {
+    runningSteps.put(event.getThreadId(), event.getShortStepName());
+  }
+
+  @Subscribe
+  public void stepFinished(StepEvent.Finished event) {
+    runningSteps.remove(event.getThreadId());
+  }
+
+  /** Samples the stacks of all threads working on the command, other than the calling one. */
+  @VisibleForTesting
+  synchronized void sample() {
+    long currentThreadId = Thread.currentThread().getId();
+    long[] threadIds =
+        Arrays.stream(threadMXBean.getAllThreadIds())
+            .filter(threadId -> threadId != currentThreadId && isWorkingOnCommand(threadId))
+            .toArray();
+    if (threadIds.length == 0) {
+      return;
+    }
+    samples++;
+
+    ThreadInfo[] threadInfos = threadMXBean.getThreadInfo(threadIds, maxStackDepth);
+    long[] threadAllocatedBytes =
+        allocationMXBean == null ? null : allocationMXBean.getThreadAllocatedBytes(threadIds);
+    for (int i = 0; i < threadIds.length; i++) {
+      ThreadInfo threadInfo = threadInfos[i];
+      if (threadInfo == null) {
+        // The thread has exited in the meantime.
+        continue;
+      }
+      String stack = null;
+      if (threadInfo.getThreadState() == Thread.State.RUNNABLE) {
+        stack = foldStack(threadIds[i], threadInfo.getStackTrace());
+        record(cpuSamples, stack, 1);
+      }
+      if (threadAllocatedBytes != null && threadAllocatedBytes[i] >= 0) {
+        Long previous = allocatedBytesByThread.put(threadIds[i], threadAllocatedBytes[i]);
+        long allocated = previous == null ? 0 : threadAllocatedBytes[i] - previous;
+        if (allocated > 0) {
+          if (stack == null) {
+            stack = foldStack(threadIds[i], threadInfo.getStackTrace());
+          }
+          record(allocatedBytes, stack, allocated);
+        }
+      }
+    }
+  }
+
+  private boolean isWorkingOnCommand(long threadId) {
+    return runningRules.containsKey(threadId)
+        || runningSteps.containsKey(threadId)
+        || info.getCommandId().equals(threadIdToCommandIdMapper.threadIdToCommandId(threadId));
+  }
+
+  /**
+   * @return the frames of the given stack, outermost first, preceded by the build rule and step
+   *     the thread is running, if any.
+   */
+  private String foldStack(long threadId, StackTraceElement[] stackTrace) {
+    StringBuilder stack = new StringBuilder();
+    BuildTarget target = runningRules.get(threadId);
+    if (target != null) {
+      stack.append(target.getFullyQualifiedName()).append(';');
+    }
+    String step = runningSteps.get(threadId);
+    if (step != null) {
+      stack.append("step:").append(step).append(';');
+    }
+    for (int i = stackTrace.length - 1; i >= 0; i--) {
+      StackTraceElement frame = stackTrace[i];
+      stack.append(frame.getClassName()).append('.').append(frame.getMethodName()).append(';');
+    }
+    if (stack.length() > 0) {
+      stack.setLength(stack.length() - 1);
+    }
+    return stack.toString();
+  }
+
+  private static void record(Map<String, Long> weights, String stack, long weight) {
+    if (weights.size() >= MAX_DISTINCT_STACKS && !weights.containsKey(stack)) {
+      stack = TRUNCATED_STACK;
+    }
+    weights.merge(stack, weight, Long::sum);
+  }
+
+  @Override
+  public void outputTrace(BuildId buildId) throws InterruptedException {
+    executor.shutdownNow();
+    if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+      LOG.warn("Sampling profiler didn't stop in time, its profiles may be incomplete.");
+    }
+
+    synchronized (this) {
+      LOG.debug(
+          "Took %d samples, of %d distinct stacks on CPU and %d allocating.",
+          samples, cpuSamples.size(), allocatedBytes.size());
+      writeProfile(cpuSamples, BuckConstant.CPU_PROFILE_FILE_NAME);
+      if (allocationMXBean != null) {
+        writeProfile(allocatedBytes, BuckConstant.ALLOCATION_PROFILE_FILE_NAME);
+      }
+    }
+  }
+
+  private void writeProfile(Map<String, Long> weights, String fileName) {
+    Path path = info.getLogDirectoryPath().resolve(fileName);
+    try {
+      filesystem.createParentDirs(path);
+      try (Writer writer =
+          new BufferedWriter(
+              new OutputStreamWriter(
+                  filesystem.newFileOutputStream(path), StandardCharsets.UTF_8))) {
+        for (Map.Entry<String, Long> entry : weights.entrySet()) {
+          writer.write(entry.getKey());
+          writer.write(' ');
+          writer.write(Long.toString(entry.getValue()));
+          writer.write('\n');
+        }
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to write profile to %s.", path);
+    }
+  }
+}
@@ -17,42 +17,136 @@
 package com.facebook.buck.graph;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Sets;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * An immutable {@link TraversableGraph} which is guaranteed to be acyclic.
+ *
+ * <p>As these graphs can be very large (e.g. the target graph of a big repository) and are held on
+ * to by the daemon, edges are stored compactly: each node is assigned a dense integer id, and the
+ * edges in each direction are stored in compressed sparse row form, i.e. a single array holding
+ * the ids of every node's neighbors, and an array of offsets into it indexed by node id. The edge
+ * sets returned by {@link #getOutgoingNodesFor} and {@link #getIncomingNodesFor} are built from
+ * these arrays the first time a node is queried, and reused after that, so only the parts of the
+ * graph which are actually walked pay for them.
+ */
 public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
 
   private final ImmutableSet<T> nodes;
-  private final ImmutableSetMultimap<T, T> outgoingEdges;
-  private final ImmutableSetMultimap<T, T> incomingEdges;
+  private final ImmutableList<T> nodesById;
+  private final Object2IntMap<T> ids;
+
+  /** The outgoing edges of node {@code i} are {@code outgoingEdges[outgoingOffsets[i]..[i+1])}. */
+  private final int[] outgoingOffsets;
+
+  private final int[] outgoingEdges;
+
+  /** The incoming edges of node {@code i} are {@code incomingEdges[incomingOffsets[i]..[i+1])}. */
+  private final int[] incomingOffsets;
+
+  private final int[] incomingEdges;
+
+  private final AtomicReferenceArray<ImmutableSet<T>> outgoingSets;
+  private final AtomicReferenceArray<ImmutableSet<T>> incomingSets;
 
   public DirectedAcyclicGraph(MutableDirectedGraph<T> graph) {
     Preconditions.checkState(graph.isAcyclic(), "Graph must by acyclic");
     this.nodes = graph.createImmutableCopyOfNodes();
-    this.outgoingEdges = graph.createImmutableCopyOfOutgoingEdges();
-    this.incomingEdges = graph.createImmutableCopyOfIncomingEdges();
+    this.nodesById = nodes.asList();
+
+    Object2IntOpenHashMap<T> ids = new Object2IntOpenHashMap<>(nodesById.size());
+    ids.defaultReturnValue(-1);
+    for (int id = 0; id < nodesById.size(); id++) {
+      ids.put(nodesById.get(id), id);
+    }
+    this.ids = ids;
+
+    int edgeCount = graph.getEdgeCount();
+    this.outgoingOffsets = new int[nodesById.size() + 1];
+    this.outgoingEdges = new int[edgeCount];
+    this.incomingOffsets = new int[nodesById.size() + 1];
+    this.incomingEdges = new int[edgeCount];
+    int outgoing = 0;
+    int incoming = 0;
+    for (int id = 0; id < nodesById.size(); id++) {
+      T node = nodesById.get(id);
+      outgoingOffsets[id] = outgoing;
+      for (T sink : graph.getOutgoingNodesFor(node)) {
+        outgoingEdges[outgoing++] = getId(sink);
+      }
+      incomingOffsets[id] = incoming;
+      for (T source : graph.getIncomingNodesFor(node)) {
+        incomingEdges[incoming++] = getId(source);
+      }
+    }
+    outgoingOffsets[nodesById.size()] = outgoing;
+    incomingOffsets[nodesById.size()] = incoming;
+    this.outgoingSets = new AtomicReferenceArray<>(nodesById.size());
+    this.incomingSets = new AtomicReferenceArray<>(nodesById.size());
+  }
+
+  private int getId(T node) {
+    int id = ids.getInt(node);
+    Preconditions.checkState(id >= 0, "Edge to %s, which is not in the graph", node);
+    return id;
+  }
+
+  private ImmutableSet<T> getNodesFor(
+      Object node, int[] offsets, int[] edges, AtomicReferenceArray<ImmutableSet<T>> sets) {
+    int id = ids.getInt(node);
+    if (id < 0 || offsets[id] == offsets[id + 1]) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet<T> set = sets.get(id);
+    if (set == null) {
+      // Racing threads build equal sets, so it doesn't matter whose is kept.
+      ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+      for (int index = offsets[id]; index < offsets[id + 1]; index++) {
+        builder.add(nodesById.get(edges[index]));
+      }
+      set = builder.build();
+      sets.set(id, set);
+    }
+    return set;
   }
 
   @Override
   public ImmutableSet<T> getOutgoingNodesFor(T source) {
-    return outgoingEdges.get(source);
+    return getOutgoingNodesForObject(source);
+  }
+
+  private ImmutableSet<T> getOutgoingNodesForObject(Object source) {
+    return getNodesFor(source, outgoingOffsets, outgoingEdges, outgoingSets);
   }
 
   @Override
   public ImmutableSet<T> getIncomingNodesFor(T sink) {
-    return incomingEdges.get(sink);
+    return getNodesFor(sink, incomingOffsets, incomingEdges, incomingSets);
+  }
+
+  private ImmutableSet<T> getNodesWithNoEdges(int[] offsets) {
+    ImmutableSet.Builder<T> builder = ImmutableSet.builder();
+    for (int id = 0; id < nodesById.size(); id++) {
+      if (offsets[id] == offsets[id + 1]) {
+        builder.add(nodesById.get(id));
+      }
+    }
+    return builder.build();
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoOutgoingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, outgoingEdges.keySet()));
+    return getNodesWithNoEdges(outgoingOffsets);
   }
 
   @Override
   public ImmutableSet<T> getNodesWithNoIncomingEdges() {
-    return ImmutableSet.copyOf(Sets.difference(nodes, incomingEdges.keySet()));
+    return getNodesWithNoEdges(incomingOffsets);
   }
 
   @Override
@@ -60,6 +154,11 @@ public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
     return nodes;
   }
 
+  /** @return the number of edges in the graph */
+  public int getEdgeCount() {
+    return outgoingEdges.length;
+  }
+
   @Override
   public boolean equals(Object other) {
     if (!(other instanceof DirectedAcyclicGraph)) {
@@ -67,13 +166,20 @@ public class DirectedAcyclicGraph<T> implements TraversableGraph<T> {
     }
 
     DirectedAcyclicGraph<?> that = (DirectedAcyclicGraph<?>) other;
-    return Objects.equals(this.nodes, that.nodes)
-        && Objects.equals(this.outgoingEdges, that.outgoingEdges)
-        && Objects.equals(this.incomingEdges, that.incomingEdges);
+    if (!this.nodes.equals(that.nodes) || this.getEdgeCount() != that.getEdgeCount()) {
+      return false;
+    }
+    // With the same nodes, the incoming edges are implied by the outgoing ones.
+    for (T node : nodes) {
+      if (!getOutgoingNodesFor(node).equals(that.getOutgoingNodesForObject(node))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(nodes, outgoingEdges, incomingEdges);
+    return Objects.hash(nodes, getEdgeCount());
   }
 }
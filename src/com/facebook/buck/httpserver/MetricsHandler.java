@@ -0,0 +1,50 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import com.facebook.buck.counters.HotPathMetrics;
+import com.facebook.buck.counters.PrometheusTextFormat;
+import java.io.IOException;
+import java.io.Writer;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * HTTP handler for requests to the {@code /metrics} path, which exposes the {@link HotPathMetrics}
+ * of the daemon to be scraped by Prometheus.
+ */
+class MetricsHandler extends AbstractHandler {
+
+  @Override
+  public void handle(
+      String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    if (!"GET".equals(baseRequest.getMethod())) {
+      Responses.writeFailedResponse(baseRequest, response);
+      return;
+    }
+
+    response.setContentType(PrometheusTextFormat.CONTENT_TYPE);
+    response.setStatus(HttpServletResponse.SC_OK);
+    Writer writer = response.getWriter();
+    PrometheusTextFormat.write(HotPathMetrics.getCounters(), writer);
+    writer.flush();
+    baseRequest.setHandled(true);
+  }
+}
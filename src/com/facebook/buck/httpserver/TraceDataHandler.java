@@ -16,10 +16,15 @@
 
 package com.facebook.buck.httpserver;
 
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.trace.BinaryChromeTraceFormat;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
 import com.facebook.buck.util.trace.BuildTraces;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.CharStreams;
 import com.google.common.net.MediaType;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -93,9 +98,16 @@ class TraceDataHandler extends AbstractHandler {
       } else {
         isFirst = false;
       }
-      try (InputStream input = traceStreams.next();
-          InputStreamReader inputStreamReader = new InputStreamReader(input)) {
-        CharStreams.copy(inputStreamReader, responseWriter);
+      try (InputStream input = new BufferedInputStream(traceStreams.next())) {
+        if (BinaryChromeTraceFormat.isBinaryTrace(input)) {
+          JsonGenerator generator = ObjectMappers.createGenerator(responseWriter);
+          BinaryChromeTraceReader.convertToJson(input, generator);
+          generator.flush();
+        } else {
+          try (InputStreamReader inputStreamReader = new InputStreamReader(input)) {
+            CharStreams.copy(inputStreamReader, responseWriter);
+          }
+        }
       }
     }
 
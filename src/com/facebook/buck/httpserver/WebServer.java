@@ -57,6 +57,7 @@ public class WebServer {
 
   private static final String INDEX_CONTEXT_PATH = "/";
   private static final String ARTIFACTS_CONTEXT_PATH = "/artifacts";
+  private static final String METRICS_CONTEXT_PATH = "/metrics";
   private static final String STATIC_CONTEXT_PATH = "/static";
   private static final String TRACE_CONTEXT_PATH = "/trace";
   private static final String TRACES_CONTEXT_PATH = "/traces";
@@ -165,6 +166,7 @@ public class WebServer {
         TRACES_CONTEXT_PATH, new TemplateHandler(new TracesHandlerDelegate(buildTraces)));
     contextPathToHandler.put(TRACE_DATA_CONTEXT_PATH, new TraceDataHandler(buildTraces));
     contextPathToHandler.put(ARTIFACTS_CONTEXT_PATH, artifactCacheHandler);
+    contextPathToHandler.put(METRICS_CONTEXT_PATH, new MetricsHandler());
 
     ImmutableList.Builder<ContextHandler> handlers = ImmutableList.builder();
     for (Map.Entry<String, Handler> entry : contextPathToHandler.entrySet()) {
@@ -17,16 +17,24 @@
 package com.facebook.buck.io.filesystem.impl;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystemDelegate;
+import com.facebook.buck.util.environment.Platform;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Funnels;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Default implementation of {@link ProjectFilesystemDelegate} that talks to the filesystem via
@@ -34,6 +42,18 @@ import java.nio.file.Path;
  */
 public final class DefaultProjectFilesystemDelegate implements ProjectFilesystemDelegate {
 
+  /**
+   * Files are never hashed via a memory mapping on Windows, where a mapped file can't be modified
+   * or deleted until the mapping is garbage collected.
+   */
+  private static final boolean CAN_MAP_FILES = Platform.detect() != Platform.WINDOWS;
+
+  /** Files at least this large are hashed via a memory mapping. */
+  private static final long MAPPED_HASHING_THRESHOLD_BYTES = 1024 * 1024;
+
+  /** The largest region of a file which is mapped at once. */
+  private static final long MAPPED_HASHING_CHUNK_BYTES = 64 * 1024 * 1024;
+
   private final Path root;
 
   public DefaultProjectFilesystemDelegate(Path root) {
@@ -49,6 +69,27 @@ public final class DefaultProjectFilesystemDelegate implements ProjectFilesystem
   public Sha1HashCode computeSha1(Path pathRelativeToProjectRootOrJustAbsolute) throws IOException {
     Path fileToHash = getPathForRelativePath(pathRelativeToProjectRootOrJustAbsolute);
 
+    if (CAN_MAP_FILES && fileToHash.getFileSystem().equals(FileSystems.getDefault())) {
+      try (FileChannel channel = FileChannel.open(fileToHash, StandardOpenOption.READ)) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        long size = channel.size();
+        if (size >= MAPPED_HASHING_THRESHOLD_BYTES) {
+          // Hashing a mapping of large files avoids copying their contents through a buffer on
+          // the heap, and lets the OS read ahead of the hasher.
+          for (long position = 0; position < size; position += MAPPED_HASHING_CHUNK_BYTES) {
+            hasher.putBytes(
+                channel.map(
+                    FileChannel.MapMode.READ_ONLY,
+                    position,
+                    Math.min(MAPPED_HASHING_CHUNK_BYTES, size - position)));
+          }
+        } else {
+          ByteStreams.copy(Channels.newInputStream(channel), Funnels.asOutputStream(hasher));
+        }
+        return Sha1HashCode.fromHashCode(hasher.hash());
+      }
+    }
+
     // Normally, we would just use `Files.hash(fileToHash.toFile(), Hashing.sha1())`, but if
     // fileToHash is backed by Jimfs, its toFile() method throws an UnsupportedOperationException.
     // Creating the input stream via java.nio.file.Files.newInputStream() avoids this issue.
@@ -50,6 +50,11 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
   public enum SkylarkGlobHandler {
     JAVA,
     WATCHMAN,
+    /**
+     * Evaluates globs in Java like {@link #JAVA}, but lists directories through an in-memory index
+     * which the daemon keeps up to date with Watchman events.
+     */
+    INDEX,
     ;
   }
 
@@ -72,6 +77,14 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
     ;
   }
 
+  /** Where the manifests of parsed build files are cached, if anywhere. */
+  public enum BuildFileManifestCacheMode {
+    NONE,
+    LOCAL,
+    SHARED,
+    ;
+  }
+
   /** Controls whether default flavors should be applied to unflavored targets. */
   public enum ApplyDefaultFlavorsMode {
     ENABLED,
@@ -285,6 +298,26 @@ abstract class AbstractParserConfig implements ConfigView<BuckConfig> {
         .orElse(SkylarkGlobHandler.JAVA);
   }
 
+  /**
+   * @return where the manifests of build files parsed by the Skylark parser are cached: not at all,
+   *     in a local directory, or also in the artifact cache so that other machines can use them.
+   */
+  @Value.Lazy
+  public BuildFileManifestCacheMode getBuildFileManifestCacheMode() {
+    return getDelegate()
+        .getEnum("parser", "build_file_manifest_cache", BuildFileManifestCacheMode.class)
+        .orElse(BuildFileManifestCacheMode.NONE);
+  }
+
+  /**
+   * @return whether the daemon should keep a snapshot of its parser state on disk, which a new
+   *     daemon restores instead of parsing every build file from scratch.
+   */
+  @Value.Lazy
+  public boolean isDaemonParserStateSnapshotEnabled() {
+    return getDelegate().getBooleanValue("parser", "daemon_state_snapshot", false);
+  }
+
   /**
    * @return the parser target threshold. When the current targets produced exceed this value, a
    *     warning is emitted.
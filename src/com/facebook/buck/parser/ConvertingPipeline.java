@@ -41,6 +41,14 @@ import java.util.concurrent.atomic.AtomicLong;
  * @param <T> Type to convert to (TargetNode, for example)
  */
 public abstract class ConvertingPipeline<F, T> extends ParsePipeline<T> {
+
+  /**
+   * Build files defining at least this many nodes have them converted in parallel, rather than one
+   * after the other. Smaller ones are converted in one go, as most of the time there are enough of
+   * them being processed in parallel to keep every thread busy.
+   */
+  private static final int MIN_NODES_TO_CONVERT_IN_PARALLEL = 16;
+
   private final PipelineNodeCache<BuildTarget, T> cache;
   protected final ListeningExecutorService executorService;
 
@@ -67,6 +75,8 @@ public abstract class ConvertingPipeline<F, T> extends ParsePipeline<T> {
               }
 
               ImmutableList.Builder<ListenableFuture<T>> allNodeJobs = ImmutableList.builder();
+              // A build file with thousands of nodes would otherwise leave a long serial tail.
+              boolean convertInParallel = allToConvert.size() >= MIN_NODES_TO_CONVERT_IN_PARALLEL;
 
               for (F from : allToConvert) {
                 if (isValid(from)) {
@@ -80,6 +90,13 @@ public abstract class ConvertingPipeline<F, T> extends ParsePipeline<T> {
                             if (shuttingDown()) {
                               return Futures.immediateCancelledFuture();
                             }
+                            if (convertInParallel) {
+                              return Futures.submitAsync(
+                                  () ->
+                                      dispatchComputeNode(
+                                          cell, knownBuildRuleTypes, target, processedBytes, from),
+                                  executorService);
+                            }
                             return dispatchComputeNode(
                                 cell, knownBuildRuleTypes, target, processedBytes, from);
                           },
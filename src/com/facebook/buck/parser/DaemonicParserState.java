@@ -35,6 +35,8 @@ import com.facebook.buck.parser.exceptions.BuildTargetException;
 import com.facebook.buck.parser.thrift.RemoteDaemonicCellState;
 import com.facebook.buck.parser.thrift.RemoteDaemonicParserState;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.skylark.io.impl.DirectoryIndex;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
 import com.google.common.base.Preconditions;
@@ -293,6 +295,13 @@ public class DaemonicParserState {
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  /** Directory listings used to evaluate globs in all cells. */
+  private final DirectoryIndex directoryIndex = new DirectoryIndex();
+
+  /** Skylark extensions loaded by the parsers of each cell, keyed by the root of the cell. */
+  private final LoadingCache<Path, SkylarkExtensionCache> skylarkExtensionCaches =
+      CacheBuilder.newBuilder().build(CacheLoader.from(cellRoot -> new SkylarkExtensionCache()));
+
   /**
    * The default includes used by the previous run of the parser in each cell (the key is the cell's
    * root path). If this value changes, then we need to invalidate all the caches.
@@ -360,6 +369,16 @@ public class DaemonicParserState {
     return buildFileTrees;
   }
 
+  /** @return the index of directory listings used to evaluate globs. */
+  DirectoryIndex getDirectoryIndex() {
+    return directoryIndex;
+  }
+
+  /** @return the Skylark extensions loaded by the parsers of the given cell. */
+  SkylarkExtensionCache getSkylarkExtensionCache(Cell cell) {
+    return skylarkExtensionCaches.getUnchecked(cell.getRoot());
+  }
+
   /**
    * Retrieve the cache view for caching a particular type.
    *
@@ -456,6 +475,9 @@ public class DaemonicParserState {
       }
     }
 
+    if (isPathCreateOrDeleteEvent(event)) {
+      directoryIndex.invalidate(fullPath);
+    }
     invalidatePath(fullPath);
   }
 
@@ -509,6 +531,9 @@ public class DaemonicParserState {
       }
     }
 
+    if (isCreatedOrDeleted) {
+      directoryIndex.invalidate(fullPath);
+    }
     invalidatePath(fullPath);
   }
 
@@ -521,6 +546,9 @@ public class DaemonicParserState {
         invalidatePath(state, path);
       }
     }
+    skylarkExtensionCaches
+        .asMap()
+        .forEach((cellRoot, extensionCache) -> extensionCache.invalidate(cellRoot.resolve(path)));
   }
 
   /**
@@ -668,6 +696,7 @@ public class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      skylarkExtensionCaches.invalidate(cell.getRoot());
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -684,6 +713,8 @@ public class DaemonicParserState {
       boolean invalidated = !cellPathToDaemonicState.isEmpty();
       cellPathToDaemonicState.clear();
       buildFileTrees.invalidateAll();
+      skylarkExtensionCaches.invalidateAll();
+      directoryIndex.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.description.attr.ImplicitFlavorsInferringDescription;
 import com.facebook.buck.core.exceptions.HumanReadableException;
@@ -83,17 +84,33 @@ public class DefaultParser implements Parser {
       KnownBuildRuleTypesProvider knownBuildRuleTypesProvider,
       ExecutableFinder executableFinder,
       TargetSpecResolver targetSpecResolver) {
-    this.perBuildStateFactory = new PerBuildStateFactory();
-    this.typeCoercerFactory = typeCoercerFactory;
-    this.permState =
+    this(
+        new PerBuildStateFactory(),
         new DaemonicParserState(
             typeCoercerFactory,
             parserConfig.getNumParsingThreads(),
-            parserConfig.shouldIgnoreEnvironmentVariablesChanges());
+            parserConfig.shouldIgnoreEnvironmentVariablesChanges()),
+        marshaller,
+        typeCoercerFactory,
+        knownBuildRuleTypesProvider,
+        new ParserPythonInterpreterProvider(parserConfig, executableFinder),
+        targetSpecResolver);
+  }
+
+  private DefaultParser(
+      PerBuildStateFactory perBuildStateFactory,
+      DaemonicParserState permState,
+      ConstructorArgMarshaller marshaller,
+      TypeCoercerFactory typeCoercerFactory,
+      KnownBuildRuleTypesProvider knownBuildRuleTypesProvider,
+      ParserPythonInterpreterProvider parserPythonInterpreterProvider,
+      TargetSpecResolver targetSpecResolver) {
+    this.perBuildStateFactory = perBuildStateFactory;
+    this.permState = permState;
     this.marshaller = marshaller;
+    this.typeCoercerFactory = typeCoercerFactory;
     this.knownBuildRuleTypesProvider = knownBuildRuleTypesProvider;
-    this.parserPythonInterpreterProvider =
-        new ParserPythonInterpreterProvider(parserConfig, executableFinder);
+    this.parserPythonInterpreterProvider = parserPythonInterpreterProvider;
     this.targetSpecResolver = targetSpecResolver;
   }
 
@@ -503,4 +520,16 @@ public class DefaultParser implements Parser {
   public void register(EventBus eventBus) {
     eventBus.register(permState);
   }
+
+  @Override
+  public Parser withBuildFileManifestArtifactCache(ArtifactCache artifactCache) {
+    return new DefaultParser(
+        new PerBuildStateFactory(Optional.of(artifactCache)),
+        permState,
+        marshaller,
+        typeCoercerFactory,
+        knownBuildRuleTypesProvider,
+        parserPythonInterpreterProvider,
+        targetSpecResolver);
+  }
 }
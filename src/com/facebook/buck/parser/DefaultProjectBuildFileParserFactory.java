@@ -30,16 +30,20 @@ import com.facebook.buck.json.TargetCountVerificationParserDelegate;
 import com.facebook.buck.parser.AbstractParserConfig.SkylarkGlobHandler;
 import com.facebook.buck.parser.api.ProjectBuildFileParser;
 import com.facebook.buck.parser.api.Syntax;
+import com.facebook.buck.parser.cache.BuildFileManifestCache;
+import com.facebook.buck.parser.cache.CachingProjectBuildFileParser;
 import com.facebook.buck.parser.decorators.EventReportingProjectBuildFileParser;
 import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.skylark.io.GlobberFactory;
+import com.facebook.buck.skylark.io.impl.DirectoryIndex;
 import com.facebook.buck.skylark.io.impl.HybridGlobberFactory;
 import com.facebook.buck.skylark.io.impl.NativeGlobber;
 import com.facebook.buck.skylark.io.impl.SyncCookieState;
 import com.facebook.buck.skylark.parser.BuckGlobals;
 import com.facebook.buck.skylark.parser.ConsoleEventHandler;
 import com.facebook.buck.skylark.parser.RuleFunctionFactory;
+import com.facebook.buck.skylark.parser.SkylarkExtensionCache;
 import com.facebook.buck.skylark.parser.SkylarkProjectBuildFileParser;
 import com.facebook.buck.util.Console;
 import com.facebook.buck.util.DefaultProcessExecutor;
@@ -50,6 +54,7 @@ import com.google.devtools.build.lib.syntax.EvalException;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.function.Function;
 
 public class DefaultProjectBuildFileParserFactory implements ProjectBuildFileParserFactory {
   private final TypeCoercerFactory typeCoercerFactory;
@@ -57,18 +62,52 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
   private final ParserPythonInterpreterProvider pythonInterpreterProvider;
   private final KnownBuildRuleTypesProvider knownBuildRuleTypesProvider;
   private final boolean enableProfiling;
+  private final Optional<BuildFileManifestCache> manifestCache;
+  private final Function<Cell, SkylarkExtensionCache> skylarkExtensionCaches;
+  private final DirectoryIndex directoryIndex;
 
+  /**
+   * @param manifestCache cache for the manifests of build files parsed by the Skylark parser, which
+   *     is the only one that records enough about what a build file depends on to cache it.
+   * @param skylarkExtensionCaches provides the extensions already loaded in each cell, which the
+   *     Skylark parsers of that cell share.
+   * @param directoryIndex directory listings used to evaluate globs when the Skylark parser is
+   *     configured to use the {@link SkylarkGlobHandler#INDEX} glob handler.
+   */
   public DefaultProjectBuildFileParserFactory(
       TypeCoercerFactory typeCoercerFactory,
       Console console,
       ParserPythonInterpreterProvider pythonInterpreterProvider,
       KnownBuildRuleTypesProvider knownBuildRuleTypesProvider,
-      boolean enableProfiling) {
+      boolean enableProfiling,
+      Optional<BuildFileManifestCache> manifestCache,
+      Function<Cell, SkylarkExtensionCache> skylarkExtensionCaches,
+      DirectoryIndex directoryIndex) {
     this.typeCoercerFactory = typeCoercerFactory;
     this.console = console;
     this.pythonInterpreterProvider = pythonInterpreterProvider;
     this.knownBuildRuleTypesProvider = knownBuildRuleTypesProvider;
     this.enableProfiling = enableProfiling;
+    this.manifestCache = manifestCache;
+    this.skylarkExtensionCaches = skylarkExtensionCaches;
+    this.directoryIndex = directoryIndex;
+  }
+
+  public DefaultProjectBuildFileParserFactory(
+      TypeCoercerFactory typeCoercerFactory,
+      Console console,
+      ParserPythonInterpreterProvider pythonInterpreterProvider,
+      KnownBuildRuleTypesProvider knownBuildRuleTypesProvider,
+      boolean enableProfiling) {
+    this(
+        typeCoercerFactory,
+        console,
+        pythonInterpreterProvider,
+        knownBuildRuleTypesProvider,
+        enableProfiling,
+        Optional.empty(),
+        cell -> new SkylarkExtensionCache(),
+        new DirectoryIndex());
   }
 
   public DefaultProjectBuildFileParserFactory(
@@ -136,7 +175,15 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
             .build();
     return EventReportingProjectBuildFileParser.of(
         createProjectBuildFileParser(
-            cell, typeCoercerFactory, console, eventBus, parserConfig, buildFileParserOptions),
+            cell,
+            typeCoercerFactory,
+            console,
+            eventBus,
+            parserConfig,
+            buildFileParserOptions,
+            manifestCache,
+            skylarkExtensionCaches.apply(cell),
+            directoryIndex),
         eventBus);
   }
 
@@ -153,7 +200,10 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       Console console,
       BuckEventBus eventBus,
       ParserConfig parserConfig,
-      ProjectBuildFileParserOptions buildFileParserOptions) {
+      ProjectBuildFileParserOptions buildFileParserOptions,
+      Optional<BuildFileManifestCache> manifestCache,
+      SkylarkExtensionCache skylarkExtensionCache,
+      DirectoryIndex directoryIndex) {
     ProjectBuildFileParser parser;
     Syntax defaultBuildFileSyntax = parserConfig.getDefaultBuildFileSyntax();
     if (parserConfig.isPolyglotParsingEnabled()) {
@@ -169,7 +219,10 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                       typeCoercerFactory,
                       eventBus,
                       buildFileParserOptions,
-                      parserConfig.getSkylarkGlobHandler())),
+                      parserConfig.getSkylarkGlobHandler(),
+                      manifestCache,
+                      skylarkExtensionCache,
+                      directoryIndex)),
               defaultBuildFileSyntax);
     } else {
       switch (defaultBuildFileSyntax) {
@@ -180,7 +233,10 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
                   typeCoercerFactory,
                   eventBus,
                   buildFileParserOptions,
-                  parserConfig.getSkylarkGlobHandler());
+                  parserConfig.getSkylarkGlobHandler(),
+                  manifestCache,
+                  skylarkExtensionCache,
+                  directoryIndex);
           break;
         case PYTHON_DSL:
           parser =
@@ -214,15 +270,20 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
         new DefaultProcessExecutor(console));
   }
 
-  private static SkylarkProjectBuildFileParser newSkylarkParser(
+  private static ProjectBuildFileParser newSkylarkParser(
       Cell cell,
       TypeCoercerFactory typeCoercerFactory,
       BuckEventBus eventBus,
       ProjectBuildFileParserOptions buildFileParserOptions,
-      SkylarkGlobHandler skylarkGlobHandler) {
+      SkylarkGlobHandler skylarkGlobHandler,
+      Optional<BuildFileManifestCache> manifestCache,
+      SkylarkExtensionCache skylarkExtensionCache,
+      DirectoryIndex directoryIndex) {
     GlobberFactory globberFactory;
     try {
-      globberFactory = getSkylarkGlobberFactory(cell, buildFileParserOptions, skylarkGlobHandler);
+      globberFactory =
+          getSkylarkGlobberFactory(
+              cell, buildFileParserOptions, skylarkGlobHandler, directoryIndex);
     } catch (IOException e) {
       throw new RuntimeException(
           "Watchman glob handler was requested, but Watchman client cannot be created", e);
@@ -243,28 +304,42 @@ public class DefaultProjectBuildFileParserFactory implements ProjectBuildFilePar
       augmentor = new HumanReadableExceptionAugmentor(ImmutableMap.of());
     }
 
+    SkylarkFilesystem fileSystem = SkylarkFilesystem.using(cell.getFilesystem());
+    ProjectBuildFileParser parser;
     try {
-      return SkylarkProjectBuildFileParser.using(
-          buildFileParserOptions,
-          eventBus,
-          SkylarkFilesystem.using(cell.getFilesystem()),
-          buckGlobals,
-          new ConsoleEventHandler(
+      parser =
+          SkylarkProjectBuildFileParser.using(
+              buildFileParserOptions,
               eventBus,
-              EventKind.ALL_EVENTS,
-              ImmutableSet.copyOf(buckGlobals.getNativeModule().getFieldNames()),
-              augmentor),
-          globberFactory);
+              fileSystem,
+              buckGlobals,
+              new ConsoleEventHandler(
+                  eventBus,
+                  EventKind.ALL_EVENTS,
+                  ImmutableSet.copyOf(buckGlobals.getNativeModule().getFieldNames()),
+                  augmentor),
+              globberFactory,
+              skylarkExtensionCache);
     } catch (EvalException e) {
       throw new RuntimeException(e);
     }
+    if (manifestCache.isPresent()) {
+      parser =
+          CachingProjectBuildFileParser.of(
+              parser, manifestCache.get(), buildFileParserOptions, fileSystem, globberFactory);
+    }
+    return parser;
   }
 
   private static GlobberFactory getSkylarkGlobberFactory(
       Cell cell,
       ProjectBuildFileParserOptions buildFileParserOptions,
-      SkylarkGlobHandler skylarkGlobHandler)
+      SkylarkGlobHandler skylarkGlobHandler,
+      DirectoryIndex directoryIndex)
       throws IOException {
+    if (skylarkGlobHandler == SkylarkGlobHandler.INDEX) {
+      return basePath -> NativeGlobber.create(basePath, directoryIndex);
+    }
     SyncCookieState syncCookieState = new SyncCookieState();
     return skylarkGlobHandler == SkylarkGlobHandler.JAVA
             || cell.getWatchman() == WatchmanFactory.NULL_WATCHMAN
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.model.targetgraph.TargetGraph;
@@ -129,4 +130,10 @@ public interface Parser {
       throws BuildFileParseException, InterruptedException, IOException;
 
   void register(EventBus eventBus);
+
+  /**
+   * @return a parser sharing this one's state, which also shares the manifests of the build files
+   *     it parses through the given cache, if configured to.
+   */
+  Parser withBuildFileManifestArtifactCache(ArtifactCache artifactCache);
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import com.facebook.buck.core.cell.Cell;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.parser.thrift.RemoteDaemonicParserState;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A copy of the {@link DaemonicParserState} on disk, which lets a new daemon start with the build
+ * files parsed by its predecessor instead of parsing all of them again.
+ *
+ * <p>The snapshot records the Watchman clock of each cell which the state was up to date with when
+ * it was taken. A daemon which restores it resumes watching from those clocks, so that changes made
+ * in the meantime invalidate the affected build files in the usual way, and a Watchman restart in
+ * the meantime (reported as a fresh instance) invalidates everything. Snapshots taken by another
+ * version of Buck, or with a different parser configuration, are ignored.
+ */
+public class ParserStateSnapshot {
+
+  private static final Logger LOG = Logger.get(ParserStateSnapshot.class);
+
+  private static final int VERSION = 0;
+
+  private final Path path;
+  private final String buckVersion;
+
+  @VisibleForTesting
+  ParserStateSnapshot(Path path, String buckVersion) {
+    this.path = path;
+    this.buckVersion = buckVersion;
+  }
+
+  /** @return a snapshot stored in the scratch directory of the given root cell. */
+  public static ParserStateSnapshot of(Cell rootCell, String buckVersion) {
+    ProjectFilesystem filesystem = rootCell.getFilesystem();
+    return new ParserStateSnapshot(
+        filesystem.resolve(filesystem.getBuckPaths().getScratchDir().resolve("parser_state")),
+        buckVersion);
+  }
+
+  /**
+   * Write the given state to disk, replacing any previous snapshot atomically.
+   *
+   * @param clocks the Watchman clock, for each cell root, which the state reflects all changes up
+   *     to. These must be read before the state is serialized, while no changes are being applied.
+   */
+  public void save(DaemonicParserState state, Cell rootCell, ImmutableMap<Path, String> clocks)
+      throws IOException {
+    RemoteDaemonicParserState remote = state.serializeDaemonicParserState(rootCell);
+    Files.createDirectories(path.getParent());
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (ObjectOutputStream output =
+        new ObjectOutputStream(
+            new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))) {
+      output.writeInt(VERSION);
+      output.writeUTF(buckVersion);
+      output.writeUTF(getConfigFingerprint(rootCell));
+      output.writeInt(clocks.size());
+      for (Map.Entry<Path, String> clock : clocks.entrySet()) {
+        output.writeUTF(rootCell.getRoot().relativize(clock.getKey()).toString());
+        output.writeUTF(clock.getValue());
+      }
+      output.writeObject(remote);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("Saved parser state for %d cells to %s.", remote.getCellPathsSize(), path);
+  }
+
+  /**
+   * Restore the given (empty) state from disk, if there's a usable snapshot.
+   *
+   * @return the Watchman clock, for each cell root, which the restored state is up to date with,
+   *     or nothing if the snapshot is missing or unusable, in which case the state is left empty.
+   */
+  public Optional<ImmutableMap<Path, String>> restore(DaemonicParserState state, Cell rootCell) {
+    if (!Files.exists(path)) {
+      return Optional.empty();
+    }
+
+    ImmutableMap.Builder<Path, String> clocks = ImmutableMap.builder();
+    RemoteDaemonicParserState remote;
+    try (ObjectInputStream input =
+        new ParserStateObjectInputStream(
+            new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path))))) {
+      if (input.readInt() != VERSION
+          || !input.readUTF().equals(buckVersion)
+          || !input.readUTF().equals(getConfigFingerprint(rootCell))) {
+        LOG.debug("Ignoring parser state at %s from another Buck version or configuration.", path);
+        return Optional.empty();
+      }
+      int cellCount = input.readInt();
+      for (int i = 0; i < cellCount; i++) {
+        Path cellRoot = rootCell.getRoot().resolve(input.readUTF()).normalize();
+        clocks.put(cellRoot, input.readUTF());
+      }
+      remote = (RemoteDaemonicParserState) input.readObject();
+    } catch (IOException | ClassNotFoundException | ClassCastException e) {
+      LOG.warn(e, "Failed to read parser state at %s, parsing from scratch.", path);
+      return Optional.empty();
+    }
+
+    try {
+      state.restoreState(remote, rootCell);
+    } catch (RuntimeException e) {
+      LOG.warn(e, "Failed to restore parser state from %s, parsing from scratch.", path);
+      state.invalidateAllCaches();
+      return Optional.empty();
+    }
+    LOG.debug("Restored parser state for %d cells from %s.", remote.getCellPathsSize(), path);
+    return Optional.of(clocks.build());
+  }
+
+  /** @return a hash of the configuration of all the cells which can affect parsing. */
+  private static String getConfigFingerprint(Cell rootCell) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    rootCell
+        .getAllCells()
+        .stream()
+        .sorted(Comparator.comparing(Cell::getRoot))
+        .forEach(
+            cell -> {
+              putString(hasher, rootCell.getRoot().relativize(cell.getRoot()).toString());
+              new TreeMap<>(cell.getBuckConfig().getRawConfigForParser())
+                  .forEach(
+                      (section, entries) -> {
+                        putString(hasher, section);
+                        new TreeMap<>(entries)
+                            .forEach(
+                                (key, value) -> {
+                                  putString(hasher, key);
+                                  putString(hasher, value);
+                                });
+                      });
+            });
+    return hasher.hash().toString();
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, StandardCharsets.UTF_8);
+  }
+}
@@ -16,18 +16,38 @@
 
 package com.facebook.buck.parser;
 
+import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.core.cell.Cell;
 import com.facebook.buck.core.model.targetgraph.TargetNode;
 import com.facebook.buck.core.model.targetgraph.impl.TargetNodeFactory;
 import com.facebook.buck.core.rules.knowntypes.KnownBuildRuleTypesProvider;
 import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.parser.cache.BuildFileManifestCache;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.rules.visibility.VisibilityPatternFactory;
+import com.facebook.buck.util.Console;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Optional;
 
 public class PerBuildStateFactory {
+
+  private final Optional<ArtifactCache> manifestArtifactCache;
+
+  public PerBuildStateFactory() {
+    this(Optional.empty());
+  }
+
+  /**
+   * @param manifestArtifactCache where to share the manifests of parsed build files with other
+   *     machines, if {@link ParserConfig#getBuildFileManifestCacheMode()} asks for it.
+   */
+  public PerBuildStateFactory(Optional<ArtifactCache> manifestArtifactCache) {
+    this.manifestArtifactCache = manifestArtifactCache;
+  }
+
   public PerBuildState create(
       TypeCoercerFactory typeCoercerFactory,
       DaemonicParserState daemonicParserState,
@@ -49,9 +69,13 @@ public class PerBuildStateFactory {
     DefaultProjectBuildFileParserFactory projectBuildFileParserFactory =
         new DefaultProjectBuildFileParserFactory(
             typeCoercerFactory,
+            Console.createNullConsole(),
             parserPythonInterpreterProvider,
             knownBuildRuleTypesProvider,
-            enableProfiling);
+            enableProfiling,
+            createManifestCache(rootCell, parserConfig),
+            daemonicParserState::getSkylarkExtensionCache,
+            daemonicParserState.getDirectoryIndex());
     ProjectBuildFileParserPool projectBuildFileParserPool =
         new ProjectBuildFileParserPool(
             numParsingThreads, // Max parsers to create per cell.
@@ -88,4 +112,28 @@ public class PerBuildStateFactory {
     return new PerBuildState(
         knownBuildRuleTypesProvider, cellManager, rawNodeParsePipeline, targetNodeParsePipeline);
   }
+
+  private Optional<BuildFileManifestCache> createManifestCache(
+      Cell rootCell, ParserConfig parserConfig) {
+    Optional<ArtifactCache> artifactCache;
+    switch (parserConfig.getBuildFileManifestCacheMode()) {
+      case NONE:
+        return Optional.empty();
+      case LOCAL:
+        artifactCache = Optional.empty();
+        break;
+      case SHARED:
+        artifactCache = manifestArtifactCache;
+        break;
+      default:
+        throw new IllegalStateException(
+            "Unexpected cache mode " + parserConfig.getBuildFileManifestCacheMode());
+    }
+    ProjectFilesystem filesystem = rootCell.getFilesystem();
+    return Optional.of(
+        new BuildFileManifestCache(
+            filesystem.resolve(filesystem.getBuckPaths().getCacheDir().resolve("build_files")),
+            artifactCache,
+            rootCell.getRuleKeyConfiguration().getCoreKey()));
+  }
 }
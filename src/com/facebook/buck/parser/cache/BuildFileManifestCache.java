@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.io.file.BorrowablePath;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.log.Logger;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Content-addressed storage for the results of parsing build files, shared by all the parsers used
+ * during a single build.
+ *
+ * <p>Entries are kept in a local directory and, optionally, in an {@link ArtifactCache}, so that
+ * build files parsed on one machine don't need to be evaluated again on another. Entries fetched
+ * from the artifact cache are copied to the local directory.
+ */
+public class BuildFileManifestCache {
+
+  private static final Logger LOG = Logger.get(BuildFileManifestCache.class);
+
+  private final Path directory;
+  private final Optional<ArtifactCache> artifactCache;
+  private final String parserVersion;
+
+  // Files aren't expected to change during a build, so each is only hashed once.
+  private final ConcurrentMap<Path, Optional<HashCode>> fileHashes = new ConcurrentHashMap<>();
+
+  /**
+   * @param directory absolute path of the local directory to keep entries in.
+   * @param parserVersion identifies the version of the parser, as entries from other versions
+   *     can't be used.
+   */
+  public BuildFileManifestCache(
+      Path directory, Optional<ArtifactCache> artifactCache, String parserVersion) {
+    this.directory = directory;
+    this.artifactCache = artifactCache;
+    this.parserVersion = parserVersion;
+  }
+
+  String getParserVersion() {
+    return parserVersion;
+  }
+
+  /** @return the hash of the contents of the given file, or nothing if it doesn't exist. */
+  Optional<HashCode> hashFile(Path file) throws IOException {
+    Optional<HashCode> hash = fileHashes.get(file);
+    if (hash == null) {
+      try {
+        hash = Optional.of(Hashing.sha1().hashBytes(Files.readAllBytes(file)));
+      } catch (NoSuchFileException e) {
+        hash = Optional.empty();
+      }
+      fileHashes.putIfAbsent(file, hash);
+    }
+    return hash;
+  }
+
+  /** @return the entry stored under the given key, or nothing if there isn't one. */
+  Optional<byte[]> fetch(HashCode key) throws InterruptedException {
+    Path path = getPath(key);
+    try {
+      if (Files.exists(path)) {
+        return Optional.of(Files.readAllBytes(path));
+      }
+      if (!artifactCache.isPresent()) {
+        return Optional.empty();
+      }
+
+      Files.createDirectories(path.getParent());
+      Path tmp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+      try {
+        CacheResult result =
+            artifactCache
+                .get()
+                .fetchAsync(null, new RuleKey(key), LazyPath.ofInstance(tmp))
+                .get();
+        if (!result.getType().isSuccess()) {
+          return Optional.empty();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+      return Optional.of(Files.readAllBytes(path));
+    } catch (IOException | ExecutionException e) {
+      LOG.warn(e, "Failed to fetch build file manifest cache entry %s.", key);
+      return Optional.empty();
+    }
+  }
+
+  /** Stores the given entry under the given key, replacing any existing entry. */
+  void store(HashCode key, byte[] contents) {
+    Path path = getPath(key);
+    try {
+      Files.createDirectories(path.getParent());
+      Path tmp = path.resolveSibling(path.getFileName() + "." + UUID.randomUUID() + ".tmp");
+      Files.write(tmp, contents);
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to store build file manifest cache entry %s.", key);
+      return;
+    }
+    artifactCache.ifPresent(
+        cache ->
+            cache.store(
+                ArtifactInfo.builder().addRuleKeys(new RuleKey(key)).build(),
+                BorrowablePath.notBorrowablePath(path)));
+  }
+
+  private Path getPath(HashCode key) {
+    String name = key.toString();
+    return directory.resolve(name.substring(0, 2)).resolve(name);
+  }
+}
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.api.ProjectBuildFileParser;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
+import com.facebook.buck.skylark.io.GlobSpec;
+import com.facebook.buck.skylark.io.Globber;
+import com.facebook.buck.skylark.io.GlobberFactory;
+import com.facebook.buck.util.environment.Architecture;
+import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.devtools.build.lib.vfs.FileSystem;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Decorator for {@link ProjectBuildFileParser} which reuses the manifests of build files that were
+ * parsed before, by this or another machine, as long as nothing they depend on has changed.
+ *
+ * <p>What a build file depends on is only known once it's been evaluated, so lookups take two
+ * steps. The first key covers the build file itself and everything about the parser that could
+ * affect its evaluation, and maps to the extensions it loaded and the globs it evaluated. The
+ * second key adds the current contents of those extensions and the current results of those
+ * globs, and maps to the manifest itself.
+ *
+ * <p>This relies on the manifest recording every glob that was evaluated, so can only decorate
+ * parsers which do so. Manifests are stored as JSON, so those with values that JSON can't
+ * represent, like the result of {@code select()}, aren't cached.
+ */
+public class CachingProjectBuildFileParser implements ProjectBuildFileParser {
+
+  private static final Logger LOG = Logger.get(CachingProjectBuildFileParser.class);
+
+  private static final int FORMAT_VERSION = 2;
+
+  // Globs are evaluated in whatever order the build file asks for them, so sort them by their
+  // (deterministic) string representation to keep keys stable.
+  private static final Comparator<GlobSpec> GLOB_ORDER = Comparator.comparing(GlobSpec::toString);
+
+  private final ProjectBuildFileParser delegate;
+  private final BuildFileManifestCache cache;
+  private final Path cellRoot;
+  private final FileSystem fileSystem;
+  private final GlobberFactory globberFactory;
+  private final HashCode parserFingerprint;
+
+  private CachingProjectBuildFileParser(
+      ProjectBuildFileParser delegate,
+      BuildFileManifestCache cache,
+      ProjectBuildFileParserOptions options,
+      FileSystem fileSystem,
+      GlobberFactory globberFactory) {
+    this.delegate = delegate;
+    this.cache = cache;
+    this.cellRoot = options.getProjectRoot();
+    this.fileSystem = fileSystem;
+    this.globberFactory = globberFactory;
+    this.parserFingerprint = getParserFingerprint(cache.getParserVersion(), options);
+  }
+
+  /**
+   * @param fileSystem the filesystem used by the delegate to evaluate globs.
+   * @param globberFactory creates the globbers used by the delegate to evaluate globs.
+   */
+  public static CachingProjectBuildFileParser of(
+      ProjectBuildFileParser delegate,
+      BuildFileManifestCache cache,
+      ProjectBuildFileParserOptions options,
+      FileSystem fileSystem,
+      GlobberFactory globberFactory) {
+    return new CachingProjectBuildFileParser(
+        delegate, cache, options, fileSystem, globberFactory);
+  }
+
+  @Override
+  public BuildFileManifest getBuildFileManifest(Path buildFile, AtomicLong processedBytes)
+      throws BuildFileParseException, InterruptedException, IOException {
+    Optional<HashCode> buildFileHash = cache.hashFile(buildFile);
+    if (!buildFileHash.isPresent()) {
+      return delegate.getBuildFileManifest(buildFile, processedBytes);
+    }
+    HashCode dependenciesKey =
+        Hashing.sha1()
+            .newHasher()
+            .putBytes(parserFingerprint.asBytes())
+            .putString(cellRoot.relativize(buildFile).toString(), StandardCharsets.UTF_8)
+            .putBytes(buildFileHash.get().asBytes())
+            .hash();
+
+    Optional<BuildFileManifest> cached = lookUp(buildFile, dependenciesKey);
+    if (cached.isPresent()) {
+      LOG.verbose("Using cached manifest of %s.", buildFile);
+      return cached.get();
+    }
+
+    BuildFileManifest manifest = delegate.getBuildFileManifest(buildFile, processedBytes);
+    store(dependenciesKey, manifest);
+    return manifest;
+  }
+
+  private Optional<BuildFileManifest> lookUp(Path buildFile, HashCode dependenciesKey)
+      throws IOException, InterruptedException {
+    Optional<byte[]> dependenciesEntry = cache.fetch(dependenciesKey);
+    if (!dependenciesEntry.isPresent()) {
+      return Optional.empty();
+    }
+    Dependencies dependencies;
+    try {
+      dependencies =
+          ObjectMappers.READER.forType(Dependencies.class).readValue(dependenciesEntry.get());
+    } catch (IOException e) {
+      LOG.warn(e, "Ignoring unreadable cached dependencies of %s.", buildFile);
+      return Optional.empty();
+    }
+
+    ImmutableSortedSet<String> includes =
+        dependencies
+            .includes
+            .stream()
+            .map(include -> cellRoot.resolve(include).normalize().toString())
+            .collect(ImmutableSortedSet.toImmutableSortedSet(String::compareTo));
+    Globber globber = globberFactory.create(fileSystem.getPath(buildFile.getParent().toString()));
+    ImmutableMap.Builder<GlobSpec, Set<String>> globManifest = ImmutableMap.builder();
+    for (GlobEntry glob : dependencies.globs) {
+      globManifest.put(
+          GlobSpec.builder()
+              .setInclude(glob.include)
+              .setExclude(glob.exclude)
+              .setExcludeDirectories(glob.excludeDirectories)
+              .build(),
+          globber.run(glob.include, glob.exclude, glob.excludeDirectories));
+    }
+
+    Optional<HashCode> manifestKey =
+        getManifestKey(dependenciesKey, includes, globManifest.build());
+    if (!manifestKey.isPresent()) {
+      return Optional.empty();
+    }
+    Optional<byte[]> manifestEntry = cache.fetch(manifestKey.get());
+    if (!manifestEntry.isPresent()) {
+      return Optional.empty();
+    }
+    ManifestEntry manifest;
+    try {
+      manifest = ObjectMappers.READER.forType(ManifestEntry.class).readValue(manifestEntry.get());
+    } catch (IOException e) {
+      LOG.warn(e, "Ignoring unreadable cached manifest of %s.", buildFile);
+      return Optional.empty();
+    }
+    return Optional.of(
+        BuildFileManifest.builder()
+            .setTargets(manifest.targets)
+            .setIncludes(includes)
+            .setConfigs(manifest.configs)
+            .setGlobManifest(globManifest.build())
+            .build());
+  }
+
+  private void store(HashCode dependenciesKey, BuildFileManifest manifest) throws IOException {
+    if (!isJsonNative(manifest.getTargets()) || !isJsonNative(manifest.getConfigs())) {
+      // Values like select() and depsets would be read back as plain maps.
+      LOG.debug("Not caching manifest with values which don't round trip through JSON.");
+      return;
+    }
+    Optional<HashCode> manifestKey =
+        getManifestKey(dependenciesKey, manifest.getIncludes(), manifest.getGlobManifest());
+    if (!manifestKey.isPresent()) {
+      return;
+    }
+    Dependencies dependencies =
+        new Dependencies(
+            manifest
+                .getIncludes()
+                .stream()
+                .map(include -> cellRoot.relativize(cellRoot.resolve(include)).toString())
+                .collect(ImmutableList.toImmutableList()),
+            manifest
+                .getGlobManifest()
+                .keySet()
+                .stream()
+                .sorted(GLOB_ORDER)
+                .map(
+                    spec ->
+                        new GlobEntry(
+                            ImmutableList.copyOf(spec.getInclude()),
+                            ImmutableList.copyOf(spec.getExclude()),
+                            spec.getExcludeDirectories()))
+                .collect(ImmutableList.toImmutableList()));
+    byte[] manifestEntry;
+    try {
+      manifestEntry =
+          ObjectMappers.WRITER.writeValueAsBytes(
+              new ManifestEntry(manifest.getTargets(), manifest.getConfigs()));
+    } catch (IOException e) {
+      // Not every value a build file can define has a JSON representation.
+      LOG.debug(e, "Not caching manifest which can't be serialized.");
+      return;
+    }
+    // Store the manifest first, so that finding the dependencies means it can be found too.
+    cache.store(manifestKey.get(), manifestEntry);
+    cache.store(dependenciesKey, ObjectMappers.WRITER.writeValueAsBytes(dependencies));
+  }
+
+  /** @return whether the value is read back from JSON as the same types it was written as. */
+  private static boolean isJsonNative(@Nullable Object value) {
+    if (value == null
+        || value instanceof String
+        || value instanceof Boolean
+        || value instanceof Integer) {
+      return true;
+    }
+    if (value instanceof List) {
+      for (Object element : (List<?>) value) {
+        if (!isJsonNative(element)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        if (!(entry.getKey() instanceof String) || !isJsonNative(entry.getValue())) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /** @return the key of the manifest, or nothing if one of its includes doesn't exist anymore. */
+  private Optional<HashCode> getManifestKey(
+      HashCode dependenciesKey,
+      ImmutableSortedSet<String> includes,
+      ImmutableMap<GlobSpec, Set<String>> globManifest)
+      throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher().putBytes(dependenciesKey.asBytes());
+    for (String include : includes) {
+      Path path = cellRoot.resolve(include);
+      Optional<HashCode> hash = cache.hashFile(path);
+      if (!hash.isPresent()) {
+        return Optional.empty();
+      }
+      putString(hasher, cellRoot.relativize(path).toString());
+      hasher.putBytes(hash.get().asBytes());
+    }
+    for (GlobSpec glob : ImmutableList.sortedCopyOf(GLOB_ORDER, globManifest.keySet())) {
+      putStrings(hasher, glob.getInclude());
+      putStrings(hasher, glob.getExclude());
+      hasher.putBoolean(glob.getExcludeDirectories());
+      putStrings(hasher, ImmutableSortedSet.copyOf(globManifest.get(glob)));
+    }
+    return Optional.of(hasher.hash());
+  }
+
+  /**
+   * @return a hash of everything about the parser which can affect the result of parsing,
+   *     including what build files can read about their environment through {@code host_info()}
+   *     and {@code read_config()}.
+   */
+  private static HashCode getParserFingerprint(
+      String parserVersion, ProjectBuildFileParserOptions options) {
+    Hasher hasher = Hashing.sha1().newHasher().putInt(FORMAT_VERSION);
+    putString(hasher, parserVersion);
+    putString(hasher, Platform.detect().name());
+    putString(hasher, Architecture.detect().name());
+    putString(hasher, options.getCellName());
+    putString(hasher, options.getBuildFileName());
+    hasher.putBoolean(options.getDisableImplicitNativeRules());
+    putStrings(
+        hasher,
+        options
+            .getDescriptions()
+            .stream()
+            .map(description -> description.getClass().getName())
+            .collect(ImmutableSortedSet.toImmutableSortedSet(String::compareTo)));
+    new TreeMap<>(options.getRawConfig())
+        .forEach(
+            (section, entries) -> {
+              putString(hasher, section);
+              new TreeMap<>(entries)
+                  .forEach(
+                      (key, value) -> {
+                        putString(hasher, key);
+                        putString(hasher, value);
+                      });
+            });
+    return hasher.hash();
+  }
+
+  private static void putStrings(Hasher hasher, Iterable<String> strings) {
+    for (String string : strings) {
+      putString(hasher, string);
+    }
+    hasher.putInt(-1);
+  }
+
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void reportProfile() throws IOException {
+    delegate.reportProfile();
+  }
+
+  @Override
+  public void close() throws BuildFileParseException, InterruptedException, IOException {
+    delegate.close();
+  }
+
+  /** The extensions loaded and globs evaluated by a build file, relative to its cell. */
+  private static class Dependencies {
+    @JsonProperty final ImmutableList<String> includes;
+    @JsonProperty final ImmutableList<GlobEntry> globs;
+
+    @JsonCreator
+    Dependencies(
+        @JsonProperty("includes") ImmutableList<String> includes,
+        @JsonProperty("globs") ImmutableList<GlobEntry> globs) {
+      this.includes = includes;
+      this.globs = globs;
+    }
+  }
+
+  private static class GlobEntry {
+    @JsonProperty final ImmutableList<String> include;
+    @JsonProperty final ImmutableList<String> exclude;
+    @JsonProperty final boolean excludeDirectories;
+
+    @JsonCreator
+    GlobEntry(
+        @JsonProperty("include") ImmutableList<String> include,
+        @JsonProperty("exclude") ImmutableList<String> exclude,
+        @JsonProperty("excludeDirectories") boolean excludeDirectories) {
+      this.include = include;
+      this.exclude = exclude;
+      this.excludeDirectories = excludeDirectories;
+    }
+  }
+
+  /** The parts of a manifest which aren't derived from its dependencies. */
+  private static class ManifestEntry {
+    @JsonProperty final List<Map<String, Object>> targets;
+    @JsonProperty final Map<String, Object> configs;
+
+    @JsonCreator
+    ManifestEntry(
+        @JsonProperty("targets") List<Map<String, Object>> targets,
+        @JsonProperty("configs") Map<String, Object> configs) {
+      this.targets = targets;
+      this.configs = configs;
+    }
+  }
+}
@@ -30,6 +30,9 @@ import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.HashMap;
@@ -57,6 +60,14 @@ public class CoercedTypeCache {
     return coercedTypeCache.getUnchecked(typeCoercerFactory).getUnchecked(coercableType);
   }
 
+  /** @return the {@link CoercionPlan} for populating instances of coercableType. */
+  @SuppressWarnings("unchecked")
+  <T> CoercionPlan<T> getCoercionPlan(
+      TypeCoercerFactory typeCoercerFactory, Class<T> coercableType) {
+    return (CoercionPlan<T>)
+        coercionPlanCache.getUnchecked(typeCoercerFactory).getUnchecked(coercableType);
+  }
+
   /**
    * Returns an unpopulated DTO object, and the build method which must be called with it when it is
    * finished being populated.
@@ -79,23 +90,7 @@ public class CoercedTypeCache {
                       buildTarget, e.getMessage()),
                   e);
             } catch (InvocationTargetException e) {
-              if (e.getCause() instanceof IllegalStateException) {
-                IllegalStateException cause = (IllegalStateException) e.getCause();
-                if (cause.getMessage().contains("Cannot build")
-                    && cause.getMessage().contains("required")) {
-                  List<String> matches =
-                      Splitter.on(CharMatcher.anyOf("[]")).splitToList(cause.getMessage());
-                  if (matches.size() >= 2) {
-                    throw new HumanReadableException(
-                        "%s missing required argument(s): %s", buildTarget, matches.get(1));
-                  }
-                }
-              }
-              throw new RuntimeException(
-                  String.format(
-                      "Error building immutable constructor arg for %s: %s",
-                      buildTarget, e.getCause().getMessage()),
-                  e.getCause());
+              throw buildFailed(buildTarget, e.getCause());
             }
           });
     } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
@@ -107,10 +102,45 @@ public class CoercedTypeCache {
     }
   }
 
+  /**
+   * @return the exception to report when the build method of an immutable constructor arg fails
+   *     with the given cause, which describes any missing required arguments in a readable way.
+   */
+  static RuntimeException buildFailed(BuildTarget buildTarget, Throwable cause) {
+    if (cause instanceof IllegalStateException) {
+      String message = cause.getMessage();
+      if (message.contains("Cannot build") && message.contains("required")) {
+        List<String> matches = Splitter.on(CharMatcher.anyOf("[]")).splitToList(message);
+        if (matches.size() >= 2) {
+          return new HumanReadableException(
+              "%s missing required argument(s): %s", buildTarget, matches.get(1));
+        }
+      }
+    }
+    return new RuntimeException(
+        String.format(
+            "Error building immutable constructor arg for %s: %s",
+            buildTarget, cause.getMessage()),
+        cause);
+  }
+
+  /** @return a handle for the given method, adapted to the given type. */
+  static MethodHandle unreflect(Method method, MethodType type) {
+    try {
+      return MethodHandles.lookup().unreflect(method).asType(type);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(
+          String.format("Could not access %s: %s", method, e.getMessage()), e);
+    }
+  }
+
   private final LoadingCache<
           TypeCoercerFactory, LoadingCache<Class<?>, ImmutableMap<String, ParamInfo>>>
       coercedTypeCache;
 
+  private final LoadingCache<TypeCoercerFactory, LoadingCache<Class<?>, CoercionPlan<?>>>
+      coercionPlanCache;
+
   private CoercedTypeCache() {
     coercedTypeCache =
         CacheBuilder.newBuilder()
@@ -153,6 +183,18 @@ public class CoercedTypeCache {
                             });
                   }
                 });
+    coercionPlanCache =
+        CacheBuilder.newBuilder()
+            .build(
+                CacheLoader.from(
+                    typeCoercerFactory ->
+                        CacheBuilder.newBuilder()
+                            .build(
+                                CacheLoader.from(
+                                    coercableType ->
+                                        CoercionPlan.of(
+                                            coercableType,
+                                            getAllParamInfo(typeCoercerFactory, coercableType))))));
   }
 
   @VisibleForTesting
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.coercer;
+
+import com.facebook.buck.core.cell.resolver.CellPathResolver;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Everything needed to populate an immutable constructor arg of a particular type from the raw
+ * attributes of a target, resolved once per type rather than once per target.
+ *
+ * <p>The builder factory, the setters and the build method are invoked through {@link
+ * MethodHandle}s adapted to erased signatures, so populating a constructor arg involves no
+ * reflective lookups or argument arrays.
+ */
+class CoercionPlan<T> {
+
+  private final Class<T> coercableType;
+  private final MethodHandle newBuilder;
+  private final MethodHandle build;
+  private final ParamInfo[] params;
+  private final MethodHandle[] setters;
+  @Nullable private final ParamInfo deps;
+
+  private CoercionPlan(
+      Class<T> coercableType,
+      MethodHandle newBuilder,
+      MethodHandle build,
+      ParamInfo[] params,
+      @Nullable ParamInfo deps) {
+    this.coercableType = coercableType;
+    this.newBuilder = newBuilder;
+    this.build = build;
+    this.params = params;
+    this.deps = deps;
+    this.setters = new MethodHandle[params.length];
+    for (int i = 0; i < params.length; i++) {
+      setters[i] = params[i].getSetterHandle();
+    }
+  }
+
+  static <T> CoercionPlan<T> of(Class<T> coercableType, ImmutableMap<String, ParamInfo> params) {
+    Method builderMethod;
+    Method buildMethod;
+    try {
+      builderMethod = coercableType.getMethod("builder");
+      buildMethod = builderMethod.getReturnType().getMethod("build");
+    } catch (NoSuchMethodException e) {
+      throw new IllegalStateException(
+          String.format(
+              "Could not instantiate immutable constructor arg type %s: %s",
+              coercableType, e.getMessage()),
+          e);
+    }
+    ParamInfo deps = params.get("deps");
+    return new CoercionPlan<>(
+        coercableType,
+        CoercedTypeCache.unreflect(builderMethod, MethodType.methodType(Object.class)),
+        CoercedTypeCache.unreflect(buildMethod, MethodType.methodType(Object.class, Object.class)),
+        params.values().toArray(new ParamInfo[0]),
+        deps != null && deps.isDep() ? deps : null);
+  }
+
+  /** @see ConstructorArgMarshaller#populate */
+  T populate(
+      CellPathResolver cellRoots,
+      ProjectFilesystem filesystem,
+      BuildTarget buildTarget,
+      ImmutableSet.Builder<BuildTarget> declaredDeps,
+      Map<String, ?> instance)
+      throws ParamInfoException {
+    Path basePath = buildTarget.getBasePath();
+    Object builder = newBuilder();
+    for (int i = 0; i < params.length; i++) {
+      ParamInfo param = params[i];
+      Object value = instance.get(param.getName());
+      if (value == null) {
+        continue;
+      }
+      Object coerced = param.coerce(cellRoots, filesystem, basePath, value);
+      try {
+        setters[i].invokeExact(builder, coerced);
+      } catch (Throwable t) {
+        Throwables.throwIfInstanceOf(t, Error.class);
+        throw new RuntimeException(t);
+      }
+    }
+
+    T dto = build(buildTarget, builder);
+    if (deps != null) {
+      deps.traverse(
+          cellRoots,
+          object -> {
+            if (!(object instanceof BuildTarget)) {
+              return;
+            }
+            declaredDeps.add((BuildTarget) object);
+          },
+          dto);
+    }
+    return dto;
+  }
+
+  private Object newBuilder() {
+    try {
+      return newBuilder.invokeExact();
+    } catch (Throwable t) {
+      Throwables.throwIfInstanceOf(t, Error.class);
+      throw new IllegalStateException(
+          String.format(
+              "Could not instantiate immutable constructor arg type %s: %s",
+              coercableType, t.getMessage()),
+          t);
+    }
+  }
+
+  private T build(BuildTarget buildTarget, Object builder) {
+    Object dto;
+    try {
+      dto = build.invokeExact(builder);
+    } catch (Throwable t) {
+      Throwables.throwIfInstanceOf(t, Error.class);
+      throw CoercedTypeCache.buildFailed(buildTarget, t);
+    }
+    return coercableType.cast(dto);
+  }
+}
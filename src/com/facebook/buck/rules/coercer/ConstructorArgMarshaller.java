@@ -20,15 +20,12 @@ import com.facebook.buck.core.cell.resolver.CellPathResolver;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.sourcepath.SourcePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
-import com.facebook.buck.util.types.Pair;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Function;
 import javax.annotation.CheckReturnValue;
 
 /**
@@ -84,26 +81,8 @@ public class ConstructorArgMarshaller {
       ImmutableSet.Builder<BuildTarget> declaredDeps,
       Map<String, ?> instance)
       throws ParamInfoException {
-    Pair<Object, Function<Object, T>> dtoAndBuild =
-        CoercedTypeCache.instantiateSkeleton(dtoClass, buildTarget);
-    ImmutableMap<String, ParamInfo> allParamInfo =
-        CoercedTypeCache.INSTANCE.getAllParamInfo(typeCoercerFactory, dtoClass);
-    for (ParamInfo info : allParamInfo.values()) {
-      info.setFromParams(cellRoots, filesystem, buildTarget, dtoAndBuild.getFirst(), instance);
-    }
-    T dto = dtoAndBuild.getSecond().apply(dtoAndBuild.getFirst());
-    ParamInfo deps = allParamInfo.get("deps");
-    if (deps != null && deps.isDep()) {
-      deps.traverse(
-          cellRoots,
-          object -> {
-            if (!(object instanceof BuildTarget)) {
-              return;
-            }
-            declaredDeps.add((BuildTarget) object);
-          },
-          dto);
-    }
-    return dto;
+    return CoercedTypeCache.INSTANCE
+        .getCoercionPlan(typeCoercerFactory, dtoClass)
+        .populate(cellRoots, filesystem, buildTarget, declaredDeps, instance);
   }
 }
@@ -25,9 +25,11 @@ import com.facebook.buck.util.Types;
 import com.facebook.buck.util.exceptions.BuckUncheckedExecutionException;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.nio.file.Path;
@@ -56,6 +58,11 @@ public class ParamInfo implements Comparable<ParamInfo> {
 
   private final Supplier<Boolean> isOptional;
 
+  /** Handles for the setter and concrete getter, which are cheaper to invoke than reflection. */
+  private final Supplier<MethodHandle> setterHandle;
+
+  private final Supplier<MethodHandle> concreteGetterHandle;
+
   @SuppressWarnings("PMD.EmptyCatchBlock")
   public ParamInfo(TypeCoercerFactory typeCoercerFactory, Method setter) {
     Preconditions.checkArgument(
@@ -120,6 +127,17 @@ public class ParamInfo implements Comparable<ParamInfo> {
               return !Modifier.isAbstract(getter.getModifiers());
             });
 
+    this.setterHandle =
+        MoreSuppliers.memoize(
+            () ->
+                CoercedTypeCache.unreflect(
+                    setter, MethodType.methodType(void.class, Object.class, Object.class)));
+    this.concreteGetterHandle =
+        MoreSuppliers.memoize(
+            () ->
+                CoercedTypeCache.unreflect(
+                    concreteGetter.get(), MethodType.methodType(Object.class, Object.class)));
+
     StringBuilder builder = new StringBuilder();
     builder.append(setter.getName().substring(3, 4).toLowerCase());
     if (setter.getName().length() > 4) {
@@ -218,14 +236,15 @@ public class ParamInfo implements Comparable<ParamInfo> {
 
   /** Get the value of this param as set on dto. */
   public Object get(Object dto) {
-    Method getter = this.concreteGetter.get();
     try {
-      return getter.invoke(dto);
-    } catch (InvocationTargetException | IllegalAccessException e) {
+      return concreteGetterHandle.get().invokeExact(dto);
+    } catch (Throwable t) {
+      Throwables.throwIfInstanceOf(t, Error.class);
+      Method getter = this.concreteGetter.get();
       throw new IllegalStateException(
           String.format(
               "Error invoking getter %s on class %s", getter.getName(), getter.getDeclaringClass()),
-          e);
+          t);
     }
   }
 
@@ -262,9 +281,18 @@ public class ParamInfo implements Comparable<ParamInfo> {
     if (value == null) {
       return;
     }
+    setCoercedValue(dto, coerce(cellRoots, filesystem, pathRelativeToProjectRoot, value));
+  }
+
+  /** Coerces the raw value of this param to the type expected by its setter. */
+  Object coerce(
+      CellPathResolver cellRoots,
+      ProjectFilesystem filesystem,
+      Path pathRelativeToProjectRoot,
+      Object value)
+      throws ParamInfoException {
     try {
-      setCoercedValue(
-          dto, typeCoercer.coerce(cellRoots, filesystem, pathRelativeToProjectRoot, value));
+      return typeCoercer.coerce(cellRoots, filesystem, pathRelativeToProjectRoot, value);
     } catch (CoerceFailedException e) {
       throw new ParamInfoException(name, e.getMessage(), e);
     }
@@ -277,12 +305,18 @@ public class ParamInfo implements Comparable<ParamInfo> {
    */
   public void setCoercedValue(Object dto, Object value) {
     try {
-      setter.invoke(dto, value);
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
+      getSetterHandle().invokeExact(dto, value);
+    } catch (Throwable t) {
+      Throwables.throwIfInstanceOf(t, Error.class);
+      throw new RuntimeException(t);
     }
   }
 
+  /** @return a handle for the setter of this param, of type {@code (Object, Object)void}. */
+  MethodHandle getSetterHandle() {
+    return setterHandle.get();
+  }
+
   /** Returns the most-overridden getter on the abstract Immutable. */
   @SuppressWarnings("PMD.EmptyCatchBlock")
   private Method findClosestGetterOnAbstractClassOrInterface() {
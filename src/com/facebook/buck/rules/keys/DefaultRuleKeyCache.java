@@ -28,10 +28,14 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.AbstractMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -62,13 +66,15 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
   private final ConcurrentHashMap<RuleKeyInput, Stream.Builder<Object>> inputsIndex =
       new ConcurrentHashMap<>();
 
-  private <K> V calculateNode(K node, Function<K, RuleKeyResult<V>> create) {
+  private <K> V calculateNode(
+      K node, Node<Object, V> cached, Function<K, RuleKeyResult<V>> create) {
     Preconditions.checkArgument(
         node instanceof BuildRule || node instanceof AddsToRuleKey,
         "%s must be one of either a `BuildRule` or `AddsToRuleKey`",
         node.getClass());
 
     RuleKeyResult<V> result = create.apply(node);
+    cached.dependencies = result.deps;
     for (Object dependency : result.deps) {
       cache.compute(
           new IdentityWrapper<>(dependency),
@@ -107,7 +113,8 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
                   }
                   if (value.value == null) {
                     request.recordMiss();
-                    value.value = MoreSuppliers.memoize(() -> calculateNode(node, create));
+                    Node<Object, V> cached = value;
+                    value.value = MoreSuppliers.memoize(() -> calculateNode(node, cached, create));
                     request.recordLoadSuccess();
                   } else {
                     request.recordHit();
@@ -163,6 +170,15 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
 
   /** Recursively invalidate nodes up the dependency tree. */
   private void invalidateNodes(Stream<Object> nodes, CacheStatsTracker statsTracker) {
+    invalidateNodes(nodes, statsTracker, node -> {});
+  }
+
+  /**
+   * Recursively invalidate nodes up the dependency tree, passing each removed node to {@code
+   * removed}.
+   */
+  private void invalidateNodes(
+      Stream<Object> nodes, CacheStatsTracker statsTracker, Consumer<Node<Object, V>> removed) {
     List<Stream<Object>> dependents = new ArrayList<>();
     nodes.forEach(
         key -> {
@@ -170,12 +186,13 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
           // This node may have already been removed due to being someone else's reverse dependency.
           if (node != null) {
             LOG.verbose("invalidating node %s", key);
-            dependents.add(node.dependents.build());
+            dependents.add(node.dependents.stream());
             statsTracker.recordEviction();
+            removed.accept(node);
           }
         });
     if (!dependents.isEmpty()) {
-      invalidateNodes(dependents.stream().flatMap(x -> x), statsTracker);
+      invalidateNodes(dependents.stream().flatMap(x -> x), statsTracker, removed);
     }
   }
 
@@ -229,6 +246,52 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
         statsTracker);
   }
 
+  /**
+   * Invalidate all build rules *not* in the given set, and their transitive dependents, along with
+   * any appendables which are no longer depended on by a cached build rule.
+   *
+   * <p>This allows keeping the rule keys of build rules carried over into a new action graph, while
+   * dropping everything only reachable from rules which weren't.
+   */
+  @Override
+  public void invalidateAllExceptBuildRules(Set<BuildRule> rules, CacheStatsTracker statsTracker) {
+    List<Object> staleRules =
+        cache
+            .keySet()
+            .stream()
+            .map(key -> key.delegate)
+            .filter(node -> node instanceof BuildRule && !rules.contains(node))
+            .collect(Collectors.toList());
+    LOG.verbose("invalidating %d build rules not in the given set", staleRules.size());
+    Deque<Node<Object, V>> removed = new ArrayDeque<>();
+    invalidateNodes(staleRules.stream(), statsTracker, removed::add);
+
+    // Appendables are only ever reached through the rules (or other appendables) that depend on
+    // them, so walk down from the removed nodes, dropping the appendables left without any cached
+    // dependents.
+    while (!removed.isEmpty()) {
+      Iterable<?> dependencies = removed.pop().dependencies;
+      if (dependencies == null) {
+        continue;
+      }
+      for (Object dependency : dependencies) {
+        if (dependency instanceof BuildRule) {
+          continue;
+        }
+        IdentityWrapper<Object> key = new IdentityWrapper<>(dependency);
+        Node<Object, V> node = cache.get(key);
+        if (node != null
+            && cache.computeIfPresent(
+                    key, (k, n) -> n.dependents.stream().anyMatch(this::isCachedNode) ? n : null)
+                == null) {
+          LOG.verbose("invalidating orphaned node %s", dependency);
+          statsTracker.recordEviction();
+          removed.add(node);
+        }
+      }
+    }
+  }
+
   /** Invalidate everything in the cache. */
   @Override
   public void invalidateAll(CacheStatsTracker statsTracker) {
@@ -257,7 +320,13 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
      * Accumulator of nodes that depends on this one. Used to invalidate those nodes when this node
      * is invalidated.
      */
-    private final Stream.Builder<T> dependents;
+    private final List<T> dependents;
+
+    /**
+     * The nodes this one depends on, once its value has been computed. Used to find the
+     * appendables left without dependents when this node is invalidated.
+     */
+    @Nullable private volatile Iterable<?> dependencies;
 
     /**
      * The cached value, stored in a memoized supplier. A memoized supplier is used to allow the
@@ -270,8 +339,9 @@ public class DefaultRuleKeyCache<V> implements TrackableRuleKeyCache<V> {
     @Nullable private volatile Supplier<V> value;
 
     public Node() {
-      this.dependents = Stream.builder();
+      this.dependents = new ArrayList<>();
       this.value = null;
+      this.dependencies = null;
     }
   }
 
@@ -16,15 +16,32 @@
 
 package com.facebook.buck.rules.keys;
 
+import com.google.common.base.Throwables;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import javax.annotation.Nullable;
 
-/** Extracts a value of a given field, that is assumed to be accessible. */
+/**
+ * Extracts a value of a given field, that is assumed to be accessible.
+ *
+ * <p>The field is read through a {@link MethodHandle} resolved once up front, which avoids the
+ * per-call access checks of {@link Field#get}.
+ */
 public class FieldValueExtractor implements ValueExtractor {
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
   private final Field field;
+  private final MethodHandle getter;
 
   FieldValueExtractor(Field field) {
     this.field = field;
+    try {
+      this.getter = MethodHandles.lookup().unreflectGetter(field).asType(GETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   @Override
@@ -41,9 +58,10 @@ public class FieldValueExtractor implements ValueExtractor {
   @Nullable
   public Object getValue(Object obj) {
     try {
-      return field.get(obj);
-    } catch (IllegalAccessException e) {
-      throw new RuntimeException(e);
+      return getter.invokeExact(obj);
+    } catch (Throwable t) {
+      Throwables.throwIfUnchecked(t);
+      throw new RuntimeException(t);
     }
   }
 }
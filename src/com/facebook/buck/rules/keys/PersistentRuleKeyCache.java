@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.cache.CacheStatsTracker;
+import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
+import com.facebook.buck.util.hashing.FileHashLoader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.MapMaker;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link TrackableRuleKeyCache} which consults a {@link PersistentRuleKeyStore} before computing
+ * a default rule key, and records freshly computed keys back into it.
+ *
+ * <p>A persisted key is only reused if the rule's fingerprint is unchanged, all the build rules it
+ * depends on currently have the rule keys it was computed with (which recursively validates them
+ * via this cache) and all its file inputs still hash to the recorded values according to the
+ * {@link FileHashLoader}. Inputs and deps of the {@link AddsToRuleKey}s a rule key is composed of
+ * are folded into the rule's own entry, as appendables have no stable identity across processes.
+ */
+public class PersistentRuleKeyCache implements TrackableRuleKeyCache<RuleKey> {
+
+  private static final Logger LOG = Logger.get(PersistentRuleKeyCache.class);
+
+  private final TrackableRuleKeyCache<RuleKey> delegate;
+  private final PersistentRuleKeyStore store;
+  private final FileHashLoader hashLoader;
+  private final ImmutableMap<Path, ProjectFilesystem> filesystems;
+  private final Function<? super BuildRule, Optional<HashCode>> fingerprinter;
+
+  /** The results of appendables computed by this process, used to flatten them into rules. */
+  private final ConcurrentMap<AddsToRuleKey, RuleKeyResult<RuleKey>> appendableResults =
+      new MapMaker().weakKeys().makeMap();
+
+  private final LongAdder persistedHits = new LongAdder();
+  private final LongAdder persistedMisses = new LongAdder();
+
+  /**
+   * @param filesystems all filesystems rule key inputs may come from, used to map persisted inputs
+   *     back to {@link RuleKeyInput}s.
+   * @param fingerprinter provides a hash of everything a rule's key depends on other than its file
+   *     inputs and build rule deps, or nothing if the rule's key should not be persisted.
+   */
+  public PersistentRuleKeyCache(
+      TrackableRuleKeyCache<RuleKey> delegate,
+      PersistentRuleKeyStore store,
+      FileHashLoader hashLoader,
+      Iterable<ProjectFilesystem> filesystems,
+      Function<? super BuildRule, Optional<HashCode>> fingerprinter) {
+    this.delegate = delegate;
+    this.store = store;
+    this.hashLoader = hashLoader;
+    Map<Path, ProjectFilesystem> filesystemsByRoot = new HashMap<>();
+    for (ProjectFilesystem filesystem : filesystems) {
+      filesystemsByRoot.putIfAbsent(filesystem.getRootPath(), filesystem);
+    }
+    this.filesystems = ImmutableMap.copyOf(filesystemsByRoot);
+    this.fingerprinter = fingerprinter;
+  }
+
+  @Nullable
+  @Override
+  public RuleKey get(BuildRule rule, CacheStatsTracker statsTracker) {
+    return delegate.get(rule, statsTracker);
+  }
+
+  @Override
+  public RuleKey get(
+      BuildRule rule,
+      Function<? super BuildRule, RuleKeyResult<RuleKey>> create,
+      CacheStatsTracker statsTracker) {
+    return delegate.get(rule, r -> loadOrCreate(r, create, statsTracker), statsTracker);
+  }
+
+  @Override
+  public RuleKey get(
+      AddsToRuleKey appendable,
+      Function<? super AddsToRuleKey, RuleKeyResult<RuleKey>> create,
+      CacheStatsTracker statsTracker) {
+    return delegate.get(
+        appendable,
+        a -> {
+          RuleKeyResult<RuleKey> result = create.apply(a);
+          appendableResults.put(a, result);
+          return result;
+        },
+        statsTracker);
+  }
+
+  private RuleKeyResult<RuleKey> loadOrCreate(
+      BuildRule rule,
+      Function<? super BuildRule, RuleKeyResult<RuleKey>> create,
+      CacheStatsTracker statsTracker) {
+    Optional<HashCode> fingerprint = fingerprinter.apply(rule);
+    if (!fingerprint.isPresent()) {
+      return create.apply(rule);
+    }
+
+    Optional<RuleKeyResult<RuleKey>> persisted =
+        store
+            .get(rule.getBuildTarget())
+            .filter(entry -> entry.getFingerprint().equals(fingerprint.get()))
+            .flatMap(entry -> validate(rule, entry, create, statsTracker));
+    if (persisted.isPresent()) {
+      persistedHits.increment();
+      return persisted.get();
+    }
+    persistedMisses.increment();
+
+    RuleKeyResult<RuleKey> result = create.apply(rule);
+    toEntry(result, fingerprint.get()).ifPresent(entry -> store.put(rule.getBuildTarget(), entry));
+    return result;
+  }
+
+  /**
+   * @return the persisted result for the given rule, if all the deps and inputs recorded in the
+   *     entry are unchanged.
+   */
+  private Optional<RuleKeyResult<RuleKey>> validate(
+      BuildRule rule,
+      PersistentRuleKeyStore.Entry entry,
+      Function<? super BuildRule, RuleKeyResult<RuleKey>> create,
+      CacheStatsTracker statsTracker) {
+
+    // Persisted deps are looked up by name amongst the rule's current build deps.
+    Map<String, BuildRule> buildDeps = new HashMap<>();
+    for (BuildRule dep : rule.getBuildDeps()) {
+      buildDeps.put(dep.getFullyQualifiedName(), dep);
+    }
+    ImmutableList.Builder<Object> deps = ImmutableList.builder();
+    for (Map.Entry<String, RuleKey> persistedDep : entry.getDeps().entrySet()) {
+      BuildRule dep = buildDeps.get(persistedDep.getKey());
+      if (dep == null || !get(dep, create, statsTracker).equals(persistedDep.getValue())) {
+        LOG.verbose("%s: dep %s changed", rule, persistedDep.getKey());
+        return Optional.empty();
+      }
+      deps.add(dep);
+    }
+
+    ImmutableList.Builder<RuleKeyInput> inputs = ImmutableList.builder();
+    for (PersistentRuleKeyStore.Input input : entry.getInputs()) {
+      ProjectFilesystem filesystem = filesystems.get(input.getRoot());
+      if (filesystem == null) {
+        return Optional.empty();
+      }
+      try {
+        if (!hashLoader.get(filesystem, input.getPath()).equals(input.getHashCode())) {
+          LOG.verbose("%s: input %s changed", rule, input.getPath());
+          return Optional.empty();
+        }
+      } catch (IOException e) {
+        LOG.verbose(e, "%s: input %s could not be hashed", rule, input.getPath());
+        return Optional.empty();
+      }
+      inputs.add(RuleKeyInput.of(filesystem, input.getPath()));
+    }
+
+    return Optional.of(new RuleKeyResult<>(entry.getRuleKey(), deps.build(), inputs.build()));
+  }
+
+  /**
+   * Convert a freshly computed result into a persistable entry, by walking through the appendables
+   * it depends on to collect their inputs and build rule deps.
+   *
+   * @return the entry, or nothing if some part of the result is unknown to this cache.
+   */
+  private Optional<PersistentRuleKeyStore.Entry> toEntry(
+      RuleKeyResult<RuleKey> result, HashCode fingerprint) {
+    CacheStatsTracker noOpTracker = new NoOpCacheStatsTracker();
+    Map<String, RuleKey> deps = new TreeMap<>();
+    ImmutableSet.Builder<PersistentRuleKeyStore.Input> inputs = ImmutableSet.builder();
+
+    Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<RuleKeyResult<RuleKey>> work = new ArrayDeque<>();
+    work.add(result);
+    while (!work.isEmpty()) {
+      RuleKeyResult<RuleKey> current = work.remove();
+      for (RuleKeyInput input : current.inputs) {
+        try {
+          inputs.add(
+              new PersistentRuleKeyStore.Input(
+                  input.getFilesystem().getRootPath(),
+                  input.getPath(),
+                  hashLoader.get(input.getFilesystem(), input.getPath())));
+        } catch (IOException e) {
+          return Optional.empty();
+        }
+      }
+      for (Object dep : current.deps) {
+        if (!visited.add(dep)) {
+          continue;
+        }
+        if (dep instanceof BuildRule) {
+          BuildRule depRule = (BuildRule) dep;
+          RuleKey depKey = delegate.get(depRule, noOpTracker);
+          if (depKey == null) {
+            return Optional.empty();
+          }
+          deps.put(depRule.getFullyQualifiedName(), depKey);
+        } else {
+          RuleKeyResult<RuleKey> appendableResult = appendableResults.get(dep);
+          if (appendableResult == null) {
+            return Optional.empty();
+          }
+          work.add(appendableResult);
+        }
+      }
+    }
+
+    return Optional.of(
+        new PersistentRuleKeyStore.Entry(
+            result.result,
+            fingerprint,
+            ImmutableSortedMap.copyOf(deps),
+            inputs.build().asList()));
+  }
+
+  @Override
+  public void invalidateInputs(Iterable<RuleKeyInput> inputs, CacheStatsTracker statsTracker) {
+    delegate.invalidateInputs(inputs, statsTracker);
+  }
+
+  @Override
+  public void invalidateAllExceptFilesystems(
+      ImmutableSet<ProjectFilesystem> filesystems, CacheStatsTracker statsTracker) {
+    delegate.invalidateAllExceptFilesystems(filesystems, statsTracker);
+  }
+
+  @Override
+  public void invalidateFilesystem(ProjectFilesystem filesystem, CacheStatsTracker statsTracker) {
+    delegate.invalidateFilesystem(filesystem, statsTracker);
+  }
+
+  @Override
+  public void invalidateAllExceptBuildRules(Set<BuildRule> rules, CacheStatsTracker statsTracker) {
+    delegate.invalidateAllExceptBuildRules(rules, statsTracker);
+  }
+
+  @Override
+  public void invalidateAll(CacheStatsTracker statsTracker) {
+    appendableResults.clear();
+    delegate.invalidateAll(statsTracker);
+  }
+
+  @Override
+  public ImmutableList<Map.Entry<BuildRule, RuleKey>> getCachedBuildRules() {
+    return delegate.getCachedBuildRules();
+  }
+
+  /** @return the number of rule keys served from the persistent store. */
+  public long getPersistedHitCount() {
+    return persistedHits.sum();
+  }
+
+  /** @return the number of rule keys which couldn't be served from the persistent store. */
+  public long getPersistedMissCount() {
+    return persistedMisses.sum();
+  }
+}
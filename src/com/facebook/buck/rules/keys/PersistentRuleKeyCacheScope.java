@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.log.Logger;
+import java.io.IOException;
+import java.util.function.Function;
+
+/**
+ * A {@link RuleKeyCacheScope} which layers a {@link PersistentRuleKeyCache} on top of another
+ * scope's cache, and saves the {@link PersistentRuleKeyStore} when closed.
+ */
+public class PersistentRuleKeyCacheScope implements RuleKeyCacheScope<RuleKey> {
+
+  private static final Logger LOG = Logger.get(PersistentRuleKeyCacheScope.class);
+
+  private final BuckEventBus buckEventBus;
+  private final RuleKeyCacheScope<RuleKey> delegate;
+  private final PersistentRuleKeyStore store;
+  private final PersistentRuleKeyCache persistentCache;
+  private final TrackedRuleKeyCache<RuleKey> cache;
+
+  public PersistentRuleKeyCacheScope(
+      BuckEventBus buckEventBus,
+      RuleKeyCacheScope<RuleKey> delegate,
+      PersistentRuleKeyStore store,
+      Function<TrackableRuleKeyCache<RuleKey>, PersistentRuleKeyCache> cacheFactory) {
+    this.buckEventBus = buckEventBus;
+    this.delegate = delegate;
+    this.store = store;
+    // Share the stats tracker with the delegate scope, which reports it when closed.
+    TrackedRuleKeyCache<RuleKey> delegateCache = delegate.getCache();
+    this.persistentCache = cacheFactory.apply(delegateCache.getCache());
+    this.cache = new TrackedRuleKeyCache<>(persistentCache, delegateCache.getStatsTracker());
+  }
+
+  @Override
+  public TrackedRuleKeyCache<RuleKey> getCache() {
+    return cache;
+  }
+
+  @Override
+  public void close() {
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(buckEventBus, PerfEventId.of("persistent_rule_key_cache_save"))) {
+      scope.update("persisted_hits", persistentCache.getPersistedHitCount());
+      scope.update("persisted_misses", persistentCache.getPersistedMissCount());
+      scope.update("entries", store.size());
+      store.save();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save persistent rule key cache.");
+    } finally {
+      delegate.close();
+    }
+  }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An on-disk store of default {@link RuleKey}s indexed by build target, which allows rule keys to
+ * be reused across daemon restarts and `--no-buckd` runs.
+ *
+ * <p>Each entry records everything needed to re-validate the key in a later process: a fingerprint
+ * of the rule's own configuration, the rule keys of the build rules it depends on, and the hashes
+ * of its file inputs. The store as a whole is tagged with a hash of the settings that affect all
+ * rule keys (e.g. the rule key seed and buck core key), and is discarded when those change.
+ */
+public class PersistentRuleKeyStore {
+
+  private static final Logger LOG = Logger.get(PersistentRuleKeyStore.class);
+
+  private static final int VERSION = 0;
+
+  private final Path path;
+  private final HashCode settingsHash;
+  private final ConcurrentMap<String, Entry> entries;
+  private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+  private PersistentRuleKeyStore(
+      Path path, HashCode settingsHash, ConcurrentMap<String, Entry> entries) {
+    this.path = path;
+    this.settingsHash = settingsHash;
+    this.entries = entries;
+  }
+
+  /**
+   * Load the store at the given {@link Path}. If it doesn't exist, is unreadable, or was written
+   * with different settings, an empty store is returned which will overwrite it when saved.
+   */
+  public static PersistentRuleKeyStore load(Path path, HashCode settingsHash) {
+    ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    if (Files.exists(path)) {
+      try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+        readEntries(input, settingsHash, entries);
+      } catch (IOException e) {
+        LOG.warn(e, "Failed to read rule key store at %s, starting from scratch.", path);
+        entries.clear();
+      }
+    }
+    return new PersistentRuleKeyStore(path, settingsHash, entries);
+  }
+
+  @VisibleForTesting
+  static void readEntries(InputStream rawInput, HashCode settingsHash, Map<String, Entry> entries)
+      throws IOException {
+    DataInputStream input = new DataInputStream(rawInput);
+
+    int version = input.readInt();
+    if (version != VERSION) {
+      LOG.debug("Ignoring rule key store with version %d (expected %d).", version, VERSION);
+      return;
+    }
+
+    HashCode storedSettingsHash = HashCode.fromString(input.readUTF());
+    if (!storedSettingsHash.equals(settingsHash)) {
+      LOG.debug("Ignoring rule key store written with different settings.");
+      return;
+    }
+
+    int numberOfEntries = input.readInt();
+    for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+      String target = input.readUTF();
+      RuleKey ruleKey = new RuleKey(input.readUTF());
+      HashCode fingerprint = HashCode.fromString(input.readUTF());
+
+      int numberOfDeps = input.readInt();
+      ImmutableMap.Builder<String, RuleKey> deps =
+          ImmutableMap.builderWithExpectedSize(numberOfDeps);
+      for (int depIndex = 0; depIndex < numberOfDeps; depIndex++) {
+        deps.put(input.readUTF(), new RuleKey(input.readUTF()));
+      }
+
+      int numberOfInputs = input.readInt();
+      ImmutableList.Builder<Input> inputs = ImmutableList.builderWithExpectedSize(numberOfInputs);
+      for (int inputIndex = 0; inputIndex < numberOfInputs; inputIndex++) {
+        inputs.add(
+            new Input(
+                Paths.get(input.readUTF()),
+                Paths.get(input.readUTF()),
+                HashCode.fromString(input.readUTF())));
+      }
+
+      entries.put(target, new Entry(ruleKey, fingerprint, deps.build(), inputs.build()));
+    }
+    LOG.debug("Loaded %d persisted rule keys.", numberOfEntries);
+  }
+
+  @VisibleForTesting
+  void writeEntries(OutputStream rawOutput) throws IOException {
+    DataOutputStream output = new DataOutputStream(rawOutput);
+
+    output.writeInt(VERSION);
+    output.writeUTF(settingsHash.toString());
+
+    // Take a snapshot, so that the count we write matches the entries that follow it.
+    ImmutableMap<String, Entry> snapshot = ImmutableMap.copyOf(entries);
+    output.writeInt(snapshot.size());
+    for (Map.Entry<String, Entry> mapEntry : snapshot.entrySet()) {
+      Entry entry = mapEntry.getValue();
+      output.writeUTF(mapEntry.getKey());
+      output.writeUTF(entry.getRuleKey().toString());
+      output.writeUTF(entry.getFingerprint().toString());
+
+      output.writeInt(entry.getDeps().size());
+      for (Map.Entry<String, RuleKey> dep : entry.getDeps().entrySet()) {
+        output.writeUTF(dep.getKey());
+        output.writeUTF(dep.getValue().toString());
+      }
+
+      output.writeInt(entry.getInputs().size());
+      for (Input input : entry.getInputs()) {
+        output.writeUTF(input.getRoot().toString());
+        output.writeUTF(input.getPath().toString());
+        output.writeUTF(input.getHashCode().toString());
+      }
+    }
+    output.flush();
+  }
+
+  /** @return the persisted entry for the given target, if any. */
+  public Optional<Entry> get(BuildTarget target) {
+    return Optional.ofNullable(entries.get(target.getFullyQualifiedName()));
+  }
+
+  /** Record a freshly computed entry for the given target. */
+  public void put(BuildTarget target, Entry entry) {
+    Entry previous = entries.put(target.getFullyQualifiedName(), entry);
+    if (!entry.equals(previous)) {
+      dirty.set(true);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Write the store back to disk, if it changed since it was loaded. The file is replaced
+   * atomically, so a concurrent or interrupted write never leaves a truncated store behind.
+   */
+  public void save() throws IOException {
+    if (!dirty.getAndSet(false)) {
+      return;
+    }
+    Files.createDirectories(path.getParent());
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+      writeEntries(output);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    LOG.debug("Saved %d rule keys to %s.", entries.size(), path);
+  }
+
+  /** A persisted rule key along with the information needed to validate it. */
+  public static final class Entry {
+
+    private final RuleKey ruleKey;
+    private final HashCode fingerprint;
+    private final ImmutableMap<String, RuleKey> deps;
+    private final ImmutableList<Input> inputs;
+
+    public Entry(
+        RuleKey ruleKey,
+        HashCode fingerprint,
+        ImmutableMap<String, RuleKey> deps,
+        ImmutableList<Input> inputs) {
+      this.ruleKey = ruleKey;
+      this.fingerprint = fingerprint;
+      this.deps = deps;
+      this.inputs = inputs;
+    }
+
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+
+    /** @return a hash of the rule's own configuration (e.g. its target node's attributes). */
+    public HashCode getFingerprint() {
+      return fingerprint;
+    }
+
+    /** @return the rule keys of the build rules, by fully qualified target, this key depends on. */
+    public ImmutableMap<String, RuleKey> getDeps() {
+      return deps;
+    }
+
+    /** @return the file inputs, and their hashes, this key depends on. */
+    public ImmutableList<Input> getInputs() {
+      return inputs;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) o;
+      return ruleKey.equals(that.ruleKey)
+          && fingerprint.equals(that.fingerprint)
+          && deps.equals(that.deps)
+          && inputs.equals(that.inputs);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(ruleKey, fingerprint, deps, inputs);
+    }
+  }
+
+  /** A file input of a persisted rule key, relative to the root of its filesystem. */
+  public static final class Input {
+
+    private final Path root;
+    private final Path path;
+    private final HashCode hashCode;
+
+    public Input(Path root, Path path, HashCode hashCode) {
+      this.root = root;
+      this.path = path;
+      this.hashCode = hashCode;
+    }
+
+    /** @return the absolute root path of the filesystem the input belongs to. */
+    public Path getRoot() {
+      return root;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public HashCode getHashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Input)) {
+        return false;
+      }
+      Input that = (Input) o;
+      return root.equals(that.root) && path.equals(that.path) && hashCode.equals(that.hashCode);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(root, path, hashCode);
+    }
+  }
+}
@@ -20,6 +20,7 @@ import com.facebook.buck.core.rulekey.AddsToRuleKey;
 import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 
@@ -56,6 +57,12 @@ public interface RuleKeyCache<V> {
    */
   void invalidateFilesystem(ProjectFilesystem filesystem);
 
+  /**
+   * Invalidate all build rules *not* in the given set, and their transitive dependents, along with
+   * any appendables which are no longer depended on by a cached build rule.
+   */
+  void invalidateAllExceptBuildRules(Set<BuildRule> rules);
+
   /** Invalidate everything in the cache. */
   void invalidateAll();
 }
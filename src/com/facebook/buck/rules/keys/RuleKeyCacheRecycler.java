@@ -28,10 +28,13 @@ import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
 import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.IntStream;
 import javax.annotation.Nullable;
@@ -128,13 +131,23 @@ public class RuleKeyCacheRecycler<V> {
         super.setup(scope);
 
         // We invalidate everything if any of the settings we care about change.
-        if (!SettingsAffectingCache.areIdentical(previousSettings, currentSettings)) {
+        boolean settingsChanged =
+            !SettingsAffectingCache.areIdentical(previousSettings, currentSettings);
+        boolean actionGraphChanged =
+            previousSettings != null && previousSettings.actionGraph != currentSettings.actionGraph;
+        if (settingsChanged) {
           LOG.debug("invalidating entire cache due to settings change");
           getCache().invalidateAll();
-          scope.update("settings_change", true);
-        } else {
-          scope.update("settings_change", false);
+        } else if (actionGraphChanged) {
+          // The new action graph may have been generated incrementally from the previous one, in
+          // which case the build rules carried over into it keep their cached rule keys.
+          LOG.debug("invalidating build rules not carried over into the new action graph");
+          Set<BuildRule> rules = Sets.newIdentityHashSet();
+          Iterables.addAll(rules, currentSettings.actionGraph.getNodes());
+          getCache().invalidateAllExceptBuildRules(rules);
         }
+        scope.update("settings_change", settingsChanged);
+        scope.update("action_graph_change", actionGraphChanged);
 
         // Record the current settings for next time.
         previousSettings = currentSettings;
@@ -192,15 +205,10 @@ public class RuleKeyCacheRecycler<V> {
         return false;
       }
 
-      if (previous.ruleKeySeed != current.ruleKeySeed) {
-        return false;
-      }
-
-      // NOTE: Since the cache indexes using instance equality, it's only ever useful if we get a
-      // hit in the action graph cache and re-use the same action graph in the next build.  So, if
-      // we detect that a fresh action graph is being used, we eagerly dump the cache to free up
-      // memory.
-      return previous.actionGraph == current.actionGraph;
+      // NOTE: Since the cache indexes using instance equality, a new action graph doesn't
+      // require invalidating everything: only rules which aren't carried over into it are
+      // invalidated (see above).
+      return previous.ruleKeySeed == current.ruleKeySeed;
     }
   }
 }
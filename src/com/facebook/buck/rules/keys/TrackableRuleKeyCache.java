@@ -23,6 +23,7 @@ import com.facebook.buck.util.cache.CacheStatsTracker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 
@@ -53,6 +54,8 @@ public interface TrackableRuleKeyCache<V> {
 
   void invalidateFilesystem(ProjectFilesystem filesystem, CacheStatsTracker statsTracker);
 
+  void invalidateAllExceptBuildRules(Set<BuildRule> rules, CacheStatsTracker statsTracker);
+
   void invalidateAll(CacheStatsTracker statsTracker);
 
   ImmutableList<Map.Entry<BuildRule, V>> getCachedBuildRules();
@@ -21,8 +21,8 @@ import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.cache.CacheStats;
 import com.facebook.buck.util.cache.CacheStatsTracker;
-import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
+import java.util.Set;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 
@@ -80,17 +80,29 @@ public class TrackedRuleKeyCache<V> implements RuleKeyCache<V> {
     cache.invalidateFilesystem(filesystem, statsTracker);
   }
 
+  /**
+   * Invalidate all build rules *not* in the given set, and their transitive dependents, along with
+   * any appendables which are no longer depended on by a cached build rule.
+   */
+  @Override
+  public void invalidateAllExceptBuildRules(Set<BuildRule> rules) {
+    cache.invalidateAllExceptBuildRules(rules, statsTracker);
+  }
+
   /** Invalidate everything in the cache. */
   @Override
   public void invalidateAll() {
     cache.invalidateAll(statsTracker);
   }
 
-  @VisibleForTesting
   TrackableRuleKeyCache<V> getCache() {
     return cache;
   }
 
+  CacheStatsTracker getStatsTracker() {
+    return statsTracker;
+  }
+
   /** @return the stats of the cache */
   public CacheStats getStats() {
     CacheStats.Builder statsBuilder =
@@ -17,17 +17,26 @@
 package com.facebook.buck.rules.keys;
 
 import com.google.common.base.Preconditions;
-import java.lang.reflect.InvocationTargetException;
+import com.google.common.base.Throwables;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
 
-/** Extracts a value of a given field, that is assumed to be accessible. */
+/**
+ * Extracts a value of a given field, that is assumed to be accessible.
+ *
+ * <p>The method is invoked through a {@link MethodHandle} resolved once up front, which avoids the
+ * argument array and access checks of {@link Method#invoke}.
+ */
 public class ValueMethodValueExtractor implements ValueExtractor {
   private static final Pattern GET_PATTERN = Pattern.compile("get[A-Z].*");
   private static final Pattern IS_PATTERN = Pattern.compile("is[A-Z].*");
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
 
-  private final Method method;
+  private final MethodHandle getter;
   private final String name;
   private final String qualifiedName;
 
@@ -36,7 +45,11 @@ public class ValueMethodValueExtractor implements ValueExtractor {
     Preconditions.checkArgument(!method.getReturnType().equals(Void.class));
     // TODO(cjhopman): Should this do any other verification of the signature/annotations on the
     // method?
-    this.method = method;
+    try {
+      this.getter = MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
     this.qualifiedName = method.getDeclaringClass() + "." + method.getName();
     String methodName = method.getName();
 
@@ -64,9 +77,10 @@ public class ValueMethodValueExtractor implements ValueExtractor {
   @Nullable
   public Object getValue(Object obj) {
     try {
-      return method.invoke(obj);
-    } catch (IllegalAccessException | InvocationTargetException e) {
-      throw new RuntimeException(e);
+      return getter.invokeExact(obj);
+    } catch (Throwable t) {
+      Throwables.throwIfUnchecked(t);
+      throw new RuntimeException(t);
     }
   }
 }
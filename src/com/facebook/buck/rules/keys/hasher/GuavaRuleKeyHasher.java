@@ -27,28 +27,95 @@ import com.facebook.buck.rules.keys.SourceRoot;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.regex.Pattern;
 
-/** An implementation of {@link RuleKeyHasher} that wraps Guava's {@link Hasher}. */
+/**
+ * An implementation of {@link RuleKeyHasher} that wraps Guava's {@link Hasher}.
+ *
+ * <p>Strings and hash codes are encoded into a scratch buffer owned by this hasher and fed to the
+ * underlying {@link Hasher} from there, rather than allocating a new byte array for each value.
+ * The bytes hashed are exactly the same as those of {@link String#getBytes} with UTF-8.
+ */
 public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
 
+  private static final int INITIAL_BUFFER_SIZE = 256;
+
   private final Hasher hasher;
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
 
   public GuavaRuleKeyHasher(Hasher hasher) {
     this.hasher = hasher;
   }
 
   private GuavaRuleKeyHasher putBytes(byte type, byte[] bytes) {
-    hasher.putBytes(bytes);
-    hasher.putInt(bytes.length);
+    return putBytes(type, bytes, bytes.length);
+  }
+
+  private GuavaRuleKeyHasher putBytes(byte type, byte[] bytes, int length) {
+    hasher.putBytes(bytes, 0, length);
+    hasher.putInt(length);
     hasher.putByte(type);
     return this;
   }
 
+  private GuavaRuleKeyHasher putHashCode(byte type, HashCode hash) {
+    byte[] bytes = ensureBuffer(hash.bits() / Byte.SIZE);
+    return putBytes(type, bytes, hash.writeBytesTo(bytes, 0, bytes.length));
+  }
+
   private GuavaRuleKeyHasher putStringified(byte type, String val) {
-    return putBytes(type, val.getBytes(StandardCharsets.UTF_8));
+    int length = encodeUtf8(val);
+    return putBytes(type, buffer, length);
+  }
+
+  private byte[] ensureBuffer(int size) {
+    if (buffer.length < size) {
+      buffer = new byte[Math.max(size, buffer.length * 2)];
+    }
+    return buffer;
+  }
+
+  /**
+   * Encodes the given string as UTF-8 into {@link #buffer}, replacing unpaired surrogates with
+   * {@code '?'} like {@link String#getBytes} does.
+   *
+   * @return the number of bytes written.
+   */
+  private int encodeUtf8(String val) {
+    int length = val.length();
+    // Every char encodes to at most three bytes (surrogate pairs take four bytes for two chars).
+    byte[] bytes = ensureBuffer(length * 3);
+    int position = 0;
+    int index = 0;
+    // Fast path for the common all-ASCII prefix.
+    for (char c; index < length && (c = val.charAt(index)) < 0x80; index++) {
+      bytes[position++] = (byte) c;
+    }
+    for (; index < length; index++) {
+      char c = val.charAt(index);
+      if (c < 0x80) {
+        bytes[position++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xc0 | (c >> 6));
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (!Character.isSurrogate(c)) {
+        bytes[position++] = (byte) (0xe0 | (c >> 12));
+        bytes[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)
+          && index + 1 < length
+          && Character.isLowSurrogate(val.charAt(index + 1))) {
+        int codePoint = Character.toCodePoint(c, val.charAt(++index));
+        bytes[position++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        bytes[position++] = (byte) '?';
+      }
+    }
+    return position;
   }
 
   private GuavaRuleKeyHasher putBuildTarget(byte type, BuildTarget target) {
@@ -129,14 +196,14 @@ public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
   @Override
   public GuavaRuleKeyHasher putPath(Path path, HashCode hash) {
     this.putStringified(RuleKeyHasherTypes.PATH, path.toString());
-    this.putBytes(RuleKeyHasherTypes.PATH, hash.asBytes());
+    this.putHashCode(RuleKeyHasherTypes.PATH, hash);
     return this;
   }
 
   @Override
   public GuavaRuleKeyHasher putArchiveMemberPath(ArchiveMemberPath path, HashCode hash) {
     this.putStringified(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, path.toString());
-    this.putBytes(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash.asBytes());
+    this.putHashCode(RuleKeyHasherTypes.ARCHIVE_MEMBER_PATH, hash);
     return this;
   }
 
@@ -152,7 +219,7 @@ public class GuavaRuleKeyHasher implements RuleKeyHasher<HashCode> {
 
   @Override
   public GuavaRuleKeyHasher putRuleKey(RuleKey ruleKey) {
-    return this.putBytes(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode().asBytes());
+    return this.putHashCode(RuleKeyHasherTypes.RULE_KEY, ruleKey.getHashCode());
   }
 
   @Override
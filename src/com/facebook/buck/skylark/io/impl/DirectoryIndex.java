@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.io.impl;
+
+import com.google.common.collect.ImmutableList;
+import com.google.devtools.build.lib.vfs.Dirent;
+import com.google.devtools.build.lib.vfs.FileStatus;
+import com.google.devtools.build.lib.vfs.Path;
+import com.google.devtools.build.lib.vfs.Symlinks;
+import com.google.devtools.build.lib.vfs.UnixGlob;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * An in-memory index of directory listings and file types, which lets globs be evaluated without
+ * touching the file system for directories that have been seen before.
+ *
+ * <p>Directories are indexed lazily, the first time a glob looks at them. Indexed entries are kept
+ * until their owner reports that a path has been created or deleted through {@link
+ * #invalidate(java.nio.file.Path)}, which forgets everything known about the path, its ancestors
+ * and its descendants. Changes to the contents of files don't affect globs, so they needn't be
+ * reported.
+ *
+ * <p>Only the type of files is relied upon by globs, so other attributes of the cached {@link
+ * FileStatus}es may be stale.
+ */
+public class DirectoryIndex implements UnixGlob.FilesystemCalls {
+
+  private final ConcurrentNavigableMap<String, ImmutableList<Dirent>> listings =
+      new ConcurrentSkipListMap<>();
+  private final ConcurrentNavigableMap<String, Optional<FileStatus>> statuses =
+      new ConcurrentSkipListMap<>();
+
+  /** Incremented on every invalidation, so that results read concurrently aren't cached. */
+  private final AtomicLong generation = new AtomicLong();
+
+  @Override
+  public Collection<Dirent> readdir(Path path, Symlinks symlinks) throws IOException {
+    if (symlinks != Symlinks.FOLLOW) {
+      return path.readdir(symlinks);
+    }
+    String key = path.getPathString();
+    ImmutableList<Dirent> listing = listings.get(key);
+    if (listing == null) {
+      long currentGeneration = generation.get();
+      listing = ImmutableList.copyOf(path.readdir(symlinks));
+      if (generation.get() == currentGeneration) {
+        listings.putIfAbsent(key, listing);
+      }
+    }
+    return listing;
+  }
+
+  @Nullable
+  @Override
+  public FileStatus statIfFound(Path path, Symlinks symlinks) throws IOException {
+    if (symlinks != Symlinks.FOLLOW) {
+      return path.statIfFound(symlinks);
+    }
+    String key = path.getPathString();
+    Optional<FileStatus> status = statuses.get(key);
+    if (status == null) {
+      long currentGeneration = generation.get();
+      status = Optional.ofNullable(path.statIfFound(symlinks));
+      if (generation.get() == currentGeneration) {
+        statuses.putIfAbsent(key, status);
+      }
+    }
+    return status.orElse(null);
+  }
+
+  /** Forgets everything known about the given absolute path, its ancestors and descendants. */
+  public void invalidate(java.nio.file.Path path) {
+    generation.incrementAndGet();
+    String key = path.toString();
+    // Paths are sorted as strings, so all descendants of a directory sort between "dir/" and
+    // "dir0", as '0' is the character right after '/'.
+    listings.subMap(key + '/', key + '0').clear();
+    statuses.subMap(key + '/', key + '0').clear();
+    for (java.nio.file.Path ancestor = path; ancestor != null; ancestor = ancestor.getParent()) {
+      listings.remove(ancestor.toString());
+      statuses.remove(ancestor.toString());
+    }
+  }
+
+  /** Forgets everything. */
+  public void invalidateAll() {
+    generation.incrementAndGet();
+    listings.clear();
+    statuses.clear();
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.parser;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Loaded Skylark extensions of a single cell, shared by all the parsers of that cell so that an
+ * extension loaded by many build files is only parsed and evaluated once.
+ *
+ * <p>Entries are keyed by the path of the extension file and remember the hash of its contents.
+ * Once an extension file (or any extension it loads) has changed, its entry is revalidated on next
+ * use, and only evaluated again if the contents of the file or of its dependencies are different.
+ * Loaded extensions are frozen, so they can safely be used by many parsers at the same time.
+ */
+public class SkylarkExtensionCache {
+
+  private static final Logger LOG = Logger.get(SkylarkExtensionCache.class);
+
+  /** Evaluates the given contents of an extension file. */
+  @FunctionalInterface
+  interface Loader {
+    ExtensionData load(byte[] content)
+        throws IOException, InterruptedException, BuildFileParseException;
+  }
+
+  private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+  /**
+   * Paths of extension files, to the paths of the extensions which load them directly. Edges are
+   * only ever added (until {@link #invalidateAll()}), so at worst this over-approximates what has
+   * to be revalidated.
+   */
+  private final ConcurrentMap<String, Set<String>> loadedBy = new ConcurrentHashMap<>();
+
+  /**
+   * @return the extension loaded from the given file, which is evaluated by {@code loader} unless
+   *     the file and everything it loads are unchanged since it was last evaluated.
+   */
+  ExtensionData get(com.google.devtools.build.lib.vfs.Path path, Loader loader)
+      throws IOException, InterruptedException, BuildFileParseException {
+    String key = path.getPathString();
+    Entry entry = entries.get(key);
+    if (entry != null && revalidate(entry)) {
+      return entry.data;
+    }
+
+    byte[] content = FileSystemUtils.readContent(path);
+    ExtensionData data = loader.load(content);
+    // Index the dependencies first, so that changes made once the entry is visible invalidate it.
+    indexDependencies(data, new HashSet<>());
+    entries.put(key, new Entry(Hashing.sha1().hashBytes(content), data));
+    return data;
+  }
+
+  /**
+   * Marks the extension at the given absolute path, and all extensions which load it, to be
+   * revalidated before they are used again.
+   */
+  public void invalidate(Path path) {
+    String changedPath = path.toString();
+    // Most changed files are not extensions, so don't allocate anything for them.
+    if (!entries.containsKey(changedPath) && !loadedBy.containsKey(changedPath)) {
+      return;
+    }
+    Deque<String> toInvalidate = new ArrayDeque<>();
+    Set<String> visited = new HashSet<>();
+    toInvalidate.add(changedPath);
+    while (!toInvalidate.isEmpty()) {
+      String extensionPath = toInvalidate.pop();
+      if (!visited.add(extensionPath)) {
+        continue;
+      }
+      Entry entry = entries.get(extensionPath);
+      if (entry != null && entry.valid) {
+        LOG.verbose("Invalidating extension %s after change to %s.", extensionPath, path);
+        entry.valid = false;
+      }
+      Set<String> dependents = loadedBy.get(extensionPath);
+      if (dependents != null) {
+        toInvalidate.addAll(dependents);
+      }
+    }
+  }
+
+  /** Removes all entries. */
+  public void invalidateAll() {
+    entries.clear();
+    loadedBy.clear();
+  }
+
+  /**
+   * @return whether the given entry can be used, which is only the case if the extension file and
+   *     all its dependencies still have the same contents they were evaluated with.
+   */
+  private boolean revalidate(Entry entry) {
+    if (entry.valid) {
+      return true;
+    }
+    HashCode contentHash;
+    try {
+      contentHash = Hashing.sha1().hashBytes(FileSystemUtils.readContent(entry.data.getPath()));
+    } catch (IOException e) {
+      return false;
+    }
+    if (!contentHash.equals(entry.contentHash)) {
+      return false;
+    }
+    for (ExtensionData dependency : entry.data.getDependencies()) {
+      Entry dependencyEntry = entries.get(dependency.getPath().getPathString());
+      if (dependencyEntry == null
+          || dependencyEntry.data.getExtension() != dependency.getExtension()
+          || !revalidate(dependencyEntry)) {
+        return false;
+      }
+    }
+    entry.valid = true;
+    return true;
+  }
+
+  /** Records which extensions load each of the extensions that {@code data} transitively loads. */
+  private void indexDependencies(ExtensionData data, Set<String> visited) {
+    String path = data.getPath().getPathString();
+    if (!visited.add(path)) {
+      return;
+    }
+    for (ExtensionData dependency : data.getDependencies()) {
+      loadedBy
+          .computeIfAbsent(dependency.getPath().getPathString(), k -> ConcurrentHashMap.newKeySet())
+          .add(path);
+      indexDependencies(dependency, visited);
+    }
+  }
+
+  private static class Entry {
+    private final HashCode contentHash;
+    private final ExtensionData data;
+    private volatile boolean valid = true;
+
+    private Entry(HashCode contentHash, ExtensionData data) {
+      this.contentHash = contentHash;
+      this.data = data;
+    }
+  }
+}
@@ -82,6 +82,7 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
   private final BuckEventBus buckEventBus;
   private final EventHandler eventHandler;
   private final LoadingCache<LoadImport, ExtensionData> extensionDataCache;
+  private final SkylarkExtensionCache extensionCache;
   private final BuckGlobals buckGlobals;
   private final GlobberFactory globberFactory;
 
@@ -91,13 +92,15 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       FileSystem fileSystem,
       BuckGlobals buckGlobals,
       EventHandler eventHandler,
-      GlobberFactory globberFactory) {
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache extensionCache) {
     this.options = options;
     this.buckEventBus = buckEventBus;
     this.fileSystem = fileSystem;
     this.eventHandler = eventHandler;
     this.buckGlobals = buckGlobals;
     this.globberFactory = globberFactory;
+    this.extensionCache = extensionCache;
 
     this.extensionDataCache =
         CacheBuilder.newBuilder()
@@ -118,8 +121,36 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
       BuckGlobals buckGlobals,
       EventHandler eventHandler,
       GlobberFactory globberFactory) {
+    return using(
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        new SkylarkExtensionCache());
+  }
+
+  /**
+   * Create an instance of Skylark project build file parser using provided options, which shares
+   * loaded extensions with other parsers of the same cell through {@code extensionCache}.
+   */
+  public static SkylarkProjectBuildFileParser using(
+      ProjectBuildFileParserOptions options,
+      BuckEventBus buckEventBus,
+      FileSystem fileSystem,
+      BuckGlobals buckGlobals,
+      EventHandler eventHandler,
+      GlobberFactory globberFactory,
+      SkylarkExtensionCache extensionCache) {
     return new SkylarkProjectBuildFileParser(
-        options, buckEventBus, fileSystem, buckGlobals, eventHandler, globberFactory);
+        options,
+        buckEventBus,
+        fileSystem,
+        buckGlobals,
+        eventHandler,
+        globberFactory,
+        extensionCache);
   }
 
   @Override
@@ -340,7 +371,8 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
   }
 
   /**
-   * Creates an extension from a {@code path}.
+   * Creates an extension from a {@code path}, or reuses the one loaded from it before if it hasn't
+   * changed since.
    *
    * @param loadImport an import label representing an extension to load.
    */
@@ -349,19 +381,44 @@ public class SkylarkProjectBuildFileParser implements ProjectBuildFileParser {
     Label label = loadImport.getLabel();
     com.google.devtools.build.lib.vfs.Path extensionPath =
         getImportPath(label, loadImport.getImport());
+    ExtensionData extensionData;
+    try {
+      extensionData =
+          extensionCache.get(
+              extensionPath, content -> evaluateExtension(loadImport, extensionPath, content));
+    } catch (FileNotFoundException e) {
+      throw BuildFileParseException.createForUnknownParseError(
+          String.format(
+              "%s cannot be loaded because it does not exist. It was referenced from %s",
+              extensionPath, loadImport.getContainingLabel()));
+    }
+    String importString = loadImport.getImport().getImportString();
+    if (extensionData.getImportString().equals(importString)) {
+      return extensionData;
+    }
+    // The same extension may be loaded using different import strings from different files.
+    return ExtensionData.builder().from(extensionData).setImportString(importString).build();
+  }
+
+  /**
+   * Evaluates the contents of an extension file.
+   *
+   * @param loadImport an import label representing the extension.
+   * @param extensionPath the path of the extension file.
+   * @param content the contents of the extension file.
+   */
+  private ExtensionData evaluateExtension(
+      LoadImport loadImport, com.google.devtools.build.lib.vfs.Path extensionPath, byte[] content)
+      throws IOException, BuildFileParseException, InterruptedException {
+    Label label = loadImport.getLabel();
     ImmutableList<ExtensionData> dependencies = ImmutableList.of();
     Extension extension;
     try (Mutability mutability = Mutability.create("importing extension")) {
-      BuildFileAST extensionAst;
-      try {
-        extensionAst =
-            BuildFileAST.parseSkylarkFile(createInputSource(extensionPath), eventHandler);
-      } catch (FileNotFoundException e) {
-        throw BuildFileParseException.createForUnknownParseError(
-            String.format(
-                "%s cannot be loaded because it does not exist. It was referenced from %s",
-                extensionPath, loadImport.getContainingLabel()));
-      }
+      BuildFileAST extensionAst =
+          BuildFileAST.parseSkylarkFile(
+              ParserInputSource.create(
+                  new String(content, StandardCharsets.UTF_8), extensionPath.asFragment()),
+              eventHandler);
       if (extensionAst.containsErrors()) {
         throw BuildFileParseException.createForUnknownParseError(
             "Cannot parse extension file " + loadImport.getImport().getImportString());
@@ -33,6 +33,8 @@ public class BuckConstant {
   public static final String RULE_KEY_LOGGER_FILE_NAME = "rule_key_logger.tsv";
   public static final String RULE_KEY_DIAG_KEYS_FILE_NAME = "rule_key_diag_keys.txt";
   public static final String RULE_KEY_DIAG_GRAPH_FILE_NAME = "rule_key_diag_graph.txt";
+  public static final String CPU_PROFILE_FILE_NAME = "cpu_profile.folded";
+  public static final String ALLOCATION_PROFILE_FILE_NAME = "allocation_profile.folded";
 
   private BuckConstant() {}
 
@@ -22,6 +22,7 @@ import com.facebook.buck.util.hashing.FileHashLoader;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -55,6 +56,15 @@ public interface FileHashCache extends FileHashLoader {
     set(filesystem.resolve(path), hashCode);
   }
 
+  /**
+   * Hint that the hashes of the given relative {@link Path}s under the given {@link
+   * ProjectFilesystem} will soon be requested, allowing implementations to load them in bulk ahead
+   * of time.
+   */
+  @SuppressWarnings("unused")
+  default void prefetch(ProjectFilesystem filesystem, Collection<Path> paths)
+      throws InterruptedException {}
+
   default FileHashCacheVerificationResult verify() throws IOException {
     throw new RuntimeException(
         "FileHashCache class " + getClass().getName() + " does not support verification.");
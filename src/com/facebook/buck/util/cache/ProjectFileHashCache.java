@@ -23,6 +23,7 @@ import com.facebook.buck.util.hashing.ProjectFileHashLoader;
 import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.Map.Entry;
 import java.util.stream.Stream;
 
@@ -45,6 +46,13 @@ public interface ProjectFileHashCache extends ProjectFileHashLoader {
 
   void set(Path path, HashCode hashCode) throws IOException;
 
+  /**
+   * Hint that the hashes of the given paths will soon be requested, allowing implementations to
+   * load them in bulk ahead of time.
+   */
+  @SuppressWarnings("unused")
+  default void prefetch(Collection<Path> paths) throws InterruptedException {}
+
   default FileHashCacheVerificationResult verify() throws IOException {
     throw new RuntimeException(
         "ProjectFileHashCache class " + getClass().getName() + " does not support verification.");
@@ -16,20 +16,27 @@
 
 package com.facebook.buck.util.cache.impl;
 
+import com.facebook.buck.counters.HistogramCounter;
+import com.facebook.buck.counters.HotPathMetrics;
+import com.facebook.buck.counters.TimerCounter;
 import com.facebook.buck.event.AbstractBuckEvent;
 import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.ProjectFilesystemFactory;
+import com.facebook.buck.util.Scope;
 import com.facebook.buck.util.cache.FileHashCacheEngine;
 import com.facebook.buck.util.cache.FileHashCacheMode;
 import com.facebook.buck.util.cache.FileHashCacheVerificationResult;
 import com.facebook.buck.util.cache.HashCodeAndFileType;
 import com.facebook.buck.util.cache.JarHashCodeAndFileType;
 import com.facebook.buck.util.cache.ProjectFileHashCache;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.facebook.buck.util.hashing.PathHashing;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
@@ -38,11 +45,16 @@ import java.nio.file.FileSystems;
 import java.nio.file.Path;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 public class DefaultFileHashCache implements ProjectFileHashCache {
@@ -50,17 +62,64 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   private static final boolean SHOULD_CHECK_IGNORED_PATHS =
       Boolean.getBoolean("buck.DefaultFileHashCache.check_ignored_paths");
 
+  /**
+   * The number of files hashed concurrently when hashing many files at once. Hashing is mostly
+   * bound by I/O, so this is deliberately not scaled up with the number of cores, to avoid
+   * thrashing the disk.
+   */
+  private static final int HASHING_THREADS =
+      Integer.getInteger(
+          "buck.DefaultFileHashCache.hashing_threads",
+          Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+  /**
+   * Shared by all caches, to bound the number of files being read at once. A fork-join pool lets
+   * directory hashes, which hash their contents in parallel, be computed from within the pool.
+   */
+  private static final Supplier<ForkJoinPool> HASHING_POOL =
+      Suppliers.memoize(() -> MostExecutors.forkJoinPoolWithThreadLimit(HASHING_THREADS, 0));
+
+  private static final TimerCounter HASHING_TIMER =
+      HotPathMetrics.timer("file_hash_cache", "file_hashing", ImmutableMap.of());
+  private static final HistogramCounter HASHED_BYTES =
+      HotPathMetrics.histogram("file_hash_cache", "hashed_file_bytes", ImmutableMap.of());
+
   private final ProjectFilesystem projectFilesystem;
   private final Predicate<Path> ignoredPredicate;
 
+  private final Optional<FileHashSnapshot> snapshot;
+  final Optional<WatchmanFileHashes> watchmanFileHashes;
+
   @VisibleForTesting FileHashCacheEngine fileHashCacheEngine;
 
   protected DefaultFileHashCache(
       ProjectFilesystem projectFilesystem,
       Predicate<Path> ignoredPredicate,
       FileHashCacheMode fileHashCacheMode) {
+    this(
+        projectFilesystem,
+        ignoredPredicate,
+        fileHashCacheMode,
+        Optional.empty(),
+        Optional.empty());
+  }
+
+  /**
+   * @param snapshot an on-disk snapshot of file hashes to consult before hashing a file, and to
+   *     record newly computed file hashes in.
+   * @param watchmanFileHashes file hashes reported by Watchman for paths passed to {@link
+   *     #prefetch}, which are used instead of hashing those files.
+   */
+  protected DefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      Predicate<Path> ignoredPredicate,
+      FileHashCacheMode fileHashCacheMode,
+      Optional<FileHashSnapshot> snapshot,
+      Optional<WatchmanFileHashes> watchmanFileHashes) {
     this.projectFilesystem = projectFilesystem;
     this.ignoredPredicate = ignoredPredicate;
+    this.snapshot = snapshot;
+    this.watchmanFileHashes = watchmanFileHashes;
     FileHashCacheEngine.ValueLoader<HashCodeAndFileType> hashLoader =
         path -> {
           try {
@@ -136,8 +195,21 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   public static DefaultFileHashCache createDefaultFileHashCache(
       ProjectFilesystem projectFilesystem, FileHashCacheMode fileHashCacheMode) {
+    return createDefaultFileHashCache(
+        projectFilesystem, fileHashCacheMode, Optional.empty(), Optional.empty());
+  }
+
+  public static DefaultFileHashCache createDefaultFileHashCache(
+      ProjectFilesystem projectFilesystem,
+      FileHashCacheMode fileHashCacheMode,
+      Optional<FileHashSnapshot> snapshot,
+      Optional<WatchmanFileHashes> watchmanFileHashes) {
     return new DefaultFileHashCache(
-        projectFilesystem, getDefaultPathPredicate(projectFilesystem), fileHashCacheMode);
+        projectFilesystem,
+        getDefaultPathPredicate(projectFilesystem),
+        fileHashCacheMode,
+        snapshot,
+        watchmanFileHashes);
   }
 
   /**
@@ -205,7 +277,25 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   }
 
   private HashCode getFileHashCode(Path path) throws IOException {
-    return projectFilesystem.computeSha1(path).asHashCode();
+    Optional<HashCode> watchmanHashCode = watchmanFileHashes.flatMap(hashes -> hashes.take(path));
+    if (watchmanHashCode.isPresent()) {
+      return watchmanHashCode.get();
+    }
+    if (snapshot.isPresent()) {
+      return snapshot.get().get(path, this::computeFileHashCode);
+    }
+    return computeFileHashCode(path);
+  }
+
+  private HashCode computeFileHashCode(Path path) throws IOException {
+    HashCode hashCode;
+    try (Scope scope = HotPathMetrics.time(HASHING_TIMER)) {
+      hashCode = projectFilesystem.computeSha1(path).asHashCode();
+    }
+    if (HotPathMetrics.isEnabled()) {
+      HotPathMetrics.record(HASHED_BYTES, projectFilesystem.getFileSize(path));
+    }
+    return hashCode;
   }
 
   private long getPathSize(Path path) throws IOException {
@@ -217,11 +307,53 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   }
 
   private HashCodeAndFileType getDirHashCode(Path path) throws IOException {
+    Collection<Path> files = projectFilesystem.getFilesUnderPath(path);
+    try {
+      loadInParallel(files);
+    } catch (InterruptedException e) {
+      // Fall back to hashing the remaining files serially below.
+      Thread.currentThread().interrupt();
+    }
     Hasher hasher = Hashing.sha1().newHasher();
-    PathHashing.hashPath(hasher, this, projectFilesystem, path);
+    PathHashing.hashPath(hasher, this, path, files);
     return HashCodeAndFileType.ofDirectory(hasher.hash());
   }
 
+  /**
+   * Load the hashes of any of the given paths which aren't already cached, in parallel on the
+   * shared hashing pool. Failures are ignored here, and reported when the hash is next requested.
+   */
+  private void loadInParallel(Collection<Path> relativePaths) throws InterruptedException {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>();
+    for (Path path : relativePaths) {
+      if (fileHashCacheEngine.getIfPresent(path) == null) {
+        tasks.add(ForkJoinTask.adapt(() -> preload(path)));
+      }
+    }
+    if (tasks.size() < 2) {
+      return;
+    }
+
+    ForkJoinPool pool = HASHING_POOL.get();
+    if (ForkJoinTask.getPool() == pool) {
+      ForkJoinTask.invokeAll(tasks);
+      return;
+    }
+    try {
+      pool.submit(() -> ForkJoinTask.invokeAll(tasks)).get();
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  private void preload(Path relativePath) {
+    try {
+      fileHashCacheEngine.get(relativePath);
+    } catch (IOException | RuntimeException e) {
+      // The same failure is raised again when the hash is requested.
+    }
+  }
+
   @Override
   public boolean willGet(Path relativePath) {
     Preconditions.checkState(!relativePath.isAbsolute());
@@ -244,14 +376,35 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
 
   @Override
   public void invalidate(Path relativePath) {
+    watchmanFileHashes.ifPresent(hashes -> hashes.invalidate(relativePath));
     fileHashCacheEngine.invalidate(relativePath);
   }
 
   @Override
   public void invalidateAll() {
+    watchmanFileHashes.ifPresent(WatchmanFileHashes::invalidateAll);
     fileHashCacheEngine.invalidateAll();
   }
 
+  /**
+   * Load the hashes of the given files in bulk: from Watchman, if this cache is backed by it, and
+   * otherwise by hashing them in parallel on a bounded pool. Paths which are already cached or
+   * ignored are skipped.
+   */
+  @Override
+  public void prefetch(Collection<Path> relativePaths) throws InterruptedException {
+    ImmutableList<Path> uncached =
+        relativePaths
+            .stream()
+            .filter(path -> !isIgnored(path))
+            .filter(path -> fileHashCacheEngine.getIfPresent(path) == null)
+            .collect(ImmutableList.toImmutableList());
+    if (watchmanFileHashes.isPresent()) {
+      watchmanFileHashes.get().prefetch(uncached);
+    }
+    loadInParallel(uncached);
+  }
+
   /** @return The {@link com.google.common.hash.HashCode} of the contents of path. */
   @Override
   public HashCode get(Path relativePath) throws IOException {
@@ -341,6 +494,13 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
                     projectFilesystem.resolve(entry.getKey()), entry.getValue().getHashCode()));
   }
 
+  /** Write any file hashes computed since the last save to this cache's snapshot, if it has one. */
+  public void saveSnapshot() throws IOException {
+    if (snapshot.isPresent()) {
+      snapshot.get().save();
+    }
+  }
+
   public List<AbstractBuckEvent> getStatsEvents() {
     return fileHashCacheEngine.getStatsEvents();
   }
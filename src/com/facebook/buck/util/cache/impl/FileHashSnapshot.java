@@ -0,0 +1,509 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * An on-disk snapshot of the content hashes of the files in a {@link ProjectFilesystem}, which
+ * allows a fresh file hash cache (e.g. after a daemon restart) to avoid rehashing files which
+ * haven't changed since they were last hashed.
+ *
+ * <p>Each entry records the size, modification time and file key (i.e. device and inode, where
+ * the platform provides one) of the file when it was hashed, and is only used while all three are
+ * unchanged. The snapshot is memory-mapped the first time a hash is requested and entries are read
+ * from the mapping as they're looked up, so the heap only holds a table of record offsets (two ints
+ * per file) and the entries recorded since. New entries are appended to the snapshot when saved,
+ * and it's only rewritten when it needs compacting.
+ */
+public class FileHashSnapshot {
+
+  private static final Logger LOG = Logger.get(FileHashSnapshot.class);
+
+  private static final int VERSION = 0;
+
+  private static final byte RECORD_ENTRY = 0;
+
+  /**
+   * Files modified this recently may still be modified again without their modification time
+   * changing, on filesystems with a coarse timestamp granularity, so aren't recorded.
+   */
+  private static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+
+  /** The snapshot is rewritten from scratch once it has this many more records than entries. */
+  private static final int MIN_STALE_RECORDS_TO_COMPACT = 10000;
+
+  private final ProjectFilesystem filesystem;
+  private final Path path;
+  private final Supplier<Index> index;
+
+  // Entries recorded by this instance, which supersede those in the mapped snapshot, and how many
+  // of them are for paths which aren't in it at all.
+  private final ConcurrentMap<Path, Entry> recordedEntries = new ConcurrentHashMap<>();
+  private final AtomicInteger newPaths = new AtomicInteger();
+  private final ConcurrentMap<Path, Entry> pendingEntries = new ConcurrentHashMap<>();
+
+  // The number of records in the file on disk, and whether it's unusable and must be rewritten.
+  private int recordsOnDisk = 0;
+  private boolean needsRewrite = false;
+  private volatile boolean loaded = false;
+
+  @VisibleForTesting
+  FileHashSnapshot(ProjectFilesystem filesystem, Path path) {
+    this.filesystem = filesystem;
+    this.path = path;
+    this.index = Suppliers.memoize(this::load);
+  }
+
+  /** @return a snapshot stored in the scratch directory of the given filesystem. */
+  public static FileHashSnapshot of(ProjectFilesystem filesystem) {
+    return new FileHashSnapshot(
+        filesystem,
+        filesystem.resolve(filesystem.getBuckPaths().getScratchDir().resolve("file_hashes")));
+  }
+
+  /**
+   * @return the hash of the file at the given path, from the snapshot if the file hasn't changed
+   *     since it was recorded, or otherwise from the given loader, in which case it's recorded.
+   */
+  public HashCode get(Path relativePath, HashLoader loader) throws IOException {
+    long now = System.currentTimeMillis();
+    BasicFileAttributes attributes;
+    try {
+      attributes = filesystem.readAttributes(relativePath, BasicFileAttributes.class);
+    } catch (IOException e) {
+      // Let the loader report missing or unreadable files in its usual way.
+      return loader.load(relativePath);
+    }
+    if (!attributes.isRegularFile()) {
+      return loader.load(relativePath);
+    }
+
+    long size = attributes.size();
+    long modificationTime = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    String fileKey = attributes.fileKey() == null ? "" : attributes.fileKey().toString();
+
+    Index index = this.index.get();
+    Entry entry = recordedEntries.get(relativePath);
+    if (entry == null) {
+      entry = index.get(relativePath.toString());
+    }
+    if (entry != null && entry.matches(size, modificationTime, fileKey)) {
+      return entry.getHashCode();
+    }
+
+    HashCode hashCode = loader.load(relativePath);
+    if (attributes.lastModifiedTime().toMillis() < now - RACY_MODIFICATION_WINDOW_MILLIS) {
+      Entry newEntry = new Entry(size, modificationTime, fileKey, hashCode);
+      if (recordedEntries.put(relativePath, newEntry) == null
+          && !index.contains(relativePath.toString())) {
+        newPaths.incrementAndGet();
+      }
+      pendingEntries.put(relativePath, newEntry);
+    }
+    return hashCode;
+  }
+
+  private Index load() {
+    Index index = new Index(ByteBuffer.allocate(0));
+    if (!Files.exists(path)) {
+      needsRewrite = true;
+    } else {
+      // The mapping stays valid once the channel is closed.
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.getInt(0) != VERSION) {
+          LOG.debug("Ignoring file hash snapshot at %s with a different version.", path);
+          needsRewrite = true;
+        } else {
+          index = new Index(buffer);
+          recordsOnDisk = indexRecords(index, buffer);
+        }
+      } catch (IOException | IndexOutOfBoundsException e) {
+        LOG.warn(e, "Failed to read file hash snapshot at %s, starting from scratch.", path);
+        needsRewrite = true;
+      }
+    }
+    LOG.debug("Indexed %d file hashes in %s.", index.size(), path);
+    loaded = true;
+    return index;
+  }
+
+  /** @return the number of records indexed, later records for a path replacing earlier ones. */
+  private int indexRecords(Index index, ByteBuffer buffer) {
+    int records = 0;
+    int offset = Integer.BYTES;
+    while (offset < buffer.limit()) {
+      int end = getRecordEnd(buffer, offset);
+      if (end < 0) {
+        // A previous save was interrupted part way through appending. Keep what was complete and
+        // rewrite the snapshot on the next save, rather than appending after the garbage.
+        LOG.debug("Ignoring unreadable file hash snapshot record at offset %d.", offset);
+        needsRewrite = true;
+        break;
+      }
+      index.put(offset);
+      records++;
+      offset = end;
+    }
+    return records;
+  }
+
+  /** @return the offset just past the record at the given offset, or -1 if it's incomplete. */
+  private static int getRecordEnd(ByteBuffer buffer, int offset) {
+    if (buffer.get(offset) != RECORD_ENTRY) {
+      return -1;
+    }
+    long position = skipString(buffer, offset + 1L);
+    if (position >= 0) {
+      position = skipString(buffer, position + 2 * Long.BYTES);
+    }
+    if (position < 0 || position >= buffer.limit()) {
+      return -1;
+    }
+    position += 1 + (buffer.get((int) position) & 0xff);
+    return position <= buffer.limit() ? (int) position : -1;
+  }
+
+  /** @return the position just past the string at the given position, or -1 if it's incomplete. */
+  private static long skipString(ByteBuffer buffer, long position) {
+    if (position + Integer.BYTES > buffer.limit()) {
+      return -1;
+    }
+    int length = buffer.getInt((int) position);
+    long end = position + Integer.BYTES + length;
+    return length < 0 || end > buffer.limit() ? -1 : end;
+  }
+
+  private static String readString(ByteBuffer buffer, int position) {
+    byte[] bytes = new byte[buffer.getInt(position)];
+    ByteBuffer view = buffer.duplicate();
+    view.position(position + Integer.BYTES);
+    view.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeRecord(DataOutputStream output, Path entryPath, Entry entry)
+      throws IOException {
+    output.writeByte(RECORD_ENTRY);
+    writeString(output, entryPath.toString());
+    output.writeLong(entry.size);
+    output.writeLong(entry.modificationTime);
+    writeString(output, entry.fileKey);
+    byte[] hashBytes = entry.hashCode.asBytes();
+    output.writeByte(hashBytes.length);
+    output.write(hashBytes);
+  }
+
+  private static void writeString(DataOutputStream output, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  /**
+   * Write the entries recorded since the last save to disk. They are normally appended to the
+   * existing snapshot, which is only rewritten (atomically) when it's missing, unreadable or
+   * mostly made up of superseded records.
+   */
+  public synchronized void save() throws IOException {
+    if (!loaded || (pendingEntries.isEmpty() && !needsRewrite)) {
+      return;
+    }
+
+    Map<Path, Entry> toWrite = new HashMap<>();
+    for (Map.Entry<Path, Entry> pending : pendingEntries.entrySet()) {
+      if (pendingEntries.remove(pending.getKey(), pending.getValue())) {
+        toWrite.put(pending.getKey(), pending.getValue());
+      }
+    }
+
+    Index index = this.index.get();
+    int entries = index.size() + newPaths.get();
+    Files.createDirectories(path.getParent());
+    if (needsRewrite
+        || recordsOnDisk + toWrite.size() > 2 * entries + MIN_STALE_RECORDS_TO_COMPACT) {
+      Map<Path, Entry> recorded = new HashMap<>(recordedEntries);
+      int records = recorded.size();
+      Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+      try (DataOutputStream output =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+        output.writeInt(VERSION);
+        for (Map.Entry<Path, Entry> entry : recorded.entrySet()) {
+          writeRecord(output, entry.getKey(), entry.getValue());
+        }
+        records +=
+            index.copyRecords(
+                output, entryPath -> recorded.containsKey(filesystem.getPath(entryPath)));
+      }
+      Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      recordsOnDisk = records;
+      needsRewrite = false;
+      LOG.debug("Wrote %d file hashes to %s.", records, path);
+    } else {
+      try (OutputStream rawOutput = Files.newOutputStream(path, StandardOpenOption.APPEND);
+          DataOutputStream output = new DataOutputStream(new BufferedOutputStream(rawOutput))) {
+        for (Map.Entry<Path, Entry> entry : toWrite.entrySet()) {
+          writeRecord(output, entry.getKey(), entry.getValue());
+        }
+      }
+      recordsOnDisk += toWrite.size();
+      LOG.debug("Appended %d file hashes to %s.", toWrite.size(), path);
+    }
+  }
+
+  @FunctionalInterface
+  public interface HashLoader {
+    HashCode load(Path relativePath) throws IOException;
+  }
+
+  /**
+   * An open addressing hash table from the paths in a mapped snapshot to the offset of their latest
+   * record, which entries are read from when looked up.
+   */
+  private static final class Index {
+
+    private final ByteBuffer buffer;
+
+    // No record starts at offset 0, which is taken by the version, so it marks empty slots.
+    private int[] offsets = new int[16];
+    private int[] hashes = new int[16];
+    private int size = 0;
+
+    private Index(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    private int size() {
+      return size;
+    }
+
+    /** Adds the record at the given offset, replacing any earlier record for the same path. */
+    private void put(int offset) {
+      int hash = hashPath(offset);
+      int slot = findSlot(hash, offset, null);
+      if (offsets[slot] == 0) {
+        size++;
+      }
+      offsets[slot] = offset;
+      hashes[slot] = hash;
+      if (size * 2 > offsets.length) {
+        resize();
+      }
+    }
+
+    private boolean contains(String entryPath) {
+      byte[] pathBytes = entryPath.getBytes(StandardCharsets.UTF_8);
+      return offsets[findSlot(hash(pathBytes), 0, pathBytes)] != 0;
+    }
+
+    @Nullable
+    private Entry get(String entryPath) {
+      byte[] pathBytes = entryPath.getBytes(StandardCharsets.UTF_8);
+      int offset = offsets[findSlot(hash(pathBytes), 0, pathBytes)];
+      if (offset == 0) {
+        return null;
+      }
+      int position = offset + 1 + Integer.BYTES + buffer.getInt(offset + 1);
+      long size = buffer.getLong(position);
+      long modificationTime = buffer.getLong(position + Long.BYTES);
+      position += 2 * Long.BYTES;
+      String fileKey = readString(buffer, position);
+      position += Integer.BYTES + buffer.getInt(position);
+      byte[] hashBytes = new byte[buffer.get(position) & 0xff];
+      ByteBuffer view = buffer.duplicate();
+      view.position(position + 1);
+      view.get(hashBytes);
+      return new Entry(size, modificationTime, fileKey, HashCode.fromBytes(hashBytes));
+    }
+
+    /**
+     * Copies the latest record of each path, other than the superseded ones, to the output.
+     *
+     * @return the number of records copied.
+     */
+    private int copyRecords(OutputStream output, Predicate<String> superseded) throws IOException {
+      int records = 0;
+      for (int offset : offsets) {
+        if (offset == 0 || superseded.test(readString(buffer, offset + 1))) {
+          continue;
+        }
+        byte[] record = new byte[getRecordEnd(buffer, offset) - offset];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(record);
+        output.write(record);
+        records++;
+      }
+      return records;
+    }
+
+    /**
+     * @return the slot holding the path of the record at the given offset, or the given path if
+     *     it's not null, or the empty slot where it would go.
+     */
+    private int findSlot(int hash, int offset, @Nullable byte[] pathBytes) {
+      int mask = offsets.length - 1;
+      int slot = (hash ^ (hash >>> 16)) & mask;
+      while (offsets[slot] != 0) {
+        if (hashes[slot] == hash
+            && (pathBytes == null
+                ? samePath(offsets[slot], offset)
+                : hasPath(offsets[slot], pathBytes))) {
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    private void resize() {
+      int[] oldOffsets = offsets;
+      int[] oldHashes = hashes;
+      offsets = new int[oldOffsets.length * 2];
+      hashes = new int[oldHashes.length * 2];
+      int mask = offsets.length - 1;
+      for (int i = 0; i < oldOffsets.length; i++) {
+        if (oldOffsets[i] != 0) {
+          int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+          while (offsets[slot] != 0) {
+            slot = (slot + 1) & mask;
+          }
+          offsets[slot] = oldOffsets[i];
+          hashes[slot] = oldHashes[i];
+        }
+      }
+    }
+
+    private int hashPath(int offset) {
+      int length = buffer.getInt(offset + 1);
+      int start = offset + 1 + Integer.BYTES;
+      int hash = 1;
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + buffer.get(start + i);
+      }
+      return hash;
+    }
+
+    private static int hash(byte[] pathBytes) {
+      int hash = 1;
+      for (byte b : pathBytes) {
+        hash = 31 * hash + b;
+      }
+      return hash;
+    }
+
+    private boolean samePath(int offset, int otherOffset) {
+      int length = buffer.getInt(offset + 1);
+      if (length != buffer.getInt(otherOffset + 1)) {
+        return false;
+      }
+      int start = offset + 1 + Integer.BYTES;
+      int otherStart = otherOffset + 1 + Integer.BYTES;
+      for (int i = 0; i < length; i++) {
+        if (buffer.get(start + i) != buffer.get(otherStart + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private boolean hasPath(int offset, byte[] pathBytes) {
+      if (buffer.getInt(offset + 1) != pathBytes.length) {
+        return false;
+      }
+      int start = offset + 1 + Integer.BYTES;
+      for (int i = 0; i < pathBytes.length; i++) {
+        if (buffer.get(start + i) != pathBytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The recorded hash of a file, along with the attributes it had when hashed. */
+  private static final class Entry {
+
+    private final long size;
+    private final long modificationTime;
+    private final String fileKey;
+    private final HashCode hashCode;
+
+    private Entry(long size, long modificationTime, String fileKey, HashCode hashCode) {
+      this.size = size;
+      this.modificationTime = modificationTime;
+      this.fileKey = fileKey;
+      this.hashCode = hashCode;
+    }
+
+    private boolean matches(long size, long modificationTime, String fileKey) {
+      return this.size == size
+          && this.modificationTime == modificationTime
+          && this.fileKey.equals(fileKey);
+    }
+
+    private HashCode getHashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Entry)) {
+        return false;
+      }
+      Entry that = (Entry) o;
+      return matches(that.size, that.modificationTime, that.fileKey)
+          && hashCode.equals(that.hashCode);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(size, modificationTime, fileKey, hashCode);
+    }
+  }
+}
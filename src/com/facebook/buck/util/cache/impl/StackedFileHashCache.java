@@ -29,6 +29,10 @@ import com.google.common.hash.HashCode;
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
@@ -228,6 +232,25 @@ public class StackedFileHashCache implements FileHashCache {
     }
   }
 
+  @Override
+  public void prefetch(ProjectFilesystem filesystem, Collection<Path> paths)
+      throws InterruptedException {
+    // Unlike `lookup`, this doesn't check whether the paths exist, to avoid touching the disk.
+    Map<ProjectFileHashCache, List<Path>> pathsByCache = new LinkedHashMap<>();
+    for (Path path : paths) {
+      for (ProjectFileHashCache cache : caches) {
+        if (cache.getFilesystem().getRootPath().equals(filesystem.getRootPath())
+            && !cache.isIgnored(path)) {
+          pathsByCache.computeIfAbsent(cache, c -> new ArrayList<>()).add(path);
+          break;
+        }
+      }
+    }
+    for (Map.Entry<ProjectFileHashCache, List<Path>> entry : pathsByCache.entrySet()) {
+      entry.getKey().prefetch(entry.getValue());
+    }
+  }
+
   public StackedFileHashCache newDecoratedFileHashCache(
       Function<ProjectFileHashCache, ProjectFileHashCache> decorateDelegate) {
     ImmutableList.Builder<ProjectFileHashCache> decoratedCaches = ImmutableList.builder();
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import com.facebook.buck.io.ProjectWatch;
+import com.facebook.buck.io.Watchman;
+import com.facebook.buck.io.WatchmanClient;
+import com.facebook.buck.io.file.MorePaths;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content hashes of files in a {@link ProjectFilesystem} as reported by Watchman, which maintains
+ * them in its own cache, so that Buck doesn't have to read and hash the files itself.
+ *
+ * <p>Hashes are fetched in bulk by {@link #prefetch(Collection)}, using a single query for all the
+ * given paths, and are handed out at most once by {@link #take(Path)}, after which the file hash
+ * cache is responsible for them. Any files Watchman doesn't report a hash for (e.g. symlinks, or
+ * files it can't read) are simply left for the file hash cache to hash locally.
+ */
+public class WatchmanFileHashes {
+
+  private static final Logger LOG = Logger.get(WatchmanFileHashes.class);
+
+  private static final long TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+  private static final String CONTENT_SHA1_FIELD = "content.sha1hex";
+
+  private final Watchman watchman;
+  private final ProjectWatch projectWatch;
+  private final ProjectFilesystem filesystem;
+  private final ConcurrentMap<Path, HashCode> hashes = new ConcurrentHashMap<>();
+
+  private WatchmanFileHashes(
+      Watchman watchman, ProjectWatch projectWatch, ProjectFilesystem filesystem) {
+    this.watchman = watchman;
+    this.projectWatch = projectWatch;
+    this.filesystem = filesystem;
+  }
+
+  /** @return Watchman file hashes for the given filesystem, if Watchman is watching it. */
+  public static Optional<WatchmanFileHashes> of(Watchman watchman, ProjectFilesystem filesystem) {
+    return Optional.ofNullable(watchman.getProjectWatches().get(filesystem.getRootPath()))
+        .map(projectWatch -> new WatchmanFileHashes(watchman, projectWatch, filesystem));
+  }
+
+  /**
+   * Query Watchman for the content hashes of the given paths, relative to the filesystem root, in
+   * a single round trip. Failures are logged and otherwise ignored, as the files can always be
+   * hashed locally instead.
+   */
+  public void prefetch(Collection<Path> relativePaths) throws InterruptedException {
+    if (relativePaths.isEmpty()) {
+      return;
+    }
+
+    ImmutableList<String> names =
+        relativePaths
+            .stream()
+            .map(MorePaths::pathWithUnixSeparators)
+            .collect(ImmutableList.toImmutableList());
+    ImmutableMap.Builder<String, Object> query = ImmutableMap.builder();
+    query.put(
+        "expression",
+        ImmutableList.of(
+            "allof", ImmutableList.of("type", "f"), ImmutableList.of("name", names, "wholename")));
+    query.put("fields", ImmutableList.of("name", CONTENT_SHA1_FIELD));
+    projectWatch.getProjectPrefix().ifPresent(prefix -> query.put("relative_root", prefix));
+
+    Optional<? extends Map<String, ?>> result;
+    try (WatchmanClient client = watchman.createClient()) {
+      result =
+          client.queryWithTimeout(
+              TIMEOUT_NANOS, "query", projectWatch.getWatchRoot(), query.build());
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to query Watchman for content hashes.");
+      return;
+    }
+    if (!result.isPresent()) {
+      LOG.warn("Timed out querying Watchman for content hashes.");
+      return;
+    }
+    if (result.get().containsKey("error")) {
+      LOG.warn("Failed to query Watchman for content hashes: %s", result.get().get("error"));
+      return;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Map<String, ?>> files = (List<Map<String, ?>>) result.get().get("files");
+    int reported = 0;
+    for (Map<String, ?> file : files) {
+      // Watchman reports an error object rather than a hash for files it couldn't hash.
+      Object sha1 = file.get(CONTENT_SHA1_FIELD);
+      if (sha1 instanceof String) {
+        hashes.put(
+            filesystem.getPath((String) file.get("name")), HashCode.fromString((String) sha1));
+        reported++;
+      }
+    }
+    LOG.debug("Watchman reported %d of %d requested content hashes.", reported, names.size());
+  }
+
+  /** @return the prefetched hash of the given path, if any, which won't be returned again. */
+  public Optional<HashCode> take(Path relativePath) {
+    return Optional.ofNullable(hashes.remove(relativePath));
+  }
+
+  public void invalidate(Path relativePath) {
+    hashes.remove(relativePath);
+  }
+
+  public void invalidateAll() {
+    hashes.clear();
+  }
+}
@@ -25,4 +25,12 @@ abstract class AbstractListeningSemaphoreArrayPendingItem {
   public abstract SettableFuture<Void> getFuture();
 
   public abstract ResourceAmounts getResources();
+
+  public abstract long getPriority();
+
+  /** When the acquisition was queued, in milliseconds of {@link System#nanoTime()}. */
+  public abstract long getQueuedMillis();
+
+  /** Breaks ties between acquisitions queued with the same priority at the same time. */
+  public abstract long getSequenceNumber();
 }
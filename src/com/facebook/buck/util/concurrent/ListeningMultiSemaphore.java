@@ -15,14 +15,19 @@
  */
 package com.facebook.buck.util.concurrent;
 
+import com.facebook.buck.util.timing.Clock;
+import com.facebook.buck.util.timing.DefaultClock;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A semaphore using {@link ListenableFuture}s for acquisition of different resource types rather
@@ -32,14 +37,35 @@ public class ListeningMultiSemaphore {
 
   private ResourceAmounts usedValues;
   private final ResourceAmounts maximumValues;
-  private final List<ListeningSemaphoreArrayPendingItem> pending = new LinkedList<>();
   private final ResourceAllocationFairness fairness;
+  private final Clock clock;
+
+  /**
+   * Pending acquisitions, in the order they should be processed. An acquisition's priority is
+   * treated as a head start in milliseconds, so that one which has been queued for longer than the
+   * difference in priorities goes first. This keeps the default priority work from being starved
+   * by a steady stream of higher priority work.
+   */
+  private final NavigableSet<ListeningSemaphoreArrayPendingItem> pending =
+      new TreeSet<>(
+          Comparator.<ListeningSemaphoreArrayPendingItem>comparingLong(
+                  item -> item.getQueuedMillis() - item.getPriority())
+              .thenComparingLong(ListeningSemaphoreArrayPendingItem::getSequenceNumber));
+
+  private long nextSequenceNumber = 0;
 
   public ListeningMultiSemaphore(
       ResourceAmounts availableResources, ResourceAllocationFairness fairness) {
+    this(availableResources, fairness, new DefaultClock(false));
+  }
+
+  @VisibleForTesting
+  ListeningMultiSemaphore(
+      ResourceAmounts availableResources, ResourceAllocationFairness fairness, Clock clock) {
     this.usedValues = ResourceAmounts.zero();
     this.maximumValues = availableResources;
     this.fairness = fairness;
+    this.clock = clock;
   }
 
   /**
@@ -52,7 +78,23 @@ public class ListeningMultiSemaphore {
    *     amounts, they will be capped to them.
    * @return Future that will be completed once resource will be acquired.
    */
-  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources) {
+  public ListenableFuture<Void> acquire(ResourceAmounts resources) {
+    return acquire(resources, 0);
+  }
+
+  /**
+   * Like {@link #acquire(ResourceAmounts)}, but if the resources aren't available right away, the
+   * acquisition is queued ahead of pending acquisitions with a lower priority, unless they have
+   * been waiting for longer than the difference in priorities in milliseconds. Acquisitions with
+   * the same priority are processed in the order they were made.
+   *
+   * @param resources Resource amounts that need to be acquired. If they are higher than maximum
+   *     amounts, they will be capped to them.
+   * @param priority The priority of this acquisition relative to other pending ones, e.g. the
+   *     estimated milliseconds of work which are waiting on it.
+   * @return Future that will be completed once resource will be acquired.
+   */
+  public synchronized ListenableFuture<Void> acquire(ResourceAmounts resources, long priority) {
     if (resources.equals(ResourceAmounts.zero())) {
       return Futures.immediateFuture(null);
     }
@@ -60,7 +102,13 @@ public class ListeningMultiSemaphore {
     resources = capResourceAmounts(resources);
     if (!checkIfResourcesAvailable(resources)) {
       SettableFuture<Void> pendingFuture = SettableFuture.create();
-      pending.add(ListeningSemaphoreArrayPendingItem.of(pendingFuture, resources));
+      pending.add(
+          ListeningSemaphoreArrayPendingItem.of(
+              pendingFuture,
+              resources,
+              priority,
+              TimeUnit.NANOSECONDS.toMillis(clock.nanoTime()),
+              nextSequenceNumber++));
       return pendingFuture;
     }
     increaseUsedResources(resources);
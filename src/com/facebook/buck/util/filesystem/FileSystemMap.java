@@ -21,11 +21,13 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import javax.annotation.Nullable;
 
 /**
@@ -40,11 +42,12 @@ import javax.annotation.Nullable;
  * of the target leaf leaves an empty branch (a stump), that is removed as well in order to keep the
  * prefix tree as slim as possible.
  *
- * <p>This class is thread safe in its public methods: concurrent calls to the trie will have the
- * exclusiveness in write/remove operations, while allowing parallel reads to the whole data
- * structure: an attempt could be made to make the trie more concurrent by locking branches of the
- * trie instead of the whole object, although that will require some thought around how to grant
- * parallel writes.
+ * <p>This class is thread safe in its public methods. Lookups of paths already in the trie don't
+ * take any locks, while changes to the structure of the trie lock only the nodes whose children
+ * they change, so that e.g. invalidating files in one folder doesn't block adding files in
+ * another. Each node is locked on its own, apart from removing a stump, which locks its parent and
+ * then the stump itself, always in that top down order. A node removed from the trie is marked as
+ * such, and an insertion which finds a removed node on its way restarts from the root.
  *
  * @param <T> The type to associate with a specific path.
  */
@@ -68,9 +71,17 @@ public class FileSystemMap<T> {
    */
   @VisibleForTesting
   static class Entry<T> {
-    // Stores all child nodes (i.e. files and subfolders) of the current node
-    // Nullable to conserve memory
-    @Nullable Map<Path, Entry<T>> subLevels = null;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Entry, Map> SUB_LEVELS_UPDATER =
+        AtomicReferenceFieldUpdater.newUpdater(Entry.class, Map.class, "subLevels");
+
+    // Stores all child nodes (i.e. files and subfolders) of the current node. It's created on
+    // demand to conserve memory, and once created it's also the lock guarding changes to the
+    // children of this node, and to whether it's been removed: it's never replaced or cleared.
+    @Nullable volatile Map<Path, Entry<T>> subLevels = null;
+
+    // Whether this node has been removed from the trie, after which no children can be added.
+    private volatile boolean removed = false;
 
     // The value of the Entry is the actual value the node is associated with:
     //   - If this is a leaf node, value is never null.
@@ -102,9 +113,37 @@ public class FileSystemMap<T> {
       }
     }
 
+    private Map<Path, Entry<T>> getOrCreateSubLevels() {
+      Map<Path, Entry<T>> current = subLevels;
+      if (current == null) {
+        // 4 is a magic value we use trying to conserve memory on folders with small amount of
+        // files
+        SUB_LEVELS_UPDATER.compareAndSet(this, null, new HashMap<>(4));
+        current = subLevels;
+      }
+      return current;
+    }
+
+    @Nullable
+    private Entry<T> getChild(Path childPath) {
+      Map<Path, Entry<T>> current = subLevels;
+      if (current == null) {
+        return null;
+      }
+      synchronized (current) {
+        return current.get(childPath);
+      }
+    }
+
     @VisibleForTesting
     int size() {
-      return subLevels == null ? 0 : subLevels.size();
+      Map<Path, Entry<T>> current = subLevels;
+      if (current == null) {
+        return 0;
+      }
+      synchronized (current) {
+        return current.size();
+      }
     }
   }
 
@@ -129,9 +168,7 @@ public class FileSystemMap<T> {
   public void put(Path path, T value) {
     Entry<T> maybe = map.get(path);
     if (maybe == null) {
-      synchronized (root) {
-        maybe = map.computeIfAbsent(path, this::putEntry);
-      }
+      maybe = map.computeIfAbsent(path, this::putEntry);
     }
     maybe.set(value);
   }
@@ -139,20 +176,25 @@ public class FileSystemMap<T> {
   // Creates the intermediate (and/or the leaf node) if needed and returns the leaf associated
   // with the given path.
   private Entry<T> putEntry(Path path) {
-    synchronized (root) {
+    while (true) {
       Entry<T> parent = root;
       Path relPath = rootPath;
       for (Path p : path) {
         relPath = relPath.resolve(p);
-        if (parent.subLevels == null) {
-          // 4 is a magic value we use trying to conserve memory on folders with small amount of
-          // files
-          parent.subLevels = new HashMap<>(4);
+        Map<Path, Entry<T>> subLevels = parent.getOrCreateSubLevels();
+        synchronized (subLevels) {
+          if (parent.removed) {
+            // The branch was removed while we walked it, so start over with the current trie.
+            parent = null;
+            break;
+          }
+          // Create the intermediate node only if it's missing.
+          parent = subLevels.computeIfAbsent(relPath, childPath -> new Entry<>());
         }
-        // Create the intermediate node only if it's missing.
-        parent = parent.subLevels.computeIfAbsent(relPath, childPath -> new Entry<>());
       }
-      return parent;
+      if (parent != null) {
+        return parent;
+      }
     }
   }
 
@@ -171,84 +213,110 @@ public class FileSystemMap<T> {
    * @param path The path specifying the branch to remove.
    */
   public void remove(Path path) {
-    synchronized (root) {
-      Stack<Pair<Path, Entry<T>>> stack = new Stack<>();
-      Entry<T> entry = root;
-      Path relPath = rootPath;
-      // Walk the tree to fetch the node requested by the path, or the closest intermediate node.
-      boolean partial = false;
-      for (Path p : path) {
-
-        // stack will contain all the parent chain but not the actual leaf
-        stack.push(new Pair<>(relPath, entry));
-
-        relPath = relPath.resolve(p);
-        entry = entry.subLevels == null ? null : entry.subLevels.get(relPath);
-
-        if (entry == null) {
-          // We're trying to remove a path that doesn't exist, no point in going deeper.
-          // Break and proceed to remove whatever path we found so far.
-          partial = true;
-          break;
-        }
+    Stack<Pair<Path, Entry<T>>> stack = new Stack<>();
+    Entry<T> entry = root;
+    Path relPath = rootPath;
+    // Walk the tree to fetch the node requested by the path, or the closest intermediate node.
+    boolean partial = false;
+    for (Path p : path) {
+
+      // stack will contain all the parent chain but not the actual leaf
+      stack.push(new Pair<>(relPath, entry));
+
+      relPath = relPath.resolve(p);
+      entry = entry.getChild(relPath);
+
+      if (entry == null) {
+        // We're trying to remove a path that doesn't exist, no point in going deeper.
+        // Break and proceed to remove whatever path we found so far.
+        partial = true;
+        break;
       }
-      // The following approach supports these cases:
-      //   1. Remove a path that has been found as a leaf in the trie (easy case).
-      //   2. Support prefix removal as well (i.e.: if we want to remove an intermediate node.
+    }
+    // The following approach supports these cases:
+    //   1. Remove a path that has been found as a leaf in the trie (easy case).
+    //   2. Support prefix removal as well (i.e.: if we want to remove an intermediate node.
 
-      if (stack.size() == 0) {
-        // this can only happen if path we are trying to remove is empty
-        return;
-      }
+    if (stack.size() == 0) {
+      // this can only happen if path we are trying to remove is empty
+      return;
+    }
 
-      if (!partial) {
-        // If full path is matched, then remove it and everything below it
-        removeChild(stack.peek().getSecond(), path);
-      }
+    if (!partial) {
+      // If full path is matched, then remove it and everything below it
+      removeChild(stack.peek().getSecond(), relPath, Preconditions.checkNotNull(entry));
+    }
 
-      // For all paths above, remove intermediate nodes if empty or reset their values if not
-      while (!stack.empty()) {
-        Pair<Path, Entry<T>> current = stack.pop();
+    // For all paths above, remove intermediate nodes if empty or reset their values if not
+    while (!stack.empty()) {
+      Pair<Path, Entry<T>> current = stack.pop();
 
-        // dump value on all nodes up, including a root one
-        current.getSecond().set(null);
+      // dump value on all nodes up, including a root one
+      current.getSecond().set(null);
 
-        // remove all parent nodes that do not have children anymore
-        if (current.getSecond().size() == 0 && !stack.empty()) {
-          removeChild(stack.peek().getSecond(), current.getFirst());
-        }
+      // remove all parent nodes that do not have children anymore
+      if (!stack.empty()) {
+        removeStump(stack.peek().getSecond(), current.getFirst(), current.getSecond());
       }
     }
   }
 
-  @SuppressWarnings("NullableProblems")
-  private void removeChild(Entry<T> parent, Path childPath) {
-    map.remove(childPath);
-    Entry<T> child = parent.subLevels.remove(childPath);
-    if (parent.subLevels.size() == 0) {
-      parent.subLevels = null;
+  // Detaches the given child from its parent, unless a concurrent removal got there first.
+  private void removeChild(Entry<T> parent, Path childPath, Entry<T> child) {
+    Map<Path, Entry<T>> subLevels = parent.getOrCreateSubLevels();
+    synchronized (subLevels) {
+      if (!subLevels.remove(childPath, child)) {
+        return;
+      }
     }
+    markRemoved(childPath, child);
+  }
 
-    // remove recursively
-    if (child.subLevels == null) {
-      return;
+  // Marks the given detached node and everything below it as removed, so that nothing more can be
+  // added below it, and drops them from the lookup map.
+  private void markRemoved(Path path, Entry<T> entry) {
+    List<Map.Entry<Path, Entry<T>>> children;
+    Map<Path, Entry<T>> subLevels = entry.getOrCreateSubLevels();
+    synchronized (subLevels) {
+      entry.removed = true;
+      // copy collection of children first to avoid removing from them while iterating
+      children = new ArrayList<>(subLevels.entrySet());
     }
+    // Only drop the entry from the map if it hasn't been replaced by a newer node for the path.
+    map.remove(path, entry);
+    children.forEach(child -> markRemoved(child.getKey(), child.getValue()));
+  }
 
-    child
-        .subLevels
-        .keySet()
-        .stream()
-        // copy collection of keys first to avoid removing from them while iterating
-        .collect(Collectors.toList())
-        .forEach(cp -> removeChild(child, cp));
+  // Removes the given child from its parent if it no longer has any children of its own.
+  private void removeStump(Entry<T> parent, Path childPath, Entry<T> child) {
+    Map<Path, Entry<T>> parentSubLevels = parent.getOrCreateSubLevels();
+    Map<Path, Entry<T>> childSubLevels = child.getOrCreateSubLevels();
+    boolean isStump;
+    synchronized (parentSubLevels) {
+      synchronized (childSubLevels) {
+        isStump =
+            !child.removed
+                && childSubLevels.isEmpty()
+                && parentSubLevels.remove(childPath, child);
+        if (isStump) {
+          child.removed = true;
+        }
+      }
+    }
+    if (isStump) {
+      map.remove(childPath, child);
+    }
   }
 
   /** Empties the trie leaving only the root node available. */
   public void removeAll() {
-    synchronized (root) {
-      map.clear();
-      root.subLevels = null;
+    List<Map.Entry<Path, Entry<T>>> children;
+    Map<Path, Entry<T>> subLevels = root.getOrCreateSubLevels();
+    synchronized (subLevels) {
+      children = new ArrayList<>(subLevels.entrySet());
+      subLevels.clear();
     }
+    children.forEach(child -> markRemoved(child.getKey(), child.getValue()));
   }
 
   /**
@@ -259,23 +327,19 @@ public class FileSystemMap<T> {
    */
   public T get(Path path) {
     Entry<T> maybe = map.get(path);
-    // get() and remove() shouldn't overlap, but for performance reason (to hold the root lock for
-    // less time), we opted for allowing overlap provided that *the entry creation is atomic*.
-    // That is, the entry creation is guaranteed to not overlap with anything else, but the entry
-    // filling is not: this is because the caller of the get() will still need to get a value,
-    // even if the entry is removed meanwhile.
+    // get() and remove() shouldn't overlap, but for performance reason (to avoid locking the
+    // branch for the duration of the load), we opted for allowing overlap provided that *the entry
+    // creation is atomic*. That is, the entry creation is guaranteed to not overlap with anything
+    // else, but the entry filling is not: this is because the caller of the get() will still need
+    // to get a value, even if the entry is removed meanwhile.
     if (maybe == null) {
-      synchronized (root) {
-        maybe = map.computeIfAbsent(path, this::putEntry);
-      }
+      maybe = map.computeIfAbsent(path, this::putEntry);
     }
     // Maybe here we receive a request for getting an intermediate node (a folder) whose
-    // value was never computed before (or has been removed).
+    // value was never computed before (or has been removed). It is possible that maybe.load() will
+    // call back into other methods on this FileSystemMap, which is fine as no trie locks are held
+    // at this point.
     if (maybe.value == null) {
-      // It is possible that maybe.load() will call back into other methods on this FileSystemMap.
-      // Those methods might acquire the root lock. If there's any flow that calls maybe.load()
-      // while already holding that lock, there's likely a flow w/ lock inversion.
-      Preconditions.checkState(!Thread.holdsLock(root));
       maybe.load(loader, path);
     }
     return maybe.value;
@@ -25,6 +25,7 @@ import com.google.common.hash.Hasher;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
 
 public class PathHashing {
   // Utility class, do not instantiate.
@@ -40,8 +41,20 @@ public class PathHashing {
       throws IOException {
     Preconditions.checkArgument(
         !root.equals(EMPTY_PATH), "Path to hash (%s) must not be empty", root);
+    return hashPath(hasher, fileHashLoader, root, projectFilesystem.getFilesUnderPath(root));
+  }
+
+  /**
+   * Like {@link #hashPath(Hasher, ProjectFileHashLoader, ProjectFilesystem, Path)}, but for callers
+   * which have already listed the files under {@code root}.
+   */
+  public static ImmutableSet<Path> hashPath(
+      Hasher hasher, ProjectFileHashLoader fileHashLoader, Path root, Collection<Path> files)
+      throws IOException {
+    Preconditions.checkArgument(
+        !root.equals(EMPTY_PATH), "Path to hash (%s) must not be empty", root);
     ImmutableSet.Builder<Path> children = ImmutableSet.builder();
-    for (Path path : ImmutableSortedSet.copyOf(projectFilesystem.getFilesUnderPath(root))) {
+    for (Path path : ImmutableSortedSet.copyOf(files)) {
       StringHashing.hashStringAndLength(hasher, MorePaths.pathWithUnixSeparators(path));
       if (!root.equals(path)) {
         children.add(root.relativize(path));
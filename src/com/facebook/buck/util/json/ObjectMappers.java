@@ -34,6 +34,7 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
@@ -90,6 +91,10 @@ public class ObjectMappers {
     return jsonFactory.createGenerator(stream);
   }
 
+  public static JsonGenerator createGenerator(Writer writer) throws IOException {
+    return jsonFactory.createGenerator(writer);
+  }
+
   public static <T> T convertValue(Map<String, Object> map, Class<T> clazz) {
     return mapper.convertValue(map, clazz);
   }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Constants of the compact binary encoding of Chrome traces, which can be written much faster and
+ * is much smaller than the JSON encoding.
+ *
+ * <p>A binary trace starts with {@link #HEADER}, followed by one record per event. Each record
+ * starts with {@link #EVENT} and holds, in order: the category, name, phase, process id, thread id,
+ * timestamp, thread timestamp and arguments of the event. Numbers are written as zigzag-encoded
+ * varints, and timestamps as the difference to the timestamp of the previous event.
+ *
+ * <p>Strings are written as a varint tag: {@link #STRING_INLINE} or {@link #STRING_NEW} are
+ * followed by the length and UTF-8 bytes of the string, and the latter also adds the string to the
+ * table of interned strings. Any other tag refers to the interned string with index {@code tag -
+ * STRING_FIRST_REFERENCE}.
+ *
+ * <p>Arguments are written as their count followed by key and value pairs, where values start with
+ * one of the {@code VALUE_*} type tags.
+ */
+public final class BinaryChromeTraceFormat {
+
+  private BinaryChromeTraceFormat() {}
+
+  /** Identifies binary traces. JSON traces start with '[', so the two can't be confused. */
+  public static final byte[] HEADER = {'B', 'T', 'R', 'C', 1};
+
+  public static final int EVENT = 1;
+
+  public static final int STRING_INLINE = 0;
+  public static final int STRING_NEW = 1;
+  public static final int STRING_FIRST_REFERENCE = 2;
+
+  public static final int VALUE_STRING = 0;
+  public static final int VALUE_LONG = 1;
+  public static final int VALUE_DOUBLE = 2;
+  public static final int VALUE_TRUE = 3;
+  public static final int VALUE_FALSE = 4;
+  /** Values of any other type, written as a JSON string. */
+  public static final int VALUE_JSON = 5;
+
+  /**
+   * Checks whether the stream holds a binary trace, without consuming any of its contents.
+   *
+   * @param input a stream which {@link InputStream#markSupported() supports mark}.
+   */
+  public static boolean isBinaryTrace(InputStream input) throws IOException {
+    byte[] header = new byte[HEADER.length];
+    input.mark(header.length);
+    try {
+      int read = 0;
+      while (read < header.length) {
+        int count = input.read(header, read, header.length - read);
+        if (count < 0) {
+          return false;
+        }
+        read += count;
+      }
+      return Arrays.equals(header, HEADER);
+    } finally {
+      input.reset();
+    }
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.trace;
+
+import com.facebook.buck.util.json.ObjectMappers;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Reads the events of a binary Chrome trace one at a time, as the same maps a JSON parser would
+ * produce from the JSON encoding of the trace.
+ *
+ * @see BinaryChromeTraceFormat
+ */
+public class BinaryChromeTraceReader implements Closeable {
+
+  private final DataInputStream input;
+  private final List<String> strings = new ArrayList<>();
+  private long previousTimestamp;
+
+  public BinaryChromeTraceReader(InputStream input) throws IOException {
+    this.input = new DataInputStream(new BufferedInputStream(input));
+    byte[] header = new byte[BinaryChromeTraceFormat.HEADER.length];
+    this.input.readFully(header);
+    if (!Arrays.equals(header, BinaryChromeTraceFormat.HEADER)) {
+      throw new IOException("Not a binary Chrome trace.");
+    }
+  }
+
+  /**
+   * @return the next event of the trace, or {@link Optional#empty()} once the end of the trace has
+   *     been reached. Traces which were cut short, e.g. because Buck was killed while writing them,
+   *     end after their last complete event.
+   */
+  public Optional<ImmutableMap<String, Object>> readEvent() throws IOException {
+    int tag = input.read();
+    if (tag < 0) {
+      return Optional.empty();
+    }
+    if (tag != BinaryChromeTraceFormat.EVENT) {
+      throw new IOException(String.format("Unexpected record type %d in binary trace.", tag));
+    }
+    try {
+      ImmutableMap.Builder<String, Object> event = ImmutableMap.builder();
+      event.put("cat", readString());
+      event.put("name", readString());
+      event.put("ph", String.valueOf((char) input.readUnsignedByte()));
+      event.put("pid", number(readSignedVarLong()));
+      event.put("tid", number(readSignedVarLong()));
+      previousTimestamp += readSignedVarLong();
+      event.put("ts", number(previousTimestamp));
+      event.put("tts", number(readSignedVarLong()));
+      int argCount = (int) readVarLong();
+      ImmutableMap.Builder<String, Object> args = ImmutableMap.builder();
+      for (int i = 0; i < argCount; i++) {
+        args.put(readString(), readValue());
+      }
+      event.put("args", args.build());
+      return Optional.of(event.build());
+    } catch (EOFException e) {
+      return Optional.empty();
+    }
+  }
+
+  private Object readValue() throws IOException {
+    int type = input.readUnsignedByte();
+    switch (type) {
+      case BinaryChromeTraceFormat.VALUE_STRING:
+        return readString();
+      case BinaryChromeTraceFormat.VALUE_LONG:
+        return number(readSignedVarLong());
+      case BinaryChromeTraceFormat.VALUE_DOUBLE:
+        return input.readDouble();
+      case BinaryChromeTraceFormat.VALUE_TRUE:
+        return true;
+      case BinaryChromeTraceFormat.VALUE_FALSE:
+        return false;
+      case BinaryChromeTraceFormat.VALUE_JSON:
+        return ObjectMappers.readValue(readString(), Object.class);
+      default:
+        throw new IOException(String.format("Unexpected value type %d in binary trace.", type));
+    }
+  }
+
+  private String readString() throws IOException {
+    long tag = readVarLong();
+    if (tag >= BinaryChromeTraceFormat.STRING_FIRST_REFERENCE) {
+      int index = (int) (tag - BinaryChromeTraceFormat.STRING_FIRST_REFERENCE);
+      if (index >= strings.size()) {
+        throw new IOException(String.format("Unknown string %d in binary trace.", index));
+      }
+      return strings.get(index);
+    }
+    byte[] bytes = new byte[(int) readVarLong()];
+    input.readFully(bytes);
+    String string = new String(bytes, StandardCharsets.UTF_8);
+    if (tag == BinaryChromeTraceFormat.STRING_NEW) {
+      strings.add(string);
+    }
+    return string;
+  }
+
+  private long readVarLong() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in binary trace.");
+  }
+
+  private long readSignedVarLong() throws IOException {
+    long value = readVarLong();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** Narrows numbers which fit in an int, like JSON parsers do. */
+  private static Object number(long value) {
+    return value == (int) value ? (Object) (int) value : (Object) value;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  /**
+   * Converts a binary trace to a Chrome trace in the JSON Array Format. The binary trace is closed
+   * once it has been read.
+   */
+  public static void convertToJson(InputStream binaryTrace, OutputStream jsonTrace)
+      throws IOException {
+    JsonGenerator generator = ObjectMappers.createGenerator(jsonTrace);
+    convertToJson(binaryTrace, generator);
+    generator.flush();
+  }
+
+  /**
+   * Writes the events of a binary trace to the given generator, as a JSON array. The binary trace
+   * is closed once it has been read.
+   */
+  public static void convertToJson(InputStream binaryTrace, JsonGenerator generator)
+      throws IOException {
+    try (BinaryChromeTraceReader reader = new BinaryChromeTraceReader(binaryTrace)) {
+      generator.writeStartArray();
+      Optional<ImmutableMap<String, Object>> event;
+      while ((event = reader.readEvent()).isPresent()) {
+        ObjectMappers.WRITER.writeValue(generator, event.get());
+      }
+      generator.writeEndArray();
+    }
+  }
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.unarchive;
+
+import com.facebook.buck.io.file.MorePosixFilePermissions;
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
+
+/**
+ * Extracts a zip archive as it is read from a stream, without needing the whole archive on disk.
+ *
+ * <p>Entries are written as their local headers are encountered, and the attributes which are only
+ * recorded in the central directory at the end of the archive (the executable bit, and whether an
+ * entry is a symlink) are applied once it has been read. The result matches what {@link Unzip}
+ * produces for the same archive. Only stored and deflated entries are supported, and stored entries
+ * must record their size in their local header, as the archives written by {@code
+ * com.facebook.buck.util.zip.Zip} do.
+ *
+ * <p>Instances are single use. An instance created with a staging directory writes the archive
+ * there instead, and only touches the destination when {@link #moveIntoPlace()} is called, so that
+ * callers can check the archive before it replaces what is already on disk.
+ */
+public class StreamingUnzip {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int ENCRYPTED_FLAG = 1;
+  private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+  private static final int UNIX_PLATFORM = 3;
+  private static final int UNIX_FILE_TYPE_MASK = 0170000;
+  private static final int UNIX_SYMLINK = 0120000;
+
+  private final ProjectFilesystem filesystem;
+  private final Optional<Path> stagingDirectory;
+  private final ExistingFileMode existingFileMode;
+  private final DirectoryCreator creator;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  /** Every path in the archive, mapped to whether it is a directory. */
+  private final SortedMap<Path, Boolean> pathMap = new TreeMap<>();
+
+  private final List<Path> filesWritten = new ArrayList<>();
+
+  public StreamingUnzip(ProjectFilesystem filesystem, ExistingFileMode existingFileMode) {
+    this(filesystem, Optional.empty(), existingFileMode);
+  }
+
+  /**
+   * @param stagingDirectory an empty directory, relative to the root of the filesystem, to extract
+   *     the archive into until {@link #moveIntoPlace()} is called.
+   */
+  public StreamingUnzip(
+      ProjectFilesystem filesystem, Path stagingDirectory, ExistingFileMode existingFileMode) {
+    this(filesystem, Optional.of(stagingDirectory), existingFileMode);
+  }
+
+  private StreamingUnzip(
+      ProjectFilesystem filesystem,
+      Optional<Path> stagingDirectory,
+      ExistingFileMode existingFileMode) {
+    this.filesystem = filesystem;
+    this.stagingDirectory = stagingDirectory;
+    this.existingFileMode = existingFileMode;
+    this.creator = new DirectoryCreator(filesystem);
+  }
+
+  /**
+   * Extract the archive read from the given stream into the root of the filesystem, or into the
+   * staging directory if there is one. The stream is read to its end.
+   *
+   * @return the paths of the files that were written (not directories), relative to the root of
+   *     the archive.
+   */
+  public ImmutableList<Path> extractArchive(InputStream archive) throws IOException {
+    PushbackInputStream input = new PushbackInputStream(archive, BUFFER_SIZE);
+    DataInputStream data = new DataInputStream(input);
+    Map<String, Path> targetsByName = new HashMap<>();
+
+    long signature = readSignature(data);
+    while (signature == ZipEntry.LOCSIG) {
+      LocalHeader header = LocalHeader.read(data);
+      Path target = filesystem.getPath("").resolve(header.name).normalize();
+      targetsByName.put(header.name, target);
+      if (header.name.endsWith("/")) {
+        pathMap.put(target, true);
+        extractDirectory(getExtractedPath(target));
+        skipEntryData(input, data, header);
+      } else {
+        pathMap.put(target, false);
+        filesWritten.add(target);
+        extractFile(input, data, header, getExtractedPath(target));
+      }
+      signature = readSignature(data);
+    }
+
+    while (signature == ZipEntry.CENSIG) {
+      CentralDirectoryHeader header = CentralDirectoryHeader.read(data);
+      Path target = targetsByName.get(header.name);
+      if (target == null) {
+        throw new ZipException(
+            String.format("Central directory entry %s has no local header.", header.name));
+      }
+      if (!header.isDirectory()) {
+        applyAttributes(header, getExtractedPath(target));
+      }
+      signature = readSignature(data);
+    }
+
+    if (signature != ZipEntry.ENDSIG) {
+      throw new ZipException(String.format("Unexpected zip signature 0x%08x.", signature));
+    }
+    // Consume the rest of the end of central directory record.
+    ByteStreams.exhaust(input);
+
+    if (!stagingDirectory.isPresent()
+        && existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
+      cleanDirectories();
+    }
+
+    return getFilesWritten();
+  }
+
+  /**
+   * Moves the extracted archive from the staging directory to the root of the filesystem, replacing
+   * what is already there as {@link #extractArchive(InputStream)} would have, and removes the
+   * staging directory.
+   */
+  public void moveIntoPlace() throws IOException {
+    Preconditions.checkState(stagingDirectory.isPresent(), "Archive was not extracted to staging.");
+    for (Map.Entry<Path, Boolean> entry : pathMap.entrySet()) {
+      Path target = entry.getKey();
+      if (entry.getValue()) {
+        extractDirectory(target);
+      } else {
+        prepareFile(target);
+        filesystem.move(getExtractedPath(target), target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
+      cleanDirectories();
+    }
+    filesystem.deleteRecursivelyIfExists(stagingDirectory.get());
+  }
+
+  /** @return the paths of the files written so far, relative to the root of the archive. */
+  public ImmutableList<Path> getFilesWritten() {
+    return ImmutableList.copyOf(filesWritten);
+  }
+
+  private Path getExtractedPath(Path target) {
+    return stagingDirectory.isPresent() ? stagingDirectory.get().resolve(target) : target;
+  }
+
+  private void extractDirectory(Path target) throws IOException {
+    if (filesystem.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+      return;
+    }
+    if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+      filesystem.deleteFileAtPath(target);
+      creator.mkdirs(target);
+    } else {
+      creator.forcefullyCreateDirs(target);
+    }
+  }
+
+  private void extractFile(
+      PushbackInputStream input, DataInputStream data, LocalHeader header, Path target)
+      throws IOException {
+    prepareFile(target);
+    try (OutputStream out = filesystem.newFileOutputStream(target)) {
+      copyEntryData(input, data, header, out);
+    }
+    filesystem.resolve(target).toFile().setLastModified(header.time);
+  }
+
+  /** Makes way for a file to be written at the given path. */
+  private void prepareFile(Path target) throws IOException {
+    if (filesystem.isFile(target, LinkOption.NOFOLLOW_LINKS)) { // NOPMD for clarity
+      // pass
+    } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+      filesystem.deleteRecursivelyIfExists(target);
+    } else if (target.getParent() != null) {
+      creator.forcefullyCreateDirs(target.getParent());
+    }
+  }
+
+  private void skipEntryData(PushbackInputStream input, DataInputStream data, LocalHeader header)
+      throws IOException {
+    copyEntryData(input, data, header, ByteStreams.nullOutputStream());
+  }
+
+  /** Copy an entry's uncompressed data to the given stream, verifying its CRC and size. */
+  private void copyEntryData(
+      PushbackInputStream input, DataInputStream data, LocalHeader header, OutputStream out)
+      throws IOException {
+    CRC32 crc = new CRC32();
+    long size;
+    long compressedSize;
+    switch (header.method) {
+      case ZipEntry.STORED:
+        if (header.hasDataDescriptor()) {
+          throw new ZipException(
+              String.format("Stored entry %s without a size is not supported.", header.name));
+        }
+        size = 0;
+        while (size < header.compressedSize) {
+          int read =
+              input.read(buffer, 0, (int) Math.min(buffer.length, header.compressedSize - size));
+          if (read < 0) {
+            throw new EOFException(String.format("Truncated zip entry %s.", header.name));
+          }
+          crc.update(buffer, 0, read);
+          out.write(buffer, 0, read);
+          size += read;
+        }
+        compressedSize = size;
+        break;
+
+      case ZipEntry.DEFLATED:
+        Inflater inflater = new Inflater(true);
+        try {
+          byte[] output = new byte[BUFFER_SIZE];
+          int lastRead = 0;
+          while (!inflater.finished()) {
+            if (inflater.needsInput()) {
+              lastRead = input.read(buffer);
+              if (lastRead < 0) {
+                throw new EOFException(String.format("Truncated zip entry %s.", header.name));
+              }
+              inflater.setInput(buffer, 0, lastRead);
+            }
+            int inflated;
+            try {
+              inflated = inflater.inflate(output);
+            } catch (DataFormatException e) {
+              throw new ZipException(
+                  String.format("Corrupt zip entry %s: %s", header.name, e.getMessage()));
+            }
+            if (inflated == 0 && inflater.needsDictionary()) {
+              throw new ZipException(String.format("Corrupt zip entry %s.", header.name));
+            }
+            crc.update(output, 0, inflated);
+            out.write(output, 0, inflated);
+          }
+          // Hand back whatever the inflater read past the end of the entry.
+          int remaining = inflater.getRemaining();
+          if (remaining > 0) {
+            input.unread(buffer, lastRead - remaining, remaining);
+          }
+          size = inflater.getBytesWritten();
+          compressedSize = inflater.getBytesRead();
+        } finally {
+          inflater.end();
+        }
+        break;
+
+      default:
+        throw new ZipException(
+            String.format(
+                "Compression method %d of %s is not supported.", header.method, header.name));
+    }
+
+    long expectedCrc = header.crc;
+    long expectedSize = header.size;
+    long expectedCompressedSize = header.compressedSize;
+    if (header.hasDataDescriptor()) {
+      // The signature of the data descriptor is optional.
+      expectedCrc = readUnsignedInt(data);
+      if (expectedCrc == ZipEntry.EXTSIG) {
+        expectedCrc = readUnsignedInt(data);
+      }
+      expectedCompressedSize = readUnsignedInt(data);
+      expectedSize = readUnsignedInt(data);
+    }
+    if (crc.getValue() != expectedCrc
+        || size != expectedSize
+        || compressedSize != expectedCompressedSize) {
+      throw new ZipException(String.format("Zip entry %s failed verification.", header.name));
+    }
+  }
+
+  private void applyAttributes(CentralDirectoryHeader header, Path target) throws IOException {
+    Path filePath = filesystem.resolve(target);
+    if (header.isUnixSymlink()) {
+      // The symlink's target was written as the entry's contents.
+      String linkTarget = filesystem.readFileIfItExists(target).orElse("");
+      filesystem.deleteFileAtPath(target);
+      filesystem.createSymLink(target, filesystem.getPath(linkTarget), /* force */ true);
+      filePath.toFile().setLastModified(header.time);
+    }
+
+    PosixFilePermission executable = PosixFilePermission.OWNER_EXECUTE;
+    if (MorePosixFilePermissions.fromMode(header.externalAttributes >> 16).contains(executable)
+        && filePath.toFile().getCanonicalFile().exists()) {
+      MostFiles.makeExecutable(filePath);
+    }
+  }
+
+  /** Remove the stale contents of directories in the archive, as {@link Unzip} does. */
+  private void cleanDirectories() throws IOException {
+    // A zip file isn't required to list intermediate paths (e.g., it can contain "foo/" and
+    // "foo/bar/baz"), but we need to know not to delete those intermediates, so fill them in.
+    for (Path path : new ArrayList<>(pathMap.keySet())) {
+      if (!isTopLevel(path)) {
+        fillIntermediatePaths(path);
+      }
+    }
+    for (Map.Entry<Path, Boolean> entry : pathMap.entrySet()) {
+      if (!entry.getValue() || !filesystem.isDirectory(entry.getKey(), LinkOption.NOFOLLOW_LINKS)) {
+        continue;
+      }
+      for (Path path : filesystem.getDirectoryContents(entry.getKey())) {
+        if (!pathMap.containsKey(path)) {
+          filesystem.deleteRecursivelyIfExists(path);
+        }
+      }
+    }
+  }
+
+  private boolean isTopLevel(Path path) {
+    for (Path p = path.getParent(); p != null; p = p.getParent()) {
+      if (pathMap.containsKey(p)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void fillIntermediatePaths(Path path) {
+    for (Path p = path.getParent(); p != null; p = p.getParent()) {
+      if (pathMap.containsKey(p)) {
+        break;
+      }
+      pathMap.put(p, true);
+    }
+  }
+
+  private static long readSignature(DataInputStream data) throws IOException {
+    return readUnsignedInt(data);
+  }
+
+  private static long readUnsignedInt(DataInputStream data) throws IOException {
+    return Integer.toUnsignedLong(Integer.reverseBytes(data.readInt()));
+  }
+
+  private static int readUnsignedShort(DataInputStream data) throws IOException {
+    return Short.toUnsignedInt(Short.reverseBytes(data.readShort()));
+  }
+
+  private static String readName(DataInputStream data, int length) throws IOException {
+    byte[] name = new byte[length];
+    data.readFully(name);
+    return new String(name, Charsets.UTF_8);
+  }
+
+  private static class LocalHeader {
+    private final int flags;
+    private final int method;
+    private final long time;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final String name;
+
+    private LocalHeader(
+        int flags,
+        int method,
+        long time,
+        long crc,
+        long compressedSize,
+        long size,
+        String name) {
+      this.flags = flags;
+      this.method = method;
+      this.time = time;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.name = name;
+    }
+
+    private static LocalHeader read(DataInputStream data) throws IOException {
+      readUnsignedShort(data); // Version needed to extract.
+      int flags = readUnsignedShort(data);
+      int method = readUnsignedShort(data);
+      long time = ZipUtil.dosToJavaTime(readUnsignedInt(data));
+      long crc = readUnsignedInt(data);
+      long compressedSize = readUnsignedInt(data);
+      long size = readUnsignedInt(data);
+      int nameLength = readUnsignedShort(data);
+      int extraLength = readUnsignedShort(data);
+      String name = readName(data, nameLength);
+      ByteStreams.skipFully(data, extraLength);
+      if ((flags & ENCRYPTED_FLAG) != 0) {
+        throw new ZipException(String.format("Encrypted zip entry %s is not supported.", name));
+      }
+      return new LocalHeader(flags, method, time, crc, compressedSize, size, name);
+    }
+
+    private boolean hasDataDescriptor() {
+      return (flags & DATA_DESCRIPTOR_FLAG) != 0;
+    }
+  }
+
+  private static class CentralDirectoryHeader {
+    private final int versionMadeBy;
+    private final long time;
+    private final long externalAttributes;
+    private final String name;
+
+    private CentralDirectoryHeader(
+        int versionMadeBy, long time, long externalAttributes, String name) {
+      this.versionMadeBy = versionMadeBy;
+      this.time = time;
+      this.externalAttributes = externalAttributes;
+      this.name = name;
+    }
+
+    private static CentralDirectoryHeader read(DataInputStream data) throws IOException {
+      int versionMadeBy = readUnsignedShort(data);
+      readUnsignedShort(data); // Version needed to extract.
+      readUnsignedShort(data); // Flags.
+      readUnsignedShort(data); // Compression method.
+      long time = ZipUtil.dosToJavaTime(readUnsignedInt(data));
+      readUnsignedInt(data); // CRC.
+      readUnsignedInt(data); // Compressed size.
+      readUnsignedInt(data); // Uncompressed size.
+      int nameLength = readUnsignedShort(data);
+      int extraLength = readUnsignedShort(data);
+      int commentLength = readUnsignedShort(data);
+      readUnsignedShort(data); // Disk number start.
+      readUnsignedShort(data); // Internal attributes.
+      long externalAttributes = readUnsignedInt(data);
+      readUnsignedInt(data); // Offset of local header.
+      String name = readName(data, nameLength);
+      ByteStreams.skipFully(data, extraLength + commentLength);
+      return new CentralDirectoryHeader(versionMadeBy, time, externalAttributes, name);
+    }
+
+    private boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    private boolean isUnixSymlink() {
+      return (versionMadeBy >> 8) == UNIX_PLATFORM
+          && ((externalAttributes >> 16) & UNIX_FILE_TYPE_MASK) == UNIX_SYMLINK;
+    }
+  }
+}
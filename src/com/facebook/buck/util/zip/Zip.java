@@ -17,11 +17,15 @@
 package com.facebook.buck.util.zip;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteStreams;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.function.ToIntFunction;
+import java.util.zip.Deflater;
 
 public class Zip {
 
@@ -34,6 +38,20 @@ public class Zip {
   public static void create(
       ProjectFilesystem projectFilesystem, Collection<Path> pathsToIncludeInZip, Path out)
       throws IOException {
+    create(projectFilesystem, pathsToIncludeInZip, out, path -> Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Like {@link #create(ProjectFilesystem, Collection, Path)}, but compresses each file with the
+   * level given by {@code compressionLevel}. Files with a level of {@link Deflater#NO_COMPRESSION}
+   * are stored as they are.
+   */
+  public static void create(
+      ProjectFilesystem projectFilesystem,
+      Collection<Path> pathsToIncludeInZip,
+      Path out,
+      ToIntFunction<Path> compressionLevel)
+      throws IOException {
     try (CustomZipOutputStream zip = ZipOutputStreams.newOutputStream(out)) {
       for (Path path : pathsToIncludeInZip) {
         boolean isDirectory = projectFilesystem.isDirectory(path);
@@ -44,6 +62,26 @@ public class Zip {
 
         entry.setExternalAttributes(projectFilesystem.getFileAttributesForZipEntry(path));
 
+        if (!isDirectory) {
+          int level = compressionLevel.applyAsInt(path);
+          if (level == Deflater.NO_COMPRESSION) {
+            // Stored entries have their size and CRC written before their contents, so we need
+            // to read the file once up front to work them out.
+            entry.setCompressionLevel(level);
+            long size = projectFilesystem.getFileSize(path);
+            entry.setSize(size);
+            entry.setCompressedSize(size);
+            try (HashingInputStream input =
+                new HashingInputStream(
+                    Hashing.crc32(), projectFilesystem.newFileInputStream(path))) {
+              ByteStreams.exhaust(input);
+              entry.setCrc(input.hash().padToLong());
+            }
+          } else if (level != Deflater.DEFAULT_COMPRESSION) {
+            entry.setCompressionLevel(level);
+          }
+        }
+
         zip.putNextEntry(entry);
         if (!isDirectory) {
           try (InputStream input = projectFilesystem.newFileInputStream(path)) {
@@ -20,6 +20,8 @@ import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.artifact_cache.config.ArtifactCacheBuckConfig;
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionCodec;
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.artifact_cache.config.CacheReadMode;
 import com.facebook.buck.artifact_cache.config.DirCacheEntry;
 import com.facebook.buck.artifact_cache.config.HttpCacheEntry;
@@ -329,6 +331,32 @@ public class ArtifactCacheBuckConfigTest {
     assertThat(cache.getErrorMessageFormat(), Matchers.equalTo(testText));
   }
 
+  @Test
+  public void testArtifactCompressionPolicy() throws IOException {
+    assertThat(
+        createFromText().getArtifactCompressionPolicy(),
+        Matchers.equalTo(ArtifactCompressionPolicy.DEFAULT));
+
+    ArtifactCompressionPolicy policy =
+        createFromText(
+                "[cache]",
+                "artifact_compression = deflate_fast",
+                "artifact_compression_by_rule_type = android_binary => stored")
+            .getArtifactCompressionPolicy();
+    assertThat(
+        policy.getCodec("android_binary"), Matchers.equalTo(ArtifactCompressionCodec.STORED));
+    assertThat(
+        policy.getCodec("java_library"), Matchers.equalTo(ArtifactCompressionCodec.DEFLATE_FAST));
+  }
+
+  @Test
+  public void testUnknownArtifactCompressionCodecIsRejected() throws IOException {
+    ArtifactCacheBuckConfig config =
+        createFromText("[cache]", "artifact_compression_by_rule_type = java_library => brotli");
+    expectedException.expect(HumanReadableException.class);
+    config.getArtifactCompressionPolicy();
+  }
+
   public static ArtifactCacheBuckConfig createFromText(String... lines) throws IOException {
     ProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
     StringReader reader = new StringReader(Joiner.on('\n').join(lines));
@@ -18,6 +18,7 @@ package com.facebook.buck.artifact_cache;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -42,6 +43,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -50,6 +52,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -59,6 +62,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import okhttp3.MediaType;
 import okhttp3.Protocol;
 import okhttp3.Request;
@@ -279,6 +283,123 @@ public class HttpArtifactCacheTest {
     cache.close();
   }
 
+  @Test
+  public void testFetchStreamsPayloadToExtractor() throws Exception {
+    Path output = Paths.get("output/file");
+    String data = "test";
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setStreamingExtractionEnabled(true);
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              Request request = requestBuilder.url(SERVER + path).build();
+              return new OkHttpResponseWrapper(
+                  new Response.Builder()
+                      .request(request)
+                      .protocol(Protocol.HTTP_1_1)
+                      .code(HttpURLConnection.HTTP_OK)
+                      .body(
+                          createResponseBody(
+                              ImmutableSet.of(ruleKey),
+                              ImmutableMap.of(),
+                              ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+                              data))
+                      .message("")
+                      .build());
+            }));
+    RecordingExtractor extractor = new RecordingExtractor();
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    CacheResult result =
+        Futures.getUnchecked(
+            cache.fetchAsync(null, ruleKey, LazyPath.ofInstance(output), extractor));
+    assertEquals(result.cacheError().orElse(""), CacheResultType.HIT, result.getType());
+    assertEquals(data, extractor.extracted.toString(Charsets.UTF_8.name()));
+    assertFalse(extractor.discarded.get());
+    assertFalse(filesystem.exists(output));
+    cache.close();
+  }
+
+  @Test
+  public void testFetchBadChecksumDiscardsExtractedPayload() throws Exception {
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    argsBuilder.setStreamingExtractionEnabled(true);
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              Request request = requestBuilder.url(SERVER + path).build();
+              return new OkHttpResponseWrapper(
+                  new Response.Builder()
+                      .request(request)
+                      .protocol(Protocol.HTTP_1_1)
+                      .code(HttpURLConnection.HTTP_OK)
+                      .body(
+                          createResponseBody(
+                              ImmutableSet.of(ruleKey),
+                              ImmutableMap.of(),
+                              ByteSource.wrap(new byte[0]),
+                              "data"))
+                      .message("")
+                      .build());
+            }));
+    RecordingExtractor extractor = new RecordingExtractor();
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    CacheResult result =
+        Futures.getUnchecked(
+            cache.fetchAsync(
+                null, ruleKey, LazyPath.ofInstance(Paths.get("output/file")), extractor));
+    assertEquals(CacheResultType.ERROR, result.getType());
+    assertTrue(extractor.discarded.get());
+    cache.close();
+  }
+
+  @Test
+  public void testFetchFallsBackToOutputWhenExtractionFails() throws Exception {
+    Path output = Paths.get("output/file");
+    String data = "test";
+    RuleKey ruleKey = new RuleKey("00000000000000000000000000000000");
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    AtomicInteger requests = new AtomicInteger();
+    argsBuilder.setProjectFilesystem(filesystem);
+    argsBuilder.setStreamingExtractionEnabled(true);
+    argsBuilder.setFetchClient(
+        withMakeRequest(
+            (path, requestBuilder) -> {
+              requests.incrementAndGet();
+              Request request = requestBuilder.url(SERVER + path).build();
+              return new OkHttpResponseWrapper(
+                  new Response.Builder()
+                      .request(request)
+                      .protocol(Protocol.HTTP_1_1)
+                      .code(HttpURLConnection.HTTP_OK)
+                      .body(
+                          createResponseBody(
+                              ImmutableSet.of(ruleKey),
+                              ImmutableMap.of(),
+                              ByteSource.wrap(data.getBytes(Charsets.UTF_8)),
+                              data))
+                      .message("")
+                      .build());
+            }));
+    RecordingExtractor extractor =
+        new RecordingExtractor() {
+          @Override
+          public void extract(InputStream payload) throws IOException {
+            throw new IOException("disk full");
+          }
+        };
+    HttpArtifactCache cache = new HttpArtifactCache(argsBuilder.build());
+    CacheResult result =
+        Futures.getUnchecked(
+            cache.fetchAsync(null, ruleKey, LazyPath.ofInstance(output), extractor));
+    assertEquals(result.cacheError().orElse(""), CacheResultType.HIT, result.getType());
+    assertTrue(extractor.discarded.get());
+    assertEquals(2, requests.get());
+    assertEquals(Optional.of(data), filesystem.readFileIfItExists(output));
+    cache.close();
+  }
+
   @Test
   public void testFetchExtraPayload() throws Exception {
     FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
@@ -620,4 +741,24 @@ public class HttpArtifactCacheTest {
   private static ResponseBody createDummyBody() {
     return ResponseBody.create(MediaType.parse("text/plain"), "SUCCESS");
   }
+
+  private static class RecordingExtractor implements ArtifactPayloadExtractor {
+    private final ByteArrayOutputStream extracted = new ByteArrayOutputStream();
+    private final AtomicBoolean discarded = new AtomicBoolean(false);
+
+    @Override
+    public boolean shouldExtract(ImmutableMap<String, String> metadata) {
+      return true;
+    }
+
+    @Override
+    public void extract(InputStream payload) throws IOException {
+      ByteStreams.copy(payload, extracted);
+    }
+
+    @Override
+    public void discard() {
+      discarded.set(true);
+    }
+  }
 }
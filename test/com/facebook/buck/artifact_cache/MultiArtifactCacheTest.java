@@ -17,8 +17,10 @@
 package com.facebook.buck.artifact_cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
 import com.facebook.buck.artifact_cache.config.CacheReadMode;
@@ -165,6 +167,41 @@ public class MultiArtifactCacheTest {
     multiArtifactCache.close();
   }
 
+  @Test
+  public void testMultiContainsOnlyChecksCachesWhichSupportIt() throws IOException {
+    DummyArtifactCache supported = new DummyArtifactCache();
+    DummyArtifactCache unsupported =
+        new DummyArtifactCache() {
+          @Override
+          public boolean supportsMultiContains() {
+            return false;
+          }
+
+          @Override
+          public ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
+              ImmutableSet<RuleKey> ruleKeys) {
+            throw new UnsupportedOperationException();
+          }
+        };
+    supported.store(
+        ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+        BorrowablePath.notBorrowablePath(dummyFile.get()));
+
+    assertFalse(new MultiArtifactCache(ImmutableList.of(unsupported)).supportsMultiContains());
+    MultiArtifactCache multiArtifactCache =
+        new MultiArtifactCache(ImmutableList.of(unsupported, supported));
+    assertTrue(multiArtifactCache.supportsMultiContains());
+
+    // The second key might still be in the cache which can't be checked.
+    Map<RuleKey, CacheResult> results =
+        Futures.getUnchecked(
+            multiArtifactCache.multiContainsAsync(ImmutableSet.of(dummyRuleKey, dummyRuleKey2)));
+    assertEquals(CacheResultType.CONTAINS, results.get(dummyRuleKey).getType());
+    assertEquals(CacheResultType.SKIPPED, results.get(dummyRuleKey2).getType());
+
+    multiArtifactCache.close();
+  }
+
   @Test
   public void testPropagateOnlyCacheStore()
       throws InterruptedException, IOException, ExecutionException {
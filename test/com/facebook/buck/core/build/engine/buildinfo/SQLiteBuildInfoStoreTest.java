@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.buildinfo;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SQLiteBuildInfoStoreTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:bar");
+  private static final BuildTarget OTHER_TARGET = BuildTargetFactory.newInstance("//foo:baz");
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+  }
+
+  @Test
+  public void writesAreVisibleBeforeTheyAreFlushed() throws IOException {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      store.updateMetadata(TARGET, ImmutableMap.of("a", "1", "b", "2"));
+      store.updateMetadata(TARGET, ImmutableMap.of("b", "3"));
+
+      assertEquals(Optional.of("3"), store.readMetadata(TARGET, "b"));
+      assertEquals(ImmutableMap.of("a", "1", "b", "3"), store.getAllMetadata(TARGET));
+      assertEquals(ImmutableMap.of(), store.getAllMetadata(OTHER_TARGET));
+    }
+  }
+
+  @Test
+  public void flushedWritesAreStored() throws Exception {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      store.updateMetadata(TARGET, ImmutableMap.of("a", "1"));
+      store.updateMetadata(OTHER_TARGET, ImmutableMap.of("a", "2"));
+      // Cache what's committed so far, to check that later commits replace it.
+      store.flush();
+      assertEquals(ImmutableMap.of("a", "1"), store.getAllMetadata(TARGET));
+
+      store.deleteMetadata(TARGET);
+      store.updateMetadata(TARGET, ImmutableMap.of("b", "3"));
+      store.flush();
+      assertEquals(ImmutableMap.of("b", "3"), store.getAllMetadata(TARGET));
+    }
+
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      assertEquals(ImmutableMap.of("b", "3"), store.getAllMetadata(TARGET));
+      assertEquals(Optional.of("2"), store.readMetadata(OTHER_TARGET, "a"));
+    }
+  }
+
+  @Test
+  public void deletesHideCommittedMetadataUntilFlushed() throws Exception {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      store.updateMetadata(TARGET, ImmutableMap.of("a", "1", "b", "2"));
+      store.flush();
+
+      store.deleteMetadata(TARGET);
+      assertEquals(Optional.empty(), store.readMetadata(TARGET, "a"));
+      store.updateMetadata(TARGET, ImmutableMap.of("b", "3"));
+      assertEquals(ImmutableMap.of("b", "3"), store.getAllMetadata(TARGET));
+    }
+  }
+
+  @Test
+  public void deletesAreStoredOnceTheyReturn() throws Exception {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      store.updateMetadata(TARGET, ImmutableMap.of("a", "1"));
+      store.flush();
+
+      store.deleteMetadata(TARGET);
+      // Without flushing or closing the store, as if the build got killed right after deleting.
+      try (SQLiteBuildInfoStore otherStore = new SQLiteBuildInfoStore(filesystem)) {
+        assertEquals(ImmutableMap.of(), otherStore.getAllMetadata(TARGET));
+      }
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void cacheHitsDoNotWaitForTheWriter() throws Exception {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem);
+        Connection connection =
+            DriverManager.getConnection(
+                "jdbc:sqlite:"
+                    + filesystem.resolve(
+                        filesystem.getBuckPaths().getScratchDir().resolve("metadata.db")))) {
+      // Keep the writer from committing anything until the lock is released.
+      connection.createStatement().execute("BEGIN EXCLUSIVE");
+      try {
+        // What the build engine does for a rule which it fetches from the cache.
+        store.deleteMetadata(TARGET);
+        store.updateMetadata(TARGET, ImmutableMap.of("a", "1", "b", "2"));
+        store.queueDeleteMetadata(TARGET);
+        store.updateMetadata(TARGET, ImmutableMap.of("b", "3"));
+        assertEquals(ImmutableMap.of("b", "3"), store.getAllMetadata(TARGET));
+      } finally {
+        connection.createStatement().execute("ROLLBACK");
+      }
+
+      store.flush();
+      try (SQLiteBuildInfoStore otherStore = new SQLiteBuildInfoStore(filesystem)) {
+        assertEquals(ImmutableMap.of("b", "3"), otherStore.getAllMetadata(TARGET));
+      }
+    }
+  }
+
+  @Test
+  public void closingTheStoreStoresAllWrites() throws IOException {
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      for (int i = 0; i < 1000; i++) {
+        store.updateMetadata(
+            BuildTargetFactory.newInstance("//foo:bar" + i), ImmutableMap.of("i", "" + i));
+      }
+    }
+
+    try (SQLiteBuildInfoStore store = new SQLiteBuildInfoStore(filesystem)) {
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(
+            Optional.of("" + i),
+            store.readMetadata(BuildTargetFactory.newInstance("//foo:bar" + i), "i"));
+      }
+    }
+  }
+}
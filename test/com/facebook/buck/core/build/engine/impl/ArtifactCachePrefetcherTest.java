@@ -0,0 +1,309 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.CacheResultType;
+import com.facebook.buck.artifact_cache.NoopArtifactCache;
+import com.facebook.buck.artifact_cache.config.ArtifactCacheMode;
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rulekey.calculator.ParallelRuleKeyCalculator;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.io.file.LazyPath;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.keys.RuleKeyFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ArtifactCachePrefetcherTest {
+
+  private final ListeningExecutorService service = MoreExecutors.newDirectExecutorService();
+  private final BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+
+  private TestActionGraphBuilder graphBuilder;
+  private ParallelRuleKeyCalculator<RuleKey> ruleKeyCalculator;
+
+  @Before
+  public void setUp() {
+    graphBuilder = new TestActionGraphBuilder();
+    ruleKeyCalculator =
+        new ParallelRuleKeyCalculator<>(
+            service,
+            new RuleKeyFactory<RuleKey>() {
+              @Override
+              public RuleKey build(BuildRule buildRule) {
+                return ruleKeyFor(buildRule);
+              }
+
+              @Nullable
+              @Override
+              public RuleKey getFromCache(BuildRule buildRule) {
+                return null;
+              }
+            },
+            new DefaultRuleDepsCache(graphBuilder),
+            (buckEventBus, rule) -> () -> {});
+  }
+
+  private static RuleKey ruleKeyFor(BuildRule rule) {
+    return new RuleKey(
+        Hashing.sha1().hashString(rule.getFullyQualifiedName(), StandardCharsets.UTF_8));
+  }
+
+  private BuildRule createRule(String target, BuildRule... deps) {
+    return graphBuilder.addToIndex(new FakeBuildRule(target, deps));
+  }
+
+  /** Records each request, and answers it once told to. */
+  private static class RecordingArtifactCache extends NoopArtifactCache {
+
+    private final Set<RuleKey> contained;
+    private final boolean supportsMultiContains;
+    private final List<ImmutableSet<RuleKey>> requests = new ArrayList<>();
+    private final List<SettableFuture<ImmutableMap<RuleKey, CacheResult>>> responses =
+        new ArrayList<>();
+    private final List<RuleKey> fetches = new ArrayList<>();
+    private final List<LazyPath> fetchOutputs = new ArrayList<>();
+    private final List<SettableFuture<CacheResult>> fetchResponses = new ArrayList<>();
+
+    RecordingArtifactCache(Set<RuleKey> contained) {
+      this(contained, true);
+    }
+
+    RecordingArtifactCache(Set<RuleKey> contained, boolean supportsMultiContains) {
+      this.contained = contained;
+      this.supportsMultiContains = supportsMultiContains;
+    }
+
+    @Override
+    public boolean supportsMultiContains() {
+      return supportsMultiContains;
+    }
+
+    @Override
+    public ListenableFuture<CacheResult> fetchAsync(
+        @Nullable BuildTarget target, RuleKey ruleKey, LazyPath output) {
+      fetches.add(ruleKey);
+      fetchOutputs.add(output);
+      SettableFuture<CacheResult> response = SettableFuture.create();
+      fetchResponses.add(response);
+      return response;
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<RuleKey, CacheResult>> multiContainsAsync(
+        ImmutableSet<RuleKey> ruleKeys) {
+      requests.add(ruleKeys);
+      SettableFuture<ImmutableMap<RuleKey, CacheResult>> response = SettableFuture.create();
+      responses.add(response);
+      return response;
+    }
+
+    void respond(int request) {
+      responses
+          .get(request)
+          .set(
+              ImmutableMap.copyOf(
+                  Maps.toMap(
+                      requests.get(request),
+                      ruleKey ->
+                          contained.contains(ruleKey)
+                              ? CacheResult.contains("fake", ArtifactCacheMode.dir)
+                              : CacheResult.miss())));
+    }
+
+    void respondSkipped(int request) {
+      responses
+          .get(request)
+          .set(
+              ImmutableMap.copyOf(
+                  Maps.toMap(requests.get(request), ruleKey -> CacheResult.skipped())));
+    }
+
+    void respondToFetch(int fetch) throws IOException {
+      if (contained.contains(fetches.get(fetch))) {
+        Files.write(fetchOutputs.get(fetch).get(), new byte[0]);
+        fetchResponses.get(fetch).set(CacheResult.hit("fake", ArtifactCacheMode.http));
+      } else {
+        fetchResponses.get(fetch).set(CacheResult.miss());
+      }
+    }
+  }
+
+  @Test
+  public void ruleKeysAreCheckedInBatchesBottomUp() throws Exception {
+    BuildRule d = createRule("//:d");
+    BuildRule c = createRule("//:c", d);
+    BuildRule b = createRule("//:b", c);
+    BuildRule a = createRule("//:a", b);
+    RecordingArtifactCache cache = new RecordingArtifactCache(ImmutableSet.of(ruleKeyFor(c)));
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 3, 4);
+
+    prefetcher.prefetch(eventBus, a);
+
+    // A full batch, then the remainder once the walk has finished.
+    assertThat(cache.requests, Matchers.hasSize(2));
+    assertThat(cache.requests.get(0), Matchers.hasSize(3));
+    assertThat(cache.requests.get(1), Matchers.hasSize(1));
+    assertThat(
+        Sets.union(cache.requests.get(0), cache.requests.get(1)),
+        Matchers.containsInAnyOrder(ruleKeyFor(a), ruleKeyFor(b), ruleKeyFor(c), ruleKeyFor(d)));
+
+    cache.respond(0);
+    cache.respond(1);
+    assertEquals(
+        CacheResultType.CONTAINS, prefetcher.getResult(ruleKeyFor(c)).get().get().getType());
+    assertEquals(CacheResultType.MISS, prefetcher.getResult(ruleKeyFor(d)).get().get().getType());
+  }
+
+  @Test
+  public void inFlightRequestsAreBounded() {
+    BuildRule c = createRule("//:c");
+    BuildRule b = createRule("//:b", c);
+    BuildRule a = createRule("//:a", b);
+    RecordingArtifactCache cache = new RecordingArtifactCache(ImmutableSet.of());
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 1, 2);
+
+    prefetcher.prefetch(eventBus, a);
+    assertThat(cache.requests, Matchers.hasSize(2));
+
+    cache.respond(0);
+    assertThat(cache.requests, Matchers.hasSize(3));
+    assertEquals(
+        ImmutableSet.of(ruleKeyFor(a), ruleKeyFor(b), ruleKeyFor(c)),
+        Sets.union(
+            Sets.union(cache.requests.get(0), cache.requests.get(1)), cache.requests.get(2)));
+  }
+
+  @Test
+  public void prefetchingStopsWhenTheCacheFailsARequest() throws Exception {
+    BuildRule b = createRule("//:b");
+    BuildRule a = createRule("//:a", b);
+    BuildRule other = createRule("//:other");
+    RecordingArtifactCache cache = new RecordingArtifactCache(ImmutableSet.of());
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 1, 1);
+
+    prefetcher.prefetch(eventBus, a);
+    assertThat(cache.requests, Matchers.hasSize(1));
+    RuleKey requested = Iterables.getOnlyElement(cache.requests.get(0));
+    cache.responses.get(0).setException(new UnsupportedOperationException());
+
+    assertEquals(CacheResultType.SKIPPED, prefetcher.getResult(requested).get().get().getType());
+    prefetcher.prefetch(eventBus, other);
+    assertThat(cache.requests, Matchers.hasSize(1));
+    assertFalse(prefetcher.getResult(ruleKeyFor(other)).isPresent());
+  }
+
+  @Test
+  public void cachesWithoutMultiContainsAreFetchedFromWithinTheWindow() throws Exception {
+    BuildRule c = createRule("//:c");
+    BuildRule b = createRule("//:b", c);
+    BuildRule a = createRule("//:a", b);
+    RecordingArtifactCache cache =
+        new RecordingArtifactCache(ImmutableSet.of(ruleKeyFor(c)), false);
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 10, 2);
+
+    prefetcher.prefetch(eventBus, a);
+    assertThat(cache.requests, Matchers.empty());
+    assertThat(cache.fetches, Matchers.hasSize(2));
+    cache.respondToFetch(0);
+    assertThat(cache.fetches, Matchers.hasSize(3));
+    cache.respondToFetch(1);
+    cache.respondToFetch(2);
+
+    assertEquals(CacheResultType.HIT, prefetcher.getResult(ruleKeyFor(c)).get().get().getType());
+    Path artifact = prefetcher.takeFetchedArtifact(ruleKeyFor(c)).get();
+    assertTrue(Files.exists(artifact));
+    assertFalse(prefetcher.takeFetchedArtifact(ruleKeyFor(c)).isPresent());
+    assertEquals(CacheResultType.MISS, prefetcher.getResult(ruleKeyFor(b)).get().get().getType());
+    assertFalse(prefetcher.takeFetchedArtifact(ruleKeyFor(b)).isPresent());
+
+    prefetcher.close();
+    assertFalse(Files.exists(artifact));
+  }
+
+  @Test
+  public void queuedFetchesAreLeftToTheBuildOnceItAsks() throws Exception {
+    BuildRule b = createRule("//:b");
+    BuildRule a = createRule("//:a", b);
+    RecordingArtifactCache cache = new RecordingArtifactCache(ImmutableSet.of(), false);
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 10, 1);
+
+    prefetcher.prefetch(eventBus, a);
+    RuleKey fetched = Iterables.getOnlyElement(cache.fetches);
+    RuleKey queued = fetched.equals(ruleKeyFor(a)) ? ruleKeyFor(b) : ruleKeyFor(a);
+    assertEquals(CacheResultType.SKIPPED, prefetcher.getResult(queued).get().get().getType());
+
+    cache.respondToFetch(0);
+    assertEquals(ImmutableList.of(fetched), cache.fetches);
+    prefetcher.close();
+  }
+
+  @Test
+  public void keysTheCacheCouldNotCheckAreFetched() throws Exception {
+    BuildRule b = createRule("//:b");
+    BuildRule a = createRule("//:a", b);
+    RecordingArtifactCache cache = new RecordingArtifactCache(ImmutableSet.of());
+    ArtifactCachePrefetcher prefetcher =
+        new ArtifactCachePrefetcher(cache, ruleKeyCalculator, service, 10, 1);
+
+    prefetcher.prefetch(eventBus, a);
+    assertThat(cache.requests, Matchers.hasSize(1));
+    cache.respondSkipped(0);
+    assertThat(cache.fetches, Matchers.hasSize(1));
+    cache.respondToFetch(0);
+    assertThat(cache.fetches, Matchers.hasSize(2));
+    cache.respondToFetch(1);
+    assertEquals(CacheResultType.MISS, prefetcher.getResult(ruleKeyFor(a)).get().get().getType());
+    assertEquals(CacheResultType.MISS, prefetcher.getResult(ruleKeyFor(b)).get().get().getType());
+    prefetcher.close();
+  }
+}
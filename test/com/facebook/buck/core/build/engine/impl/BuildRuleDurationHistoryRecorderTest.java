@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.core.build.engine.BuildRuleStatus;
+import com.facebook.buck.core.build.engine.BuildRuleSuccessType;
+import com.facebook.buck.core.build.event.BuildRuleEvent;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
+import com.facebook.buck.core.build.stats.BuildRuleDurationTracker;
+import com.facebook.buck.core.rulekey.BuildRuleKeys;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.event.TestEventConfigurator;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BuildRuleDurationHistoryRecorderTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private BuildRuleDurationHistory history;
+  private BuildRuleDurationHistoryRecorder recorder;
+
+  @Before
+  public void setUp() {
+    history = BuildRuleDurationHistory.load(tmp.getRoot().resolve("build_rule_durations"));
+    recorder = new BuildRuleDurationHistoryRecorder(history);
+  }
+
+  private BuildRuleEvent.Finished finishedEvent(
+      BuildRule rule,
+      long wallMillisDuration,
+      BuildRuleStatus status,
+      Optional<BuildRuleSuccessType> successType) {
+    BuildRuleDurationTracker durationTracker = new BuildRuleDurationTracker();
+    BuildRuleEvent.Started started =
+        TestEventConfigurator.configureTestEventAtTime(
+            BuildRuleEvent.started(rule, durationTracker), 0, TimeUnit.MILLISECONDS, 0);
+    return TestEventConfigurator.configureTestEventAtTime(
+        BuildRuleEvent.finished(
+            started,
+            BuildRuleKeys.of(new RuleKey("aa")),
+            status,
+            CacheResult.miss(),
+            Optional.empty(),
+            successType,
+            false,
+            Optional.empty(),
+            Optional.of(42L),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty(),
+            Optional.empty()),
+        wallMillisDuration,
+        TimeUnit.MILLISECONDS,
+        0);
+  }
+
+  @Test
+  public void rulesBuiltLocallyRecordBuildTime() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    recorder.buildRuleFinished(
+        finishedEvent(
+            rule, 100, BuildRuleStatus.SUCCESS, Optional.of(BuildRuleSuccessType.BUILT_LOCALLY)));
+
+    BuildRuleDurationHistory.Entry entry = history.get(rule.getBuildTarget()).get();
+    assertEquals(OptionalLong.of(100), entry.getBuildMillis());
+    assertEquals(OptionalLong.empty(), entry.getCacheFetchMillis());
+    assertEquals(OptionalLong.of(42), entry.getOutputSize());
+  }
+
+  @Test
+  public void rulesFetchedFromCacheRecordFetchTime() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    recorder.buildRuleFinished(
+        finishedEvent(
+            rule,
+            100,
+            BuildRuleStatus.SUCCESS,
+            Optional.of(BuildRuleSuccessType.FETCHED_FROM_CACHE)));
+
+    BuildRuleDurationHistory.Entry entry = history.get(rule.getBuildTarget()).get();
+    assertEquals(OptionalLong.empty(), entry.getBuildMillis());
+    assertEquals(OptionalLong.of(100), entry.getCacheFetchMillis());
+  }
+
+  @Test
+  public void failedRulesAreNotRecorded() {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    recorder.buildRuleFinished(finishedEvent(rule, 100, BuildRuleStatus.FAIL, Optional.empty()));
+
+    assertFalse(history.get(rule.getBuildTarget()).isPresent());
+  }
+}
@@ -16,14 +16,17 @@
 
 package com.facebook.buck.core.build.engine.impl;
 
+import com.facebook.buck.artifact_cache.config.ArtifactCompressionPolicy;
 import com.facebook.buck.core.build.distributed.synchronization.RemoteBuildRuleCompletionWaiter;
 import com.facebook.buck.core.build.engine.cache.manager.BuildInfoStoreManager;
+import com.facebook.buck.core.build.engine.config.ArtifactCachePrefetchInfo;
 import com.facebook.buck.core.build.engine.config.ResourceAwareSchedulingInfo;
 import com.facebook.buck.core.build.engine.delegate.CachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.delegate.LocalCachingBuildEngineDelegate;
 import com.facebook.buck.core.build.engine.type.BuildType;
 import com.facebook.buck.core.build.engine.type.DepFiles;
 import com.facebook.buck.core.build.engine.type.MetadataStorage;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.SourcePathRuleFinder;
 import com.facebook.buck.core.rules.build.strategy.BuildRuleStrategy;
@@ -51,6 +54,7 @@ public class CachingBuildEngineFactory {
   private DepFiles depFiles = DepFiles.ENABLED;
   private long maxDepFileCacheEntries = 256L;
   private Optional<Long> artifactCacheSizeLimit = Optional.empty();
+  private ArtifactCompressionPolicy artifactCompressionPolicy = ArtifactCompressionPolicy.DEFAULT;
   private long inputFileSizeLimit = Long.MAX_VALUE;
   private Optional<RuleKeyFactories> ruleKeyFactories = Optional.empty();
   private CachingBuildEngineDelegate cachingBuildEngineDelegate;
@@ -62,6 +66,8 @@ public class CachingBuildEngineFactory {
   private BuildInfoStoreManager buildInfoStoreManager;
   private final RemoteBuildRuleCompletionWaiter remoteBuildRuleCompletionWaiter;
   private Optional<BuildRuleStrategy> customBuildRuleStrategy = Optional.empty();
+  private Optional<BuildRuleDurationHistory> buildRuleDurationHistory = Optional.empty();
+  private ArtifactCachePrefetchInfo artifactCachePrefetchInfo = ArtifactCachePrefetchInfo.DISABLED;
 
   public CachingBuildEngineFactory(
       BuildRuleResolver buildRuleResolver,
@@ -95,6 +101,12 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setArtifactCompressionPolicy(
+      ArtifactCompressionPolicy artifactCompressionPolicy) {
+    this.artifactCompressionPolicy = artifactCompressionPolicy;
+    return this;
+  }
+
   public CachingBuildEngineFactory setCachingBuildEngineDelegate(
       CachingBuildEngineDelegate cachingBuildEngineDelegate) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
@@ -134,6 +146,18 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setBuildRuleDurationHistory(
+      BuildRuleDurationHistory buildRuleDurationHistory) {
+    this.buildRuleDurationHistory = Optional.of(buildRuleDurationHistory);
+    return this;
+  }
+
+  public CachingBuildEngineFactory setArtifactCachePrefetchInfo(
+      ArtifactCachePrefetchInfo artifactCachePrefetchInfo) {
+    this.artifactCachePrefetchInfo = artifactCachePrefetchInfo;
+    return this;
+  }
+
   public CachingBuildEngine build() {
     SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(buildRuleResolver);
     SourcePathResolver sourcePathResolver = DefaultSourcePathResolver.from(ruleFinder);
@@ -148,6 +172,7 @@ public class CachingBuildEngineFactory {
           depFiles,
           maxDepFileCacheEntries,
           artifactCacheSizeLimit,
+          artifactCompressionPolicy,
           buildRuleResolver,
           buildInfoStoreManager,
           ruleFinder,
@@ -156,7 +181,9 @@ public class CachingBuildEngineFactory {
           remoteBuildRuleCompletionWaiter,
           resourceAwareSchedulingInfo,
           RuleKeyDiagnostics.nop(),
-          logBuildRuleFailuresInline);
+          logBuildRuleFailuresInline,
+          buildRuleDurationHistory,
+          artifactCachePrefetchInfo);
     }
 
     return new CachingBuildEngine(
@@ -169,6 +196,7 @@ public class CachingBuildEngineFactory {
         depFiles,
         maxDepFileCacheEntries,
         artifactCacheSizeLimit,
+        artifactCompressionPolicy,
         buildRuleResolver,
         ruleFinder,
         sourcePathResolver,
@@ -181,7 +209,9 @@ public class CachingBuildEngineFactory {
             buildRuleResolver,
             inputFileSizeLimit,
             new TrackedRuleKeyCache<>(new DefaultRuleKeyCache<>(), new NoOpCacheStatsTracker())),
-        remoteBuildRuleCompletionWaiter);
+        remoteBuildRuleCompletionWaiter,
+        buildRuleDurationHistory,
+        artifactCachePrefetchInfo);
   }
 
   private static WeightedListeningExecutorService toWeighted(ListeningExecutorService service) {
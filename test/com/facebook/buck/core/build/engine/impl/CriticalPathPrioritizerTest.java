@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.core.build.engine.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CriticalPathPrioritizerTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ActionGraphBuilder graphBuilder;
+  private BuildRuleDurationHistory history;
+  private CriticalPathPrioritizer prioritizer;
+
+  @Before
+  public void setUp() {
+    graphBuilder = new TestActionGraphBuilder();
+    history = BuildRuleDurationHistory.load(tmp.getRoot().resolve("build_rule_durations"));
+    prioritizer = new CriticalPathPrioritizer(new DefaultRuleDepsCache(graphBuilder), history);
+  }
+
+  private BuildRule createRule(String target, long wallMillisDuration, BuildRule... deps) {
+    BuildRule rule = graphBuilder.addToIndex(new FakeBuildRule(target, deps));
+    history.recordBuild(rule.getBuildTarget(), rule.getType(), wallMillisDuration);
+    return rule;
+  }
+
+  // Visualisation of the action graph (rules depend on rules below them):
+  //
+  //   a   e
+  //  / \ /
+  // b   c
+  // |
+  // d
+  @Test
+  public void priorityIsLongestRemainingPath() {
+    BuildRule d = createRule("//:d", 100);
+    BuildRule c = createRule("//:c", 5);
+    BuildRule b = createRule("//:b", 10, d);
+    BuildRule a = createRule("//:a", 1, b, c);
+    BuildRule e = createRule("//:e", 20, c);
+
+    prioritizer.prioritize(ImmutableList.of(a, e));
+
+    assertEquals(1, prioritizer.getPriority(a));
+    assertEquals(20, prioritizer.getPriority(e));
+    assertEquals(11, prioritizer.getPriority(b));
+    assertEquals(25, prioritizer.getPriority(c));
+    assertEquals(111, prioritizer.getPriority(d));
+  }
+
+  @Test
+  public void rulesWithoutHistoryAreAssumedToTakeTheAverageDuration() {
+    BuildRule b = createRule("//:b", 10);
+    BuildRule c = createRule("//:c", 30);
+    BuildRule a = graphBuilder.addToIndex(new FakeBuildRule("//:a", b, c));
+
+    prioritizer.prioritize(ImmutableList.of(a));
+
+    assertEquals(20, prioritizer.getPriority(a));
+    assertEquals(30, prioritizer.getPriority(b));
+    assertEquals(50, prioritizer.getPriority(c));
+  }
+
+  @Test
+  public void unknownRulesHaveNoPriority() {
+    assertEquals(0, prioritizer.getPriority(new FakeBuildRule("//:a")));
+  }
+}
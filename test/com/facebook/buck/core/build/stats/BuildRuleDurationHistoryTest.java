@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.build.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.TemporaryPaths;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class BuildRuleDurationHistoryTest {
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void historyRoundTrips() throws Exception {
+    Path path = tmp.getRoot().resolve("build_rule_durations");
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    BuildRuleDurationHistory history = BuildRuleDurationHistory.load(path);
+    assertFalse(history.get(target).isPresent());
+    history.recordBuild(target, "java_library", 1234);
+    history.recordCacheFetch(target, "java_library", 56);
+    history.recordOutputSize(target, "java_library", 789);
+    history.save();
+
+    BuildRuleDurationHistory.Entry entry = BuildRuleDurationHistory.load(path).get(target).get();
+    assertEquals("java_library", entry.getRuleType());
+    assertEquals(OptionalLong.of(1234), entry.getBuildMillis());
+    assertEquals(OptionalLong.of(56), entry.getCacheFetchMillis());
+    assertEquals(OptionalLong.of(789), entry.getOutputSize());
+  }
+
+  @Test
+  public void samplesAreExponentiallyWeighted() {
+    BuildTarget target = BuildTargetFactory.newInstance("//:rule");
+    BuildRuleDurationHistory history =
+        BuildRuleDurationHistory.load(tmp.getRoot().resolve("build_rule_durations"));
+    history.recordBuild(target, "java_library", 1000);
+    history.recordBuild(target, "java_library", 2000);
+
+    assertEquals(OptionalLong.of(1300), history.getEstimatedBuildMillis(target, "java_library"));
+  }
+
+  @Test
+  public void unknownTargetsAreEstimatedFromRulesOfTheSameType() throws Exception {
+    Path path = tmp.getRoot().resolve("build_rule_durations");
+    BuildRuleDurationHistory history = BuildRuleDurationHistory.load(path);
+    history.recordBuild(BuildTargetFactory.newInstance("//:a"), "java_library", 100);
+    history.recordBuild(BuildTargetFactory.newInstance("//:b"), "java_library", 300);
+    history.recordBuild(BuildTargetFactory.newInstance("//:c"), "genrule", 1100);
+    history.save();
+
+    BuildRuleDurationHistory loaded = BuildRuleDurationHistory.load(path);
+    BuildTarget unknown = BuildTargetFactory.newInstance("//:unknown");
+    assertEquals(OptionalLong.of(200), loaded.getEstimatedBuildMillis(unknown, "java_library"));
+    assertEquals(OptionalLong.empty(), loaded.getEstimatedBuildMillis(unknown, "cxx_library"));
+    assertEquals(OptionalLong.of(500), loaded.getAverageBuildMillis());
+  }
+
+  @Test
+  public void targetsAreEstimatedByName() throws Exception {
+    Path path = tmp.getRoot().resolve("build_rule_durations");
+    BuildRuleDurationHistory history = BuildRuleDurationHistory.load(path);
+    history.recordBuild(BuildTargetFactory.newInstance("//:a"), "java_library", 100);
+    history.recordBuild(BuildTargetFactory.newInstance("//:b"), "java_library", 300);
+    history.recordBuild(BuildTargetFactory.newInstance("//:c"), "genrule", 1100);
+    history.recordCacheFetch(BuildTargetFactory.newInstance("//:fetched"), "java_library", 10);
+    history.save();
+
+    BuildRuleDurationHistory loaded = BuildRuleDurationHistory.load(path);
+    assertEquals(OptionalLong.of(100), loaded.getEstimatedBuildMillis("//:a"));
+    assertEquals(OptionalLong.of(200), loaded.getEstimatedBuildMillis("//:fetched"));
+    assertEquals(OptionalLong.of(500), loaded.getEstimatedBuildMillis("//:unknown"));
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.rulekey.calculator;
+
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.keys.RuleKeyFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link ParallelRuleKeyCalculator} over a synthetic action graph of {@code depth} layers
+ * of {@code width} rules, each depending on {@code fanIn} random rules of the layer below.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/core/rulekey/calculator:benchmark}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ParallelRuleKeyCalculatorBenchmark {
+
+  private static final RuleDepsCache BUILD_DEPS_CACHE =
+      new RuleDepsCache() {
+        @Override
+        public SortedSet<BuildRule> get(BuildRule rule) {
+          return rule.getBuildDeps();
+        }
+
+        @Override
+        public SortedSet<BuildRule> getRuntimeDeps(BuildRule rule) {
+          return ImmutableSortedSet.of();
+        }
+      };
+
+  private static final RuleKeyFactory<RuleKey> RULE_KEY_FACTORY =
+      rule ->
+          new RuleKey(
+              Hashing.sha1().hashString(rule.getFullyQualifiedName(), StandardCharsets.UTF_8));
+
+  @Param({"100", "1000"})
+  private int width;
+
+  @Param({"10", "50"})
+  private int depth;
+
+  @Param({"4"})
+  private int fanIn;
+
+  @Param({"16"})
+  private int threads;
+
+  private final BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+  private ListeningExecutorService service;
+  private ImmutableList<BuildRule> allRules;
+  private ParallelRuleKeyCalculator<RuleKey> populatedCalculator;
+
+  @Setup(Level.Trial)
+  public void setUp() throws ExecutionException, InterruptedException {
+    service = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(threads));
+
+    Random random = new Random(123);
+    ImmutableList.Builder<BuildRule> allRulesBuilder = ImmutableList.builder();
+    List<BuildRule> layer = new ArrayList<>();
+    for (int level = 0; level < depth; level++) {
+      List<BuildRule> nextLayer = new ArrayList<>(width);
+      for (int index = 0; index < width; index++) {
+        BuildRule[] deps = new BuildRule[layer.isEmpty() ? 0 : fanIn];
+        for (int dep = 0; dep < deps.length; dep++) {
+          deps[dep] = layer.get(random.nextInt(layer.size()));
+        }
+        BuildRule rule = new FakeBuildRule(String.format("//level%d:rule%d", level, index), deps);
+        nextLayer.add(rule);
+        allRulesBuilder.add(rule);
+      }
+      layer = nextLayer;
+    }
+    allRules = allRulesBuilder.build();
+
+    populatedCalculator = newCalculator();
+    calculateAll(populatedCalculator);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.shutdownNow();
+  }
+
+  private ParallelRuleKeyCalculator<RuleKey> newCalculator() {
+    return new ParallelRuleKeyCalculator<>(
+        service, RULE_KEY_FACTORY, BUILD_DEPS_CACHE, (buckEventBus, rule) -> () -> {});
+  }
+
+  private List<RuleKey> calculateAll(ParallelRuleKeyCalculator<RuleKey> calculator)
+      throws ExecutionException, InterruptedException {
+    List<ListenableFuture<RuleKey>> futures = new ArrayList<>(allRules.size());
+    for (BuildRule rule : allRules) {
+      futures.add(calculator.calculate(eventBus, rule));
+    }
+    return Futures.allAsList(futures).get();
+  }
+
+  /** Calculates the rule keys of the whole graph from scratch. */
+  @Benchmark
+  public List<RuleKey> calculateGraph() throws ExecutionException, InterruptedException {
+    return calculateAll(newCalculator());
+  }
+
+  /**
+   * Looks up already calculated rule keys from many threads at once, as the build engine does when
+   * rules ask for the keys of their deps.
+   */
+  @Benchmark
+  @Threads(16)
+  public void lookupCalculatedKeys(Blackhole blackhole) {
+    for (BuildRule rule : allRules) {
+      blackhole.consume(populatedCalculator.calculate(eventBus, rule));
+    }
+  }
+}
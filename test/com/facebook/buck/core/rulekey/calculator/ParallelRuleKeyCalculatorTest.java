@@ -0,0 +1,202 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.core.rulekey.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.core.build.engine.RuleDepsCache;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusForTests;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.keys.RuleKeyFactory;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Multiset;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelRuleKeyCalculatorTest {
+
+  private static final RuleDepsCache BUILD_DEPS_CACHE =
+      new RuleDepsCache() {
+        @Override
+        public SortedSet<BuildRule> get(BuildRule rule) {
+          return rule.getBuildDeps();
+        }
+
+        @Override
+        public SortedSet<BuildRule> getRuntimeDeps(BuildRule rule) {
+          return ImmutableSortedSet.of();
+        }
+      };
+
+  private final ListeningExecutorService service =
+      MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(8));
+  private final BuckEventBus eventBus = BuckEventBusForTests.newInstance();
+  private final Multiset<BuildRule> builtRules = ConcurrentHashMultiset.create();
+
+  @After
+  public void tearDown() {
+    service.shutdownNow();
+  }
+
+  private static RuleKey ruleKeyFor(BuildRule rule) {
+    return new RuleKey(
+        Hashing.sha1().hashString(rule.getFullyQualifiedName(), StandardCharsets.UTF_8));
+  }
+
+  private ParallelRuleKeyCalculator<RuleKey> newCalculator(@Nullable BuildRule cachedRule) {
+    return newCalculator(cachedRule, BUILD_DEPS_CACHE);
+  }
+
+  private ParallelRuleKeyCalculator<RuleKey> newCalculator(
+      @Nullable BuildRule cachedRule, RuleDepsCache ruleDepsCache) {
+    return new ParallelRuleKeyCalculator<>(
+        service,
+        new RuleKeyFactory<RuleKey>() {
+          @Override
+          public RuleKey build(BuildRule buildRule) {
+            builtRules.add(buildRule);
+            return ruleKeyFor(buildRule);
+          }
+
+          @Nullable
+          @Override
+          public RuleKey getFromCache(BuildRule buildRule) {
+            return buildRule == cachedRule ? ruleKeyFor(buildRule) : null;
+          }
+        },
+        ruleDepsCache,
+        (buckEventBus, rule) -> () -> {});
+  }
+
+  @Test
+  public void calculatesDepsAndRuleKey() throws Exception {
+    BuildRule dep = new FakeBuildRule("//:dep");
+    BuildRule rule = new FakeBuildRule("//:rule", dep);
+    ParallelRuleKeyCalculator<RuleKey> calculator = newCalculator(null);
+
+    assertEquals(ruleKeyFor(rule), calculator.calculate(eventBus, rule).get());
+    assertEquals(ruleKeyFor(dep), calculator.calculate(eventBus, dep).get());
+    assertThat(
+        calculator.getAllKnownTargets(),
+        Matchers.containsInAnyOrder(rule.getBuildTarget(), dep.getBuildTarget()));
+  }
+
+  @Test
+  public void internalCacheHitsSkipCalculation() throws Exception {
+    BuildRule dep = new FakeBuildRule("//:dep");
+    BuildRule rule = new FakeBuildRule("//:rule", dep);
+    ParallelRuleKeyCalculator<RuleKey> calculator = newCalculator(rule);
+
+    assertEquals(ruleKeyFor(rule), calculator.calculate(eventBus, rule).get());
+    assertThat(builtRules, Matchers.empty());
+  }
+
+  @Test
+  public void failuresToGetDepsFailTheRuleKeyForAllCallers() throws Exception {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    ParallelRuleKeyCalculator<RuleKey> calculator =
+        newCalculator(
+            null,
+            new RuleDepsCache() {
+              @Override
+              public SortedSet<BuildRule> get(BuildRule buildRule) {
+                throw new IllegalStateException("no deps");
+              }
+
+              @Override
+              public SortedSet<BuildRule> getRuntimeDeps(BuildRule buildRule) {
+                return ImmutableSortedSet.of();
+              }
+            });
+
+    for (int i = 0; i < 2; i++) {
+      ListenableFuture<RuleKey> ruleKey = calculator.calculate(eventBus, rule);
+      try {
+        ruleKey.get(10, TimeUnit.SECONDS);
+        fail("Expected the rule key calculation to fail.");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), Matchers.instanceOf(IllegalStateException.class));
+      }
+    }
+  }
+
+  @Test
+  public void concurrentCallersCalculateEachRuleKeyOnce() throws Exception {
+    // Build a layered graph where every rule depends on all the rules of the layer below it.
+    List<BuildRule> allRules = new ArrayList<>();
+    ImmutableList<BuildRule> layer = ImmutableList.of();
+    for (int depth = 0; depth < 5; depth++) {
+      ImmutableList.Builder<BuildRule> nextLayer = ImmutableList.builder();
+      for (int width = 0; width < 10; width++) {
+        BuildRule rule =
+            new FakeBuildRule(
+                String.format("//:rule_%d_%d", depth, width), layer.toArray(new BuildRule[0]));
+        nextLayer.add(rule);
+        allRules.add(rule);
+      }
+      layer = nextLayer.build();
+    }
+
+    ParallelRuleKeyCalculator<RuleKey> calculator = newCalculator(null);
+    CountDownLatch start = new CountDownLatch(1);
+    List<ListenableFuture<List<RuleKey>>> callers = new ArrayList<>();
+    for (int thread = 0; thread < 4; thread++) {
+      callers.add(
+          service.submit(
+              () -> {
+                start.await();
+                List<ListenableFuture<RuleKey>> keys = new ArrayList<>();
+                for (BuildRule rule : allRules) {
+                  keys.add(calculator.calculate(eventBus, rule));
+                }
+                return Futures.allAsList(keys).get();
+              }));
+    }
+    start.countDown();
+
+    for (List<RuleKey> keys : Futures.allAsList(callers).get()) {
+      for (int i = 0; i < allRules.size(); i++) {
+        assertEquals(ruleKeyFor(allRules.get(i)), keys.get(i));
+      }
+    }
+    for (BuildRule rule : allRules) {
+      assertEquals(1, builtRules.count(rule));
+    }
+  }
+}
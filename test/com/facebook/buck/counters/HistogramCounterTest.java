@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.facebook.buck.util.Scope;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramCounterTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+  private static final ImmutableMap<String, String> TAGS = ImmutableMap.of("tag", "value");
+
+  @Test
+  public void testQuantilesAreWithinTheRelativeError() {
+    HistogramCounter histogram = createHistogram();
+    for (long value = 1; value <= 100_000; value++) {
+      histogram.record(value);
+    }
+
+    HistogramCounter.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(100_000, snapshot.getCount());
+    Assert.assertEquals(100_000L * 100_001 / 2, snapshot.getSum());
+    Assert.assertEquals(100_000, snapshot.getMax());
+    for (double quantile : new double[] {0.01, 0.5, 0.9, 0.99, 0.999}) {
+      double expected = quantile * 100_000;
+      double actual = snapshot.getValueAtQuantile(quantile);
+      Assert.assertTrue(
+          String.format("p%s was %s instead of %s", quantile, actual, expected),
+          actual >= expected && actual <= expected * (1 + 1.0 / 16));
+    }
+    Assert.assertEquals(100_000, snapshot.getValueAtQuantile(1));
+  }
+
+  @Test
+  public void testSmallAndLargeValuesAreRecordedExactlyEnough() {
+    HistogramCounter histogram = createHistogram();
+    histogram.record(-5);
+    histogram.record(3);
+    histogram.record(Long.MAX_VALUE);
+
+    HistogramCounter.Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(0, snapshot.getValueAtQuantile(0.1));
+    Assert.assertEquals(3, snapshot.getValueAtQuantile(0.5));
+    Assert.assertEquals(Long.MAX_VALUE, snapshot.getValueAtQuantile(1));
+  }
+
+  @Test
+  public void testFlushReportsTheValuesRecordedSinceTheLastFlush() {
+    HistogramCounter histogram = createHistogram();
+    histogram.record(1000);
+    histogram.record(3000);
+
+    Optional<CounterSnapshot> first = histogram.flush();
+    Assert.assertTrue(first.isPresent());
+    Map<String, Long> values = first.get().getValues();
+    Assert.assertEquals(2, (long) values.get(NAME + "_count"));
+    Assert.assertEquals(2000, (long) values.get(NAME + "_avg"));
+    Assert.assertEquals(3000, (long) values.get(NAME + "_max"));
+    Assert.assertEquals(CATEGORY, first.get().getCategory());
+    Assert.assertEquals(TAGS, first.get().getTags());
+
+    Assert.assertFalse(histogram.flush().isPresent());
+
+    histogram.record(10);
+    Optional<CounterSnapshot> second = histogram.flush();
+    Assert.assertTrue(second.isPresent());
+    Assert.assertEquals(1, (long) second.get().getValues().get(NAME + "_count"));
+    Assert.assertEquals(10, (long) second.get().getValues().get(NAME + "_max"));
+
+    // Flushing doesn't affect what's accumulated for the lifetime of the histogram.
+    Assert.assertEquals(3, histogram.getSnapshot().getCount());
+    Assert.assertEquals(3000, histogram.getSnapshot().getMax());
+  }
+
+  @Test
+  public void testTimerRecordsElapsedNanos() throws InterruptedException {
+    TimerCounter timer = new TimerCounter(CATEGORY, NAME, TAGS);
+    try (Scope scope = timer.time()) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(1, timer.getCount());
+    Assert.assertTrue(timer.getSnapshot().getMax() >= 10_000_000);
+  }
+
+  private HistogramCounter createHistogram() {
+    return new HistogramCounter(CATEGORY, NAME, TAGS);
+  }
+}
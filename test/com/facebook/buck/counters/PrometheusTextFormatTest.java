@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class PrometheusTextFormatTest {
+
+  @Test
+  public void histogramsAreWrittenAsSummaries() throws IOException {
+    HistogramCounter histogram =
+        new HistogramCounter("artifact_cache", "fetch.bytes", ImmutableMap.of("mode", "http"));
+    histogram.record(10);
+    histogram.record(12);
+
+    assertEquals(
+        Joiner.on('\n')
+            .join(
+                "# TYPE buck_artifact_cache_fetch_bytes summary",
+                "buck_artifact_cache_fetch_bytes{mode=\"http\",quantile=\"0.5\"} 10",
+                "buck_artifact_cache_fetch_bytes{mode=\"http\",quantile=\"0.9\"} 12",
+                "buck_artifact_cache_fetch_bytes{mode=\"http\",quantile=\"0.99\"} 12",
+                "buck_artifact_cache_fetch_bytes{mode=\"http\",quantile=\"0.999\"} 12",
+                "buck_artifact_cache_fetch_bytes_sum{mode=\"http\"} 22",
+                "buck_artifact_cache_fetch_bytes_count{mode=\"http\"} 2",
+                ""),
+        write(histogram));
+  }
+
+  @Test
+  public void timersAreWrittenInSeconds() throws IOException {
+    TimerCounter timer = new TimerCounter("steps", "execution", ImmutableMap.of());
+    timer.record(1_500_000_000L);
+
+    assertEquals(
+        Joiner.on('\n')
+            .join(
+                "# TYPE buck_steps_execution_seconds summary",
+                "buck_steps_execution_seconds{quantile=\"0.5\"} 1.5",
+                "buck_steps_execution_seconds{quantile=\"0.9\"} 1.5",
+                "buck_steps_execution_seconds{quantile=\"0.99\"} 1.5",
+                "buck_steps_execution_seconds{quantile=\"0.999\"} 1.5",
+                "buck_steps_execution_seconds_sum 1.5",
+                "buck_steps_execution_seconds_count 1",
+                ""),
+        write(timer));
+  }
+
+  @Test
+  public void seriesOfTheSameMetricShareItsType() throws IOException {
+    assertEquals(
+        Joiner.on('\n')
+            .join(
+                "# TYPE buck_jvm_threads gauge",
+                "buck_jvm_threads{pool=\"a\\\"b\"} 1",
+                "buck_jvm_threads{pool=\"c\"} 2",
+                ""),
+        write(
+            new GaugeCounter("jvm", "threads", ImmutableMap.of("pool", "c"), () -> 2),
+            new GaugeCounter("jvm", "threads", ImmutableMap.of("pool", "a\"b"), () -> 1),
+            new IntegerCounter("jvm", "ignored", ImmutableMap.of())));
+  }
+
+  private static String write(Counter... counters) throws IOException {
+    StringWriter writer = new StringWriter();
+    PrometheusTextFormat.write(ImmutableList.copyOf(counters), writer);
+    return writer.toString();
+  }
+}
@@ -23,6 +23,7 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
 import com.facebook.buck.core.build.engine.impl.DefaultRuleDepsCache;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildTarget;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.distributed.NoopArtifactCacheByBuildRule;
@@ -33,6 +34,7 @@ import com.facebook.buck.distributed.thrift.StampedeId;
 import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.event.listener.NoOpCoordinatorBuildRuleEventsPublisher;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.TemporaryPaths;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -43,6 +45,7 @@ import java.util.stream.Collectors;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 
 public class MinionWorkloadAllocatorTest {
@@ -57,6 +60,8 @@ public class MinionWorkloadAllocatorTest {
   private static final int MOST_BUILD_RULES_FINISHED_PERCENTAGE = 100;
   private static final StampedeId STAMPEDE_ID = new StampedeId().setId("DUMMY_ID");
 
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
   private DistBuildTraceTracker tracker;
 
   @Before
@@ -385,6 +390,44 @@ public class MinionWorkloadAllocatorTest {
     verify(queue);
   }
 
+  @Test
+  public void testWorkFromFailedMinionsIsReallocatedMostExpensiveFirst() {
+    BuildTarget cheapTarget = BuildTargetFactory.newInstance("//:cheap");
+    BuildTarget expensiveTarget = BuildTargetFactory.newInstance("//:expensive");
+    BuildRuleDurationHistory history =
+        BuildRuleDurationHistory.load(tmp.getRoot().resolve("build_rule_durations"));
+    history.recordBuild(cheapTarget, "genrule", 10);
+    history.recordBuild(expensiveTarget, "genrule", 1000);
+
+    BuildTargetsQueue queue = EasyMock.createNiceMock(BuildTargetsQueue.class);
+    MinionWorkloadAllocator allocator =
+        new MinionWorkloadAllocator(
+            queue, tracker, Optional.of(MINION_ONE), false, Optional.of(history));
+
+    WorkUnit cheapUnit = new WorkUnit();
+    cheapUnit.setBuildTargets(new ArrayList<>(Arrays.asList(cheapTarget.toString())));
+    WorkUnit expensiveUnit = new WorkUnit();
+    expensiveUnit.setBuildTargets(new ArrayList<>(Arrays.asList(expensiveTarget.toString())));
+    List<WorkUnit> units = new ArrayList<>(Arrays.asList(cheapUnit, expensiveUnit));
+    expect(queue.dequeueZeroDependencyNodes(new LinkedList<>(), MAX_WORK_UNITS_TO_FETCH))
+        .andReturn(units)
+        .once();
+    expect(queue.dequeueZeroDependencyNodes(EasyMock.anyObject(), EasyMock.anyInt()))
+        .andReturn(new LinkedList<>())
+        .anyTimes();
+    replay(queue);
+
+    allocateWorkAndCheckRelease(allocator, MINION_TWO, ImmutableList.of(), false, units);
+    allocator.handleMinionFailure(MINION_TWO);
+
+    // With room for a single unit, the expensive one should be picked up first.
+    List<WorkUnit> reallocated =
+        allocator.updateMinionWorkloadAllocation(MINION_ONE, STANDARD_SPEC, ImmutableList.of(), 1)
+            .newWorkUnitsForMinion;
+    Assert.assertEquals(ImmutableList.of(expensiveUnit), reallocated);
+    verify(queue);
+  }
+
   private static void allocateWorkAndCheckRelease(
       MinionWorkloadAllocator allocator,
       String minionId,
@@ -29,7 +29,9 @@ import static com.facebook.buck.distributed.testutil.CustomActiongGraphBuilderFa
 import static com.facebook.buck.distributed.testutil.CustomActiongGraphBuilderFactory.createBuildGraphWithUncachableLeaf;
 
 import com.facebook.buck.core.build.engine.impl.DefaultRuleDepsCache;
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rules.ActionGraphBuilder;
 import com.facebook.buck.core.rules.BuildRuleResolver;
 import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
 import com.facebook.buck.distributed.ArtifactCacheByBuildRule;
@@ -38,12 +40,14 @@ import com.facebook.buck.distributed.testutil.CustomActiongGraphBuilderFactory;
 import com.facebook.buck.distributed.thrift.CoordinatorBuildProgress;
 import com.facebook.buck.distributed.thrift.WorkUnit;
 import com.facebook.buck.event.listener.NoOpCoordinatorBuildRuleEventsPublisher;
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.exceptions.NoSuchBuildTargetException;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.google.common.collect.ImmutableList;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import org.easymock.EasyMock;
 import org.junit.Assert;
 import org.junit.Rule;
@@ -387,6 +391,40 @@ public class ReverseDepBuildTargetsQueueTest {
     EasyMock.verify(artifactCache);
   }
 
+  @Test
+  public void testReadyTargetsWithLongestHistoryAreHandedOutFirst()
+      throws NoSuchBuildTargetException {
+    BuildTarget cheapTarget = BuildTargetFactory.newInstance("//foo:cheap");
+    BuildTarget expensiveTarget = BuildTargetFactory.newInstance("//foo:expensive");
+    ActionGraphBuilder graphBuilder = new TestActionGraphBuilder();
+    graphBuilder.addToIndex(JavaLibraryBuilder.createBuilder(cheapTarget).build(graphBuilder));
+    graphBuilder.addToIndex(JavaLibraryBuilder.createBuilder(expensiveTarget).build(graphBuilder));
+
+    BuildRuleDurationHistory history =
+        BuildRuleDurationHistory.load(tmp.getRoot().resolve(BuildRuleDurationHistory.FILE_NAME));
+    history.recordBuild(cheapTarget, "java_library", 10);
+    history.recordBuild(expensiveTarget, "java_library", 1000);
+
+    BuildTargetsQueue queue =
+        new CacheOptimizedBuildTargetsQueueFactory(
+                graphBuilder,
+                new NoopArtifactCacheByBuildRule(),
+                false,
+                new DefaultRuleDepsCache(graphBuilder),
+                false)
+            .createBuildTargetsQueue(
+                ImmutableList.of(cheapTarget, expensiveTarget),
+                new NoOpCoordinatorBuildRuleEventsPublisher(),
+                MOST_BUILD_RULES_FINISHED_PERCENTAGE,
+                Optional.of(history));
+
+    List<WorkUnit> workUnits = queue.dequeueZeroDependencyNodes(ImmutableList.of(), 1);
+    Assert.assertEquals(1, workUnits.size());
+    Assert.assertEquals(
+        ImmutableList.of(expensiveTarget.getFullyQualifiedName()),
+        workUnits.get(0).getBuildTargets());
+  }
+
   public static BuildTargetsQueue createDiamondDependencyQueue() throws NoSuchBuildTargetException {
     return createQueueWithoutRemoteCache(
         CustomActiongGraphBuilderFactory.createDiamondDependencyGraph(),
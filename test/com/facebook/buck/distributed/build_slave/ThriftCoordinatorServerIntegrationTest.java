@@ -185,7 +185,8 @@ public class ThriftCoordinatorServerIntegrationTest {
         EasyMock.createNiceMock(DistBuildService.class),
         EasyMock.createNiceMock(MinionCountProvider.class),
         Optional.of(MINION_ID),
-        true /* releasingMinionsEarlyEnabled */);
+        true /* releasingMinionsEarlyEnabled */,
+        Optional.empty());
   }
 
   @Test
@@ -230,7 +231,8 @@ public class ThriftCoordinatorServerIntegrationTest {
                 EasyMock.createNiceMock(DistBuildService.class),
                 EasyMock.createNiceMock(MinionCountProvider.class),
                 Optional.of(MINION_ID),
-                true /* releasingMinionsEarlyEnabled */);
+                true /* releasingMinionsEarlyEnabled */,
+                Optional.empty());
         ThriftCoordinatorClient client =
             new ThriftCoordinatorClient("localhost", STAMPEDE_ID, CONNECTION_TIMEOUT_MILLIS)) {
       server.start();
@@ -278,7 +280,8 @@ public class ThriftCoordinatorServerIntegrationTest {
                 distBuildService,
                 EasyMock.createNiceMock(MinionCountProvider.class),
                 Optional.empty(),
-                true /* releasingMinionsEarlyEnabled */);
+                true /* releasingMinionsEarlyEnabled */,
+                Optional.empty());
         ThriftCoordinatorClient client =
             new ThriftCoordinatorClient("localhost", STAMPEDE_ID, CONNECTION_TIMEOUT_MILLIS)) {
       server.start();
@@ -319,7 +322,8 @@ public class ThriftCoordinatorServerIntegrationTest {
                 distBuildService,
                 EasyMock.createNiceMock(MinionCountProvider.class),
                 Optional.empty(),
-                true /* releasingMinionsEarlyEnabled */);
+                true /* releasingMinionsEarlyEnabled */,
+                Optional.empty());
         ThriftCoordinatorClient client =
             new ThriftCoordinatorClient("localhost", STAMPEDE_ID, CONNECTION_TIMEOUT_MILLIS)) {
       server.start();
@@ -16,16 +16,24 @@
 
 package com.facebook.buck.event;
 
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.lessThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.util.timing.DefaultClock;
 import com.facebook.buck.util.timing.SettableFakeClock;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.Subscribe;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import org.junit.Test;
 
@@ -115,6 +123,122 @@ public class DefaultBuckEventBusTest {
     assertEquals(event.getNanoTime(), 64738);
   }
 
+  @Test
+  public void asyncBusDeliversEventsOfEachThreadInOrder() throws Exception {
+    DefaultBuckEventBus eb =
+        new DefaultBuckEventBus(
+            new DefaultClock(), true, BuckEventBusForTests.BUILD_ID_FOR_TEST, timeoutMillis);
+    List<CountingEvent> received = new ArrayList<>();
+    eb.register(
+        new Object() {
+          @Subscribe
+          public void receive(CountingEvent event) {
+            received.add(event);
+          }
+        });
+
+    int threads = 4;
+    int eventsPerThread = 50000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < threads; thread++) {
+        int threadId = thread;
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < eventsPerThread; i++) {
+                    eb.post(new CountingEvent(threadId, i));
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(eb.waitEvents(10000));
+    eb.close();
+
+    assertEquals(threads * eventsPerThread, received.size());
+    int[] nextCount = new int[threads];
+    for (CountingEvent event : received) {
+      assertEquals(nextCount[event.thread]++, event.count);
+    }
+  }
+
+  @Test
+  public void eventsAreDeliveredToSubscribersOfTheirSupertypes() throws IOException {
+    DefaultBuckEventBus eb =
+        new DefaultBuckEventBus(
+            new DefaultClock(), false, BuckEventBusForTests.BUILD_ID_FOR_TEST, timeoutMillis);
+    List<String> received = new ArrayList<>();
+    eb.register(
+        new Object() {
+          @Subscribe
+          public void receiveTestEvent(TestEvent event) {
+            received.add("TestEvent");
+          }
+
+          @Subscribe
+          public void receiveBuckEvent(BuckEvent event) {
+            received.add("BuckEvent");
+          }
+        });
+    eb.post(new TestEvent());
+    eb.post(new SleepEvent(0));
+    eb.close();
+
+    assertThat(received, containsInAnyOrder("TestEvent", "BuckEvent", "BuckEvent"));
+  }
+
+  @Test
+  public void eventsPostedBySubscribersAreDeliveredAfterTheCurrentEvent() throws IOException {
+    DefaultBuckEventBus eb =
+        new DefaultBuckEventBus(
+            new DefaultClock(), false, BuckEventBusForTests.BUILD_ID_FOR_TEST, timeoutMillis);
+    List<String> received = new ArrayList<>();
+    eb.register(
+        new Object() {
+          @Subscribe
+          public void receiveTestEvent(TestEvent event) {
+            eb.post(new SleepEvent(0));
+            received.add("TestEvent");
+          }
+
+          @Subscribe
+          public void receiveSleepEvent(SleepEvent event) {
+            received.add("SleepEvent");
+          }
+        });
+    eb.post(new TestEvent());
+    eb.close();
+
+    assertEquals(ImmutableList.of("TestEvent", "SleepEvent"), received);
+  }
+
+  private static class CountingEvent extends AbstractBuckEvent {
+    private final int thread;
+    private final int count;
+
+    private CountingEvent(int thread, int count) {
+      super(EventKey.unique());
+      this.thread = thread;
+      this.count = count;
+    }
+
+    @Override
+    protected String getValueString() {
+      return thread + ":" + count;
+    }
+
+    @Override
+    public String getEventName() {
+      return "CountingEvent";
+    }
+  }
+
   private static class SleepEvent extends AbstractBuckEvent {
     public final long milliseconds;
 
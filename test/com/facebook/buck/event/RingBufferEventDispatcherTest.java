@@ -0,0 +1,142 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+public class RingBufferEventDispatcherTest {
+
+  @Test
+  public void publishersWaitForConsumerOnceRingIsFull() throws Exception {
+    CountDownLatch consumerBlocked = new CountDownLatch(1);
+    CountDownLatch releaseConsumer = new CountDownLatch(1);
+    List<Integer> consumed = new CopyOnWriteArrayList<>();
+    RingBufferEventDispatcher<Integer> dispatcher =
+        new RingBufferEventDispatcher<>(
+            4,
+            new MostExecutors.NamedThreadFactory("test-dispatcher"),
+            event -> {
+              consumerBlocked.countDown();
+              try {
+                releaseConsumer.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              consumed.add(event);
+            });
+
+    // The slot of the first event is only freed once the consumer is done with it, so the next
+    // three fill the ring.
+    dispatcher.publish(0);
+    consumerBlocked.await();
+    for (int i = 1; i <= 3; i++) {
+      dispatcher.publish(i);
+    }
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> blockedPublish = executor.submit(() -> dispatcher.publish(4));
+      try {
+        blockedPublish.get(100, TimeUnit.MILLISECONDS);
+        throw new AssertionError("Publishing to a full ring should wait for the consumer.");
+      } catch (TimeoutException e) {
+        // expected
+      }
+      assertFalse(dispatcher.waitUntilIdle(10));
+
+      releaseConsumer.countDown();
+      blockedPublish.get();
+    } finally {
+      executor.shutdown();
+    }
+
+    assertTrue(dispatcher.waitUntilIdle(5000));
+    assertEquals(ImmutableList.of(0, 1, 2, 3, 4), consumed);
+    assertEquals(1, dispatcher.getStalls());
+
+    dispatcher.shutdown();
+    assertTrue(dispatcher.awaitTermination(5000));
+  }
+
+  @Test
+  public void eventsPublishedAfterShutdownAreDropped() throws Exception {
+    List<Integer> consumed = new CopyOnWriteArrayList<>();
+    RingBufferEventDispatcher<Integer> dispatcher =
+        new RingBufferEventDispatcher<>(
+            8, new MostExecutors.NamedThreadFactory("test-dispatcher"), consumed::add);
+    dispatcher.publish(1);
+    dispatcher.shutdown();
+    assertTrue(dispatcher.awaitTermination(5000));
+    dispatcher.publish(2);
+
+    assertEquals(ImmutableList.of(1), consumed);
+    assertEquals(1, dispatcher.getDropped());
+  }
+
+  @Test
+  public void eventsPublishedDuringShutdownAreEitherConsumedOrDropped() throws Exception {
+    int publishers = 4;
+    int eventsPerPublisher = 1000;
+    ExecutorService executor = Executors.newFixedThreadPool(publishers);
+    try {
+      for (int round = 0; round < 20; round++) {
+        List<Integer> consumed = new CopyOnWriteArrayList<>();
+        RingBufferEventDispatcher<Integer> dispatcher =
+            new RingBufferEventDispatcher<>(
+                8, new MostExecutors.NamedThreadFactory("test-dispatcher"), consumed::add);
+        CountDownLatch started = new CountDownLatch(publishers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < publishers; i++) {
+          futures.add(
+              executor.submit(
+                  () -> {
+                    started.countDown();
+                    for (int event = 0; event < eventsPerPublisher; event++) {
+                      dispatcher.publish(event);
+                    }
+                  }));
+        }
+        started.await();
+        dispatcher.shutdown();
+        for (Future<?> future : futures) {
+          future.get();
+        }
+
+        assertTrue(dispatcher.awaitTermination(5000));
+        assertTrue(dispatcher.waitUntilIdle(5000));
+        assertEquals(publishers * eventsPerPublisher, consumed.size() + dispatcher.getDropped());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
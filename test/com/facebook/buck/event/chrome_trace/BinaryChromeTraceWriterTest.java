@@ -0,0 +1,120 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.chrome_trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.event.chrome_trace.ChromeTraceEvent.Phase;
+import com.facebook.buck.util.json.ObjectMappers;
+import com.facebook.buck.util.trace.BinaryChromeTraceFormat;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import org.junit.Test;
+
+public class BinaryChromeTraceWriterTest {
+
+  private static final ImmutableList<ChromeTraceEvent> EVENTS =
+      ImmutableList.of(
+          new ChromeTraceEvent(
+              "buck",
+              "process_name",
+              Phase.METADATA,
+              0,
+              0,
+              5621911884918L,
+              7,
+              ImmutableMap.of("name", "buck", "is_daemon", true, "user_args", ImmutableList.of())),
+          new ChromeTraceEvent(
+              "buck",
+              "//foo:bar",
+              Phase.BEGIN,
+              0,
+              42,
+              5621911885000L,
+              -1,
+              ImmutableMap.of("rule_key", "abc", "count", 3, "ratio", 0.5, "big", 1L << 40)),
+          new ChromeTraceEvent(
+              "buck",
+              "//foo:bar",
+              Phase.END,
+              0,
+              42,
+              5621911884999L,
+              12,
+              ImmutableMap.of(
+                  "success", false, "nested", ImmutableMap.of("list", ImmutableList.of(1, "a")))));
+
+  @Test
+  public void convertedTraceIsIdenticalToJsonTrace() throws Exception {
+    ByteArrayOutputStream jsonTrace = new ByteArrayOutputStream();
+    write(new ChromeTraceWriter(jsonTrace));
+    ByteArrayOutputStream convertedTrace = new ByteArrayOutputStream();
+    BinaryChromeTraceReader.convertToJson(
+        new ByteArrayInputStream(writeBinary()), convertedTrace);
+
+    JsonNode expected = ObjectMappers.READER.readTree(jsonTrace.toString("UTF-8"));
+    JsonNode actual = ObjectMappers.READER.readTree(convertedTrace.toString("UTF-8"));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void binaryTraceIsRecognized() throws Exception {
+    assertTrue(
+        BinaryChromeTraceFormat.isBinaryTrace(new ByteArrayInputStream(writeBinary())));
+
+    ByteArrayOutputStream jsonTrace = new ByteArrayOutputStream();
+    write(new ChromeTraceWriter(jsonTrace));
+    assertFalse(
+        BinaryChromeTraceFormat.isBinaryTrace(new ByteArrayInputStream(jsonTrace.toByteArray())));
+  }
+
+  @Test
+  public void truncatedTraceEndsAfterLastCompleteEvent() throws Exception {
+    byte[] trace = writeBinary();
+    BinaryChromeTraceReader reader =
+        new BinaryChromeTraceReader(
+            new ByteArrayInputStream(Arrays.copyOf(trace, trace.length - 3)));
+
+    assertEquals(Optional.of("process_name"), reader.readEvent().map(event -> event.get("name")));
+    assertEquals(Optional.of("//foo:bar"), reader.readEvent().map(event -> event.get("name")));
+    assertEquals(Optional.empty(), reader.readEvent());
+  }
+
+  private static byte[] writeBinary() throws IOException {
+    ByteArrayOutputStream binaryTrace = new ByteArrayOutputStream();
+    write(new BinaryChromeTraceWriter(binaryTrace));
+    return binaryTrace.toByteArray();
+  }
+
+  private static void write(ChromeTraceEventWriter writer) throws IOException {
+    writer.writeStart();
+    for (ChromeTraceEvent event : EVENTS) {
+      writer.writeEvent(event);
+    }
+    writer.writeEnd();
+    writer.close();
+  }
+}
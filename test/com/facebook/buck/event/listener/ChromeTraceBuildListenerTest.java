@@ -67,6 +67,8 @@ import com.facebook.buck.util.perf.PerfStatsTracking;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.util.timing.FakeClock;
 import com.facebook.buck.util.timing.IncrementingFakeClock;
+import com.facebook.buck.util.trace.BinaryChromeTraceFormat;
+import com.facebook.buck.util.trace.BinaryChromeTraceReader;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -74,8 +76,10 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.nio.file.Path;
@@ -728,6 +732,42 @@ public class ChromeTraceBuildListenerTest {
     assertThat(elements, not(empty()));
   }
 
+  @Test
+  public void canWriteBinaryTraces() throws IOException {
+    ProjectFilesystem projectFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+
+    ChromeTraceBuildListener listener =
+        new ChromeTraceBuildListener(
+            projectFilesystem,
+            invocationInfo,
+            FAKE_CLOCK,
+            Locale.US,
+            TimeZone.getTimeZone("America/Los_Angeles"),
+            ManagementFactory.getThreadMXBean(),
+            ChromeTraceBuckConfig.of(
+                FakeBuckConfig.builder()
+                    .setSections(ImmutableMap.of("log", ImmutableMap.of("trace_format", "binary")))
+                    .build()));
+    listener.outputTrace(invocationInfo.getBuildId());
+
+    Path tracePath = Paths.get(EXPECTED_DIR + "build.2014-09-02.16-55-51.BUILD_ID.trace");
+
+    assertTrue(projectFilesystem.exists(tracePath));
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    try (InputStream stream =
+        new BufferedInputStream(projectFilesystem.newFileInputStream(tracePath))) {
+      assertTrue(BinaryChromeTraceFormat.isBinaryTrace(stream));
+      BinaryChromeTraceReader.convertToJson(stream, json);
+    }
+
+    List<Object> elements =
+        ObjectMappers.readValue(json.toString("UTF-8"), new TypeReference<List<Object>>() {});
+    assertThat(elements, notNullValue());
+    assertThat(elements, not(empty()));
+  }
+
   private static ChromeTraceBuckConfig chromeTraceConfig(int tracesToKeep, boolean compressTraces) {
     return ChromeTraceBuckConfig.of(
         FakeBuckConfig.builder()
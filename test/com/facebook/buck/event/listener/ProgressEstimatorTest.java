@@ -17,10 +17,14 @@ package com.facebook.buck.event.listener;
 
 import static org.junit.Assert.assertThat;
 
+import com.facebook.buck.core.build.stats.BuildRuleDurationHistory;
 import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.TemporaryPaths;
 import com.facebook.buck.util.json.ObjectMappers;
@@ -303,4 +307,30 @@ public class ProgressEstimatorTest {
     assertThat(e.getApproximateBuildProgress().get(), Matchers.greaterThan(0.0));
     assertThat(e.getApproximateBuildProgress().get(), Matchers.lessThan(1.0));
   }
+
+  @Test
+  public void testBuildProgressIsWeightedByBuildRuleDurationHistory() throws IOException {
+    Path historyPath = tmp.getRoot().resolve("build_rule_durations");
+    BuildRule cheapRule = new FakeBuildRule("//:cheap");
+    BuildRuleDurationHistory history = BuildRuleDurationHistory.load(historyPath);
+    history.recordBuild(cheapRule.getBuildTarget(), cheapRule.getType(), 100);
+    history.recordBuild(BuildTargetFactory.newInstance("//:expensive"), cheapRule.getType(), 700);
+    history.save();
+
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path p = filesystem.resolve(ProgressEstimator.PROGRESS_ESTIMATIONS_JSON);
+    ProgressEstimator e = new ProgressEstimator(p, getBuckEventBus());
+    e.setBuildRuleDurationHistory(BuildRuleDurationHistory.load(historyPath));
+
+    e.didStartBuild();
+    e.setNumberOfRules(4);
+    e.didStartRule();
+    e.didFinishRule(cheapRule);
+
+    // The cheap rule took 100ms, and the 3 remaining rules are expected to take 400ms each.
+    assertThat(e.getApproximateBuildProgress().get(), Matchers.closeTo(0.07, 0.001));
+
+    e.didFinishBuild();
+    assertThat(e.getApproximateBuildProgress().get(), Matchers.closeTo(1.0, 0.001));
+  }
 }
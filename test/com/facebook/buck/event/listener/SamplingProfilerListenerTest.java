@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.event.listener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.config.FakeBuckConfig;
+import com.facebook.buck.core.build.event.BuildRuleEvent;
+import com.facebook.buck.core.build.stats.BuildRuleDurationTracker;
+import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.log.InvocationInfo;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.step.StepEvent;
+import com.facebook.buck.util.BuckConstant;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SamplingProfilerListenerTest {
+
+  private static final BuildId BUILD_ID = new BuildId("BUILD_ID");
+
+  @Rule public TemporaryFolder tmpDir = new TemporaryFolder();
+
+  private ProjectFilesystem filesystem;
+  private InvocationInfo invocationInfo;
+  private ScheduledExecutorService executor;
+  private Thread worker;
+  private final AtomicBoolean stop = new AtomicBoolean();
+
+  @Before
+  public void setUp() throws InterruptedException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmpDir.getRoot().toPath());
+    invocationInfo =
+        InvocationInfo.builder()
+            .setTimestampMillis(1409702151000L)
+            .setBuckLogDir(tmpDir.getRoot().toPath().resolve("buck-out/log"))
+            .setBuildId(BUILD_ID)
+            .setSubCommand("build")
+            .setIsDaemon(true)
+            .setSuperConsoleEnabled(false)
+            .setUnexpandedCommandArgs(ImmutableList.of())
+            .setCommandArgs(ImmutableList.of())
+            .build();
+    executor = Executors.newSingleThreadScheduledExecutor();
+
+    CountDownLatch started = new CountDownLatch(1);
+    worker =
+        new Thread(
+            () -> {
+              started.countDown();
+              work(stop);
+            });
+    worker.start();
+    started.await();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    stop.set(true);
+    worker.join();
+    executor.shutdownNow();
+  }
+
+  @SuppressWarnings("unused")
+  private static volatile Object sink;
+
+  private static void work(AtomicBoolean stop) {
+    while (!stop.get()) {
+      sink = new Object();
+    }
+  }
+
+  @Test
+  public void samplesAreAttributedToTheRunningRuleAndStep() throws Exception {
+    SamplingProfilerListener listener = createListener(false);
+    startRuleAndStepOnWorker(listener);
+
+    for (int i = 0; i < 10; i++) {
+      listener.sample();
+    }
+    listener.outputTrace(BUILD_ID);
+
+    List<String> lines = readProfile(BuckConstant.CPU_PROFILE_FILE_NAME);
+    assertTrue(
+        lines.toString(),
+        lines
+            .stream()
+            .anyMatch(
+                line ->
+                    line.startsWith("//foo:bar;step:javac;")
+                        && line.contains(getClass().getName() + ".work")));
+    assertEquals(
+        10,
+        lines
+            .stream()
+            .mapToLong(line -> Long.parseLong(line.substring(line.lastIndexOf(' ') + 1)))
+            .sum());
+    assertFalse(
+        filesystem.exists(
+            invocationInfo
+                .getLogDirectoryPath()
+                .resolve(BuckConstant.ALLOCATION_PROFILE_FILE_NAME)));
+  }
+
+  @Test
+  public void threadsNotWorkingOnTheCommandAreNotSampled() throws Exception {
+    SamplingProfilerListener listener = createListener(false);
+
+    listener.sample();
+    listener.outputTrace(BUILD_ID);
+
+    assertEquals(ImmutableList.of(), readProfile(BuckConstant.CPU_PROFILE_FILE_NAME));
+  }
+
+  @Test
+  public void allocationsAreAttributedToTheRunningRule() throws Exception {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+    SamplingProfilerListener listener = createListener(true);
+    startRuleAndStepOnWorker(listener);
+
+    listener.sample();
+    Thread.sleep(50);
+    listener.sample();
+    listener.outputTrace(BUILD_ID);
+
+    List<String> lines = readProfile(BuckConstant.ALLOCATION_PROFILE_FILE_NAME);
+    assertTrue(lines.toString(), lines.stream().anyMatch(line -> line.startsWith("//foo:bar;")));
+  }
+
+  private SamplingProfilerListener createListener(boolean sampleAllocations) {
+    return new SamplingProfilerListener(
+        invocationInfo,
+        filesystem,
+        ManagementFactory.getThreadMXBean(),
+        threadId -> null,
+        executor,
+        SamplingProfilerConfig.of(
+            FakeBuckConfig.builder()
+                .setSections(
+                    ImmutableMap.of(
+                        "log",
+                        ImmutableMap.of(
+                            "sampling_profiler_enabled", "true",
+                            // Samples are taken explicitly by the tests.
+                            "sampling_profiler_interval_ms", "3600000",
+                            "sampling_profiler_allocations", Boolean.toString(sampleAllocations))))
+                .build()));
+  }
+
+  private void startRuleAndStepOnWorker(SamplingProfilerListener listener) {
+    BuildRuleEvent.Started ruleStarted =
+        BuildRuleEvent.started(
+            new FakeBuildRule(BuildTargetFactory.newInstance("//foo:bar")),
+            new BuildRuleDurationTracker());
+    ruleStarted.configure(0, 0, 0, worker.getId(), BUILD_ID);
+    listener.buildRuleBeginning(ruleStarted);
+
+    StepEvent.Started stepStarted = StepEvent.started("javac", "javac", UUID.randomUUID());
+    stepStarted.configure(0, 0, 0, worker.getId(), BUILD_ID);
+    listener.stepStarted(stepStarted);
+  }
+
+  private List<String> readProfile(String fileName) throws IOException {
+    Path path = invocationInfo.getLogDirectoryPath().resolve(fileName);
+    return Files.readAllLines(filesystem.resolve(path), StandardCharsets.UTF_8);
+  }
+}
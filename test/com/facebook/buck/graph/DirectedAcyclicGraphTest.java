@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package com.facebook.buck.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.Test;
+
+public class DirectedAcyclicGraphTest {
+
+  //       A
+  //     /  \
+  //    B    C    D
+  //     \  /
+  //      E
+  private MutableDirectedGraph<String> makeMutableGraph() {
+    MutableDirectedGraph<String> graph = new MutableDirectedGraph<>();
+    graph.addNode("D");
+    graph.addEdge("B", "E");
+    graph.addEdge("A", "C");
+    graph.addEdge("C", "E");
+    graph.addEdge("A", "B");
+    return graph;
+  }
+
+  @Test
+  public void edgesArePreserved() {
+    MutableDirectedGraph<String> mutableGraph = makeMutableGraph();
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(mutableGraph);
+
+    assertEquals(mutableGraph.getNodes(), graph.getNodes());
+    assertEquals(mutableGraph.getEdgeCount(), graph.getEdgeCount());
+    for (String node : mutableGraph.getNodes()) {
+      assertEquals(
+          ImmutableSet.copyOf(mutableGraph.getOutgoingNodesFor(node)),
+          graph.getOutgoingNodesFor(node));
+      assertEquals(
+          ImmutableSet.copyOf(mutableGraph.getIncomingNodesFor(node)),
+          graph.getIncomingNodesFor(node));
+    }
+  }
+
+  @Test
+  public void nodesWithNoEdges() {
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(makeMutableGraph());
+    assertEquals(ImmutableSet.of("A", "D"), graph.getNodesWithNoIncomingEdges());
+    assertEquals(ImmutableSet.of("D", "E"), graph.getNodesWithNoOutgoingEdges());
+  }
+
+  @Test
+  public void edgeSetsSupportContains() {
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(makeMutableGraph());
+    assertTrue(graph.getOutgoingNodesFor("A").contains("B"));
+    assertFalse(graph.getOutgoingNodesFor("A").contains("E"));
+    assertFalse(graph.getOutgoingNodesFor("A").contains("Z"));
+    assertTrue(graph.getIncomingNodesFor("E").contains("C"));
+  }
+
+  @Test
+  public void edgeSetsAreReusedAcrossQueries() {
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(makeMutableGraph());
+    assertSame(graph.getOutgoingNodesFor("A"), graph.getOutgoingNodesFor("A"));
+    assertSame(graph.getIncomingNodesFor("E"), graph.getIncomingNodesFor("E"));
+  }
+
+  @Test
+  public void unknownNodesHaveNoEdges() {
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(makeMutableGraph());
+    assertTrue(graph.getOutgoingNodesFor("Z").isEmpty());
+    assertTrue(graph.getIncomingNodesFor("Z").isEmpty());
+  }
+
+  @Test
+  public void equality() {
+    DirectedAcyclicGraph<String> graph = new DirectedAcyclicGraph<>(makeMutableGraph());
+    assertEquals(graph, new DirectedAcyclicGraph<>(makeMutableGraph()));
+    assertEquals(graph.hashCode(), new DirectedAcyclicGraph<>(makeMutableGraph()).hashCode());
+
+    MutableDirectedGraph<String> otherGraph = makeMutableGraph();
+    otherGraph.removeEdge("A", "B");
+    otherGraph.addEdge("A", "E");
+    assertNotEquals(graph, new DirectedAcyclicGraph<>(otherGraph));
+  }
+}
@@ -47,5 +47,6 @@ public class WebServerTest {
     assertTrue(getDelegate.apply("/trace") instanceof TraceHandlerDelegate);
     assertTrue(getDelegate.apply("/traces") instanceof TracesHandlerDelegate);
     assertTrue(contextPathToHandler.get("/tracedata").getHandler() instanceof TraceDataHandler);
+    assertTrue(contextPathToHandler.get("/metrics").getHandler() instanceof MetricsHandler);
   }
 }
@@ -2094,6 +2094,45 @@ public class DefaultParserTest {
     assertEquals(oldGraph, newGraph);
   }
 
+  @Test
+  public void parserStateSnapshotRestoresStateAndClocks() throws Exception {
+    tempDir.newFolder("foo");
+    Path testFooBuckFile = tempDir.newFile("foo/BUCK");
+    Files.write(
+        testFooBuckFile, "java_library(name = 'lib', visibility=['PUBLIC'])\n".getBytes(UTF_8));
+
+    BuildTarget libTarget = BuildTargetFactory.newInstance(cellRoot, "//foo", "lib");
+    ImmutableList<BuildTarget> buildTargets = ImmutableList.of(libTarget);
+    TargetGraph oldGraph =
+        parser.buildTargetGraph(eventBus, cell, false, executorService, buildTargets);
+
+    Path snapshotPath = tempDir.getRoot().resolve("parser_state");
+    ImmutableMap<Path, String> clocks = ImmutableMap.of(cellRoot, "c:0:1");
+    new ParserStateSnapshot(snapshotPath, "version").save(parser.getPermState(), cell, clocks);
+
+    TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory();
+    parser =
+        new DefaultParser(
+            cell.getBuckConfig().getView(ParserConfig.class),
+            typeCoercerFactory,
+            new ConstructorArgMarshaller(typeCoercerFactory),
+            knownBuildRuleTypesProvider,
+            executableFinder,
+            new TargetSpecResolver());
+    DaemonicParserState permState = parser.getPermState();
+    assertEquals(
+        Optional.empty(), new ParserStateSnapshot(snapshotPath, "other").restore(permState, cell));
+    assertEquals(
+        Optional.of(clocks),
+        new ParserStateSnapshot(snapshotPath, "version").restore(permState, cell));
+
+    // Parsing the build file again would throw, so the restored state must be used.
+    Files.write(testFooBuckFile, "invalid".getBytes(UTF_8));
+    TargetGraph newGraph =
+        parser.buildTargetGraph(eventBus, cell, false, executorService, buildTargets);
+    assertEquals(oldGraph, newGraph);
+  }
+
   @Test
   public void buildTargetHashCodePopulatesCorrectly() throws Exception {
     tempDir.newFolder("foo");
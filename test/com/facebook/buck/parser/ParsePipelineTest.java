@@ -161,6 +161,30 @@ public class ParsePipelineTest {
     fixture.close();
   }
 
+  @Test
+  public void convertsAllNodesOfLargeBuildFile() throws Exception {
+    try (Fixture fixture = createMultiThreadedFixture("large_package")) {
+      Cell cell = fixture.getCell();
+      ImmutableSet<TargetNode<?, ?>> targetNodes =
+          fixture
+              .getTargetNodeParsePipeline()
+              .getAllNodes(
+                  cell,
+                  fixture.getKnownBuildRuleTypes(),
+                  cell.getFilesystem().resolve("BUCK"),
+                  new AtomicLong());
+      assertThat(targetNodes.size(), is(100));
+      for (TargetNode<?, ?> targetNode : targetNodes) {
+        assertThat(
+            fixture
+                .getTargetNodeParsePipelineCache()
+                .lookupComputedNode(cell, targetNode.getBuildTarget(), eventBus)
+                .get(),
+            is(targetNode));
+      }
+    }
+  }
+
   @Test
   public void missingTarget() throws Exception {
     try (Fixture fixture = createMultiThreadedFixture("parse_rule_with_bad_dependency")) {
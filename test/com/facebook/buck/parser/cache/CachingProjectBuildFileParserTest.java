@@ -0,0 +1,184 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.io.filesystem.skylark.SkylarkFilesystem;
+import com.facebook.buck.parser.api.BuildFileManifest;
+import com.facebook.buck.parser.api.ProjectBuildFileParser;
+import com.facebook.buck.parser.options.ProjectBuildFileParserOptions;
+import com.facebook.buck.skylark.io.GlobSpec;
+import com.facebook.buck.skylark.io.impl.NativeGlobber;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.devtools.build.lib.syntax.SelectorList;
+import com.google.devtools.build.lib.syntax.SelectorValue;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CachingProjectBuildFileParserTest {
+
+  private static final ImmutableList<String> GLOB = ImmutableList.of("*.java");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private Path root;
+  private Path buildFile;
+  private Path extension;
+  private SkylarkFilesystem fileSystem;
+  private ProjectBuildFileParserOptions options;
+  private int delegateParses;
+  private ImmutableMap<String, Object> target =
+      ImmutableMap.of("name", "lib", "buck.base_path", "", "buck.type", "lib");
+
+  @Before
+  public void setUp() throws IOException {
+    root = tmp.getRoot();
+    buildFile = root.resolve("BUCK");
+    extension = root.resolve("defs.bzl");
+    Files.write(buildFile, "load('//:defs.bzl', 'lib')\nlib()\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(extension, "def lib(): pass\n".getBytes(StandardCharsets.UTF_8));
+    Files.write(root.resolve("A.java"), new byte[0]);
+
+    fileSystem = SkylarkFilesystem.using(TestProjectFilesystems.createProjectFilesystem(root));
+    options =
+        ProjectBuildFileParserOptions.builder()
+            .setProjectRoot(root)
+            .setAllowEmptyGlobs(true)
+            .setIgnorePaths(ImmutableSet.of())
+            .setBuildFileName("BUCK")
+            .setRawConfig(ImmutableMap.of("section", ImmutableMap.of("key", "value")))
+            .setDescriptions(ImmutableSet.of())
+            .setBuildFileImportWhitelist(ImmutableList.of())
+            .setPythonInterpreter("skylark")
+            .build();
+  }
+
+  @Test
+  public void unchangedBuildFileIsNotParsedAgain() throws Exception {
+    BuildFileManifest parsed = parse("1");
+    BuildFileManifest cached = parse("1");
+
+    assertEquals(1, delegateParses);
+    assertEquals(parsed, cached);
+  }
+
+  @Test
+  public void changedBuildFileIsParsedAgain() throws Exception {
+    parse("1");
+    Files.write(buildFile, "lib()\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    parse("1");
+
+    assertEquals(2, delegateParses);
+  }
+
+  @Test
+  public void changedExtensionIsParsedAgain() throws Exception {
+    parse("1");
+    Files.write(extension, "def lib(): return\n".getBytes(StandardCharsets.UTF_8));
+    parse("1");
+
+    assertEquals(2, delegateParses);
+  }
+
+  @Test
+  public void changedGlobResultIsParsedAgain() throws Exception {
+    parse("1");
+    Files.write(root.resolve("B.java"), new byte[0]);
+    BuildFileManifest manifest = parse("1");
+
+    assertEquals(2, delegateParses);
+    assertEquals(
+        ImmutableSet.of("A.java", "B.java"),
+        ImmutableSet.copyOf(manifest.getGlobManifest().values().iterator().next()));
+  }
+
+  @Test
+  public void otherParserVersionParsesAgain() throws Exception {
+    parse("1");
+    parse("2");
+
+    assertEquals(2, delegateParses);
+  }
+
+  @Test
+  public void manifestWithSelectIsNotCached() throws Exception {
+    SelectorList deps =
+        SelectorList.of(
+            new SelectorValue(ImmutableMap.of("DEFAULT", ImmutableList.of("//:dep")), ""));
+    target = ImmutableMap.of("name", "lib", "buck.base_path", "", "buck.type", "lib", "deps", deps);
+    parse("1");
+    BuildFileManifest manifest = parse("1");
+
+    assertEquals(2, delegateParses);
+    assertSame(deps, manifest.getTargets().get(0).get("deps"));
+  }
+
+  /** Parses the build file with a new cache, as a new build would. */
+  private BuildFileManifest parse(String parserVersion) throws Exception {
+    BuildFileManifestCache cache =
+        new BuildFileManifestCache(root.resolve("cache"), Optional.empty(), parserVersion);
+    try (ProjectBuildFileParser parser =
+        CachingProjectBuildFileParser.of(
+            new FakeSkylarkParser(), cache, options, fileSystem, NativeGlobber::create)) {
+      return parser.getBuildFileManifest(buildFile, new AtomicLong());
+    }
+  }
+
+  /** Records the same dependencies as the Skylark parser would for the test build file. */
+  private class FakeSkylarkParser implements ProjectBuildFileParser {
+    @Override
+    public BuildFileManifest getBuildFileManifest(Path buildFile, AtomicLong processedBytes)
+        throws IOException, InterruptedException {
+      delegateParses++;
+      return BuildFileManifest.builder()
+          .setTargets(ImmutableList.of(target))
+          .setIncludes(ImmutableSortedSet.of(buildFile.toString(), extension.toString()))
+          .setConfigs(ImmutableMap.of())
+          .setGlobManifest(
+              ImmutableMap.of(
+                  GlobSpec.builder()
+                      .setInclude(GLOB)
+                      .setExclude(ImmutableList.of())
+                      .setExcludeDirectories(true)
+                      .build(),
+                  NativeGlobber.create(fileSystem.getPath(root.toString()))
+                      .run(GLOB, ImmutableList.of(), true)))
+          .build();
+    }
+
+    @Override
+    public void reportProfile() {}
+
+    @Override
+    public void close() {}
+  }
+}
@@ -302,6 +302,29 @@ public class ConstructorArgMarshallerImmutableTest {
     assertEquals(Optional.empty(), built.getStrings());
   }
 
+  @Test
+  public void populatesEachInstanceOfATypeIndependently() throws Exception {
+    DtoWithString first =
+        marshaller.populate(
+            createCellRoots(filesystem),
+            filesystem,
+            TARGET,
+            DtoWithString.class,
+            ImmutableSet.builder(),
+            ImmutableMap.<String, Object>of("string", "cheese"));
+    DtoWithString second =
+        marshaller.populate(
+            createCellRoots(filesystem),
+            filesystem,
+            TARGET,
+            DtoWithString.class,
+            ImmutableSet.builder(),
+            ImmutableMap.<String, Object>of("string", "crackers"));
+
+    assertEquals("cheese", first.getString());
+    assertEquals("crackers", second.getString());
+  }
+
   @Test
   public void errorsOnMissingValues() throws Exception {
     expected.expect(HumanReadableException.class);
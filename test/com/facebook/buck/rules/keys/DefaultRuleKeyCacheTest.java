@@ -20,6 +20,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.core.rules.impl.NoopBuildRuleWithDeclaredAndExtraDeps;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.model.BuildTargetFactory;
@@ -29,6 +31,8 @@ import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
 import com.facebook.buck.util.timing.Clock;
 import com.facebook.buck.util.timing.IncrementingFakeClock;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -150,6 +154,84 @@ public class DefaultRuleKeyCacheTest {
     assertThat(cache.getStats().getHitCount().get(), Matchers.equalTo(2L));
   }
 
+  @Test
+  public void invalidateAllExceptBuildRulesKeepsGivenRulesAndTheirDeps() {
+    DefaultRuleKeyCache<String> internalCache = new DefaultRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    AddsToRuleKey keptAppendable = new AddsToRuleKey() {};
+    cache.get(keptAppendable, a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    TestRule keptDep = new TestRule();
+    cache.get(keptDep, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    TestRule kept = new TestRule();
+    cache.get(
+        kept,
+        r ->
+            new RuleKeyResult<>(
+                "", ImmutableList.of(keptDep, keptAppendable), ImmutableList.of()));
+    TestRule stale = new TestRule();
+    cache.get(stale, r -> new RuleKeyResult<>("", ImmutableList.of(kept), ImmutableList.of()));
+
+    Set<BuildRule> rules = Sets.newIdentityHashSet();
+    rules.add(kept);
+    rules.add(keptDep);
+    cache.invalidateAllExceptBuildRules(rules);
+
+    assertTrue(internalCache.isCached(kept));
+    assertTrue(internalCache.isCached(keptDep));
+    assertTrue(internalCache.isCached(keptAppendable));
+    assertFalse(internalCache.isCached(stale));
+  }
+
+  @Test
+  public void invalidateAllExceptBuildRulesDropsOrphanedAppendables() {
+    DefaultRuleKeyCache<String> internalCache = new DefaultRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    AddsToRuleKey nestedAppendable = new AddsToRuleKey() {};
+    cache.get(
+        nestedAppendable, a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    AddsToRuleKey appendable = new AddsToRuleKey() {};
+    cache.get(
+        appendable,
+        a -> new RuleKeyResult<>("", ImmutableList.of(nestedAppendable), ImmutableList.of()));
+    TestRule stale = new TestRule();
+    cache.get(
+        stale, r -> new RuleKeyResult<>("", ImmutableList.of(appendable), ImmutableList.of()));
+
+    cache.invalidateAllExceptBuildRules(Sets.newIdentityHashSet());
+
+    assertFalse(internalCache.isCached(stale));
+    assertFalse(internalCache.isCached(appendable));
+    assertFalse(internalCache.isCached(nestedAppendable));
+  }
+
+  @Test
+  public void invalidateAllExceptBuildRulesKeepsAppendablesSharedWithKeptRules() {
+    DefaultRuleKeyCache<String> internalCache = new DefaultRuleKeyCache<>();
+    TrackedRuleKeyCache<String> cache =
+        new TrackedRuleKeyCache<>(internalCache, new InstrumentingCacheStatsTracker());
+    AddsToRuleKey sharedAppendable = new AddsToRuleKey() {};
+    cache.get(
+        sharedAppendable, a -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+    TestRule kept = new TestRule();
+    cache.get(
+        kept,
+        r -> new RuleKeyResult<>("", ImmutableList.of(sharedAppendable), ImmutableList.of()));
+    TestRule stale = new TestRule();
+    cache.get(
+        stale,
+        r -> new RuleKeyResult<>("", ImmutableList.of(sharedAppendable), ImmutableList.of()));
+
+    Set<BuildRule> rules = Sets.newIdentityHashSet();
+    rules.add(kept);
+    cache.invalidateAllExceptBuildRules(rules);
+
+    assertTrue(internalCache.isCached(kept));
+    assertTrue(internalCache.isCached(sharedAppendable));
+    assertFalse(internalCache.isCached(stale));
+  }
+
   @Test
   public void testEvictionStats() {
     TrackedRuleKeyCache<String> cache =
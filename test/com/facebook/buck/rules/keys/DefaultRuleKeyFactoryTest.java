@@ -64,6 +64,7 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -701,6 +702,11 @@ public class DefaultRuleKeyFactoryTest {
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public void invalidateAllExceptBuildRules(Set<BuildRule> rules) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public void invalidateAll() {
       throw new UnsupportedOperationException();
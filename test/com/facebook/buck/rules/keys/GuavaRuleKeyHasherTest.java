@@ -16,9 +16,18 @@
 
 package com.facebook.buck.rules.keys;
 
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.core.rulekey.RuleKey;
 import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasherTypes;
+import com.google.common.base.Strings;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
 import org.junit.experimental.runners.Enclosed;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -44,6 +53,46 @@ public class GuavaRuleKeyHasherTest {
     }
   }
 
+  @RunWith(Parameterized.class)
+  public static class EncodingTest {
+    @Parameters(name = "{0}")
+    public static Iterable<Object[]> cases() {
+      return Arrays.asList(
+          new Object[] {""},
+          new Object[] {"ascii"},
+          new Object[] {"na\u00efve \u00e9t\u00e9"},
+          new Object[] {"\u65e5\u672c\u8a9e"},
+          new Object[] {"surrogate pair \ud83d\ude00"},
+          new Object[] {"unpaired \ud83d surrogates \ude00"},
+          new Object[] {"trailing high surrogate \ud83d"},
+          new Object[] {Strings.repeat("long \u00e9 string ", 100)});
+    }
+
+    @Parameterized.Parameter public String value;
+
+    @Test
+    public void stringsAreHashedAsTheirUtf8Bytes() {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      Hasher expected = Hashing.sha1().newHasher();
+      expected.putBytes(bytes).putInt(bytes.length).putByte(RuleKeyHasherTypes.STRING);
+      assertEquals(expected.hash(), newHasher().putString(value).hash());
+    }
+
+    @Test
+    public void reusedBufferDoesNotLeakBetweenValues() {
+      RuleKey ruleKey = new RuleKey(Strings.repeat("ab", 20));
+      Hasher expected = Hashing.sha1().newHasher();
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      expected.putBytes(bytes).putInt(bytes.length).putByte(RuleKeyHasherTypes.STRING);
+      byte[] ruleKeyBytes = ruleKey.getHashCode().asBytes();
+      expected
+          .putBytes(ruleKeyBytes)
+          .putInt(ruleKeyBytes.length)
+          .putByte(RuleKeyHasherTypes.RULE_KEY);
+      assertEquals(expected.hash(), newHasher().putString(value).putRuleKey(ruleKey).hash());
+    }
+  }
+
   public static GuavaRuleKeyHasher newHasher() {
     return new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
   }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.cache.InstrumentingCacheStatsTracker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class PersistentRuleKeyCacheTest {
+
+  private static final ProjectFilesystem FILESYSTEM = new FakeProjectFilesystem();
+  private static final HashCode SETTINGS = HashCode.fromInt(1);
+  private static final HashCode FINGERPRINT = HashCode.fromInt(2);
+  private static final HashCode INPUT_HASH = HashCode.fromInt(3);
+  private static final RuleKey RULE_KEY = new RuleKey("aaaa");
+  private static final RuleKey DEP_RULE_KEY = new RuleKey("bbbb");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private final Path input = FILESYSTEM.getPath("input");
+  private final Map<Path, HashCode> fileHashes = new HashMap<>();
+
+  private TrackedRuleKeyCache<RuleKey> newCache(PersistentRuleKeyStore store) {
+    return new TrackedRuleKeyCache<>(
+        new PersistentRuleKeyCache(
+            new DefaultRuleKeyCache<>(),
+            store,
+            new FakeFileHashCache(fileHashes),
+            ImmutableList.of(FILESYSTEM),
+            rule -> Optional.of(FINGERPRINT)),
+        new InstrumentingCacheStatsTracker());
+  }
+
+  private PersistentRuleKeyStore.Entry entryWithInput(HashCode hash) {
+    return new PersistentRuleKeyStore.Entry(
+        RULE_KEY,
+        FINGERPRINT,
+        ImmutableMap.of(),
+        ImmutableList.of(new PersistentRuleKeyStore.Input(FILESYSTEM.getRootPath(), input, hash)));
+  }
+
+  @Test
+  public void storeRoundTrips() throws Exception {
+    Path path = tmp.getRoot().resolve("rule_keys");
+    BuildRule rule = new FakeBuildRule("//:rule");
+    PersistentRuleKeyStore store = PersistentRuleKeyStore.load(path, SETTINGS);
+    store.put(rule.getBuildTarget(), entryWithInput(INPUT_HASH));
+    store.save();
+
+    PersistentRuleKeyStore loaded = PersistentRuleKeyStore.load(path, SETTINGS);
+    assertThat(
+        loaded.get(rule.getBuildTarget()),
+        Matchers.equalTo(Optional.of(entryWithInput(INPUT_HASH))));
+  }
+
+  @Test
+  public void storeWithDifferentSettingsIsIgnored() throws Exception {
+    BuildRule rule = new FakeBuildRule("//:rule");
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(tmp.getRoot().resolve("rule_keys"), SETTINGS);
+    store.put(rule.getBuildTarget(), entryWithInput(INPUT_HASH));
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    store.writeEntries(output);
+
+    Map<String, PersistentRuleKeyStore.Entry> entries = new HashMap<>();
+    PersistentRuleKeyStore.readEntries(
+        new ByteArrayInputStream(output.toByteArray()), HashCode.fromInt(4), entries);
+    assertTrue(entries.isEmpty());
+  }
+
+  @Test
+  public void persistedKeyIsReusedWhenInputsAreUnchanged() {
+    fileHashes.put(FILESYSTEM.resolve(input), INPUT_HASH);
+    BuildRule rule = new FakeBuildRule("//:rule");
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(tmp.getRoot().resolve("rule_keys"), SETTINGS);
+    store.put(rule.getBuildTarget(), entryWithInput(INPUT_HASH));
+
+    RuleKey key =
+        newCache(store)
+            .get(
+                rule,
+                r -> {
+                  throw new IllegalStateException();
+                });
+    assertThat(key, Matchers.equalTo(RULE_KEY));
+  }
+
+  @Test
+  public void persistedKeyIsRecomputedWhenInputChanges() {
+    fileHashes.put(FILESYSTEM.resolve(input), HashCode.fromInt(5));
+    BuildRule rule = new FakeBuildRule("//:rule");
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(tmp.getRoot().resolve("rule_keys"), SETTINGS);
+    store.put(rule.getBuildTarget(), entryWithInput(INPUT_HASH));
+
+    RuleKey newKey = new RuleKey("cccc");
+    RuleKey key =
+        newCache(store)
+            .get(
+                rule,
+                r ->
+                    new RuleKeyResult<>(
+                        newKey,
+                        ImmutableList.of(),
+                        ImmutableList.of(RuleKeyInput.of(FILESYSTEM, input))));
+    assertThat(key, Matchers.equalTo(newKey));
+    assertThat(
+        store.get(rule.getBuildTarget()).map(PersistentRuleKeyStore.Entry::getRuleKey),
+        Matchers.equalTo(Optional.of(newKey)));
+  }
+
+  @Test
+  public void persistedKeyIsRecomputedWhenDepChanges() {
+    BuildRule dep = new FakeBuildRule("//:dep");
+    BuildRule rule = new FakeBuildRule("//:rule", dep);
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(tmp.getRoot().resolve("rule_keys"), SETTINGS);
+    store.put(
+        rule.getBuildTarget(),
+        new PersistentRuleKeyStore.Entry(
+            RULE_KEY,
+            FINGERPRINT,
+            ImmutableMap.of(dep.getFullyQualifiedName(), DEP_RULE_KEY),
+            ImmutableList.of()));
+
+    TrackedRuleKeyCache<RuleKey> cache = newCache(store);
+    RuleKey newDepKey = new RuleKey("dddd");
+    RuleKey newKey = new RuleKey("eeee");
+    cache.get(dep, r -> new RuleKeyResult<>(newDepKey, ImmutableList.of(), ImmutableList.of()));
+    RuleKey key =
+        cache.get(
+            rule, r -> new RuleKeyResult<>(newKey, ImmutableList.of(dep), ImmutableList.of()));
+    assertThat(key, Matchers.equalTo(newKey));
+    assertThat(
+        store.get(rule.getBuildTarget()).map(PersistentRuleKeyStore.Entry::getDeps),
+        Matchers.equalTo(Optional.of(ImmutableMap.of(dep.getFullyQualifiedName(), newDepKey))));
+  }
+
+  @Test
+  public void appendableInputsAreFoldedIntoRuleEntry() {
+    fileHashes.put(FILESYSTEM.resolve(input), INPUT_HASH);
+    BuildRule rule = new FakeBuildRule("//:rule");
+    PersistentRuleKeyStore store =
+        PersistentRuleKeyStore.load(tmp.getRoot().resolve("rule_keys"), SETTINGS);
+
+    TrackedRuleKeyCache<RuleKey> cache = newCache(store);
+    AddsToRuleKey appendable = new AddsToRuleKey() {};
+    cache.get(
+        appendable,
+        a ->
+            new RuleKeyResult<>(
+                DEP_RULE_KEY,
+                ImmutableList.of(),
+                ImmutableList.of(RuleKeyInput.of(FILESYSTEM, input))));
+    cache.get(
+        rule, r -> new RuleKeyResult<>(RULE_KEY, ImmutableList.of(appendable), ImmutableList.of()));
+
+    assertThat(
+        store.get(rule.getBuildTarget()),
+        Matchers.equalTo(Optional.of(entryWithInput(INPUT_HASH))));
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.core.model.BuildTarget;
+import com.facebook.buck.core.rulekey.AddToRuleKey;
+import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rulekey.RuleKey;
+import com.facebook.buck.core.rules.BuildRule;
+import com.facebook.buck.core.rules.SourcePathRuleFinder;
+import com.facebook.buck.core.rules.resolver.impl.TestActionGraphBuilder;
+import com.facebook.buck.core.sourcepath.SourcePath;
+import com.facebook.buck.core.sourcepath.resolver.SourcePathResolver;
+import com.facebook.buck.core.sourcepath.resolver.impl.DefaultSourcePathResolver;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.FakeSourcePath;
+import com.facebook.buck.rules.keys.hasher.GuavaRuleKeyHasher;
+import com.facebook.buck.rules.keys.hasher.RuleKeyHasherTypes;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the throughput of {@link DefaultRuleKeyFactory} over a chain of synthetic rules with
+ * typical {@link AddToRuleKey} fields, and of hashing strings via {@link GuavaRuleKeyHasher}
+ * compared to feeding their {@link String#getBytes} to a {@link Hasher}.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/rules/keys:benchmark -- -prof gc} to also
+ * report allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RuleKeyBenchmark {
+
+  @Param({"100", "1000"})
+  private int ruleCount;
+
+  private final ProjectFilesystem filesystem = new FakeProjectFilesystem();
+  private SourcePathRuleFinder ruleFinder;
+  private SourcePathResolver pathResolver;
+  private FakeFileHashCache hashCache;
+  private ImmutableList<BuildRule> rules;
+  private ImmutableList<String> strings;
+
+  @Setup
+  public void setUp() {
+    ruleFinder = new SourcePathRuleFinder(new TestActionGraphBuilder());
+    pathResolver = DefaultSourcePathResolver.from(ruleFinder);
+
+    Map<Path, HashCode> hashes = new HashMap<>();
+    ImmutableList.Builder<BuildRule> rulesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<String> stringsBuilder = ImmutableList.builder();
+    BenchmarkRule previous = null;
+    for (int index = 0; index < ruleCount; index++) {
+      String path = String.format("some/package%d/Source%d.java", index % 10, index);
+      hashes.put(filesystem.resolve(path), Hashing.sha1().hashString(path, StandardCharsets.UTF_8));
+      previous =
+          new BenchmarkRule(
+              BuildTargetFactory.newInstance(
+                  String.format("//some/package%d:rule%d", index % 10, index)),
+              FakeSourcePath.of(filesystem, path),
+              previous);
+      rulesBuilder.add(previous);
+      stringsBuilder.add(path);
+    }
+    hashCache = new FakeFileHashCache(hashes);
+    rules = rulesBuilder.build();
+    strings = stringsBuilder.build();
+  }
+
+  /** Computes the default rule keys of all rules with a fresh (i.e. empty) rule key cache. */
+  @Benchmark
+  public void defaultRuleKeyFactory(Blackhole blackhole) {
+    DefaultRuleKeyFactory factory =
+        new TestDefaultRuleKeyFactory(hashCache, pathResolver, ruleFinder);
+    for (BuildRule rule : rules) {
+      blackhole.consume(factory.build(rule));
+    }
+  }
+
+  @Benchmark
+  public HashCode guavaRuleKeyHasherStrings() {
+    GuavaRuleKeyHasher hasher = new GuavaRuleKeyHasher(Hashing.sha1().newHasher());
+    for (String string : strings) {
+      hasher.putString(string);
+    }
+    return hasher.hash();
+  }
+
+  /** Baseline for {@link #guavaRuleKeyHasherStrings}, allocating a byte array per string. */
+  @Benchmark
+  public HashCode getBytesStrings() {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String string : strings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      hasher.putBytes(bytes);
+      hasher.putInt(bytes.length);
+      hasher.putByte(RuleKeyHasherTypes.STRING);
+    }
+    return hasher.hash();
+  }
+
+  private static class BenchmarkAppendable implements AddsToRuleKey {
+    @AddToRuleKey private final String name;
+    @AddToRuleKey private final int version;
+
+    private BenchmarkAppendable(String name, int version) {
+      this.name = name;
+      this.version = version;
+    }
+  }
+
+  private static class BenchmarkRule extends EmptyFakeBuildRule {
+    @AddToRuleKey private final String name;
+    @AddToRuleKey private final int index;
+    @AddToRuleKey private final boolean enabled;
+    @AddToRuleKey private final ImmutableList<String> flags;
+    @AddToRuleKey private final Optional<String> mainClass;
+    @AddToRuleKey private final ImmutableSortedMap<String, String> env;
+    @AddToRuleKey private final BenchmarkAppendable appendable;
+    @AddToRuleKey private final SourcePath source;
+    @AddToRuleKey private final Optional<BuildRule> dep;
+
+    private BenchmarkRule(BuildTarget target, SourcePath source, @Nullable BuildRule dep) {
+      super(target);
+      this.name = target.getShortName();
+      this.index = target.hashCode();
+      this.enabled = true;
+      this.flags = ImmutableList.of("-g", "-O2", "-Wall", "-Werror");
+      this.mainClass = Optional.of("com.example.Main");
+      this.env = ImmutableSortedMap.of("LANG", "C", "PATH", "/usr/bin:/bin");
+      this.appendable = new BenchmarkAppendable(target.getShortName(), 42);
+      this.source = source;
+      this.dep = Optional.ofNullable(dep);
+    }
+  }
+}
@@ -22,11 +22,13 @@ import static org.junit.Assert.assertTrue;
 import com.facebook.buck.core.model.BuildId;
 import com.facebook.buck.core.model.actiongraph.ActionGraph;
 import com.facebook.buck.core.rulekey.AddsToRuleKey;
+import com.facebook.buck.core.rules.BuildRule;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.DefaultBuckEventBus;
 import com.facebook.buck.io.WatchmanOverflowEvent;
 import com.facebook.buck.io.WatchmanPathEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.rules.FakeBuildRule;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.util.cache.NoOpCacheStatsTracker;
 import com.facebook.buck.util.timing.FakeClock;
@@ -189,4 +191,31 @@ public class RuleKeyCacheRecyclerTest {
         c -> {});
     assertFalse(cache.isCached(appendable));
   }
+
+  @Test
+  public void getCacheWithDifferentActionGraphKeepsCarriedOverRules() {
+    DefaultRuleKeyCache<String> cache = new DefaultRuleKeyCache<>();
+    RuleKeyCacheRecycler<String> recycler =
+        RuleKeyCacheRecycler.createAndRegister(EVENT_BUS, cache, ImmutableSet.of(FILESYSTEM));
+    BuildRule carriedOver = new FakeBuildRule("//:carried_over");
+    BuildRule replaced = new FakeBuildRule("//:replaced");
+    recycler.withRecycledCache(
+        BUCK_EVENT_BUS,
+        new RuleKeyCacheRecycler.SettingsAffectingCache(
+            RULE_KEY_SEED, new ActionGraph(ImmutableList.of(carriedOver, replaced))),
+        c -> {
+          c.get(carriedOver, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+          c.get(replaced, r -> new RuleKeyResult<>("", ImmutableList.of(), ImmutableList.of()));
+        });
+    assertTrue(cache.isCached(carriedOver));
+    assertTrue(cache.isCached(replaced));
+    recycler.withRecycledCache(
+        BUCK_EVENT_BUS,
+        new RuleKeyCacheRecycler.SettingsAffectingCache(
+            RULE_KEY_SEED,
+            new ActionGraph(ImmutableList.of(carriedOver, new FakeBuildRule("//:replaced")))),
+        c -> {});
+    assertTrue(cache.isCached(carriedOver));
+    assertFalse(cache.isCached(replaced));
+  }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.skylark.io.impl;
+
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.skylark.SkylarkFilesystem;
+import com.facebook.buck.skylark.io.Globber;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableSet;
+import com.google.devtools.build.lib.vfs.FileSystemUtils;
+import com.google.devtools.build.lib.vfs.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DirectoryIndexTest {
+  private Path root;
+  private DirectoryIndex directoryIndex;
+  private Globber globber;
+
+  @Before
+  public void setUp() throws Exception {
+    ProjectFilesystem projectFilesystem = FakeProjectFilesystem.createRealTempFilesystem();
+    SkylarkFilesystem fileSystem = SkylarkFilesystem.using(projectFilesystem);
+    root = fileSystem.getPath(projectFilesystem.getRootPath().toString());
+    directoryIndex = new DirectoryIndex();
+    globber = NativeGlobber.create(root, directoryIndex);
+  }
+
+  @Test
+  public void createdFileIsFoundOnceInvalidated() throws Exception {
+    FileSystemUtils.createEmptyFile(root.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("foo.txt")));
+
+    FileSystemUtils.createEmptyFile(root.getChild("bar.txt"));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("foo.txt")));
+
+    directoryIndex.invalidate(Paths.get(root.getChild("bar.txt").getPathString()));
+    assertThat(
+        globber.run(Collections.singleton("*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("bar.txt", "foo.txt")));
+  }
+
+  @Test
+  public void fileCreatedInNewDirectoryIsFoundOnceInvalidated() throws Exception {
+    FileSystemUtils.createEmptyFile(root.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("**/*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("foo.txt")));
+
+    Path child = root.getChild("dir").getChild("child");
+    child.createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(child.getChild("bar.txt"));
+    directoryIndex.invalidate(Paths.get(child.getChild("bar.txt").getPathString()));
+    assertThat(
+        globber.run(Collections.singleton("**/*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("dir/child/bar.txt", "foo.txt")));
+  }
+
+  @Test
+  public void deletedDirectoryIsForgottenOnceInvalidated() throws Exception {
+    Path child = root.getChild("dir").getChild("child");
+    child.createDirectoryAndParents();
+    FileSystemUtils.createEmptyFile(child.getChild("foo.txt"));
+    assertThat(
+        globber.run(Collections.singleton("dir/child/*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of("dir/child/foo.txt")));
+
+    child.getChild("foo.txt").delete();
+    child.delete();
+    directoryIndex.invalidate(Paths.get(child.getChild("foo.txt").getPathString()));
+    assertThat(
+        globber.run(Collections.singleton("dir/child/*.txt"), Collections.emptySet(), false),
+        equalTo(ImmutableSet.of()));
+  }
+}
@@ -106,6 +106,13 @@ public class SkylarkProjectBuildFileParserTest {
 
   private SkylarkProjectBuildFileParser createParserWithOptions(
       EventHandler eventHandler, ProjectBuildFileParserOptions options) {
+    return createParserWithOptions(eventHandler, options, new SkylarkExtensionCache());
+  }
+
+  private SkylarkProjectBuildFileParser createParserWithOptions(
+      EventHandler eventHandler,
+      ProjectBuildFileParserOptions options,
+      SkylarkExtensionCache extensionCache) {
     return SkylarkProjectBuildFileParser.using(
         options,
         BuckEventBusForTests.newInstance(),
@@ -116,7 +123,8 @@ public class SkylarkProjectBuildFileParserTest {
             .setDisableImplicitNativeRules(options.getDisableImplicitNativeRules())
             .build(),
         eventHandler,
-        NativeGlobber::create);
+        NativeGlobber::create,
+        extensionCache);
   }
 
   private SkylarkProjectBuildFileParser createParser(EventHandler eventHandler) {
@@ -654,6 +662,61 @@ public class SkylarkProjectBuildFileParserTest {
     assertThat(rule.get("binaryJar"), equalTo("jar"));
   }
 
+  @Test
+  public void extensionsAreSharedBetweenParsersUntilInvalidated() throws Exception {
+    Path directory = projectFilesystem.resolve("src").resolve("test");
+    Files.createDirectories(directory);
+    Path buildFile = directory.resolve("BUCK");
+    Path extensionFile = directory.resolve("build_rules.bzl");
+    Files.write(
+        buildFile,
+        Arrays.asList(
+            "load('//src/test:build_rules.bzl', 'jar')",
+            "prebuilt_jar(name='foo', binary_jar=jar)"));
+    Files.write(extensionFile, Arrays.asList("jar = 'first.jar'"));
+    SkylarkExtensionCache extensionCache = new SkylarkExtensionCache();
+    EventHandler eventHandler = new PrintingEventHandler(EventKind.ALL_EVENTS);
+    ProjectBuildFileParserOptions options = getDefaultParserOptions().build();
+
+    parser = createParserWithOptions(eventHandler, options, extensionCache);
+    assertThat(getSingleRule(buildFile).get("binaryJar"), equalTo("first.jar"));
+
+    Files.write(extensionFile, Arrays.asList("jar = 'second.jar'"));
+    parser = createParserWithOptions(eventHandler, options, extensionCache);
+    assertThat(getSingleRule(buildFile).get("binaryJar"), equalTo("first.jar"));
+
+    extensionCache.invalidate(extensionFile);
+    parser = createParserWithOptions(eventHandler, options, extensionCache);
+    assertThat(getSingleRule(buildFile).get("binaryJar"), equalTo("second.jar"));
+  }
+
+  @Test
+  public void changeToLoadedExtensionInvalidatesExtensionsLoadingIt() throws Exception {
+    Path directory = projectFilesystem.resolve("src").resolve("test");
+    Files.createDirectories(directory);
+    Path buildFile = directory.resolve("BUCK");
+    Path extensionFile = directory.resolve("build_rules.bzl");
+    Path extensionExtensionFile = directory.resolve("extension_rules.bzl");
+    Files.write(
+        buildFile,
+        Arrays.asList(
+            "load('//src/test:build_rules.bzl', 'get_name')",
+            "prebuilt_jar(name='foo', binary_jar=get_name())"));
+    Files.write(extensionExtensionFile, Arrays.asList("def get_name():", "  return 'first'"));
+    Files.write(extensionFile, Arrays.asList("load(':extension_rules.bzl', 'get_name')"));
+    SkylarkExtensionCache extensionCache = new SkylarkExtensionCache();
+    EventHandler eventHandler = new PrintingEventHandler(EventKind.ALL_EVENTS);
+    ProjectBuildFileParserOptions options = getDefaultParserOptions().build();
+
+    parser = createParserWithOptions(eventHandler, options, extensionCache);
+    assertThat(getSingleRule(buildFile).get("binaryJar"), equalTo("first"));
+
+    Files.write(extensionExtensionFile, Arrays.asList("def get_name():", "  return 'second'"));
+    extensionCache.invalidate(extensionExtensionFile);
+    parser = createParserWithOptions(eventHandler, options, extensionCache);
+    assertThat(getSingleRule(buildFile).get("binaryJar"), equalTo("second"));
+  }
+
   @Test
   public void testCanLoadExtensionFromBuildFileUsingRelativeLabel() throws Exception {
     Path directory = projectFilesystem.resolve("src").resolve("test");
@@ -44,6 +44,8 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Random;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
@@ -350,4 +352,38 @@ public class DefaultFileHashCacheTest {
     assertFalse(cache.willGet(filesystem.getPath("buck-out/cells/file.txt")));
     assertTrue(cache.willGet(filesystem.getPath("file.txt")));
   }
+
+  @Test
+  public void prefetchLoadsHashesOfExistingFiles() throws Exception {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, fileHashCacheMode);
+    Path first = filesystem.getPath("first.txt");
+    Path second = filesystem.getPath("second.txt");
+    Path missing = filesystem.getPath("missing.txt");
+    filesystem.writeContentsToPath("first", first);
+    filesystem.writeContentsToPath("second", second);
+
+    cache.prefetch(ImmutableList.of(first, second, missing));
+    assertEquals(
+        Optional.of(Hashing.sha1().hashString("first", StandardCharsets.UTF_8)),
+        cache.getIfPresent(first));
+    assertEquals(
+        Optional.of(Hashing.sha1().hashString("second", StandardCharsets.UTF_8)),
+        cache.getIfPresent(second));
+    assertFalse(cache.getIfPresent(missing).isPresent());
+  }
+
+  @Test
+  public void largeFilesAreHashedCorrectly() throws IOException {
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    DefaultFileHashCache cache =
+        DefaultFileHashCache.createDefaultFileHashCache(filesystem, fileHashCacheMode);
+    byte[] contents = new byte[3 * 1024 * 1024 + 17];
+    new Random(42).nextBytes(contents);
+    Path large = filesystem.getPath("large.bin");
+    filesystem.writeBytesToPath(contents, large);
+
+    assertEquals(Hashing.sha1().hashBytes(contents), cache.get(large));
+  }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.google.common.hash.HashCode;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class FileHashSnapshotTest {
+
+  private static final HashCode HASH = HashCode.fromInt(42);
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path snapshotPath;
+  private final Path file = Paths.get("Foo.java");
+  private final AtomicInteger loads = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    snapshotPath = tmp.getRoot().resolve("file_hashes");
+    writeFile("class Foo {}", 1);
+  }
+
+  private void writeFile(String contents, int minutesAgo) throws IOException {
+    filesystem.writeContentsToPath(contents, file);
+    filesystem.setLastModifiedTime(
+        file,
+        FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutesAgo)));
+  }
+
+  private HashCode get(FileHashSnapshot snapshot) throws IOException {
+    return snapshot.get(
+        file,
+        path -> {
+          loads.incrementAndGet();
+          return HASH;
+        });
+  }
+
+  @Test
+  public void hashesAreReusedAfterReload() throws IOException {
+    FileHashSnapshot snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    assertEquals(HASH, get(snapshot));
+    snapshot.save();
+
+    assertEquals(HASH, get(new FileHashSnapshot(filesystem, snapshotPath)));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void changedFilesAreRehashed() throws IOException {
+    FileHashSnapshot snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    get(snapshot);
+    snapshot.save();
+
+    writeFile("class Foo { int bar; }", 1);
+    get(new FileHashSnapshot(filesystem, snapshotPath));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void recentlyModifiedFilesAreNotRecorded() throws IOException {
+    writeFile("class Foo {}", 0);
+    FileHashSnapshot snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    get(snapshot);
+    snapshot.save();
+
+    get(new FileHashSnapshot(filesystem, snapshotPath));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  public void incompleteRecordsAreIgnored() throws IOException {
+    FileHashSnapshot snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    get(snapshot);
+    snapshot.save();
+    Files.write(snapshotPath, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+
+    FileHashSnapshot reloaded = new FileHashSnapshot(filesystem, snapshotPath);
+    assertEquals(HASH, get(reloaded));
+    reloaded.save();
+    assertEquals(HASH, get(new FileHashSnapshot(filesystem, snapshotPath)));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  public void latestRecordOfEachFileIsUsed() throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      files.add(Paths.get("Foo" + i + ".java"));
+      filesystem.writeContentsToPath("class Foo" + i + " {}", files.get(i));
+      filesystem.setLastModifiedTime(files.get(i), FileTime.fromMillis(0));
+    }
+    FileHashSnapshot snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    for (int i = 0; i < files.size(); i++) {
+      int hash = i;
+      snapshot.get(files.get(i), path -> HashCode.fromInt(hash));
+    }
+    snapshot.save();
+
+    // Append a newer record for one file, then force the snapshot to be rewritten from the mapping.
+    filesystem.writeContentsToPath("class Foo7 { int bar; }", files.get(7));
+    filesystem.setLastModifiedTime(files.get(7), FileTime.fromMillis(0));
+    snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    assertEquals(HASH, snapshot.get(files.get(7), path -> HASH));
+    snapshot.save();
+    Files.write(snapshotPath, new byte[] {0, 0, 0}, StandardOpenOption.APPEND);
+    snapshot = new FileHashSnapshot(filesystem, snapshotPath);
+    snapshot.get(files.get(0), path -> HashCode.fromInt(0));
+    snapshot.save();
+
+    FileHashSnapshot reloaded = new FileHashSnapshot(filesystem, snapshotPath);
+    for (int i = 0; i < files.size(); i++) {
+      HashCode expected = i == 7 ? HASH : HashCode.fromInt(i);
+      assertEquals(
+          expected,
+          reloaded.get(
+              files.get(i),
+              path -> {
+                throw new AssertionError("Rehashed " + path);
+              }));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.FileHashCacheEngine;
+import com.facebook.buck.util.cache.HashCodeAndFileType;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the prefix tree file hash cache under the load it sees during a build which overlaps
+ * with a branch switch: many threads looking up file hashes, as rule key computation does, while
+ * Watchman reports bursts of {@code burstSize} changed files, each invalidated with its parents.
+ *
+ * <p>Run with {@code buck run //test/com/facebook/buck/util/cache/impl:file_system_map_benchmark}.
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FileSystemMapFileHashCacheBenchmark {
+
+  @Param({"100000"})
+  private int leavesCount;
+
+  @Param({"10", "1000"})
+  private int burstSize;
+
+  private final List<Path> leaves = new ArrayList<>();
+  private FileHashCacheEngine cache;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Random random = new Random(123);
+    List<Path> folders = new ArrayList<>();
+    folders.add(Paths.get("root"));
+    while (leaves.size() < leavesCount) {
+      Path folder = folders.get(random.nextInt(folders.size()));
+      // Create a folder 25% of the time, and a file otherwise.
+      if (random.nextInt(4) == 0) {
+        folders.add(folder.resolve("dir" + random.nextInt(1000)));
+      } else {
+        leaves.add(folder.resolve("file" + random.nextInt(1000) + ".txt"));
+      }
+    }
+
+    cache =
+        FileSystemMapFileHashCache.createWithStats(
+            path ->
+                HashCodeAndFileType.ofFile(
+                    Hashing.sha1().hashString(path.toString(), StandardCharsets.UTF_8)),
+            path -> 0L,
+            new FakeProjectFilesystem());
+    for (Path leaf : leaves) {
+      cache.get(leaf);
+    }
+  }
+
+  private Path randomLeaf() {
+    return leaves.get(ThreadLocalRandom.current().nextInt(leaves.size()));
+  }
+
+  /** Looks up the hash of a file, loading it if it has been invalidated. */
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(15)
+  public void get(Blackhole blackhole) throws IOException {
+    blackhole.consume(cache.get(randomLeaf()));
+  }
+
+  /** Invalidates a burst of files, as Watchman reports after a branch switch. */
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public void invalidateBurst() {
+    for (int i = 0; i < burstSize; i++) {
+      cache.invalidateWithParents(randomLeaf());
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.io.FakeWatchmanClient;
+import com.facebook.buck.io.ProjectWatch;
+import com.facebook.buck.io.Watchman;
+import com.facebook.buck.io.WatchmanClient;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.cache.FileHashCacheMode;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WatchmanFileHashesTest {
+
+  private static final String WATCH_ROOT = "/watch/root";
+  private static final HashCode WATCHMAN_HASH = HashCode.fromString("aa");
+
+  private final Path reported = Paths.get("reported.txt");
+  private final Path unreported = Paths.get("unreported.txt");
+
+  private ProjectFilesystem filesystem;
+  private DefaultFileHashCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    filesystem = new FakeProjectFilesystem();
+    filesystem.writeContentsToPath("reported", reported);
+    filesystem.writeContentsToPath("unreported", unreported);
+
+    ImmutableMap<String, Object> query =
+        ImmutableMap.of(
+            "expression",
+            ImmutableList.of(
+                "allof",
+                ImmutableList.of("type", "f"),
+                ImmutableList.of(
+                    "name", ImmutableList.of("reported.txt", "unreported.txt"), "wholename")),
+            "fields",
+            ImmutableList.of("name", "content.sha1hex"),
+            "relative_root",
+            "project");
+    WatchmanClient client =
+        new FakeWatchmanClient(
+            0,
+            ImmutableMap.of(
+                ImmutableList.of("query", WATCH_ROOT, query),
+                ImmutableMap.of(
+                    "files",
+                    ImmutableList.of(
+                        ImmutableMap.of(
+                            "name", "reported.txt", "content.sha1hex", WATCHMAN_HASH.toString()),
+                        ImmutableMap.of(
+                            "name",
+                            "unreported.txt",
+                            "content.sha1hex",
+                            ImmutableMap.of("error", "unable to hash"))))));
+    Watchman watchman =
+        new Watchman(
+            ImmutableMap.of(
+                filesystem.getRootPath(), ProjectWatch.of(WATCH_ROOT, Optional.of("project"))),
+            ImmutableSet.of(),
+            ImmutableMap.of(),
+            Optional.empty()) {
+          @Override
+          public WatchmanClient createClient() {
+            return client;
+          }
+        };
+
+    cache =
+        DefaultFileHashCache.createDefaultFileHashCache(
+            filesystem,
+            FileHashCacheMode.DEFAULT,
+            Optional.empty(),
+            WatchmanFileHashes.of(watchman, filesystem));
+  }
+
+  @Test
+  public void prefetchedHashesAreUsed() throws Exception {
+    cache.prefetch(ImmutableList.of(reported, unreported));
+    assertEquals(WATCHMAN_HASH, cache.get(reported));
+  }
+
+  @Test
+  public void filesWatchmanCouldNotHashAreHashedLocally() throws Exception {
+    cache.prefetch(ImmutableList.of(reported, unreported));
+    assertEquals(
+        Hashing.sha1().hashString("unreported", StandardCharsets.UTF_8), cache.get(unreported));
+  }
+
+  @Test
+  public void invalidatedFilesAreHashedLocally() throws Exception {
+    cache.prefetch(ImmutableList.of(reported, unreported));
+    cache.invalidate(reported);
+    assertEquals(
+        Hashing.sha1().hashString("reported", StandardCharsets.UTF_8), cache.get(reported));
+  }
+}
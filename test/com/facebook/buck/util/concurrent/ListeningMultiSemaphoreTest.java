@@ -17,8 +17,10 @@ package com.facebook.buck.util.concurrent;
 
 import static org.hamcrest.junit.MatcherAssert.assertThat;
 
+import com.facebook.buck.util.timing.SettableFakeClock;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -202,6 +204,61 @@ public class ListeningMultiSemaphoreTest {
     assertThat(second.isDone(), Matchers.equalTo(true));
   }
 
+  @Test
+  public void testPendingQueueIsProcessedInPriorityOrder() {
+    ListeningMultiSemaphore semaphore =
+        new ListeningMultiSemaphore(
+            amountsOfCpu(1), ResourceAllocationFairness.FAIR, new SettableFakeClock(1000, 0));
+    ListenableFuture<Void> running = semaphore.acquire(amountsOfCpu(1));
+    assertThat(running.isDone(), Matchers.equalTo(true));
+
+    ListenableFuture<Void> low = semaphore.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Void> lowAfter = semaphore.acquire(amountsOfCpu(1), 1);
+    ListenableFuture<Void> high = semaphore.acquire(amountsOfCpu(1), 5);
+    ListenableFuture<Void> normal = semaphore.acquire(amountsOfCpu(1));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(4));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(high.isDone(), Matchers.equalTo(true));
+    assertThat(low.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(low.isDone(), Matchers.equalTo(true));
+    assertThat(lowAfter.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(lowAfter.isDone(), Matchers.equalTo(true));
+    assertThat(normal.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(normal.isDone(), Matchers.equalTo(true));
+  }
+
+  @Test
+  public void testLongPendingAcquisitionsGoAheadOfHigherPriorityOnes() {
+    SettableFakeClock clock = new SettableFakeClock(1000, 0);
+    ListeningMultiSemaphore semaphore =
+        new ListeningMultiSemaphore(amountsOfCpu(1), ResourceAllocationFairness.FAIR, clock);
+    ListenableFuture<Void> running = semaphore.acquire(amountsOfCpu(1));
+    assertThat(running.isDone(), Matchers.equalTo(true));
+
+    ListenableFuture<Void> normal = semaphore.acquire(amountsOfCpu(1));
+    clock.advanceTimeNanos(TimeUnit.MILLISECONDS.toNanos(100));
+    ListenableFuture<Void> slightlyHigher = semaphore.acquire(amountsOfCpu(1), 50);
+    ListenableFuture<Void> muchHigher = semaphore.acquire(amountsOfCpu(1), 500);
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(muchHigher.isDone(), Matchers.equalTo(true));
+    assertThat(normal.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(normal.isDone(), Matchers.equalTo(true));
+    assertThat(slightlyHigher.isDone(), Matchers.equalTo(false));
+
+    semaphore.release(amountsOfCpu(1));
+    assertThat(slightlyHigher.isDone(), Matchers.equalTo(true));
+  }
+
   private ListeningMultiSemaphore getFairListeningMultiSemaphore(ResourceAmounts values) {
     return new ListeningMultiSemaphore(values, ResourceAllocationFairness.FAIR);
   }
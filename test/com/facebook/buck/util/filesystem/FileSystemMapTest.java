@@ -27,6 +27,13 @@ import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.util.filesystem.FileSystemMap.Entry;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.Test;
 
 public class FileSystemMapTest {
@@ -243,4 +250,50 @@ public class FileSystemMapTest {
     assertEquals(fsMap.map.size(), 2);
     assertTrue(fsMap.map.get(path).getWithoutLoading());
   }
+
+  @Test
+  public void testConcurrentPutsAndRemovesLeaveOnlyReachableEntries() throws Exception {
+    FileSystemMap<Boolean> fsMap = new FileSystemMap<>(loader, filesystem);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int thread = 0; thread < 8; thread++) {
+        int seed = thread;
+        futures.add(
+            executor.submit(
+                () -> {
+                  Random random = new Random(seed);
+                  for (int i = 0; i < 2000; i++) {
+                    Path path =
+                        Paths.get(
+                            "dir" + random.nextInt(3),
+                            "sub" + random.nextInt(3),
+                            "file" + random.nextInt(5));
+                    if (random.nextInt(4) == 0) {
+                      fsMap.remove(random.nextBoolean() ? path : path.getParent());
+                    } else {
+                      fsMap.put(path, true);
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Every entry which can still be looked up must be the one in the trie for its path.
+    for (Map.Entry<Path, Entry<Boolean>> mapEntry : fsMap.map.entrySet()) {
+      Entry<Boolean> entry = fsMap.root;
+      Path relPath = Paths.get("");
+      for (Path p : mapEntry.getKey()) {
+        relPath = relPath.resolve(p);
+        entry = entry.subLevels == null ? null : entry.subLevels.get(relPath);
+        assertNotNull(mapEntry.getKey().toString(), entry);
+      }
+      assertSame(mapEntry.getValue(), entry);
+    }
+  }
 }
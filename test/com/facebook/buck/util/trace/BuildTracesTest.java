@@ -21,6 +21,9 @@ import static org.junit.Assert.assertNotNull;
 
 import com.facebook.buck.core.exceptions.HumanReadableException;
 import com.facebook.buck.core.model.BuildId;
+import com.facebook.buck.event.chrome_trace.BinaryChromeTraceWriter;
+import com.facebook.buck.event.chrome_trace.ChromeTraceEvent;
+import com.facebook.buck.event.chrome_trace.ChromeTraceEvent.Phase;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.InvocationInfo;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
@@ -29,6 +32,8 @@ import com.facebook.buck.util.timing.SettableFakeClock;
 import com.facebook.buck.util.trace.BuildTraces.TraceAttributes;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
@@ -83,6 +88,46 @@ public class BuildTracesTest {
     assertNotNull(Strings.emptyToNull(traceAttributes.getFormattedDateTime()));
   }
 
+  @Test
+  public void testGetTraceAttributesForBinaryTrace() throws IOException {
+    FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem(FakeClock.doNotCare());
+    ByteArrayOutputStream trace = new ByteArrayOutputStream();
+    try (BinaryChromeTraceWriter writer = new BinaryChromeTraceWriter(trace)) {
+      writer.writeStart();
+      writer.writeEvent(
+          new ChromeTraceEvent(
+              "buck",
+              "process_name",
+              Phase.METADATA,
+              0,
+              0,
+              0,
+              0,
+              ImmutableMap.of("name", "buck")));
+      writer.writeEvent(
+          new ChromeTraceEvent(
+              "buck",
+              "build",
+              Phase.BEGIN,
+              0,
+              1,
+              5621911884918L,
+              0,
+              ImmutableMap.of("command_args", "buck")));
+      writer.writeEnd();
+    }
+    projectFilesystem.writeBytesToPath(
+        trace.toByteArray(),
+        projectFilesystem.getBuckPaths().getTraceDir().resolve("build.d.trace"));
+
+    BuildTraces helper = new BuildTraces(projectFilesystem);
+    TraceAttributes traceAttributes = helper.getTraceAttributesFor("d");
+    assertEquals(
+        "BuildTraces should be able to extract the command from binary traces.",
+        Optional.of("buck build buck"),
+        traceAttributes.getCommand());
+  }
+
   @Test
   public void testGetTraceAttributesForJsonWithoutName() throws IOException {
     FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem(FakeClock.doNotCare());
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2018-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.unarchive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
+
+import com.facebook.buck.io.file.MostFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.testutil.TemporaryPaths;
+import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.util.zip.Zip;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.hamcrest.Matchers;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class StreamingUnzipTest {
+  private static final String CONTENTS = "BUCK Unzip Test String!\nNihao\n";
+
+  @Rule public TemporaryPaths tmpFolder = new TemporaryPaths();
+
+  private ProjectFilesystem source;
+  private ProjectFilesystem destination;
+  private Path zipFile;
+
+  @Before
+  public void setUp() throws Exception {
+    source = TestProjectFilesystems.createProjectFilesystem(tmpFolder.newFolder("source"));
+    destination = TestProjectFilesystems.createProjectFilesystem(tmpFolder.newFolder("dest"));
+    zipFile = tmpFolder.getRoot().resolve("tmp.zip");
+  }
+
+  private ImmutableList<Path> extract(ExistingFileMode mode) throws IOException {
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      return new StreamingUnzip(destination, mode).extractArchive(input);
+    }
+  }
+
+  @Test
+  public void extractsArtifactZipsLikeUnzip() throws Exception {
+    source.mkdirs(Paths.get("dir/subdir"));
+    source.writeContentsToPath(CONTENTS, Paths.get("dir/subdir/file.txt"));
+    source.writeContentsToPath(CONTENTS + CONTENTS, Paths.get("dir/tool.sh"));
+    MostFiles.makeExecutable(source.resolve("dir/tool.sh"));
+    Zip.create(
+        source,
+        ImmutableList.of(
+            Paths.get("dir"),
+            Paths.get("dir/subdir"),
+            Paths.get("dir/subdir/file.txt"),
+            Paths.get("dir/tool.sh")),
+        zipFile);
+
+    ImmutableList<Path> result = extract(ExistingFileMode.OVERWRITE);
+
+    assertEquals(
+        ImmutableList.of(Paths.get("dir/subdir/file.txt"), Paths.get("dir/tool.sh")), result);
+    assertEquals(
+        Optional.of(CONTENTS), destination.readFileIfItExists(Paths.get("dir/subdir/file.txt")));
+    assertEquals(
+        Optional.of(CONTENTS + CONTENTS),
+        destination.readFileIfItExists(Paths.get("dir/tool.sh")));
+    assertTrue(destination.isExecutable(Paths.get("dir/tool.sh")));
+    assertFalse(destination.isExecutable(Paths.get("dir/subdir/file.txt")));
+  }
+
+  @Test
+  public void storedEntriesAreExtracted() throws Exception {
+    source.writeContentsToPath(CONTENTS, Paths.get("stored.txt"));
+    source.writeContentsToPath(CONTENTS + CONTENTS, Paths.get("deflated.txt"));
+    Zip.create(
+        source,
+        ImmutableList.of(Paths.get("deflated.txt"), Paths.get("stored.txt")),
+        zipFile,
+        path ->
+            path.endsWith("stored.txt") ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      assertEquals(ZipEntry.STORED, zip.getEntry("stored.txt").getMethod());
+      assertEquals(ZipEntry.DEFLATED, zip.getEntry("deflated.txt").getMethod());
+    }
+
+    extract(ExistingFileMode.OVERWRITE);
+
+    assertEquals(Optional.of(CONTENTS), destination.readFileIfItExists(Paths.get("stored.txt")));
+    assertEquals(
+        Optional.of(CONTENTS + CONTENTS),
+        destination.readFileIfItExists(Paths.get("deflated.txt")));
+  }
+
+  @Test
+  public void staleDirectoryContentsAreCleaned() throws Exception {
+    source.mkdirs(Paths.get("dir"));
+    source.writeContentsToPath(CONTENTS, Paths.get("dir/file.txt"));
+    Zip.create(source, ImmutableList.of(Paths.get("dir"), Paths.get("dir/file.txt")), zipFile);
+    destination.mkdirs(Paths.get("dir/stale"));
+    destination.writeContentsToPath(CONTENTS, Paths.get("dir/stale.txt"));
+    destination.writeContentsToPath(CONTENTS, Paths.get("dir/stale/file.txt"));
+
+    extract(ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+
+    assertTrue(destination.exists(Paths.get("dir/file.txt")));
+    assertFalse(destination.exists(Paths.get("dir/stale.txt")));
+    assertFalse(destination.exists(Paths.get("dir/stale")));
+  }
+
+  @Test
+  public void symlinksAreRestoredFromTheCentralDirectory() throws Exception {
+    assumeThat(Platform.detect(), Matchers.is(Matchers.not(Platform.WINDOWS)));
+
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      ZipArchiveEntry entry = new ZipArchiveEntry("link.txt");
+      entry.setUnixMode((int) MostFiles.S_IFLNK);
+      String target = "target.txt";
+      entry.setSize(target.getBytes(Charsets.UTF_8).length);
+      entry.setMethod(ZipEntry.STORED);
+      zip.putArchiveEntry(entry);
+      zip.write(target.getBytes(Charsets.UTF_8));
+      zip.closeArchiveEntry();
+    }
+
+    extract(ExistingFileMode.OVERWRITE);
+
+    Path link = destination.resolve("link.txt");
+    assertTrue(Files.isSymbolicLink(link));
+    assertThat(Files.readSymbolicLink(link).toString(), Matchers.equalTo("target.txt"));
+  }
+
+  @Test
+  public void corruptEntriesFailVerification() throws Exception {
+    StringBuilder contents = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      contents.append(CONTENTS).append(i);
+    }
+    source.writeContentsToPath(contents.toString(), Paths.get("file.txt"));
+    Zip.create(source, ImmutableList.of(Paths.get("file.txt")), zipFile);
+
+    // Flip a bit in the middle of the entry's compressed data, after its local header.
+    byte[] bytes = Files.readAllBytes(zipFile);
+    bytes[60] ^= 1;
+
+    StreamingUnzip unzip = new StreamingUnzip(destination, ExistingFileMode.OVERWRITE);
+    try {
+      unzip.extractArchive(new ByteArrayInputStream(bytes));
+      throw new AssertionError("Corrupt archive should not be extracted.");
+    } catch (ZipException e) {
+      // Expected.
+    }
+    assertEquals(ImmutableList.of(Paths.get("file.txt")), unzip.getFilesWritten());
+  }
+
+  @Test
+  public void stagedArchivesOnlyReplaceTheDestinationWhenMovedIntoPlace() throws Exception {
+    source.mkdirs(Paths.get("dir"));
+    source.writeContentsToPath(CONTENTS + CONTENTS, Paths.get("dir/file.txt"));
+    Zip.create(source, ImmutableList.of(Paths.get("dir"), Paths.get("dir/file.txt")), zipFile);
+    destination.mkdirs(Paths.get("dir"));
+    destination.writeContentsToPath(CONTENTS, Paths.get("dir/file.txt"));
+    destination.writeContentsToPath(CONTENTS, Paths.get("dir/stale.txt"));
+    Path staging = Paths.get("staging");
+    destination.mkdirs(staging);
+
+    StreamingUnzip unzip =
+        new StreamingUnzip(destination, staging, ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES);
+    try (InputStream input = Files.newInputStream(zipFile)) {
+      assertEquals(ImmutableList.of(Paths.get("dir/file.txt")), unzip.extractArchive(input));
+    }
+    assertEquals(Optional.of(CONTENTS), destination.readFileIfItExists(Paths.get("dir/file.txt")));
+    assertTrue(destination.exists(Paths.get("dir/stale.txt")));
+
+    unzip.moveIntoPlace();
+
+    assertEquals(
+        Optional.of(CONTENTS + CONTENTS),
+        destination.readFileIfItExists(Paths.get("dir/file.txt")));
+    assertFalse(destination.exists(Paths.get("dir/stale.txt")));
+    assertFalse(destination.exists(staging));
+  }
+}